@@ -27,11 +27,11 @@ CREATE TABLE IF NOT EXISTS `user` (
     `parent_user_id` BIGINT COMMENT '上级用户ID（用于层级关系）',
 
     -- 财务相关字段
-    `balance` DECIMAL(10, 2) DEFAULT 0.00 COMMENT '账户余额',
-    `frozen` DECIMAL(10, 2) DEFAULT 0.00 COMMENT '冻结金额',
+    `balance` DECIMAL(16, 2) DEFAULT 0.00 COMMENT '账户余额',
+    `frozen` DECIMAL(16, 2) DEFAULT 0.00 COMMENT '冻结金额',
     `points` BIGINT DEFAULT 0 COMMENT '积分余额',
-    `gift_money` DECIMAL(10, 2) DEFAULT 0.00 COMMENT '礼金余额',
-    `wine_gold` DECIMAL(10, 2) DEFAULT 0.00 COMMENT '酒金余额',
+    `gift_money` DECIMAL(16, 2) DEFAULT 0.00 COMMENT '礼金余额',
+    `wine_gold` DECIMAL(16, 2) DEFAULT 0.00 COMMENT '酒金余额',
     `total_consumption` DECIMAL(10, 2) DEFAULT 0.00 COMMENT '累计消费额',
     `total_recharge` DECIMAL(10, 2) DEFAULT 0.00 COMMENT '累计充值',
     `total_withdraw` DECIMAL(10, 2) DEFAULT 0.00 COMMENT '累计提现',
@@ -39,7 +39,7 @@ CREATE TABLE IF NOT EXISTS `user` (
     -- 代理相关字段
     `agent_level` VARCHAR(50) COMMENT '代理级别：PROVINCE-省代，CITY-市代，DISTRICT-区代，COMMUNITY-社区代',
     `total_turnover` DECIMAL(12, 2) DEFAULT 0.00 COMMENT '总营业额',
-    `total_commission` DECIMAL(12, 2) DEFAULT 0.00 COMMENT '总分成',
+    `total_commission` DECIMAL(16, 2) DEFAULT 0.00 COMMENT '总分成',
     `sub_agent_count` INT DEFAULT 0 COMMENT '下级代理数量',
     `commission_rate` DECIMAL(5, 2) COMMENT '分成比例（百分比）',
 
@@ -48,6 +48,8 @@ CREATE TABLE IF NOT EXISTS `user` (
     `token_expire_time` DATETIME COMMENT 'token过期时间',
     `last_login_time` DATETIME COMMENT '最后登录时间',
     `hierarchy` VARCHAR(200) COMMENT '层级信息（省市区街道，格式如：北京-北京市-海淀区-中关村）',
+    `region_code` CHAR(12) COMMENT '所属地区12位编码',
+    `region_path` VARCHAR(70) COMMENT '地区编码路径（从省级到所属地区的12位编码，以/分隔并结尾，如：110000000000/110100000000/110108000000/）',
 
     `create_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
     `update_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
@@ -56,9 +58,22 @@ CREATE TABLE IF NOT EXISTS `user` (
     INDEX `idx_phone` (`phone`),
     INDEX `idx_status` (`status`),
     INDEX `idx_parent_user_id` (`parent_user_id`),
-    INDEX `idx_agent_level` (`agent_level`)
+    INDEX `idx_agent_level` (`agent_level`),
+    INDEX `idx_region_path` (`region_path`, `id`)
     ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='用户表';
 
+-- 推荐关系闭包表（上级与其每一个下级一行，不含自身；由user.parent_user_id维护）
+-- 全量重建时在user_closure_rebuild中生成后RENAME TABLE替换，应用账号需要CREATE/DROP/ALTER权限
+CREATE TABLE IF NOT EXISTS `user_closure` (
+    `ancestor_id` BIGINT NOT NULL COMMENT '上级用户ID',
+    `descendant_id` BIGINT NOT NULL COMMENT '下级用户ID',
+    `depth` INT NOT NULL COMMENT '相隔层数：1为直接下级',
+
+    PRIMARY KEY (`ancestor_id`, `descendant_id`),
+    INDEX `idx_descendant_id` (`descendant_id`, `depth`),
+    INDEX `idx_ancestor_depth` (`ancestor_id`, `depth`)
+    ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='推荐关系闭包表';
+
 -- 用户登录方式表
 CREATE TABLE IF NOT EXISTS `user_auth` (
                                            `id` BIGINT PRIMARY KEY AUTO_INCREMENT COMMENT '主键ID',
@@ -87,10 +102,12 @@ CREATE TABLE IF NOT EXISTS `qr_code_login` (
     `city` VARCHAR(50) COMMENT '城市',
     `district` VARCHAR(50) COMMENT '区县',
     `street` VARCHAR(100) COMMENT '街道',
+    `region_code` CHAR(12) COMMENT '地区12位编码',
     `create_time` DATETIME NOT NULL COMMENT '创建时间',
     `expire_time` DATETIME NOT NULL COMMENT '过期时间',
     `scan_time` DATETIME COMMENT '扫描时间',
     `confirm_time` DATETIME COMMENT '确认时间',
+    `persistent` TINYINT(1) NOT NULL DEFAULT 0 COMMENT '是否以本表为准：1-批量打印的长效二维码（同步写入，会话丢失时从本表恢复，确认同步落库）',
 
     INDEX `idx_qr_token` (`qr_token`),
     INDEX `idx_status` (`status`),
@@ -100,23 +117,108 @@ CREATE TABLE IF NOT EXISTS `qr_code_login` (
     FOREIGN KEY (`user_id`) REFERENCES `user` (`id`) ON DELETE SET NULL
     ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='二维码登录表';
 
+-- 二维码登录历史表（过期清理时归档已确认记录，只保留精简字段）
+CREATE TABLE IF NOT EXISTS `qr_code_login_history` (
+    `id` BIGINT PRIMARY KEY AUTO_INCREMENT COMMENT '主键ID',
+    `qr_token` VARCHAR(64) NOT NULL COMMENT '二维码唯一标识',
+    `user_id` BIGINT COMMENT '用户ID',
+    `role` VARCHAR(20) COMMENT '角色',
+    `province` VARCHAR(50) COMMENT '省份',
+    `city` VARCHAR(50) COMMENT '城市',
+    `district` VARCHAR(50) COMMENT '区县',
+    `street` VARCHAR(100) COMMENT '街道',
+    `region_code` CHAR(12) COMMENT '地区12位编码',
+    `create_time` DATETIME NOT NULL COMMENT '创建时间',
+    `confirm_time` DATETIME COMMENT '确认时间',
+
+    UNIQUE KEY `uk_qr_token` (`qr_token`),
+    INDEX `idx_user_id` (`user_id`),
+    INDEX `idx_confirm_time` (`confirm_time`)
+    ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='二维码登录历史表';
+
+-- 定时任务租约表（多节点部署时保证同一任务只在一个节点执行）
+CREATE TABLE IF NOT EXISTS `job_lease` (
+    `lease_name` VARCHAR(64) PRIMARY KEY COMMENT '任务名称',
+    `owner` VARCHAR(128) NOT NULL COMMENT '持有节点标识',
+    `expire_time` DATETIME NOT NULL COMMENT '租约到期时间'
+    ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='定时任务租约表';
+
 -- 用户账户记录表
 CREATE TABLE IF NOT EXISTS `user_account_record` (
                                                      `id` BIGINT PRIMARY KEY AUTO_INCREMENT COMMENT '主键ID',
                                                      `user_id` BIGINT NOT NULL COMMENT '用户ID',
                                                      `type` VARCHAR(20) NOT NULL COMMENT '记录类型：recharge-充值，withdraw-提现，consume-消费，refund-退款',
-    `amount` DECIMAL(10, 2) NOT NULL COMMENT '金额',
-    `balance` DECIMAL(10, 2) NOT NULL COMMENT '变动后余额',
+    `account` VARCHAR(20) NOT NULL DEFAULT 'balance' COMMENT '账户：balance-余额，frozen-冻结金额，points-积分，gift_money-礼金，wine_gold-酒金，total_commission-累计分成',
+    `slot` INT COMMENT '子账户序号（热点账户入账记入子账户时填写，此时变动后余额为该子账户余额）',
+    `amount` DECIMAL(16, 2) NOT NULL COMMENT '变动金额（入账为正，出账为负；积分为个数）',
+    `balance` DECIMAL(16, 2) NOT NULL COMMENT '变动后余额',
     `remark` VARCHAR(200) COMMENT '备注',
     `order_id` VARCHAR(50) COMMENT '关联订单ID',
+    `posting_id` VARCHAR(64) COMMENT '记账请求ID（调用方生成，重试时沿用）',
+    `leg_no` INT COMMENT '分录在记账请求中的序号',
     `create_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
 
+    UNIQUE KEY `uk_posting_leg` (`posting_id`, `leg_no`),
     INDEX `idx_user_id` (`user_id`),
+    INDEX `idx_user_account` (`user_id`, `account`, `id`),
     INDEX `idx_type` (`type`),
     INDEX `idx_create_time` (`create_time`),
     FOREIGN KEY (`user_id`) REFERENCES `user` (`id`) ON DELETE CASCADE
     ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='用户账户记录表';
 
+-- 热点账户子账户表（账户余额 = user表主账户 + 全部子账户之和，定时归集到主账户）
+CREATE TABLE IF NOT EXISTS `user_sub_account` (
+    `user_id` BIGINT NOT NULL COMMENT '用户ID',
+    `account` VARCHAR(20) NOT NULL COMMENT '账户，同user_account_record.account',
+    `slot` INT NOT NULL COMMENT '子账户序号',
+    `amount` BIGINT NOT NULL DEFAULT 0 COMMENT '余额（分；积分为个数）',
+    `update_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+
+    PRIMARY KEY (`user_id`, `account`, `slot`),
+    FOREIGN KEY (`user_id`) REFERENCES `user` (`id`) ON DELETE CASCADE
+    ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='热点账户子账户表';
+
+-- 分成链配置表（每台设备或门店一条分成链，按seq顺序逐级分成，最后一级取剩余金额）
+CREATE TABLE IF NOT EXISTS `commission_chain` (
+    `id` BIGINT PRIMARY KEY AUTO_INCREMENT COMMENT '主键ID',
+    `scope_type` VARCHAR(20) NOT NULL COMMENT '适用范围：machine-设备，store-门店',
+    `scope_id` VARCHAR(64) NOT NULL COMMENT '设备编号或门店ID',
+    `seq` INT NOT NULL COMMENT '分成顺序，小的先分',
+    `party` VARCHAR(20) NOT NULL COMMENT '分成方：owner-机主，supplier-供应商，promoter-推广员，salesperson-业务员，operator-运营方，agent-代理商，agent_chain-代理商及其全部上级代理商',
+    `user_id` BIGINT NOT NULL COMMENT '收款用户ID',
+    `rate` DECIMAL(5, 2) COMMENT '分成比例（百分比），为空时取user.commission_rate',
+    `base` VARCHAR(20) NOT NULL DEFAULT 'remaining' COMMENT '计算基数：total-订单实付金额，remaining-上一级分完后的剩余金额',
+    `update_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+
+    UNIQUE KEY `uk_scope_seq` (`scope_type`, `scope_id`, `seq`),
+    INDEX `idx_user_id` (`user_id`)
+    ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='分成链配置表';
+
+-- 分成结算表（由分成流水日结生成，月、年由日汇总）
+CREATE TABLE IF NOT EXISTS `commission_settlement` (
+    `user_id` BIGINT NOT NULL COMMENT '用户ID',
+    `period_type` VARCHAR(10) NOT NULL COMMENT '周期类型：day-日，month-月，year-年',
+    `period` VARCHAR(10) NOT NULL COMMENT '周期：yyyy-MM-dd、yyyy-MM或yyyy',
+    `order_count` BIGINT NOT NULL DEFAULT 0 COMMENT '分成订单数',
+    `turnover` BIGINT NOT NULL DEFAULT 0 COMMENT '分成订单实付金额合计（分）',
+    `commission` BIGINT NOT NULL DEFAULT 0 COMMENT '本人分成金额（分）',
+    `team_commission` BIGINT NOT NULL DEFAULT 0 COMMENT '团队分成金额（本人及全部下级，分）',
+    `update_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+
+    PRIMARY KEY (`user_id`, `period_type`, `period`),
+    INDEX `idx_period` (`period_type`, `period`)
+    ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='分成结算表';
+
+-- 分成日结进度表（断点续跑）
+CREATE TABLE IF NOT EXISTS `commission_settlement_run` (
+    `settle_date` DATE PRIMARY KEY COMMENT '结算日期',
+    `status` VARCHAR(20) NOT NULL COMMENT '状态：running-结算中，done-已完成',
+    `last_record_id` BIGINT NOT NULL DEFAULT 0 COMMENT '已结算到的流水ID',
+    `max_record_id` BIGINT NOT NULL DEFAULT 0 COMMENT '本日流水扫描上限ID',
+    `order_count` BIGINT NOT NULL DEFAULT 0 COMMENT '已结算订单数',
+    `update_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间'
+    ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='分成日结进度表';
+
 -- ============================================
 -- 2. 角色与权限模块
 -- ============================================
@@ -153,6 +255,33 @@ CREATE TABLE IF NOT EXISTS `user_role` (
     FOREIGN KEY (`role_id`) REFERENCES `role` (`id`) ON DELETE CASCADE
     ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='用户角色关联表';
 
+-- 权限表
+CREATE TABLE IF NOT EXISTS `permission` (
+                                            `id` BIGINT PRIMARY KEY AUTO_INCREMENT COMMENT '主键ID',
+                                            `permission_code` VARCHAR(100) UNIQUE NOT NULL COMMENT '权限编码',
+    `permission_name` VARCHAR(100) NOT NULL COMMENT '权限名称',
+    `description` VARCHAR(500) COMMENT '权限描述',
+    `url` VARCHAR(200) COMMENT '资源路径',
+    `status` TINYINT DEFAULT 1 COMMENT '状态：0-禁用，1-启用',
+    `create_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    `update_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+
+    INDEX `idx_permission_code` (`permission_code`)
+    ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='权限表';
+
+-- 角色权限关联表
+CREATE TABLE IF NOT EXISTS `role_permission` (
+                                                 `id` BIGINT PRIMARY KEY AUTO_INCREMENT COMMENT '主键ID',
+                                                 `role_id` BIGINT NOT NULL COMMENT '角色ID',
+                                                 `permission_id` BIGINT NOT NULL COMMENT '权限ID',
+                                                 `create_time` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+
+    UNIQUE KEY `uk_role_permission` (`role_id`, `permission_id`),
+    INDEX `idx_permission_id` (`permission_id`),
+    FOREIGN KEY (`role_id`) REFERENCES `role` (`id`) ON DELETE CASCADE,
+    FOREIGN KEY (`permission_id`) REFERENCES `permission` (`id`) ON DELETE CASCADE
+    ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COMMENT='角色权限关联表';
+
 
 
 
@@ -170,6 +299,7 @@ CREATE TABLE IF NOT EXISTS wechat_user (
     language VARCHAR(50) COMMENT '语言',
     user_id BIGINT NOT NULL COMMENT '用户ID',
     bind_time DATETIME COMMENT '绑定时间',
+    profile_refreshed_at DATETIME COMMENT '微信资料最近同步时间（新鲜期内登录不再拉取资料）',
     create_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
     update_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
     INDEX idx_openid (openid),
@@ -0,0 +1,19 @@
+-- ============================================
+-- 已有库升级：记账金额列扩宽为DECIMAL(16, 2)
+-- DECIMAL(10, 2)上限为99999999.99，出款清算账户等累计余额会超出，记账写入失败。
+-- 子账户表user_sub_account.amount已是BIGINT（分），无需调整。
+-- 新建库直接执行simplified_schema.sql即可；MODIFY会重建表，大表请在低峰期执行
+-- ============================================
+
+USE brewing_machine;
+
+ALTER TABLE `user`
+    MODIFY `balance` DECIMAL(16, 2) DEFAULT 0.00 COMMENT '账户余额',
+    MODIFY `frozen` DECIMAL(16, 2) DEFAULT 0.00 COMMENT '冻结金额',
+    MODIFY `gift_money` DECIMAL(16, 2) DEFAULT 0.00 COMMENT '礼金余额',
+    MODIFY `wine_gold` DECIMAL(16, 2) DEFAULT 0.00 COMMENT '酒金余额',
+    MODIFY `total_commission` DECIMAL(16, 2) DEFAULT 0.00 COMMENT '总分成';
+
+ALTER TABLE `user_account_record`
+    MODIFY `amount` DECIMAL(16, 2) NOT NULL COMMENT '变动金额（入账为正，出账为负；积分为个数）',
+    MODIFY `balance` DECIMAL(16, 2) NOT NULL COMMENT '变动后余额';
@@ -0,0 +1,14 @@
+package com.brewingmachine.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 标记无需登录即可访问的接口，启动时由RoutePolicyRegistry登记；标在类上表示整个控制器公开
+ */
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface PublicRoute {
+}
@@ -0,0 +1,428 @@
+package com.brewingmachine.area;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <h2>地区字典</h2>
+ *
+ * <p>
+ *     全国五级行政区划的只读字典, 数据来自{@link AreaDictionaryWriter}生成的二进制文件, 以内存映射方式打开.
+ *     每个地区只是一个行号, 编码/上级/层级/子节点都保存在映射文件的定长数组里, 名称为去重后的名称表,
+ *     不为每行创建{@link Area}对象; 只有查询结果才按需构造{@link Area}.
+ * </p>
+ * <p>
+ *     按12位/6位编码查找为开放寻址哈希表, O(1); 6位编码只索引省/市/县三级(乡镇/村的前6位与所属县相同).
+ *     实例不可变, 可多线程共享.
+ * </p>
+ *
+ * <pre>
+ * 文件格式(大端):
+ *   int magic, int version, int count, int nameCount, int capacity12, int capacity6
+ *   long[count]      12位编码(升序)
+ *   int[count]       上级行号(-1为省级)
+ *   int[count]       名称编号
+ *   int[count]       城乡分类代码编号(-1为无)
+ *   byte[count]      层级
+ *   int[count + 2]   子节点区间起点(下标count为虚拟根节点, 其子节点为全部省级)
+ *   int[count]       子节点行号
+ *   int[capacity12]  12位编码哈希表(行号+1, 0为空)
+ *   int[capacity6]   6位编码哈希表(行号+1, 0为空)
+ *   int[nameCount+1] 名称偏移
+ *   byte[]           名称UTF-8字节
+ * </pre>
+ *
+ * @since 1.0
+ */
+public final class AreaDictionary {
+
+    static final int MAGIC = 0x41524541;
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 24;
+
+    private static final long CODE6_UNIT = 1_000_000L;
+
+    /**
+     * <p>
+     *     编码路径中每级所占字符数(12位编码加分隔符).
+     * </p>
+     */
+    public static final int PATH_SEGMENT_LENGTH = 13;
+
+    // 上级链最多的级数, 防止损坏的字典文件中上级成环时无限循环
+    private static final int MAX_DEPTH = AreaLevel.values().length;
+
+    private static final int NO_MATCH = -1;
+    private static final int AMBIGUOUS = -2;
+
+    private final ByteBuffer buffer;
+    private final int count;
+    private final int nameCount;
+    private final int capacity12;
+    private final int capacity6;
+
+    private final int codeOffset;
+    private final int parentOffset;
+    private final int nameIdOffset;
+    private final int typeIdOffset;
+    private final int levelOffset;
+    private final int childStartOffset;
+    private final int childOffset;
+    private final int table12Offset;
+    private final int table6Offset;
+    private final int nameOffsetOffset;
+    private final int nameBytesOffset;
+
+    private AreaDictionary(ByteBuffer buffer) {
+        this.buffer = buffer;
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IllegalArgumentException("地区字典文件格式不正确");
+        }
+        this.count = buffer.getInt(8);
+        this.nameCount = buffer.getInt(12);
+        this.capacity12 = buffer.getInt(16);
+        this.capacity6 = buffer.getInt(20);
+
+        this.codeOffset = HEADER_BYTES;
+        this.parentOffset = codeOffset + count * 8;
+        this.nameIdOffset = parentOffset + count * 4;
+        this.typeIdOffset = nameIdOffset + count * 4;
+        this.levelOffset = typeIdOffset + count * 4;
+        this.childStartOffset = levelOffset + count;
+        this.childOffset = childStartOffset + (count + 2) * 4;
+        this.table12Offset = childOffset + count * 4;
+        this.table6Offset = table12Offset + capacity12 * 4;
+        this.nameOffsetOffset = table6Offset + capacity6 * 4;
+        this.nameBytesOffset = nameOffsetOffset + (nameCount + 1) * 4;
+    }
+
+    /**
+     * <p>
+     *     以只读内存映射方式打开字典文件.
+     * </p>
+     */
+    public static AreaDictionary open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new AreaDictionary(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * <p>
+     *     地区总数.
+     * </p>
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * <p>
+     *     按12位编码查找行号, 不存在返回-1.
+     * </p>
+     */
+    public int indexOf(String regionCode12) {
+        long code = parseCode(regionCode12, 12);
+        return code < 0 ? -1 : probe(table12Offset, capacity12, code, false);
+    }
+
+    /**
+     * <p>
+     *     按6位编码查找省/市/县的行号, 不存在返回-1.
+     * </p>
+     */
+    public int indexOf6(String regionCode6) {
+        long code = parseCode(regionCode6, 6);
+        return code < 0 ? -1 : probe(table6Offset, capacity6, code, true);
+    }
+
+    public Area findByCode12(String regionCode12) {
+        int index = indexOf(regionCode12);
+        return index >= 0 ? get(index) : null;
+    }
+
+    public Area findByCode6(String regionCode6) {
+        int index = indexOf6(regionCode6);
+        return index >= 0 ? get(index) : null;
+    }
+
+    /**
+     * <p>
+     *     下级地区, regionCode12为null时返回全部省级.
+     * </p>
+     */
+    public List<Area> getChildren(String regionCode12) {
+        int index = regionCode12 == null ? count : indexOf(regionCode12);
+        if (index < 0) {
+            return Collections.emptyList();
+        }
+        int start = childStart(index);
+        int end = childStart(index + 1);
+        List<Area> children = new ArrayList<>(end - start);
+        for (int i = start; i < end; i++) {
+            children.add(get(buffer.getInt(childOffset + i * 4)));
+        }
+        return children;
+    }
+
+    /**
+     * <p>
+     *     上级地区链, 从省级到直接上级, 不含自身.
+     * </p>
+     */
+    public List<Area> getAncestors(String regionCode12) {
+        int index = indexOf(regionCode12);
+        if (index < 0) {
+            return Collections.emptyList();
+        }
+        List<Area> ancestors = new ArrayList<>(MAX_DEPTH);
+        for (int parent = parentIndex(index); parent >= 0; parent = parentIndex(parent)) {
+            if (ancestors.size() == MAX_DEPTH) {
+                throw tooDeep(index);
+            }
+            ancestors.add(get(parent));
+        }
+        Collections.reverse(ancestors);
+        return ancestors;
+    }
+
+    /**
+     * <p>
+     *     指定层级的下级地区(按编码顺序), regionCode12为null时在全国范围内查找.
+     * </p>
+     */
+    public List<Area> getDescendants(String regionCode12, AreaLevel level) {
+        int index = regionCode12 == null ? count : indexOf(regionCode12);
+        if (index < 0) {
+            return Collections.emptyList();
+        }
+        List<Area> result = new ArrayList<>();
+        collect(index, level.getValue(), result);
+        return result;
+    }
+
+    /**
+     * <p>
+     *     从省级开始逐级按名称查找地区, 返回最后一级的行号, 找不到或有歧义返回-1, 空名称跳过.
+     *     每级先精确匹配, 再匹配以该名称开头的唯一下级(如"北京"匹配"北京市", "中关村"匹配"中关村街道");
+     *     直辖市下级名称与自身相同, 或跳过了"市辖区"这类中间一级的, 再到隔一级的下级中查找.
+     * </p>
+     */
+    public int resolve(List<String> names) {
+        int current = count;
+        for (String value : names) {
+            if (value == null || value.trim().isEmpty()) {
+                continue;
+            }
+            String name = value.trim();
+            int next = matchChild(current, name);
+            if (next == NO_MATCH && current != count) {
+                String currentName = name(current);
+                if (childCount(current) == 1 && (currentName.startsWith(name) || name.startsWith(currentName))) {
+                    next = child(current, 0);
+                } else {
+                    next = matchGrandchild(current, name);
+                }
+            }
+            if (next < 0) {
+                return -1;
+            }
+            current = next;
+        }
+        return current != count ? current : -1;
+    }
+
+    /**
+     * <p>
+     *     编码路径: 从省级到该地区的12位编码, 每级以'/'结尾, 如"110000000000/110100000000/110108000000/".
+     *     下级地区的路径以上级路径为前缀, 可按前缀范围查询整棵子树.
+     * </p>
+     */
+    public String path(int index) {
+        int depth = 0;
+        for (int i = index; i >= 0; i = parentIndex(i)) {
+            if (++depth > MAX_DEPTH) {
+                throw tooDeep(index);
+            }
+        }
+        char[] chars = new char[depth * PATH_SEGMENT_LENGTH];
+        int end = chars.length;
+        for (int i = index; i >= 0; i = parentIndex(i)) {
+            chars[--end] = '/';
+            long code = code12(i);
+            for (int j = 0; j < 12; j++) {
+                chars[--end] = (char) ('0' + code % 10);
+                code /= 10;
+            }
+        }
+        return new String(chars);
+    }
+
+    private IllegalStateException tooDeep(int index) {
+        return new IllegalStateException("地区上级链超过" + MAX_DEPTH + "级, 字典文件可能已损坏: "
+                + formatCode(code12(index), 12));
+    }
+
+    /**
+     * <p>
+     *     按行号构造地区对象.
+     * </p>
+     */
+    public Area get(int index) {
+        long code = code12(index);
+        int parent = parentIndex(index);
+        int typeId = buffer.getInt(typeIdOffset + index * 4);
+        return new Area(name(index),
+                formatCode(code, 12),
+                formatCode(code / CODE6_UNIT, 6),
+                parent >= 0 ? formatCode(code12(parent), 12) : null,
+                parent >= 0 ? formatCode(code12(parent) / CODE6_UNIT, 6) : null,
+                typeId >= 0 ? nameAt(typeId) : null,
+                AreaLevel.of(level(index)));
+    }
+
+    public long code12(int index) {
+        return buffer.getLong(codeOffset + index * 8);
+    }
+
+    public int parentIndex(int index) {
+        return buffer.getInt(parentOffset + index * 4);
+    }
+
+    public int level(int index) {
+        return buffer.get(levelOffset + index);
+    }
+
+    public String name(int index) {
+        return nameAt(buffer.getInt(nameIdOffset + index * 4));
+    }
+
+    /**
+     * <p>
+     *     名称编号, 同名地区编号相同.
+     * </p>
+     */
+    public int nameId(int index) {
+        return buffer.getInt(nameIdOffset + index * 4);
+    }
+
+    public int childCount(int index) {
+        return childStart(index + 1) - childStart(index);
+    }
+
+    public int child(int index, int i) {
+        return buffer.getInt(childOffset + (childStart(index) + i) * 4);
+    }
+
+    private int childStart(int index) {
+        return buffer.getInt(childStartOffset + index * 4);
+    }
+
+    private void collect(int index, int level, List<Area> result) {
+        int start = childStart(index);
+        int end = childStart(index + 1);
+        for (int i = start; i < end; i++) {
+            int child = buffer.getInt(childOffset + i * 4);
+            int childLevel = level(child);
+            if (childLevel == level) {
+                result.add(get(child));
+            } else if (childLevel < level) {
+                collect(child, level, result);
+            }
+        }
+    }
+
+    private int matchChild(int parent, String name) {
+        int start = childStart(parent);
+        int end = childStart(parent + 1);
+        int prefixMatch = NO_MATCH;
+        for (int i = start; i < end; i++) {
+            int child = buffer.getInt(childOffset + i * 4);
+            String childName = name(child);
+            if (childName.equals(name)) {
+                return child;
+            }
+            if (childName.startsWith(name)) {
+                prefixMatch = prefixMatch == NO_MATCH ? child : AMBIGUOUS;
+            }
+        }
+        return prefixMatch;
+    }
+
+    private int matchGrandchild(int parent, String name) {
+        int start = childStart(parent);
+        int end = childStart(parent + 1);
+        int found = NO_MATCH;
+        for (int i = start; i < end; i++) {
+            int match = matchChild(buffer.getInt(childOffset + i * 4), name);
+            if (match == AMBIGUOUS || (match >= 0 && found != NO_MATCH)) {
+                return AMBIGUOUS;
+            }
+            if (match >= 0) {
+                found = match;
+            }
+        }
+        return found;
+    }
+
+    private String nameAt(int nameId) {
+        int start = buffer.getInt(nameOffsetOffset + nameId * 4);
+        int end = buffer.getInt(nameOffsetOffset + (nameId + 1) * 4);
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = buffer.get(nameBytesOffset + start + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int probe(int tableOffset, int capacity, long code, boolean code6) {
+        int mask = capacity - 1;
+        for (int slot = slot(code, mask); ; slot = (slot + 1) & mask) {
+            int entry = buffer.getInt(tableOffset + slot * 4);
+            if (entry == 0) {
+                return -1;
+            }
+            int index = entry - 1;
+            long key = code6 ? code12(index) / CODE6_UNIT : code12(index);
+            if (key == code) {
+                return index;
+            }
+        }
+    }
+
+    static int slot(long code, int mask) {
+        long hash = code * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    static long parseCode(String code, int length) {
+        if (code == null || code.length() != length) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            char c = code.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    static String formatCode(long code, int length) {
+        char[] chars = new char[length];
+        for (int i = length - 1; i >= 0; i--) {
+            chars[i] = (char) ('0' + code % 10);
+            code /= 10;
+        }
+        return new String(chars);
+    }
+}
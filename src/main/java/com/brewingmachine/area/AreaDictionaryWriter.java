@@ -0,0 +1,299 @@
+package com.brewingmachine.area;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <h2>地区字典生成</h2>
+ *
+ * <p>
+ *     把行政区划CSV转换为{@link AreaDictionary}使用的二进制文件. CSV每行一个地区, 第一行为表头:
+ * </p>
+ * <pre>
+ *   regionCode12,name,level,parentCode12,typeCode
+ *   110000000000,北京市,1,,
+ *   110101001001,多福巷社区居委会,5,110101001000,111
+ * </pre>
+ * <p>
+ *     字段按CSV规则解析, 含逗号的字段用双引号括起, 字段内的双引号写作两个双引号.
+ *     省级地区的上级编码为空; 其他地区的上级必须存在且级别更高, 否则拒绝生成(上级链不会成环).
+ *     12位编码或省/市/县的6位编码重复时拒绝生成.
+ *     先写临时文件再原子替换, 已打开的字典不受影响.
+ * </p>
+ *
+ * @since 1.0
+ */
+@Slf4j
+public final class AreaDictionaryWriter {
+
+    private AreaDictionaryWriter() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            throw new IllegalArgumentException("用法: AreaDictionaryWriter <source.csv> <target.bin>");
+        }
+        int count = write(Path.of(args[0]), Path.of(args[1]));
+        log.info("地区字典生成完成, 地区数: {}", count);
+    }
+
+    /**
+     * <p>
+     *     读取CSV生成字典文件, 返回地区数.
+     * </p>
+     */
+    public static int write(Path csv, Path target) throws IOException {
+        List<String[]> rows = readRows(csv);
+        int count = rows.size();
+
+        // 按12位编码排序
+        long[] codes = new long[count];
+        Integer[] order = new Integer[count];
+        for (int i = 0; i < count; i++) {
+            codes[i] = AreaDictionary.parseCode(rows.get(i)[0], 12);
+            if (codes[i] < 0) {
+                throw new IllegalArgumentException("地区编码格式不正确: " + rows.get(i)[0]);
+            }
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(codes[a], codes[b]));
+
+        long[] sortedCodes = new long[count];
+        Map<Long, Integer> indexByCode = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            sortedCodes[i] = codes[order[i]];
+            if (indexByCode.put(sortedCodes[i], i) != null) {
+                throw new IllegalArgumentException("地区编码重复: " + rows.get(order[i])[0]);
+            }
+        }
+
+        // 名称和城乡分类代码去重后编号
+        Map<String, Integer> nameIds = new HashMap<>();
+        List<String> names = new ArrayList<>();
+        int[] parents = new int[count];
+        int[] nameRefs = new int[count];
+        int[] typeIds = new int[count];
+        byte[] levels = new byte[count];
+        for (int i = 0; i < count; i++) {
+            String[] row = rows.get(order[i]);
+            nameRefs[i] = intern(row[1], nameIds, names);
+            int level = Integer.parseInt(row[2]);
+            if (AreaLevel.of(level) == null) {
+                throw new IllegalArgumentException("地区级别不正确: " + row[0]);
+            }
+            levels[i] = (byte) level;
+            parents[i] = -1;
+            if (row[3].isEmpty()) {
+                if (level != AreaLevel.PROVINCE.getValue()) {
+                    throw new IllegalArgumentException("非省级地区缺少上级编码: " + row[0]);
+                }
+            } else {
+                long parentCode = AreaDictionary.parseCode(row[3], 12);
+                Integer parent = parentCode >= 0 ? indexByCode.get(parentCode) : null;
+                if (parent == null) {
+                    throw new IllegalArgumentException("上级地区不存在: " + row[0] + ", 上级编码: " + row[3]);
+                }
+                parents[i] = parent;
+            }
+            typeIds[i] = row[4].isEmpty() ? -1 : intern(row[4], nameIds, names);
+        }
+        // 上级级别必须更高, 上级链因此不会成环
+        for (int i = 0; i < count; i++) {
+            if (parents[i] >= 0 && levels[parents[i]] >= levels[i]) {
+                throw new IllegalArgumentException("上级地区级别不正确: " + rows.get(order[i])[0]);
+            }
+        }
+
+        // 子节点按编码顺序排列，下标count为虚拟根节点
+        int[] childStart = new int[count + 2];
+        for (int i = 0; i < count; i++) {
+            childStart[(parents[i] >= 0 ? parents[i] : count) + 1]++;
+        }
+        for (int i = 1; i < childStart.length; i++) {
+            childStart[i] += childStart[i - 1];
+        }
+        int[] fill = Arrays.copyOf(childStart, childStart.length);
+        int[] children = new int[count];
+        for (int i = 0; i < count; i++) {
+            children[fill[parents[i] >= 0 ? parents[i] : count]++] = i;
+        }
+
+        // 开放寻址哈希表，负载因子不超过0.5
+        int capacity12 = tableCapacity(count);
+        int[] table12 = new int[capacity12];
+        int code6Count = 0;
+        for (byte level : levels) {
+            if (level <= AreaLevel.COUNTY.getValue()) {
+                code6Count++;
+            }
+        }
+        int capacity6 = tableCapacity(code6Count);
+        int[] table6 = new int[capacity6];
+        Set<Long> codes6 = new HashSet<>(code6Count * 2);
+        for (int i = 0; i < count; i++) {
+            insert(table12, sortedCodes[i], i);
+            if (levels[i] <= AreaLevel.COUNTY.getValue()) {
+                // 6位编码查找只返回一个地区，重复时查询结果取决于插入顺序
+                long code6 = sortedCodes[i] / 1_000_000L;
+                if (!codes6.add(code6)) {
+                    throw new IllegalArgumentException("6位地区编码重复: " + AreaDictionary.formatCode(code6, 6));
+                }
+                insert(table6, code6, i);
+            }
+        }
+
+        byte[][] nameBytes = new byte[names.size()][];
+        for (int i = 0; i < nameBytes.length; i++) {
+            nameBytes[i] = names.get(i).getBytes(StandardCharsets.UTF_8);
+        }
+
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+            out.writeInt(AreaDictionary.MAGIC);
+            out.writeInt(AreaDictionary.VERSION);
+            out.writeInt(count);
+            out.writeInt(names.size());
+            out.writeInt(capacity12);
+            out.writeInt(capacity6);
+            for (long code : sortedCodes) {
+                out.writeLong(code);
+            }
+            writeInts(out, parents);
+            writeInts(out, nameRefs);
+            writeInts(out, typeIds);
+            out.write(levels);
+            writeInts(out, childStart);
+            writeInts(out, children);
+            writeInts(out, table12);
+            writeInts(out, table6);
+            int offset = 0;
+            out.writeInt(0);
+            for (byte[] bytes : nameBytes) {
+                offset += bytes.length;
+                out.writeInt(offset);
+            }
+            for (byte[] bytes : nameBytes) {
+                out.write(bytes);
+            }
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return count;
+    }
+
+    private static List<String[]> readRows(Path csv) throws IOException {
+        List<String[]> rows = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(csv, StandardCharsets.UTF_8)) {
+            String line = reader.readLine();
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String[] row = parseLine(line);
+                if (row.length < 5) {
+                    throw new IllegalArgumentException("地区数据列数不正确: " + line);
+                }
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    /**
+     * <p>
+     *     按CSV规则拆分一行: 双引号括起的字段可含逗号, 字段内的双引号写作两个双引号; 未括起的字段去掉首尾空白.
+     * </p>
+     */
+    static String[] parseLine(String line) {
+        List<String> fields = new ArrayList<>(5);
+        StringBuilder field = new StringBuilder();
+        int length = line.length();
+        int i = 0;
+        while (true) {
+            while (i < length && line.charAt(i) == ' ') {
+                i++;
+            }
+            if (i < length && line.charAt(i) == '"') {
+                i++;
+                while (true) {
+                    if (i >= length) {
+                        throw new IllegalArgumentException("地区数据引号不匹配: " + line);
+                    }
+                    char c = line.charAt(i++);
+                    if (c != '"') {
+                        field.append(c);
+                    } else if (i < length && line.charAt(i) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        break;
+                    }
+                }
+                while (i < length && line.charAt(i) == ' ') {
+                    i++;
+                }
+                if (i < length && line.charAt(i) != ',') {
+                    throw new IllegalArgumentException("地区数据引号后应为逗号: " + line);
+                }
+                fields.add(field.toString());
+            } else {
+                int comma = line.indexOf(',', i);
+                int end = comma >= 0 ? comma : length;
+                fields.add(line.substring(i, end).trim());
+                i = end;
+            }
+            field.setLength(0);
+            if (i >= length) {
+                return fields.toArray(new String[0]);
+            }
+            i++;
+        }
+    }
+
+    private static int intern(String value, Map<String, Integer> ids, List<String> values) {
+        Integer id = ids.get(value);
+        if (id == null) {
+            id = values.size();
+            ids.put(value, id);
+            values.add(value);
+        }
+        return id;
+    }
+
+    private static int tableCapacity(int size) {
+        int capacity = 2;
+        while (capacity < size * 2) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static void insert(int[] table, long code, int index) {
+        int mask = table.length - 1;
+        int slot = AreaDictionary.slot(code, mask);
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = index + 1;
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+}
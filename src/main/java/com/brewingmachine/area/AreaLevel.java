@@ -39,4 +39,18 @@ public enum AreaLevel {
     public String getDescription() {
         return this.description;
     }
+
+    /**
+     * <p>
+     *     按层级数值查找, 不存在时返回null.
+     * </p>
+     */
+    public static AreaLevel of(int value) {
+        for (AreaLevel level : values()) {
+            if (level.value == value) {
+                return level;
+            }
+        }
+        return null;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,248 @@
+package com.brewingmachine.area;
+
+import java.nio.charset.Charset;
+import java.util.Map;
+
+/**
+ * <h2>拼音首字母</h2>
+ *
+ * <p>
+ *     按GB2312一级汉字的拼音排序区间取首字母, 二级汉字(按部首排列)查内置的首字母表, 不依赖拼音库.
+ *     多音字按常用读音取首字母, 地名中读音不同的(如重庆、厦门)按{@link #OVERRIDES}整词替换.
+ *     GB2312以外和无法编码的字符输出{@link #UNKNOWN}, 字母和数字转为小写原样输出, 输出与输入逐字符对齐.
+ * </p>
+ *
+ * @since 1.0
+ */
+public final class PinyinInitials {
+
+    public static final char UNKNOWN = '#';
+
+    private static final Charset GB2312 = Charset.forName("GB2312");
+
+    private static final String LETTERS = "abcdefghjklmnopqrstwxyz";
+
+    // 各首字母在GB2312一级汉字中的起始区位码, 最后一个为一级汉字结束位置
+    private static final int[] BOUNDARIES = {
+            1601, 1637, 1833, 2078, 2274, 2302, 2433, 2594, 2787, 3106, 3212, 3472,
+            3635, 3722, 3730, 3858, 4027, 4086, 4390, 4558, 4684, 4925, 5249, 5590
+    };
+
+    // GB2312二级汉字起止区位码(56区至87区)
+    private static final int LEVEL2_START = 5601;
+    private static final int LEVEL2_END = 8795;
+
+    // GB2312二级汉字按首字母分组, 顺序与LETTERS一致; 取自汉语拼音常用读音
+    private static final String[] LEVEL2_CHARS = {
+            // a
+            "谙坳埯拗捱揞吖嗷嗄嗳嗌岙犴庵廒遨媪嫒骜瑷桉獒暧腌砹铵锕锿鹌聱螯霭鏊鳌鏖黯",
+            // b
+            "匕孛匾俾傧勹亳禀冫阪邴邶弁畚坌坂芘苄茇荜荸菝萆葆蓓蒡薜捭摒卟吡呗哔啵嘣岜豳狴饽庳" +
+            "忭悖愎汴浜滗濞灞逋弼妣婊婢嬖孢缏缤玢璧槟檗殡瓿甏晡贲掰擘膑飑飙飚煲煸灬砭碚碥礴畀" +
+            "钚钣钯钸钹铋锛镔镖镳秕鸨鹁鹎瘢瘭癍窆裱裨褙褓褊蝙笾筚箅篦簸舭舨襞粑醭蹩趵跛跸踣龅" +
+            "鐾鲅鳊鳔鞴髀髌魃髟鬓",
+            // c
+            "亍丞厝伥伧侪俦傺汆冁谄谌谶陲刍鬯坼坻埕墀艹苌苁茌茺莼菖萃蒇蔟抻搋撺叱呲哧啐啜啻嗔" +
+            "嗤嘈噌嚓帱岑嵯彳徂徜猝猹舛饬馇廛忖忏忡怅怆怵怊恻惝惆悴憧憷阊汊涔淙漕潺澶宸辶遄孱" +
+            "羼屮姹娼婵媸嫦骖骢绌巛琮琛璀璁璨杈杵枨柽楮棰楱槌榇槎榱樗檫殂辍辏昶晁觇毳氅氚敕脞" +
+            "腠塍膪爨祠砗碜礤眵瞠钏钗铖铳锉锸镡镩镲矬鸱鹑鹚疒痤瘥瘛瘳衩裎褚褫皴耖虿蚩蛏蜍蝽螭" +
+            "螬蟾笞篪舂舡艚艟粲糍豉酲鹾蹙踔踟踹蹉蹰蹴躔龀龊雠鲳魑黜黪",
+            // d
+            "氐刂仃儋籴诋谛谠阽邸凼坫垤埭堞芏荻萏菪蔸耷甙呔咚咄哒哚啖啶喋嗒嘟嗲嘀噔岽岱嶝巅忉" +
+            "怛沌沲渎澹宕迨妲娣绐缍玎玷玳柢椟棣椴殚戥赕觌氘氡牍牒胨胴腚炖煅焘怼憝砀砘砥硐碓碇" +
+            "碲礅磴盹眈睇町钿铎铛铞铥锝镝镦镫瓞鸫疔疸瘅癜癫窦裆裰褡耋耵聃蚪蠹笃笪箪篼簖簟簦羝" +
+            "纛酊趸踮蹀踱貂鲷鲽靼鞑骶髑黛黩",
+            // e
+            "噩诶谔垩苊莪萼蒽摁呃愕迩屙婀珥轭腭铒锇锷鸸鹗颚鲕鳄",
+            // f
+            "匚俸偾匐凫阝邡郛酆垡芙芾苻茯莩菔葑蕃蘩拊呋唪幞幡狒怫悱沣淝滏瀵艴妃孚驸绂绋绯枋梵" +
+            "桴棼榧赙腓斐燔扉祓砜砝砩黻黼畈罘钫镄稃馥痱蚨蜉蜚蝠蝮缶篚舫翡麸趺跗蹯霏鲂鲋鲱鲼鳆" +
+            "鼢",
+            // g
+            "丐亘睾嘏匦卦刿仡佝倌馘衮诂诖诟诰陔郜哿圪坩垓埚塥苷茛莞菰藁廾尬尴掴掼擀呙呱咣哏哽" +
+            "嗝帼岣崮崞犷猓庋赓汩泔淦涫澉宄遘妫媾尕尜绀绠绲缑缟珙枸桄栝桧梏椁槔槁橄轱戤旮旰杲" +
+            "炅晷赅觏牯牿搿虢肱胍胱膈臌彀毂戆矸磙瞽罡罟盥钆钴锆锢镉皈鸪鸹鹳疳痼袼聒虼蚣蛄蜾蝈" +
+            "笱筻篝簋舸艮酐酤觚觥鲑鲠鲧鲴鳏鳜鞲鹘骼",
+            // h
+            "劐黉訇冱讧诃诙诨隍邗奂劾壑垸堠茴荟荭萑菡蒿蕙蕻薨薅藿蘅撖擐攉咴哕唿喙嗬嗥嗨嚆嚯囫" +
+            "岵後徨猢獾夥馄怙惚隳闳阍阖沆泓洹洄浍浒浣湟溷潢滹漶濠瀚灏寰逅逭遑彗骅纥绗缋缳珩珲" +
+            "琥璜桦桁槲轷昊曷晖晗肓胲觳烀焓煳戽扈祜恚砉盍钬铧铪锪锾镬皓瓠鹄鹕鹱瘊癀耠顸颃颌颔" +
+            "颢虍虺蚝蚶蚵蟥蟪蠖笏篁篌糇翮醐醢踝斛鲎鲩鳇骺鬟麾鼾",
+            // j
+            "丌亟乩厥刭剞劂冂伽佶佼倨偈儆僭僬僦讦讵诘谏谫谮谲卩卺阱郏鄄矍墼艽芨芰苣苴莒荠茭茳" +
+            "荩菁萁堇菅葭蒺蒹蕨蕺拮挢捃掎掬搛叽咭哜唧喈啾嗟噘噍噤囝岌岬峤崛嵴徼狷獍獗馑憬阄泾" +
+            "浃洎洚涓湔蹇謇迥迦迳遽彐屐屦弪妗姣婧婕孑孓骥绛缙缣缰畿玑珏珈琚瑾枧柩桕桀桊桷楗椐" +
+            "楫榘榉槿橛橘殛戋戛戟戢戬赆赍觊觐牮犟犄犋犍毽敫肼胛胫腈腱飓齑旌爝扃恝矶碣礓睑羁蠲" +
+            "钅钜铗锏锔锩镌镓镢嵇稷皎鸠鹣鹪鹫疖痂瘕瘠窭衿袷裥裾皲矜耩颉虮蚧蛱蛟笈笄笕笳袈羯糨" +
+            "暨翦赳趄豇醮醵趼跏跻跤跽踺踽蹶觖靓霁龃隽雎瞿鲒鲚鲛鲣鲫鞯鞫骱髻鬏麂麇",
+            // k
+            "馗匮刳剀蒯伉佧侉侃倥夔诓诳邝郐圹垲堀芤莰蒈蒉蔻夼揆叩咔哐哙喹喟喾嗑岢崆狯忾恺恪悝" +
+            "悃愦闶阃阚溘逵尻骒纩绔缂珂琨栲轲戡暌贶犒氪胩脍龛眍睽瞌瞰钪钶铐铠铿锎锞锟锴稞疴窠" +
+            "裉聩颏蛞蝰蝌筘箜篑醌跬鲲骷髁髋髡",
+            // l
+            "鬲剌仂俪俚倮偻脔蠃羸冽诔郦酃坜垅垆埒塄墚苈茏苓荦莅莨蒌蓠蒗蔹蔺蓼藜奁尥捋捩摞撸叻" +
+            "呖呤咧唠啉啷唳喱喽嘞嘹噜囵囹岚崂崃嵝嶙徕猁猡獠廪愣懔闾阆泐泷泸泠泺洌浏涞渌溧漤漯" +
+            "潋漉濑澧濂寮逦逯遛遴邋娈娌嫠嫘骊骝绫绺缡缧缭珑珞琏璐枥栊栌柃栎栳栾棂椤椋楝榄榈橹" +
+            "檑檩殓轳轹辂辘辚瓴旯赉氇胧胪脶膂臁膦斓旒熘戾砺砻砬硌睐瞵詈罱罹钌铑铹铼锂锊锍锒镂" +
+            "镏镙镥镧稆稂鸬鸾鹂鹨鹩鹭疠疬痨瘌瘘瘰癃癞裢裣褛褴耒耢耧聆蛎蛉蜊螂蝼蠊蠡笠篥簏籁舻" +
+            "粝粼翎趔酹醪醴跞踉躏躐雳雒銮鎏鲈鲡鲢鲮鳓鳢髅魉鬣麟黧",
+            // m
+            "乜芈仫侔袤冖冥谟谧邙劢勐坶墁茉苜茆苠茗荬莓蓦甍瞢蘼扪呒咩咪哞唛喵嘧幔峁岷嵋犸猕猸" +
+            "馍懵闵沐沔汨泖泯浼渑湎湄漭溟宀宓邈弭嫫嬷纟缈缗缦缪玟珉瑁杩杪楣殁昴暝牦耄毪脒腼朦" +
+            "旄焖熳祢愍懋懑淼硭礞眄眇眸瞀瞑钔钼镅镆镘秣鹋鹛瘼袂耱颟虻蛑蜢蝥螨蟒蟆蟊蠓蠛篾艋艨" +
+            "敉糸酩貊貘霾黾鍪鳗鳘鞔魅髦麽縻麋",
+            // n
+            "廿孬鼐佞伲佴侬傩讷陧坭垴埝艿茑萘蘖捺搦攮咛呶哝喃嗫嗯囔囡狃猊猱馕忸怩甯弩妞胬嬲孥" +
+            "驽瑙柰楠辇昵曩肭脲腩旎恧恁慝硇睨钕铌铙锘镎黏衲耨聍颞蛲蝻臬衄袅赧蹑鲇鲵鲶",
+            // o
+            "讴噢怄瓯耦",
+            // p
+            "丕丿叵剽仳俜俳匍裒谝陂陴邳郫鄱圮埤堋鼙苤葩蒎匏拚掊擗哌辔嘌嘭噗噼帔彷狍庀庖怦爿泮" +
+            "淠湓溥滂濮逄姘娉媲嫔嫖骈骠纰缥珀璞枇杷枰榀殍甓攴牝犏氆氕攵胼脬旆睥瞟罴钋钷铍锫镤" +
+            "镨皤疱癖袢襻疋颦蚍蜱螃螵蟛蟠笸筢翩醅蹁蹒蹼貔霈鲆",
+            // q
+            "亓劁俅倩佥诎诠诮谯阡邛郄劬凵巯圻芊芑芩芡芪苘茕茜荞荃荨萋葜葺蕖蕲蘧掮揿吣嗪嘁噙圊" +
+            "屺岍岐岖衢犭犰廑悭悛惬愀慊憔阒阕阙丬戕汔淇湫骞搴褰逑逡遒妾嫱骐绮绻缱缲琪琦璩杞桤" +
+            "椠楸樯槭檠樵檎辁戗耆赇觑挈氍肷朐炝祛祺悫愆憩硗碛磬磲畎钤铨锓锖锲锵镪鸲癯穹襁颀虔" +
+            "虬蚯蛩蛐蛴蜣蜻蜞蜷螓蠼罄筇筌箐箧箝衾裘羟糗綦綮麴跫跄跷謦銎鲭鳅鳍鞒髂鬈麒黢黥",
+            // r
+            "亻仞偌芮苒荛荏蓐蕤薷喏嚅嵘狨饪洳溽濡娆缛枘桡榕轫肜朊禳睿铷稔穰衽襦颥蚋蚺蝾箬糅蹂" +
+            "鞣髯",
+            // s
+            "卅丨啬厍厮仨俟倏佘夙兕凇讪诜谂谇谡谥鄯劭叟厶塾埏垧埘埽芟荪莳荽菘菽葚蓍蒴蔌薮扌揲" +
+            "摅搠搡弑咝哂唢唼唰嗖嗉嗦嗍嗾噻崧嵊嵩彡狩狲狻猞飧饣馊馓悚愫闩氵汜沭泗涑淞渖涮溲滠" +
+            "澍澌潸潲濉邃妁姒姗姝娑嬗孀驷骟纾绱绶缌缫杓桫椹榫槊殇轼晟贳挲毵毹胂脎腧臊膻歃歙飒" +
+            "飕殳炻熵燧礻祀禅磉眚眭睃睢瞍畲钐铄铈铩铯锶锼矧秫穑鸶疝痧瘙竦耜颡蛳蜃蛸螋螫蟀蟮舐" +
+            "笙笥筮筲簌舢艄艏裟羧糁酾豕跚觞觫霎隼稣鲥鲨鲺鳋鳝麝",
+            // t
+            "乇鼗佟佗佻倜傥僮仝氽亠邰郯坨垌堍苕荑茼莛荼萜菟葶薹抟掭忒叨啕嗵帑峒饨庹恸悌忝闼阗" +
+            "沱洮溻溏潼逖遢彖婷骀绨缇瑭韬柝柁梃榻樘橐殄昙暾肽豚滕炱煺祧忑忐沓砼砣畋疃钍钛钭钽" +
+            "铊铤铴铽锬镗鹈窕裼耥覃蜓蜩螗螳笤箨羰粜酡酴醍醣趿跎跆霆龆鼍鲐鲦鳎骰餮饕髫",
+            // w
+            "兀刎剜罔佤仵倭偎诿阢隈隗邬圩圬芄芴莴葳蓊薇蕹尢唔喔囗帏帷幄崴嵬猥猬庑怃忤惘闱阌汶" +
+            "沩洧浯涠渥寤迕逶妩娲娓婺骛纨绾玮琬璺韪杌辋軎牾肟脘腽於炜焐煨硪畹鹉鹜痦痿蜈蜿艉雯" +
+            "龌鋈鲔魍鼯",
+            // x
+            "囟偕僖儇兮巽亵冼诩谑谖陉隰郇郗勖勰燮埙馨芎芗苋荇荀莶莘菥葙葸萱蓰蓿蕈薤薰藓奚揎撷" +
+            "擤呷哓咻唏噱岘岫峋徇徙狎猃獬獯饧饩饷馐庥庠廨忄恂悻阋泫洫洵浔浠淅渫溆渲溴潇漩瀣逍" +
+            "遐暹邂屣娴嬉骁骧绁绡缃缬顼玺瑕璇枭柙枵栩楦榭榍樨昕暄曛曦觋氙欷歆炫煊燹煦熹祆禊禧" +
+            "泶硎硖碹盱铉镟皙鸺鹇痃痫穸胥蚬蜥螅蟋蟓罅筅筱箫舄舾羲籼粞糈翕酰醑醯醺踅跣跹蹊躞貅" +
+            "霰鑫鲞鲟鳕魈飨髹黠鼷",
+            // y
+            "禺夭爻胤毓厣靥赝卣刈剡劓伛伢攸佚侑佾俨俣俑偃龠兖嬴讠诒谀谒谕谳邺郓郢郾鄢鄞廴壅圯" +
+            "垭垠埸堙塬墉懿芫芸苡茚茔荥莠莜莸莺萸菸菀萦蓥蓣薏弈奕挹揶揠揄掾撄弋吆呓吲呦咦咿唷" +
+            "喁喑嘤噫囿圄圉圜岈峄崦崤崾嵛嶷徉徭狁狳狺猗夤饫饴馀庾膺怏怿怡恹恽悒愠慵闫阈阏沅泱" +
+            "洇湮滟滢潆漪瀛瀹宥迓迤鬻妍妪妤娅媛嫣驿纡纭缢幺邕琊珧瑛琰瑜瑗璎韫杳柚桠楹樾橼檐猷" +
+            "殒殪轶轺昀昱晔晏曜贻觎氩氤氲牖爰刖肴胭腴媵欤欹旖炀烨烊焱煜熨熠燠恙肀聿砑眢眙睚罨" +
+            "钇钰钺铕铘铟铫镒镛镱甬鸢鹆鹞鹦鹬疣痖痍瘐瘀瘗瘿瘾癔翊窈窬窨窳衤颍蚓蚰蚴蛘蜮蜴蝓蝣" +
+            "蝤螈罂竽筵筠箢臾舁舣羿翳酏酽雩霪龈龉鼋鱿鳐鳙鞅魇餍饔黝黟鼬鼹鼽",
+            // z
+            "卮丶仄赜仉伫侏倬偬俎冢诏诤诹诼谘谪谵阼陟陬郅邾鄣鄹圳埴芷苎茈茱荮菹蓁蕞奘拶揸搌摭" +
+            "摺撙擢攥吒咂咤哳唣唑啧啭啁嘬帙帻幛峥崽嵫嶂徵獐夂馔忮忪怍惴浈洙浞渚涿溱潴濯迮彘咫" +
+            "姊妯嫜孳驵驺骓骘骣纣绉缁缒缜缯缵甾璋瓒枞杼栉柘枳栀桎桢梓棹楂榛槠橥樽轵轸轾辄辎臧" +
+            "甑昃昝贽赀赈肫胄胙胗胝朕腙膣旃炷焯祉祚祗祯禚恣斫砟砦碡磔黹眦畛罾钊钲铢铮锃锱镞镯" +
+            "锺雉秭稹鸩鸷鹧痄疰痣瘃瘵窀褶耔颛蚱蛭蜇螽蟑竺笊笫笮筝箦箸箴簪籀舯舳舴粢粽糌翥絷繇" +
+            "趑趱赭酎酢酯跖踬踯踵躅躜豸觜觯訾龇隹錾鲰鲻鳟髭麈齄"
+    };
+
+    // 二级汉字首字母, 下标为(区号-56)*94+(位号-1)
+    private static final char[] LEVEL2_INITIALS = new char[(LEVEL2_END / 100 - LEVEL2_START / 100 + 1) * 94];
+
+    /**
+     * <p>
+     *     地名多音字读音: 整词匹配时替换逐字结果.
+     * </p>
+     */
+    static final Map<String, String> OVERRIDES = Map.ofEntries(
+            Map.entry("重庆", "cq"),
+            Map.entry("厦门", "xm"),
+            Map.entry("六安", "la"),
+            Map.entry("六合", "lh"),
+            Map.entry("蚌埠", "bb"),
+            Map.entry("番禺", "py"),
+            Map.entry("蔚县", "yx"),
+            Map.entry("铅山", "ys"),
+            Map.entry("东阿", "de"),
+            Map.entry("费县", "bx"),
+            Map.entry("单县", "sx"),
+            Map.entry("乐清", "yq"),
+            Map.entry("洪洞", "ht"),
+            Map.entry("涡阳", "gy")
+    );
+
+    static {
+        for (int i = 0; i < LEVEL2_CHARS.length; i++) {
+            String chars = LEVEL2_CHARS[i];
+            for (int j = 0; j < chars.length(); j++) {
+                LEVEL2_INITIALS[level2Index(regionCode(chars.charAt(j)))] = LETTERS.charAt(i);
+            }
+        }
+    }
+
+    private PinyinInitials() {
+    }
+
+    public static String of(String text) {
+        char[] initials = new char[text.length()];
+        for (int i = 0; i < initials.length; i++) {
+            initials[i] = of(text.charAt(i));
+        }
+        if (text.length() >= 2) {
+            for (Map.Entry<String, String> override : OVERRIDES.entrySet()) {
+                String word = override.getKey();
+                for (int from = text.indexOf(word); from >= 0; from = text.indexOf(word, from + word.length())) {
+                    override.getValue().getChars(0, word.length(), initials, from);
+                }
+            }
+        }
+        return new String(initials);
+    }
+
+    public static char of(char c) {
+        if (c < 0x80) {
+            return Character.isLetterOrDigit(c) ? Character.toLowerCase(c) : UNKNOWN;
+        }
+        int code = regionCode(c);
+        if (code >= LEVEL2_START && code <= LEVEL2_END) {
+            char initial = LEVEL2_INITIALS[level2Index(code)];
+            return initial != 0 ? initial : UNKNOWN;
+        }
+        for (int i = LETTERS.length() - 1; i >= 0; i--) {
+            if (code >= BOUNDARIES[i]) {
+                return code < BOUNDARIES[BOUNDARIES.length - 1] ? LETTERS.charAt(i) : UNKNOWN;
+            }
+        }
+        return UNKNOWN;
+    }
+
+    // GB2312区位码(区号*100+位号), 无法编码返回-1
+    private static int regionCode(char c) {
+        byte[] bytes = String.valueOf(c).getBytes(GB2312);
+        if (bytes.length != 2) {
+            return -1;
+        }
+        return ((bytes[0] & 0xff) - 160) * 100 + ((bytes[1] & 0xff) - 160);
+    }
+
+    private static int level2Index(int code) {
+        return (code / 100 - LEVEL2_START / 100) * 94 + code % 100 - 1;
+    }
+
+    /**
+     * <p>
+     *     是否为拼音首字母查询(全部为ASCII字母).
+     * </p>
+     */
+    public static boolean isInitialsQuery(String query) {
+        if (query.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < query.length(); i++) {
+            char c = query.charAt(i);
+            if (!(c >= 'a' && c <= 'z') && !(c >= 'A' && c <= 'Z')) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,530 @@
+package com.brewingmachine.area;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * <h2>地区搜索索引</h2>
+ *
+ * <p>
+ *     基于{@link AreaDictionary}构建的只读索引, 支持名称前缀/包含查询和拼音首字母前缀/包含查询,
+ *     可按层级和上级地区(子树)过滤, 返回排序最靠前的limit个地区(先按层级, 同层按编码).
+ * </p>
+ * <p>
+ *     去重后的名称依次拼接成一个字符数组(以'\0'分隔), 对全部后缀排序得到后缀数组; 后缀数组相当于压缩后的后缀字典树,
+ *     查询串对应其中一段连续区间, 二分即可定位; 前缀查询使用只含名称起始位置的后缀子集.
+ *     拼音首字母串与名称逐字符对齐, 共用同一套名称编号. 全部为基本类型数组, 构建后不可变, 可多线程共享.
+ * </p>
+ * <p>
+ *     后缀数组每64个后缀为一块, 以线段树记录各块内名称的最靠前排名, 不限层级和每个层级各一棵.
+ *     查询按块在所查层级的最靠前排名从小到大展开, 已取满limit个且剩余块都不会更靠前时停止,
+ *     短查询串(如单个字母)不必扫描整个匹配区间, 按层级过滤时下界同样有效.
+ * </p>
+ * <p>
+ *     同层地区的排名按编码排列, 子树在每一层都是一段连续的排名区间. 限定上级地区且子树比匹配区间小时,
+ *     按排名逐个检查子树内的地区, 取满limit个即停止; 否则在匹配区间上按上述方式查找.
+ * </p>
+ *
+ * @since 1.0
+ */
+public final class RegionSearchIndex {
+
+    private static final char TERMINATOR = '\0';
+
+    // 各层级编码的有效位数: 省2位, 市4位, 县6位, 乡镇9位, 村12位
+    private static final long[] SUBTREE_SPAN = {0, 10_000_000_000L, 100_000_000L, 1_000_000L, 1_000L, 1L};
+
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+
+    private static final int BLOCK_SHIFT = 6;
+
+    private final AreaDictionary dictionary;
+
+    // 行号 -> 排名, 排名 -> 行号
+    private final int[] rankOfRow;
+    private final int[] rowOfRank;
+
+    // 层级 -> 该层第一个排名, 下标为层级值, levelStart[level + 1]为该层结束
+    private final int[] levelStart;
+
+    // 行号 -> 名称编号
+    private final int[] nameOfRow;
+
+    private final char[] nameText;
+    private final char[] initialsText;
+    private final int[] nameStart;
+
+    // 后缀数组及每个后缀所属的名称编号; 前缀查询使用只含名称起始位置的子集
+    private final Suffixes nameSuffixes;
+    private final Suffixes namePrefixes;
+    private final Suffixes initialsSuffixes;
+    private final Suffixes initialsPrefixes;
+
+    // 名称编号 -> 同名地区(按排名)
+    private final int[] nameRowStart;
+    private final int[] nameRows;
+
+    private RegionSearchIndex(AreaDictionary dictionary, int[] rankOfRow, int[] rowOfRank, int[] levelStart,
+                              int[] nameOfRow, char[] nameText, char[] initialsText, int[] nameStart,
+                              int[] nameRowStart, int[] nameRows) {
+        this.dictionary = dictionary;
+        this.rankOfRow = rankOfRow;
+        this.rowOfRank = rowOfRank;
+        this.levelStart = levelStart;
+        this.nameOfRow = nameOfRow;
+        this.nameText = nameText;
+        this.initialsText = initialsText;
+        this.nameStart = nameStart;
+        this.nameRowStart = nameRowStart;
+        this.nameRows = nameRows;
+        // 层级(0为不限) -> 名称编号 -> 同名地区在该层的最靠前排名, 没有为Integer.MAX_VALUE
+        int nameCount = nameRowStart.length - 1;
+        int[][] nameBest = new int[AreaLevel.values().length + 1][nameCount];
+        for (int[] best : nameBest) {
+            Arrays.fill(best, Integer.MAX_VALUE);
+        }
+        for (int nameId = 0; nameId < nameCount; nameId++) {
+            nameBest[0][nameId] = rankOfRow[nameRows[nameRowStart[nameId]]];
+            for (int j = nameRowStart[nameId]; j < nameRowStart[nameId + 1]; j++) {
+                int level = dictionary.level(nameRows[j]);
+                if (nameBest[level][nameId] == Integer.MAX_VALUE) {
+                    nameBest[level][nameId] = rankOfRow[nameRows[j]];
+                }
+            }
+        }
+        this.nameSuffixes = buildSuffixes(nameText, nameStart, nameBest);
+        this.namePrefixes = nameSuffixes.startsOnly(nameStart, nameBest);
+        this.initialsSuffixes = buildSuffixes(initialsText, nameStart, nameBest);
+        this.initialsPrefixes = initialsSuffixes.startsOnly(nameStart, nameBest);
+    }
+
+    /**
+     * <p>
+     *     从地区字典构建索引.
+     * </p>
+     */
+    public static RegionSearchIndex build(AreaDictionary dictionary) {
+        int count = dictionary.size();
+
+        // 排名: 先按层级, 同层按编码(行号即编码顺序)
+        int[] levelStart = new int[AreaLevel.values().length + 2];
+        for (int row = 0; row < count; row++) {
+            levelStart[dictionary.level(row) + 1]++;
+        }
+        for (int i = 1; i < levelStart.length; i++) {
+            levelStart[i] += levelStart[i - 1];
+        }
+        int[] levelRankStart = Arrays.copyOf(levelStart, levelStart.length);
+        int[] rankOfRow = new int[count];
+        int[] rowOfRank = new int[count];
+        for (int row = 0; row < count; row++) {
+            int rank = levelStart[dictionary.level(row)]++;
+            rankOfRow[row] = rank;
+            rowOfRank[rank] = row;
+        }
+
+        // 名称去重编号
+        Map<String, Integer> nameIds = new HashMap<>();
+        int[] nameOfRow = new int[count];
+        StringBuilder names = new StringBuilder(count * 8);
+        int[] starts = new int[16];
+        for (int row = 0; row < count; row++) {
+            String name = dictionary.name(row);
+            Integer nameId = nameIds.get(name);
+            if (nameId == null) {
+                nameId = nameIds.size();
+                nameIds.put(name, nameId);
+                if (nameId + 1 >= starts.length) {
+                    starts = Arrays.copyOf(starts, starts.length * 2);
+                }
+                starts[nameId] = names.length();
+                names.append(name).append(TERMINATOR);
+            }
+            nameOfRow[row] = nameId;
+        }
+        int nameCount = nameIds.size();
+        starts[nameCount] = names.length();
+        int[] nameStart = Arrays.copyOf(starts, nameCount + 1);
+
+        char[] nameText = new char[names.length()];
+        names.getChars(0, names.length(), nameText, 0);
+        // 按整个名称取首字母, 地名多音字按整词读音
+        char[] initialsText = new char[nameText.length];
+        for (int nameId = 0; nameId < nameCount; nameId++) {
+            int start = nameStart[nameId];
+            int length = nameStart[nameId + 1] - 1 - start;
+            PinyinInitials.of(new String(nameText, start, length)).getChars(0, length, initialsText, start);
+            initialsText[start + length] = TERMINATOR;
+        }
+
+        int[] nameRowStart = new int[nameCount + 1];
+        for (int row = 0; row < count; row++) {
+            nameRowStart[nameOfRow[row] + 1]++;
+        }
+        for (int i = 1; i <= nameCount; i++) {
+            nameRowStart[i] += nameRowStart[i - 1];
+        }
+        int[] fill = Arrays.copyOf(nameRowStart, nameCount);
+        int[] nameRows = new int[count];
+        for (int rank = 0; rank < count; rank++) {
+            int row = rowOfRank[rank];
+            nameRows[fill[nameOfRow[row]]++] = row;
+        }
+
+        return new RegionSearchIndex(dictionary, rankOfRow, rowOfRank, levelRankStart, nameOfRow, nameText,
+                initialsText, nameStart, nameRowStart, nameRows);
+    }
+
+    public AreaDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * <p>
+     *     查询地区, 返回行号(按排名). 全部为字母的查询串按拼音首字母匹配.
+     * </p>
+     *
+     * @param query      查询串
+     * @param prefixOnly true为前缀匹配, false为包含匹配
+     * @param level      层级, null为不限
+     * @param withinRow  上级地区行号, -1为不限
+     * @param limit      最多返回条数
+     */
+    public int[] search(String query, boolean prefixOnly, AreaLevel level, int withinRow, int limit) {
+        if (query.isEmpty() || limit <= 0) {
+            return new int[0];
+        }
+        boolean initials = PinyinInitials.isInitialsQuery(query);
+        char[] text = initials ? initialsText : nameText;
+        Suffixes suffixes = initials
+                ? (prefixOnly ? initialsPrefixes : initialsSuffixes)
+                : (prefixOnly ? namePrefixes : nameSuffixes);
+        char[] pattern = (initials ? query.toLowerCase() : query).toCharArray();
+
+        long lo = 0;
+        long hi = Long.MAX_VALUE;
+        if (withinRow >= 0) {
+            lo = dictionary.code12(withinRow);
+            hi = lo + SUBTREE_SPAN[dictionary.level(withinRow)];
+        }
+        int levelValue = level != null ? level.getValue() : 0;
+
+        int from = lowerBound(text, suffixes.positions, pattern, false);
+        int to = lowerBound(text, suffixes.positions, pattern, true);
+        if (from < to && withinRow >= 0 && subtreeSize(withinRow, levelValue, lo, hi) <= to - from) {
+            return searchSubtree(text, pattern, prefixOnly, withinRow, levelValue, lo, hi, limit);
+        }
+
+        int[] top = new int[limit];
+        int size = 0;
+        if (from < to) {
+            // 覆盖[from, to)的线段树节点, 按节点内最靠前排名出队
+            PriorityQueue<Long> queue = new PriorityQueue<>();
+            int left = suffixes.leaves + (from >>> BLOCK_SHIFT);
+            int right = suffixes.leaves + ((to - 1) >>> BLOCK_SHIFT) + 1;
+            for (; left < right; left >>>= 1, right >>>= 1) {
+                if ((left & 1) == 1) {
+                    suffixes.offer(queue, left++, levelValue);
+                }
+                if ((right & 1) == 1) {
+                    suffixes.offer(queue, --right, levelValue);
+                }
+            }
+
+            while (!queue.isEmpty()) {
+                long head = queue.poll();
+                int node = (int) head;
+                // 剩余节点的地区都不比当前第limit名靠前
+                if (size == limit && (int) (head >>> 32) >= top[size - 1]) {
+                    break;
+                }
+                if (node < suffixes.leaves) {
+                    suffixes.offer(queue, node * 2, levelValue);
+                    suffixes.offer(queue, node * 2 + 1, levelValue);
+                    continue;
+                }
+                int block = node - suffixes.leaves;
+                int end = Math.min(to, (block + 1) << BLOCK_SHIFT);
+                for (int i = Math.max(from, block << BLOCK_SHIFT); i < end; i++) {
+                    int nameId = suffixes.names[i];
+                    for (int j = nameRowStart[nameId]; j < nameRowStart[nameId + 1]; j++) {
+                        int row = nameRows[j];
+                        int rank = rankOfRow[row];
+                        // 同名地区已按排名排列, 后面的不会更靠前
+                        if (size == limit && rank >= top[size - 1]) {
+                            break;
+                        }
+                        if (levelValue != 0 && dictionary.level(row) != levelValue) {
+                            continue;
+                        }
+                        if (withinRow >= 0) {
+                            long code = dictionary.code12(row);
+                            if (row == withinRow || code < lo || code >= hi) {
+                                continue;
+                            }
+                        }
+                        size = insert(top, size, rank);
+                    }
+                }
+            }
+        }
+
+        int[] rows = new int[size];
+        for (int i = 0; i < size; i++) {
+            rows[i] = rowOfRank[top[i]];
+        }
+        return rows;
+    }
+
+    // 子树在所查层级内的地区数, 不含上级地区自身
+    private int subtreeSize(int withinRow, int levelValue, long lo, long hi) {
+        int size = 0;
+        for (int level = dictionary.level(withinRow) + 1; level <= AreaLevel.values().length; level++) {
+            if (levelValue == 0 || level == levelValue) {
+                size += rankOf(level, hi) - rankOf(level, lo);
+            }
+        }
+        return size;
+    }
+
+    // 按排名(先层级后编码)逐个检查子树内的地区, 前limit个匹配的即为结果
+    private int[] searchSubtree(char[] text, char[] pattern, boolean prefixOnly, int withinRow, int levelValue,
+                                long lo, long hi, int limit) {
+        int[] rows = new int[limit];
+        int size = 0;
+        for (int level = dictionary.level(withinRow) + 1; level <= AreaLevel.values().length && size < limit; level++) {
+            if (levelValue != 0 && level != levelValue) {
+                continue;
+            }
+            int end = rankOf(level, hi);
+            for (int rank = rankOf(level, lo); rank < end && size < limit; rank++) {
+                int row = rowOfRank[rank];
+                if (matches(text, nameOfRow[row], pattern, prefixOnly)) {
+                    rows[size++] = row;
+                }
+            }
+        }
+        return Arrays.copyOf(rows, size);
+    }
+
+    // 该层第一个编码不小于code的地区排名
+    private int rankOf(int level, long code) {
+        int lo = levelStart[level];
+        int hi = levelStart[level + 1];
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (dictionary.code12(rowOfRank[mid]) < code) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private boolean matches(char[] text, int nameId, char[] pattern, boolean prefixOnly) {
+        int start = nameStart[nameId];
+        if (prefixOnly) {
+            return comparePrefix(text, start, pattern) == 0;
+        }
+        int last = nameStart[nameId + 1] - 1 - pattern.length;
+        for (int position = start; position <= last; position++) {
+            if (comparePrefix(text, position, pattern) == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // 按排名升序插入, 已存在则忽略, 满时挤掉最后一个
+    private static int insert(int[] top, int size, int rank) {
+        int index = Arrays.binarySearch(top, 0, size, rank);
+        if (index >= 0) {
+            return size;
+        }
+        index = -index - 1;
+        if (index >= top.length) {
+            return size;
+        }
+        int moved = Math.min(size, top.length - 1) - index;
+        if (moved > 0) {
+            System.arraycopy(top, index, top, index + 1, moved);
+        }
+        top[index] = rank;
+        return Math.min(size + 1, top.length);
+    }
+
+    private static int nameOf(int[] nameStart, int position) {
+        int index = Arrays.binarySearch(nameStart, position);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    // upper为false时返回第一个不小于pattern的后缀, 为true时返回第一个前缀大于pattern的后缀
+    private static int lowerBound(char[] text, int[] suffixes, char[] pattern, boolean upper) {
+        int lo = 0;
+        int hi = suffixes.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = comparePrefix(text, suffixes[mid], pattern);
+            if (cmp < 0 || (upper && cmp == 0)) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private static int comparePrefix(char[] text, int position, char[] pattern) {
+        for (int i = 0; i < pattern.length; i++) {
+            char c = text[position + i];
+            if (c == TERMINATOR) {
+                return -1;
+            }
+            if (c != pattern[i]) {
+                return c - pattern[i];
+            }
+        }
+        return 0;
+    }
+
+    private static Suffixes buildSuffixes(char[] text, int[] nameStart, int[][] nameBest) {
+        int count = 0;
+        for (char c : text) {
+            if (c != TERMINATOR) {
+                count++;
+            }
+        }
+        int[] suffixes = new int[count];
+        int n = 0;
+        for (int i = 0; i < text.length; i++) {
+            if (text[i] != TERMINATOR) {
+                suffixes[n++] = i;
+            }
+        }
+        sort(suffixes, text, 0, count, 0);
+
+        int[] names = new int[count];
+        for (int i = 0; i < count; i++) {
+            names[i] = nameOf(nameStart, suffixes[i]);
+        }
+        return new Suffixes(suffixes, names, nameBest);
+    }
+
+    // 三路基数快速排序(multikey quicksort), 比较到'\0'为止
+    private static void sort(int[] a, char[] text, int lo, int hi, int depth) {
+        while (hi - lo > 1) {
+            if (hi - lo < INSERTION_SORT_THRESHOLD) {
+                insertionSort(a, text, lo, hi, depth);
+                return;
+            }
+            char pivot = text[a[(lo + hi) >>> 1] + depth];
+            int lt = lo;
+            int gt = hi - 1;
+            int i = lo;
+            while (i <= gt) {
+                char c = text[a[i] + depth];
+                if (c < pivot) {
+                    swap(a, lt++, i++);
+                } else if (c > pivot) {
+                    swap(a, i, gt--);
+                } else {
+                    i++;
+                }
+            }
+            sort(a, text, lo, lt, depth);
+            sort(a, text, gt + 1, hi, depth);
+            if (pivot == TERMINATOR) {
+                return;
+            }
+            lo = lt;
+            hi = gt + 1;
+            depth++;
+        }
+    }
+
+    private static void insertionSort(int[] a, char[] text, int lo, int hi, int depth) {
+        for (int i = lo + 1; i < hi; i++) {
+            for (int j = i; j > lo && compareSuffix(text, a[j], a[j - 1], depth) < 0; j--) {
+                swap(a, j, j - 1);
+            }
+        }
+    }
+
+    private static int compareSuffix(char[] text, int a, int b, int depth) {
+        for (int i = depth; ; i++) {
+            char x = text[a + i];
+            char y = text[b + i];
+            if (x != y) {
+                return x - y;
+            }
+            if (x == TERMINATOR) {
+                return 0;
+            }
+        }
+    }
+
+    private static void swap(int[] a, int i, int j) {
+        int t = a[i];
+        a[i] = a[j];
+        a[j] = t;
+    }
+
+    private static final class Suffixes {
+        private final int[] positions;
+        private final int[] names;
+
+        // 块最靠前排名的线段树, 按层级(0为不限)各一棵, 叶子为块(下标leaves起), 空块为Integer.MAX_VALUE
+        private final int leaves;
+        private final int[][] blockMin;
+
+        private Suffixes(int[] positions, int[] names, int[][] nameBest) {
+            this.positions = positions;
+            this.names = names;
+            int blocks = (positions.length + (1 << BLOCK_SHIFT) - 1) >>> BLOCK_SHIFT;
+            int leafCount = 1;
+            while (leafCount < blocks) {
+                leafCount <<= 1;
+            }
+            this.leaves = leafCount;
+            this.blockMin = new int[nameBest.length][];
+            for (int level = 0; level < nameBest.length; level++) {
+                int[] tree = new int[leafCount * 2];
+                Arrays.fill(tree, Integer.MAX_VALUE);
+                for (int i = 0; i < names.length; i++) {
+                    int leaf = leafCount + (i >>> BLOCK_SHIFT);
+                    tree[leaf] = Math.min(tree[leaf], nameBest[level][names[i]]);
+                }
+                for (int node = leafCount - 1; node >= 1; node--) {
+                    tree[node] = Math.min(tree[node * 2], tree[node * 2 + 1]);
+                }
+                blockMin[level] = tree;
+            }
+        }
+
+        // 高32位为节点内该层级最靠前排名, 低32位为节点下标
+        private void offer(PriorityQueue<Long> queue, int node, int level) {
+            int min = blockMin[level][node];
+            if (min != Integer.MAX_VALUE) {
+                queue.add((long) min << 32 | node);
+            }
+        }
+
+        // 保持原顺序, 只保留名称起始位置
+        private Suffixes startsOnly(int[] nameStart, int[][] nameBest) {
+            int count = nameStart.length - 1;
+            int[] starts = new int[count];
+            int[] startNames = new int[count];
+            int n = 0;
+            for (int i = 0; i < positions.length; i++) {
+                if (positions[i] == nameStart[names[i]]) {
+                    starts[n] = positions[i];
+                    startNames[n++] = names[i];
+                }
+            }
+            return new Suffixes(Arrays.copyOf(starts, n), Arrays.copyOf(startNames, n), nameBest);
+        }
+    }
+}
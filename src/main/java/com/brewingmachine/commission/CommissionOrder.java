@@ -0,0 +1,41 @@
+package com.brewingmachine.commission;
+
+/**
+ * <h2>待分账订单</h2>
+ *
+ * <p>
+ *     金额为折扣后的实付金额(分). 范围类型为machine(设备)或store(门店), 与分成链配置对应.
+ * </p>
+ *
+ * @since 1.0
+ */
+public final class CommissionOrder {
+
+    private final String orderId;
+    private final String scopeType;
+    private final String scopeId;
+    private final long amount;
+
+    public CommissionOrder(String orderId, String scopeType, String scopeId, long amount) {
+        this.orderId = orderId;
+        this.scopeType = scopeType;
+        this.scopeId = scopeId;
+        this.amount = amount;
+    }
+
+    public String getOrderId() {
+        return orderId;
+    }
+
+    public String getScopeType() {
+        return scopeType;
+    }
+
+    public String getScopeId() {
+        return scopeId;
+    }
+
+    public long getAmount() {
+        return amount;
+    }
+}
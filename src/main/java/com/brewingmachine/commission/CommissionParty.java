@@ -0,0 +1,91 @@
+package com.brewingmachine.commission;
+
+/**
+ * <h2>分成方</h2>
+ *
+ * <p>
+ *     分成链中每一级的身份. {@link #AGENT}和{@link #AGENT_CHAIN}只用于配置,
+ *     编译分成计划时按user.agent_level换算为省/市/区/社区代理.
+ * </p>
+ *
+ * @since 1.0
+ */
+public enum CommissionParty {
+    OWNER("owner", "机主"),
+    SUPPLIER("supplier", "供应商"),
+    PROMOTER("promoter", "推广员"),
+    SALESPERSON("salesperson", "业务员"),
+    OPERATOR("operator", "运营方"),
+    PROVINCE_AGENT("province_agent", "省代"),
+    CITY_AGENT("city_agent", "市代"),
+    DISTRICT_AGENT("district_agent", "区代"),
+    COMMUNITY_AGENT("community_agent", "社区代"),
+
+    /**
+     * <p>
+     *     单个代理商, 级别取自user.agent_level.
+     * </p>
+     */
+    AGENT("agent", "代理商"),
+
+    /**
+     * <p>
+     *     代理商及其全部上级代理商, 编译时从最上级到该代理商依次展开, 每级取自己的user.commission_rate.
+     * </p>
+     */
+    AGENT_CHAIN("agent_chain", "代理链");
+
+    private final String code;
+
+    private final String description;
+
+    CommissionParty(String code, String description) {
+        this.code = code;
+        this.description = description;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * <p>
+     *     按标识查找, 不存在返回null.
+     * </p>
+     */
+    public static CommissionParty of(String code) {
+        for (CommissionParty party : values()) {
+            if (party.code.equals(code)) {
+                return party;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * <p>
+     *     按代理级别(PROVINCE/CITY/DISTRICT/COMMUNITY)换算, 未设置或无法识别时为{@link #AGENT}.
+     * </p>
+     */
+    public static CommissionParty ofAgentLevel(String agentLevel) {
+        if (agentLevel == null) {
+            return AGENT;
+        }
+        switch (agentLevel.toUpperCase()) {
+            case "PROVINCE":
+                return PROVINCE_AGENT;
+            case "CITY":
+                return CITY_AGENT;
+            case "DISTRICT":
+                return DISTRICT_AGENT;
+            case "COMMUNITY":
+                return COMMUNITY_AGENT;
+            default:
+                return AGENT;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.brewingmachine.commission;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <h2>分账结果</h2>
+ *
+ * <p>
+ *     一笔订单按分成计划分得的金额, shares与计划各级顺序一致; 计划缺失或订单不合法时只有错误信息.
+ * </p>
+ *
+ * @since 1.0
+ */
+public final class CommissionSplit {
+
+    private final CommissionOrder order;
+    private final SplitPlan plan;
+    private final long[] shares;
+    private final String error;
+
+    private CommissionSplit(CommissionOrder order, SplitPlan plan, long[] shares, String error) {
+        this.order = order;
+        this.plan = plan;
+        this.shares = shares;
+        this.error = error;
+    }
+
+    public static CommissionSplit of(CommissionOrder order, SplitPlan plan) {
+        return new CommissionSplit(order, plan, plan.split(order.getAmount()), null);
+    }
+
+    public static CommissionSplit failed(CommissionOrder order, String error) {
+        return new CommissionSplit(order, null, null, error);
+    }
+
+    public CommissionOrder getOrder() {
+        return order;
+    }
+
+    public SplitPlan getPlan() {
+        return plan;
+    }
+
+    public boolean isSuccess() {
+        return error == null;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public long getShare(int index) {
+        return shares[index];
+    }
+
+    /**
+     * <p>
+     *     接口返回用的结构: 订单号, 实付金额, 各级的用户ID, 分成方和分得金额(分).
+     * </p>
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("orderId", order.getOrderId());
+        result.put("amount", order.getAmount());
+        if (error != null) {
+            result.put("error", error);
+            return result;
+        }
+        List<Map<String, Object>> items = new ArrayList<>(shares.length);
+        for (int i = 0; i < shares.length; i++) {
+            Map<String, Object> item = new HashMap<>();
+            item.put("userId", plan.getUserId(i));
+            item.put("party", plan.getParty(i).getCode());
+            item.put("amount", shares[i]);
+            items.add(item);
+        }
+        result.put("shares", items);
+        return result;
+    }
+}
@@ -0,0 +1,138 @@
+package com.brewingmachine.commission;
+
+/**
+ * <h2>long到long的哈希表</h2>
+ *
+ * <p>
+ *     开放寻址(线性探测), 键值都存放在long数组中, 不装箱. 用于结算时按用户ID累加金额和保存上级关系,
+ *     百万级用户只占几十MB. 键必须为正数(用户ID), 0表示空槽; 不支持删除; 非线程安全.
+ * </p>
+ *
+ * @since 1.0
+ */
+public final class LongLongMap {
+
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] keys;
+    private long[] values;
+    private int size;
+    private int mask;
+
+    public LongLongMap() {
+        this(MIN_CAPACITY);
+    }
+
+    public LongLongMap(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        keys = new long[capacity];
+        values = new long[capacity];
+        mask = capacity - 1;
+    }
+
+    public long get(long key, long defaultValue) {
+        int slot = slot(key);
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return defaultValue;
+    }
+
+    public boolean containsKey(long key) {
+        int slot = slot(key);
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    public void put(long key, long value) {
+        // 先插入再取数组：插入可能扩容并替换values
+        int slot = insert(key);
+        values[slot] = value;
+    }
+
+    /**
+     * <p>
+     *     累加, 键不存在时按0累加.
+     * </p>
+     */
+    public void addTo(long key, long delta) {
+        int slot = insert(key);
+        values[slot] += delta;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void forEach(Visitor visitor) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0) {
+                visitor.visit(keys[i], values[i]);
+            }
+        }
+    }
+
+    private int insert(long key) {
+        if (key <= 0) {
+            throw new IllegalArgumentException("键必须为正数: " + key);
+        }
+        int slot = slot(key);
+        while (keys[slot] != 0) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if ((size + 1) * 2 > keys.length) {
+            grow();
+            return insert(key);
+        }
+        keys[slot] = key;
+        size++;
+        return slot;
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        keys = new long[oldKeys.length << 1];
+        values = new long[oldValues.length << 1];
+        mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            long key = oldKeys[i];
+            if (key != 0) {
+                int slot = slot(key);
+                while (keys[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = key;
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private int slot(long key) {
+        // 用户ID连续分布, 打散后再取低位
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    /**
+     * <h2>遍历回调</h2>
+     */
+    @FunctionalInterface
+    public interface Visitor {
+        void visit(long key, long value);
+    }
+}
@@ -0,0 +1,163 @@
+package com.brewingmachine.commission;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <h2>分成计划</h2>
+ *
+ * <p>
+ *     一台设备或一个门店的分成链编译后的扁平结构: 按顺序排列的收款用户, 分成比例(万分比)和计算基数,
+ *     全部存放在基本类型数组中, 对一笔订单分账只做一次线性扫描的整数运算.
+ * </p>
+ *
+ * <p>
+ *     分账规则: 剩余金额初始为订单实付金额(折后, 分), 除最后一级外每级分得
+ *     基数 × 比例 / 10000(向下取整), 基数为实付金额或当前剩余金额, 分得金额不超过剩余金额;
+ *     最后一级分得全部剩余金额, 舍去的零头都归最后一级, 各级之和恒等于实付金额.
+ * </p>
+ *
+ * @since 1.0
+ */
+public final class SplitPlan {
+
+    /**
+     * <p>
+     *     比例的分母: 1%为100.
+     * </p>
+     */
+    public static final int RATE_SCALE = 10000;
+
+    private final String scope;
+    private final long[] userIds;
+    private final CommissionParty[] parties;
+    private final int[] rates;
+    private final boolean[] ofTotal;
+    private final long compiledAt;
+
+    /**
+     * @param scope 适用范围, 如machine:M001
+     * @param steps 分成顺序排列的各级, 至少一级
+     */
+    public SplitPlan(String scope, List<Step> steps) {
+        if (steps.isEmpty()) {
+            throw new IllegalArgumentException("分成计划至少需要一级");
+        }
+        int n = steps.size();
+        this.scope = scope;
+        this.userIds = new long[n];
+        this.parties = new CommissionParty[n];
+        this.rates = new int[n];
+        this.ofTotal = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            Step step = steps.get(i);
+            userIds[i] = step.userId;
+            parties[i] = step.party;
+            rates[i] = step.rate;
+            ofTotal[i] = step.ofTotal;
+        }
+        this.compiledAt = System.currentTimeMillis();
+    }
+
+    /**
+     * <p>
+     *     对一笔订单分账, 返回各级分得金额(分, 与{@link #getUserIds()}顺序一致).
+     * </p>
+     *
+     * @param amount 订单实付金额(折后, 分), 不能为负
+     */
+    public long[] split(long amount) {
+        if (amount < 0) {
+            throw new IllegalArgumentException("分账金额不能为负: " + amount);
+        }
+        int last = userIds.length - 1;
+        long[] shares = new long[userIds.length];
+        long remaining = amount;
+        for (int i = 0; i < last; i++) {
+            long base = ofTotal[i] ? amount : remaining;
+            long share = Math.min(base * rates[i] / RATE_SCALE, remaining);
+            shares[i] = share;
+            remaining -= share;
+        }
+        shares[last] = remaining;
+        return shares;
+    }
+
+    public String getScope() {
+        return scope;
+    }
+
+    public int size() {
+        return userIds.length;
+    }
+
+    public long[] getUserIds() {
+        return userIds.clone();
+    }
+
+    public long getUserId(int index) {
+        return userIds[index];
+    }
+
+    public CommissionParty getParty(int index) {
+        return parties[index];
+    }
+
+    public long getCompiledAt() {
+        return compiledAt;
+    }
+
+    /**
+     * <p>
+     *     各级的可读描述, 用于查看和核对计划.
+     * </p>
+     */
+    public List<Step> getSteps() {
+        List<Step> steps = new ArrayList<>(userIds.length);
+        for (int i = 0; i < userIds.length; i++) {
+            steps.add(new Step(userIds[i], parties[i], rates[i], ofTotal[i]));
+        }
+        return Collections.unmodifiableList(steps);
+    }
+
+    /**
+     * <h2>分成计划中的一级</h2>
+     */
+    public static final class Step {
+        private final long userId;
+        private final CommissionParty party;
+        private final int rate;
+        private final boolean ofTotal;
+
+        /**
+         * @param rate    分成比例(万分比), 最后一级忽略
+         * @param ofTotal true按实付金额计算, false按剩余金额计算
+         */
+        public Step(long userId, CommissionParty party, int rate, boolean ofTotal) {
+            if (rate < 0 || rate > RATE_SCALE) {
+                throw new IllegalArgumentException("分成比例超出范围: " + rate);
+            }
+            this.userId = userId;
+            this.party = party;
+            this.rate = rate;
+            this.ofTotal = ofTotal;
+        }
+
+        public long getUserId() {
+            return userId;
+        }
+
+        public CommissionParty getParty() {
+            return party;
+        }
+
+        public int getRate() {
+            return rate;
+        }
+
+        public boolean isOfTotal() {
+            return ofTotal;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.brewingmachine.config;
+
+import com.brewingmachine.dto.Result;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.stereotype.Component;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 统一JSON编解码
+ * 复用Spring MVC配置好的ObjectMapper（与接口返回值同一套配置），预先构建好线程安全的读写器；
+ * 过滤器/拦截器返回的错误Result按状态码和消息缓存编码后的UTF-8字节，直接写入响应流
+ */
+@Component
+public class JsonCodec {
+
+    private static final String CONTENT_TYPE = "application/json;charset=UTF-8";
+
+    // 错误消息是固定文案，数量有限；超出上限时整体清空
+    private static final int MAX_CACHED_ERRORS = 256;
+
+    private final ObjectWriter writer;
+    private final ObjectReader mapReader;
+    private final ObjectMapper objectMapper;
+
+    private final Map<String, byte[]> errorBodies = new ConcurrentHashMap<>();
+
+    public JsonCodec(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+        this.writer = objectMapper.writer();
+        this.mapReader = objectMapper.readerFor(new TypeReference<Map<String, Object>>() {
+        });
+    }
+
+    /**
+     * 序列化为JSON字符串
+     */
+    public String toJson(Object value) {
+        try {
+            return writer.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("JSON序列化失败", e);
+        }
+    }
+
+    /**
+     * 序列化为UTF-8字节
+     */
+    public byte[] toBytes(Object value) {
+        try {
+            return writer.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("JSON序列化失败", e);
+        }
+    }
+
+    /**
+     * 解析为指定类型，json为null时返回null
+     */
+    public <T> T parse(String json, Class<T> type) {
+        if (json == null) {
+            return null;
+        }
+        try {
+            return objectMapper.readValue(json, type);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("JSON解析失败", e);
+        }
+    }
+
+    /**
+     * 解析为Map，json为null时返回null
+     */
+    public Map<String, Object> parseMap(String json) {
+        if (json == null) {
+            return null;
+        }
+        try {
+            return mapReader.readValue(json);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("JSON解析失败", e);
+        }
+    }
+
+    /**
+     * 写出错误Result，HTTP状态码与Result.code一致
+     */
+    public void writeError(HttpServletResponse response, int status, String msg) throws IOException {
+        String key = status + ":" + msg;
+        byte[] body = errorBodies.get(key);
+        if (body == null) {
+            if (errorBodies.size() >= MAX_CACHED_ERRORS) {
+                errorBodies.clear();
+            }
+            body = toBytes(Result.error(status, msg));
+            errorBodies.put(key, body);
+        }
+
+        response.setStatus(status);
+        response.setContentType(CONTENT_TYPE);
+        response.setContentLength(body.length);
+        ServletOutputStream out = response.getOutputStream();
+        out.write(body);
+        out.flush();
+    }
+}
@@ -1,8 +1,7 @@
 package com.brewingmachine.config;
 
-import com.brewingmachine.dto.Result;
-import com.brewingmachine.service.AuthService;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.brewingmachine.dto.TokenPrincipal;
+import com.brewingmachine.service.TokenService;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
@@ -12,28 +11,22 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.io.PrintWriter;
 
 @Component
 @RequiredArgsConstructor
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
-    private final AuthService authService;
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final TokenService tokenService;
+    private final RoutePolicyRegistry routePolicyRegistry;
+    private final JsonCodec jsonCodec;
 
     @Override
     protected void doFilterInternal(HttpServletRequest request,
                                   HttpServletResponse response,
                                   FilterChain filterChain) throws ServletException, IOException {
 
-        String requestURI = request.getRequestURI();
-
         // 跳过不需要认证的路径
-        if (requestURI.startsWith("/login/") || requestURI.startsWith("/test/") || requestURI.startsWith("/wechat/")
-                || requestURI.startsWith("/css/") || requestURI.startsWith("/js/") || requestURI.startsWith("/images/")
-                || requestURI.endsWith(".html") || requestURI.endsWith(".css") || requestURI.endsWith(".js")
-                || requestURI.endsWith(".png") || requestURI.endsWith(".jpg") || requestURI.endsWith(".jpeg")
-                || requestURI.endsWith(".gif") || requestURI.endsWith(".ico")) {
+        if (routePolicyRegistry.classify(request) == RoutePolicy.PUBLIC) {
             filterChain.doFilter(request, response);
             return;
         }
@@ -49,30 +42,20 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
         String token = authHeader.substring(7).trim(); // 移除 "Bearer " 前缀并去除可能的空格
 
-        try {
-            // 验证token并获取用户ID
-            Long userId = authService.getUserIdByToken(token);
-
-            // 将用户ID放入请求属性中，供Controller使用
-            request.setAttribute("userId", userId);
+        // 验证token并获取用户ID
+        TokenPrincipal principal = tokenService.verifyToken(token);
+        if (principal == null) {
+            sendUnauthorizedResponse(response, "Token验证失败: token无效或已过期");
+            return;
+        }
 
-            filterChain.doFilter(request, response);
+        // 将用户ID放入请求属性中，供Controller使用
+        request.setAttribute("userId", principal.getUserId());
 
-        } catch (Exception e) {
-            sendUnauthorizedResponse(response, "Token验证失败: " + e.getMessage());
-        }
+        filterChain.doFilter(request, response);
     }
 
     private void sendUnauthorizedResponse(HttpServletResponse response, String message) throws IOException {
-        response.setStatus(HttpServletResponse.SC_UNAUTHORIZED);
-        response.setContentType("application/json;charset=UTF-8");
-
-        Result<Void> errorResult = Result.error(message);
-        String jsonResult = objectMapper.writeValueAsString(errorResult);
-
-        try (PrintWriter writer = response.getWriter()) {
-            writer.write(jsonResult);
-            writer.flush();
-        }
+        jsonCodec.writeError(response, HttpServletResponse.SC_UNAUTHORIZED, message);
     }
 }
\ No newline at end of file
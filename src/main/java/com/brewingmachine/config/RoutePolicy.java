@@ -0,0 +1,26 @@
+package com.brewingmachine.config;
+
+/**
+ * 接口访问策略，按严格程度从低到高排列
+ */
+public enum RoutePolicy {
+
+    /**
+     * 无需登录
+     */
+    PUBLIC,
+
+    /**
+     * 需要有效token
+     */
+    AUTHENTICATED,
+
+    /**
+     * 需要有效token，并由PermissionInterceptor检查角色/功能权限
+     */
+    PERMISSION_CHECKED;
+
+    public boolean isStricterThan(RoutePolicy other) {
+        return other == null || ordinal() > other.ordinal();
+    }
+}
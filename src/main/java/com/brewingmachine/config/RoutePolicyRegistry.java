@@ -0,0 +1,237 @@
+package com.brewingmachine.config;
+
+import com.brewingmachine.annotation.PublicRoute;
+import com.brewingmachine.annotation.RequiresPermission;
+import com.brewingmachine.annotation.RequiresRole;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.context.ApplicationContext;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.mvc.method.RequestMappingInfo;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+import org.springframework.web.util.UrlPathHelper;
+
+import javax.servlet.http.HttpServletRequest;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.AnnotatedElement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 接口访问策略登记表
+ * JwtAuthenticationFilter使用的路由判定（PermissionInterceptor以处理方法上的注解为准）：启动时把固定规则和控制器注解
+ * （@PublicRoute/@RequiresRole/@RequiresPermission）编译成按路径段组织的前缀树和扩展名表，
+ * 每个请求只遍历一次URI即可得到公开/需登录/需权限检查。
+ * 同一路径登记多个策略时取最严格的；带路径变量的接口按单段通配登记
+ */
+@Slf4j
+@Component
+public class RoutePolicyRegistry implements SmartInitializingSingleton {
+
+    /**
+     * 固定规则：/**结尾为前缀匹配，*.开头为扩展名匹配，其余为精确匹配；控制器接口用注解登记
+     */
+    private static final String[] PUBLIC_PATTERNS = {
+            "/test/**", "/css/**", "/js/**", "/images/**",
+            "*.html", "*.css", "*.js", "*.png", "*.jpg", "*.jpeg", "*.gif", "*.ico"
+    };
+
+    private final ApplicationContext applicationContext;
+
+    // 控制器注解扫描完成前，未登记的路径一律做权限检查
+    private volatile Compiled compiled = compile(new Builder(), RoutePolicy.PERMISSION_CHECKED);
+
+    public RoutePolicyRegistry(ApplicationContext applicationContext) {
+        this.applicationContext = applicationContext;
+    }
+
+    /**
+     * 所有单例初始化完成（接口映射已登记）后、Web服务器启动前编译登记表
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        Map<String, RoutePolicy> routes = new LinkedHashMap<>();
+        int annotated = 0;
+        for (RequestMappingHandlerMapping mapping : applicationContext
+                .getBeansOfType(RequestMappingHandlerMapping.class).values()) {
+            for (Map.Entry<RequestMappingInfo, HandlerMethod> entry : mapping.getHandlerMethods().entrySet()) {
+                RoutePolicy policy = resolvePolicy(entry.getValue());
+                if (policy == null) {
+                    continue;
+                }
+                for (String pattern : entry.getKey().getPatternValues()) {
+                    routes.merge(pattern, policy, Builder::stricter);
+                }
+                annotated++;
+            }
+        }
+        register(routes);
+        log.info("接口访问策略登记完成，注解接口数: {}", annotated);
+    }
+
+    /**
+     * 按接口模式登记策略并替换当前登记表，未登记的路径为需登录
+     */
+    void register(Map<String, RoutePolicy> routes) {
+        Builder builder = new Builder();
+        routes.forEach(builder::add);
+        compiled = compile(builder, RoutePolicy.AUTHENTICATED);
+    }
+
+    /**
+     * 判定请求的访问策略：按容器解码并规范化后的查找路径判定（与分派到处理方法的路径一致），
+     * 不用原始URI，避免/c%6Fmmission这类编码路径绕开登记的规则
+     */
+    public RoutePolicy classify(HttpServletRequest request) {
+        return classify(UrlPathHelper.defaultInstance.getLookupPathForRequest(request));
+    }
+
+    /**
+     * 判定URI的访问策略：前缀树上最具体的规则优先，其次按扩展名，都未命中为需登录
+     */
+    public RoutePolicy classify(String uri) {
+        Compiled current = compiled;
+        List<String> segments = new ArrayList<>(8);
+        int length = uri.length();
+        int start = 0;
+        while (start < length) {
+            int end = uri.indexOf('/', start);
+            if (end < 0) {
+                end = length;
+            }
+            if (end > start) {
+                // 去掉;jsessionid=等路径参数
+                int semicolon = uri.indexOf(';', start);
+                String segment = uri.substring(start, semicolon >= 0 && semicolon < end ? semicolon : end);
+                // 含./..的路径不做放行判断
+                if (".".equals(segment) || "..".equals(segment)) {
+                    return current.defaultPolicy;
+                }
+                if (!segment.isEmpty()) {
+                    segments.add(segment);
+                }
+            }
+            start = end + 1;
+        }
+
+        RoutePolicy policy = match(current.root, segments, 0);
+        if (policy != null) {
+            return policy;
+        }
+        if (!segments.isEmpty()) {
+            String last = segments.get(segments.size() - 1);
+            int dot = last.lastIndexOf('.');
+            if (dot >= 0) {
+                policy = current.suffixes.get(last.substring(dot));
+                if (policy != null) {
+                    return policy;
+                }
+            }
+        }
+        return current.defaultPolicy;
+    }
+
+    private static RoutePolicy match(Node node, List<String> segments, int index) {
+        if (index == segments.size()) {
+            return node.exact != null ? node.exact : node.rest;
+        }
+        Node child = node.children.get(segments.get(index));
+        if (child != null) {
+            RoutePolicy policy = match(child, segments, index + 1);
+            if (policy != null) {
+                return policy;
+            }
+        }
+        if (node.wildcard != null) {
+            RoutePolicy policy = match(node.wildcard, segments, index + 1);
+            if (policy != null) {
+                return policy;
+            }
+        }
+        return node.rest;
+    }
+
+    private static RoutePolicy resolvePolicy(HandlerMethod handlerMethod) {
+        if (hasAnnotation(handlerMethod, RequiresRole.class) || hasAnnotation(handlerMethod, RequiresPermission.class)) {
+            return RoutePolicy.PERMISSION_CHECKED;
+        }
+        if (hasAnnotation(handlerMethod, PublicRoute.class)) {
+            return RoutePolicy.PUBLIC;
+        }
+        return null;
+    }
+
+    private static boolean hasAnnotation(HandlerMethod handlerMethod, Class<? extends Annotation> annotationType) {
+        AnnotatedElement method = handlerMethod.getMethod();
+        return AnnotatedElementUtils.hasAnnotation(method, annotationType)
+                || AnnotatedElementUtils.hasAnnotation(handlerMethod.getBeanType(), annotationType);
+    }
+
+    private static Compiled compile(Builder builder, RoutePolicy defaultPolicy) {
+        for (String pattern : PUBLIC_PATTERNS) {
+            builder.add(pattern, RoutePolicy.PUBLIC);
+        }
+        return new Compiled(builder.root, builder.suffixes, defaultPolicy);
+    }
+
+    private static final class Builder {
+        private final Node root = new Node();
+        private final Map<String, RoutePolicy> suffixes = new HashMap<>();
+
+        private void add(String pattern, RoutePolicy policy) {
+            if (pattern.startsWith("*.")) {
+                suffixes.merge(pattern.substring(1), policy, Builder::stricter);
+                return;
+            }
+            Node node = root;
+            for (String segment : pattern.split("/")) {
+                if (segment.isEmpty()) {
+                    continue;
+                }
+                if ("**".equals(segment) || segment.startsWith("{*")) {
+                    node.rest = stricter(node.rest, policy);
+                    return;
+                }
+                if (segment.indexOf('{') >= 0 || segment.indexOf('*') >= 0) {
+                    if (node.wildcard == null) {
+                        node.wildcard = new Node();
+                    }
+                    node = node.wildcard;
+                } else {
+                    node = node.children.computeIfAbsent(segment, key -> new Node());
+                }
+            }
+            node.exact = stricter(node.exact, policy);
+        }
+
+        private static RoutePolicy stricter(RoutePolicy current, RoutePolicy policy) {
+            return policy.isStricterThan(current) ? policy : current;
+        }
+    }
+
+    private static final class Node {
+        private final Map<String, Node> children = new HashMap<>();
+        private Node wildcard;
+        // 路径恰好到此节点时的策略
+        private RoutePolicy exact;
+        // 此节点及其下所有路径（/**）的策略
+        private RoutePolicy rest;
+    }
+
+    private static final class Compiled {
+        private final Node root;
+        private final Map<String, RoutePolicy> suffixes;
+        private final RoutePolicy defaultPolicy;
+
+        private Compiled(Node root, Map<String, RoutePolicy> suffixes, RoutePolicy defaultPolicy) {
+            this.root = root;
+            this.suffixes = suffixes;
+            this.defaultPolicy = defaultPolicy;
+        }
+    }
+}
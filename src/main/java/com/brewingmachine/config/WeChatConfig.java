@@ -20,6 +20,11 @@ public class WeChatConfig {
 
     private String state;
 
+    /**
+     * 微信接口地址，默认api.weixin.qq.com，联调或测试时可指向本地桩服务
+     */
+    private String apiBaseUrl = WeChatConstants.BASE_URL;
+
     public String getAuthUrl() {
         return "https://open.weixin.qq.com/connect/qrconnect" +
                "?appid=" + appId +
@@ -23,8 +23,8 @@ public class WebConfig implements WebMvcConfigurer {
 
     @Override
     public void addInterceptors(InterceptorRegistry registry) {
+        // 公开接口由RoutePolicyRegistry判定，与JwtAuthenticationFilter一致
         registry.addInterceptor(permissionInterceptor)
-                .addPathPatterns("/**") // 拦截所有请求
-                .excludePathPatterns("/login/**", "/wechat/**", "/static/**"); // 排除登录和静态资源请求
+                .addPathPatterns("/**"); // 拦截所有请求
     }
 }
\ No newline at end of file
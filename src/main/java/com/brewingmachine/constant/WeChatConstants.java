@@ -7,16 +7,26 @@ public class WeChatConstants {
 
     public static final String BASE_URL = "https://api.weixin.qq.com";
 
-    public static final String ACCESS_TOKEN_URL = BASE_URL + "/sns/oauth2/access_token";
+    public static final String ACCESS_TOKEN_PATH = "/sns/oauth2/access_token";
 
-    public static final String REFRESH_TOKEN_URL = BASE_URL + "/sns/oauth2/refresh_token";
+    public static final String REFRESH_TOKEN_PATH = "/sns/oauth2/refresh_token";
 
-    public static final String USER_INFO_URL = BASE_URL + "/sns/userinfo";
+    public static final String USER_INFO_PATH = "/sns/userinfo";
 
-    public static final String CHECK_TOKEN_URL = BASE_URL + "/sns/auth";
+    public static final String CHECK_TOKEN_PATH = "/sns/auth";
 
     // 小程序登录相关接口
-    public static final String JSCODE2SESSION_URL = BASE_URL + "/sns/jscode2session";
+    public static final String JSCODE2SESSION_PATH = "/sns/jscode2session";
+
+    public static final String ACCESS_TOKEN_URL = BASE_URL + ACCESS_TOKEN_PATH;
+
+    public static final String REFRESH_TOKEN_URL = BASE_URL + REFRESH_TOKEN_PATH;
+
+    public static final String USER_INFO_URL = BASE_URL + USER_INFO_PATH;
+
+    public static final String CHECK_TOKEN_URL = BASE_URL + CHECK_TOKEN_PATH;
+
+    public static final String JSCODE2SESSION_URL = BASE_URL + JSCODE2SESSION_PATH;
 
     public static final String DEFAULT_SCOPE = "snsapi_login";
 
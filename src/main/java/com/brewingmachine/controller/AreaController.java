@@ -0,0 +1,131 @@
+package com.brewingmachine.controller;
+
+import com.brewingmachine.area.Area;
+import com.brewingmachine.annotation.RequiresRole;
+import com.brewingmachine.area.AreaLevel;
+import com.brewingmachine.config.CurrentUser;
+import com.brewingmachine.dto.Result;
+import com.brewingmachine.service.AreaDictionaryService;
+import com.brewingmachine.service.RegionPathMigrationJob;
+import com.brewingmachine.service.RegionPathService;
+import com.brewingmachine.service.RegionSearchService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 地区控制器（省市区县搜索、下级地区查询和按地区查询用户）
+ */
+@RestController
+@RequestMapping("/area")
+@RequiredArgsConstructor
+public class AreaController {
+
+    private final AreaDictionaryService areaDictionaryService;
+    private final RegionSearchService regionSearchService;
+    private final RegionPathService regionPathService;
+    private final RegionPathMigrationJob regionPathMigrationJob;
+
+    /**
+     * 搜索地区：mode取值prefix/contains，q全部为字母时按拼音首字母匹配；level为1-5，within为上级地区12位编码
+     */
+    @GetMapping("/search")
+    public Result<List<Area>> search(@RequestParam String q,
+                                     @RequestParam(defaultValue = "prefix") String mode,
+                                     @RequestParam(required = false) Integer level,
+                                     @RequestParam(required = false) String within,
+                                     @RequestParam(defaultValue = "20") int limit) {
+        try {
+            AreaLevel areaLevel = null;
+            if (level != null) {
+                areaLevel = AreaLevel.of(level);
+                if (areaLevel == null) {
+                    return Result.error("地区级别不正确");
+                }
+            }
+            return Result.success(regionSearchService.search(q, !"contains".equalsIgnoreCase(mode), areaLevel, within, limit));
+        } catch (Exception e) {
+            return Result.error(e.getMessage());
+        }
+    }
+
+    /**
+     * 下级地区，不传code时返回全部省级
+     */
+    @GetMapping("/children")
+    public Result<List<Area>> getChildren(@RequestParam(required = false) String code) {
+        try {
+            return Result.success(areaDictionaryService.getDictionary().getChildren(code));
+        } catch (Exception e) {
+            return Result.error(e.getMessage());
+        }
+    }
+
+    /**
+     * 重新加载地区字典（数据更新后调用，仅管理员），搜索索引在后台重建
+     */
+    @RequiresRole("admin")
+    @PostMapping("/reload")
+    public Result<Map<String, Object>> reload() {
+        try {
+            areaDictionaryService.reload();
+            return Result.success(areaDictionaryService.getMetrics());
+        } catch (Exception e) {
+            return Result.error(e.getMessage());
+        }
+    }
+
+    /**
+     * 地区字典和搜索索引指标（仅管理员）
+     */
+    @RequiresRole("admin")
+    @GetMapping("/metrics")
+    public Result<Map<String, Object>> getMetrics() {
+        Map<String, Object> metrics = areaDictionaryService.getMetrics();
+        metrics.put("search", regionSearchService.getMetrics());
+        return Result.success(metrics);
+    }
+
+    /**
+     * 地区及其全部下级地区内的用户，code为地区12位编码；非管理员只能查询自己所属地区及其下级地区。
+     * 翻页时afterPath、afterId传上一页返回的nextAfterPath、nextAfterId
+     */
+    @GetMapping("/users")
+    public Result<Map<String, Object>> getUsers(@CurrentUser Long userId,
+                                                @RequestParam String code,
+                                                @RequestParam(required = false) String role,
+                                                @RequestParam(required = false) String afterPath,
+                                                @RequestParam(defaultValue = "0") long afterId,
+                                                @RequestParam(defaultValue = "50") int limit) {
+        try {
+            return Result.success(regionPathService.listUsers(userId, code, role, afterPath, afterId, limit));
+        } catch (Exception e) {
+            return Result.error(e.getMessage());
+        }
+    }
+
+    /**
+     * 开始迁移用户层级信息（名称转换为地区编码路径，仅管理员），在后台执行
+     */
+    @RequiresRole("admin")
+    @PostMapping("/region-path/migrate")
+    public Result<Map<String, Object>> migrateRegionPath() {
+        if (!areaDictionaryService.isLoaded()) {
+            return Result.error("地区字典未加载");
+        }
+        Map<String, Object> metrics = regionPathMigrationJob.getMetrics();
+        metrics.put("started", regionPathMigrationJob.start());
+        return Result.success(metrics);
+    }
+
+    /**
+     * 层级信息迁移进度（仅管理员）
+     */
+    @RequiresRole("admin")
+    @GetMapping("/region-path/migrate")
+    public Result<Map<String, Object>> getMigrationMetrics() {
+        return Result.success(regionPathMigrationJob.getMetrics());
+    }
+}
@@ -1,5 +1,6 @@
 package com.brewingmachine.controller;
 
+import com.brewingmachine.annotation.PublicRoute;
 import com.brewingmachine.dto.Result;
 import com.brewingmachine.dto.request.WeChatLoginRequest;
 import com.brewingmachine.dto.request.BasicLoginRequest;
@@ -9,6 +10,7 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.web.bind.annotation.*;
 
 @RestController
+@PublicRoute
 @RequestMapping("/login")
 @RequiredArgsConstructor
 public class AuthController {
@@ -0,0 +1,151 @@
+package com.brewingmachine.controller;
+
+import com.brewingmachine.annotation.RequiresRole;
+import com.brewingmachine.commission.CommissionOrder;
+import com.brewingmachine.commission.CommissionSplit;
+import com.brewingmachine.commission.SplitPlan;
+import com.brewingmachine.config.CurrentUser;
+import com.brewingmachine.dto.Result;
+import com.brewingmachine.dto.request.CommissionOrderRequest;
+import com.brewingmachine.entity.CommissionChainItem;
+import com.brewingmachine.entity.CommissionSettlement;
+import com.brewingmachine.service.CommissionEngine;
+import com.brewingmachine.service.CommissionSettlementJob;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 分成控制器（分成链配置、分账试算、批量分账入账和分成日结）
+ */
+@RestController
+@RequestMapping("/commission")
+@RequiredArgsConstructor
+public class CommissionController {
+
+    private final CommissionEngine commissionEngine;
+    private final CommissionSettlementJob commissionSettlementJob;
+
+    /**
+     * 设备或门店编译后的分成计划（含各级收款用户和比例，仅管理员）
+     */
+    @RequiresRole("admin")
+    @GetMapping("/plan")
+    public Result<List<SplitPlan.Step>> getPlan(@RequestParam String scopeType, @RequestParam String scopeId) {
+        try {
+            return Result.success(commissionEngine.getPlan(scopeType, scopeId).getSteps());
+        } catch (Exception e) {
+            return Result.error(e.getMessage());
+        }
+    }
+
+    /**
+     * 替换设备或门店的分成链，按列表顺序分成，最后一级取剩余金额
+     */
+    @RequiresRole("admin")
+    @PutMapping("/chain")
+    public Result<List<SplitPlan.Step>> saveChain(@RequestParam String scopeType, @RequestParam String scopeId,
+                                                  @RequestBody List<CommissionChainItem> items) {
+        try {
+            return Result.success(commissionEngine.saveChain(scopeType, scopeId, items).getSteps());
+        } catch (Exception e) {
+            return Result.error(e.getMessage());
+        }
+    }
+
+    /**
+     * 分账试算（不入账，仅管理员）
+     */
+    @RequiresRole("admin")
+    @PostMapping("/preview")
+    public Result<List<Map<String, Object>>> preview(@RequestBody List<CommissionOrderRequest> requests) {
+        try {
+            List<Map<String, Object>> results = new ArrayList<>(requests.size());
+            for (CommissionSplit split : commissionEngine.splitAll(toOrders(requests))) {
+                results.add(split.toMap());
+            }
+            return Result.success(results);
+        } catch (Exception e) {
+            return Result.error(e.getMessage());
+        }
+    }
+
+    /**
+     * 批量分账并入账，同一订单号只入账一次
+     */
+    @RequiresRole("admin")
+    @PostMapping("/distribute")
+    public Result<Map<String, Object>> distribute(@RequestBody List<CommissionOrderRequest> requests) {
+        try {
+            return Result.success(commissionEngine.distribute(toOrders(requests)));
+        } catch (Exception e) {
+            return Result.error(e.getMessage());
+        }
+    }
+
+    /**
+     * 分成引擎指标
+     */
+    @GetMapping("/metrics")
+    public Result<Map<String, Object>> getMetrics() {
+        return Result.success(commissionEngine.getMetrics());
+    }
+
+    /**
+     * 用户的日/月/年分成结算明细：periodType为day/month/year，from、to为yyyy-MM-dd、yyyy-MM或yyyy（含）；
+     * userId为空时查当前用户，非管理员只能查看自己的
+     */
+    @GetMapping("/settlement")
+    public Result<List<CommissionSettlement>> getSettlements(@CurrentUser Long currentUserId,
+                                                             @RequestParam(required = false) Long userId,
+                                                             @RequestParam(defaultValue = "day") String periodType,
+                                                             @RequestParam String from,
+                                                             @RequestParam String to) {
+        try {
+            return Result.success(commissionSettlementJob.getSettlements(currentUserId, userId, periodType, from, to));
+        } catch (Exception e) {
+            return Result.error(e.getMessage());
+        }
+    }
+
+    /**
+     * 在后台结算指定日期（yyyy-MM-dd），force为true时清除该日结果重新结算
+     */
+    @RequiresRole("admin")
+    @PostMapping("/settlement/run")
+    public Result<Map<String, Object>> runSettlement(@RequestParam String date,
+                                                     @RequestParam(defaultValue = "false") boolean force) {
+        try {
+            if (!commissionSettlementJob.start(LocalDate.parse(date), force)) {
+                return Result.error("分成日结正在运行");
+            }
+            return Result.success(commissionSettlementJob.getMetrics());
+        } catch (Exception e) {
+            return Result.error(e.getMessage());
+        }
+    }
+
+    /**
+     * 分成日结指标
+     */
+    @GetMapping("/settlement/metrics")
+    public Result<Map<String, Object>> getSettlementMetrics() {
+        return Result.success(commissionSettlementJob.getMetrics());
+    }
+
+    private static List<CommissionOrder> toOrders(List<CommissionOrderRequest> requests) {
+        List<CommissionOrder> orders = new ArrayList<>(requests.size());
+        for (CommissionOrderRequest request : requests) {
+            if (request.getOrderId() == null || request.getAmount() == null) {
+                throw new RuntimeException("订单号和金额不能为空");
+            }
+            orders.add(new CommissionOrder(request.getOrderId(), request.getScopeType(), request.getScopeId(),
+                    request.getAmount()));
+        }
+        return orders;
+    }
+}
@@ -1,12 +1,35 @@
 package com.brewingmachine.controller;
 
+import com.brewingmachine.annotation.PublicRoute;
+import com.brewingmachine.annotation.RequiresRole;
+import com.brewingmachine.dto.Result;
+import com.brewingmachine.entity.QrCodeLogin;
+import com.brewingmachine.service.QrCodeBatchService;
 import com.brewingmachine.service.QrCodeLoginService;
+import com.brewingmachine.service.QrCodeLoginSweeper;
+import com.brewingmachine.service.QrCodeService;
+import com.brewingmachine.service.QrStatusNotifier;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 /**
  * 二维码登录控制器
@@ -17,12 +40,37 @@ import java.util.Map;
 @CrossOrigin(origins = "*")
 public class QrCodeLoginController {
 
+    private static final MediaType SVG_MEDIA_TYPE = MediaType.valueOf("image/svg+xml");
+
     @Autowired
     private QrCodeLoginService qrCodeLoginService;
 
+    @Autowired
+    private QrStatusNotifier qrStatusNotifier;
+
+    @Autowired
+    private QrCodeService qrCodeService;
+
+    @Autowired
+    private QrCodeBatchService qrCodeBatchService;
+
+    // qr.sweeper.enabled=false时不创建
+    @Autowired(required = false)
+    private QrCodeLoginSweeper qrCodeLoginSweeper;
+
+    @Value("${qr.code.expire-seconds:300}")
+    private long imageMaxAgeSeconds;
+
+    @Value("${qr.notify.long-poll-timeout-ms:30000}")
+    private long longPollTimeoutMs;
+
+    @Value("${qr.notify.stream-timeout-ms:300000}")
+    private long streamTimeoutMs;
+
     /**
      * 生成普通二维码
      */
+    @PublicRoute
     @PostMapping("/generate")
     public Map<String, Object> generateQrCode() {
         try {
@@ -37,12 +85,13 @@ public class QrCodeLoginController {
     }
     
     /**
-     * 生成带角色和层级信息的授权二维码
+     * 生成带角色和层级信息的授权二维码，regionCode为地区12位编码，省市区街道名称可代替编码
      */
     @PostMapping("/generate/authorized")
     public Map<String, Object> generateAuthorizedQrCode(@RequestBody Map<String, Object> params) {
         try {
             String role = (String) params.get("role");
+            String regionCode = (String) params.get("regionCode");
             String province = (String) params.get("province");
             String city = (String) params.get("city");
             String district = (String) params.get("district");
@@ -55,7 +104,7 @@ public class QrCodeLoginController {
                 return result;
             }
             
-            return qrCodeLoginService.generateQrCode(role, province, city, district, street);
+            return qrCodeLoginService.generateQrCode(role, regionCode, province, city, district, street);
         } catch (Exception e) {
             log.error("生成授权二维码失败", e);
             Map<String, Object> result = new HashMap<>();
@@ -72,6 +121,7 @@ public class QrCodeLoginController {
     public Map<String, Object> generateRoleBindQrCode(@RequestBody Map<String, Object> params) {
         try {
             String role = (String) params.get("role");
+            String regionCode = (String) params.get("regionCode");
             String province = (String) params.get("province");
             String city = (String) params.get("city");
             String district = (String) params.get("district");
@@ -84,7 +134,7 @@ public class QrCodeLoginController {
                 return result;
             }
             
-            return qrCodeLoginService.generateRoleBindQrCode(role, province, city, district, street);
+            return qrCodeLoginService.generateRoleBindQrCode(role, regionCode, province, city, district, street);
         } catch (Exception e) {
             log.error("生成角色绑定二维码失败", e);
             Map<String, Object> result = new HashMap<>();
@@ -95,13 +145,156 @@ public class QrCodeLoginController {
     }
 
     /**
-     * 查询二维码状态（前端轮询调用）
+     * 批量生成角色绑定二维码，以ZIP（manifest.csv + PNG）流式下载，供运营打印
+     */
+    @PostMapping("/generate/role-bind/batch")
+    public ResponseEntity<?> generateRoleBindQrCodeBatch(@RequestBody Map<String, Object> params) {
+        String role = (String) params.get("role");
+        Object countParam = params.get("count");
+        int count = countParam instanceof Number ? ((Number) countParam).intValue() : 0;
+
+        Map<String, Object> error = new HashMap<>();
+        error.put("success", false);
+        if (role == null || role.isEmpty()) {
+            error.put("message", "角色信息不能为空");
+            return ResponseEntity.badRequest().body(error);
+        }
+        if (count <= 0 || count > qrCodeBatchService.getMaxCount()) {
+            error.put("message", "批量生成数量必须在1到" + qrCodeBatchService.getMaxCount() + "之间");
+            return ResponseEntity.badRequest().body(error);
+        }
+
+        List<QrCodeLogin> qrCodeLogins = qrCodeBatchService.createRoleBindBatch(count, role,
+                (String) params.get("regionCode"), (String) params.get("province"), (String) params.get("city"),
+                (String) params.get("district"), (String) params.get("street"));
+
+        StreamingResponseBody body = out -> qrCodeBatchService.writeZip(qrCodeLogins, out);
+        String fileName = "role-bind-" + count + ".zip";
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/zip"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"")
+                .body(body);
+    }
+
+    /**
+     * 预热角色绑定二维码池（推广活动开始前调用，只需role，池按角色区分）
+     */
+    @PostMapping("/generate/role-bind/warm-up")
+    public Map<String, Object> warmUpRoleBindQrCode(@RequestBody Map<String, Object> params) {
+        Map<String, Object> result = new HashMap<>();
+        String role = (String) params.get("role");
+        if (role == null || role.isEmpty()) {
+            result.put("success", false);
+            result.put("message", "角色信息不能为空");
+            return result;
+        }
+
+        qrCodeLoginService.warmUpRoleBindQrCode(role);
+        result.put("success", true);
+        return result;
+    }
+
+    /**
+     * 获取二维码图片（二进制），format取值png/svg，供img标签直接引用
+     */
+    @PublicRoute
+    @GetMapping("/image/{qrToken}")
+    public ResponseEntity<byte[]> getQrCodeImage(@PathVariable String qrToken,
+                                                 @RequestParam(defaultValue = "png") String format) {
+        String qrContent = qrCodeLoginService.getQrContent(qrToken);
+        if (qrContent == null) {
+            return ResponseEntity.notFound().build();
+        }
+        try {
+            ResponseEntity.BodyBuilder builder = ResponseEntity.ok()
+                    .cacheControl(CacheControl.maxAge(imageMaxAgeSeconds, TimeUnit.SECONDS).cachePrivate());
+            if ("svg".equalsIgnoreCase(format)) {
+                return builder.contentType(SVG_MEDIA_TYPE)
+                        .body(qrCodeService.generateQrCodeSvg(qrContent).getBytes(StandardCharsets.UTF_8));
+            }
+            return builder.contentType(MediaType.IMAGE_PNG).body(qrCodeService.generateQrCodePng(qrContent));
+        } catch (Exception e) {
+            log.error("生成二维码图片失败，token: {}", qrToken, e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    /**
+     * 查询二维码状态（不支持SSE的前端轮询调用）
      */
+    @PublicRoute
     @GetMapping("/status/{qrToken}")
     public Map<String, Object> queryStatus(@PathVariable String qrToken) {
         return qrCodeLoginService.queryQrCodeStatus(qrToken);
     }
 
+    /**
+     * 长轮询查询二维码状态：状态与lastStatus不同则立即返回，否则挂起到状态变化或超时
+     */
+    @PublicRoute
+    @GetMapping("/status/{qrToken}/wait")
+    public DeferredResult<Map<String, Object>> waitStatus(@PathVariable String qrToken,
+                                                          @RequestParam(required = false) Integer lastStatus) {
+        DeferredResult<Map<String, Object>> deferredResult = new DeferredResult<>(longPollTimeoutMs);
+        // 定期检查可能重复推送与lastStatus相同的状态，忽略
+        Consumer<Map<String, Object>> listener = status -> {
+            if (lastStatus == null || !lastStatus.equals(status.get("status"))) {
+                deferredResult.setResult(status);
+            }
+        };
+
+        qrStatusNotifier.subscribe(qrToken, listener);
+        deferredResult.onCompletion(() -> qrStatusNotifier.unsubscribe(qrToken, listener));
+        deferredResult.onTimeout(() -> deferredResult.setResult(qrCodeLoginService.queryQrCodeStatus(qrToken)));
+
+        // 先登记监听再读取当前状态，避免漏掉两者之间的状态变化
+        Map<String, Object> current = qrCodeLoginService.queryQrCodeStatus(qrToken);
+        if (lastStatus == null || !lastStatus.equals(current.get("status"))) {
+            deferredResult.setResult(current);
+        }
+        return deferredResult;
+    }
+
+    /**
+     * 通过Server-Sent Events推送二维码状态，到达终态（已确认/已过期/不存在）后关闭
+     */
+    @PublicRoute
+    @GetMapping(value = "/status/{qrToken}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamStatus(@PathVariable String qrToken) {
+        SseEmitter emitter = new SseEmitter(streamTimeoutMs);
+        // 上次发送的状态，重复推送的同一状态不再发送
+        AtomicReference<Object> lastSent = new AtomicReference<>();
+        Consumer<Map<String, Object>> listener = status -> {
+            Object code = status.get("status");
+            if (!code.equals(lastSent.getAndSet(code))) {
+                sendStatus(emitter, status);
+            }
+        };
+
+        qrStatusNotifier.subscribe(qrToken, listener);
+        emitter.onCompletion(() -> qrStatusNotifier.unsubscribe(qrToken, listener));
+        emitter.onError(e -> qrStatusNotifier.unsubscribe(qrToken, listener));
+        emitter.onTimeout(() -> {
+            sendStatus(emitter, qrCodeLoginService.queryQrCodeStatus(qrToken));
+            emitter.complete();
+        });
+
+        listener.accept(qrCodeLoginService.queryQrCodeStatus(qrToken));
+        return emitter;
+    }
+
+    private void sendStatus(SseEmitter emitter, Map<String, Object> status) {
+        try {
+            emitter.send(SseEmitter.event().name("status").data(status, MediaType.APPLICATION_JSON));
+            Object code = status.get("status");
+            if (!Integer.valueOf(0).equals(code) && !Integer.valueOf(1).equals(code)) {
+                emitter.complete();
+            }
+        } catch (IOException | IllegalStateException e) {
+            emitter.completeWithError(e);
+        }
+    }
+
     /**
      * 扫描二维码（移动端调用）
      */
@@ -139,5 +332,16 @@ public class QrCodeLoginController {
         
         return qrCodeLoginService.confirmRoleBind(qrToken, userId);
     }
-}
 
+    /**
+     * 二维码登录相关指标（仅管理员），按组件分组
+     */
+    @RequiresRole("admin")
+    @GetMapping("/metrics")
+    public Result<Map<String, Object>> getMetrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("watchedTokens", qrStatusNotifier.getWatchedTokenCount());
+        metrics.put("sweeper", qrCodeLoginSweeper != null ? qrCodeLoginSweeper.getMetrics() : null);
+        return Result.success(metrics);
+    }
+}
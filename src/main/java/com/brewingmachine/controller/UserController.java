@@ -1,5 +1,6 @@
 package com.brewingmachine.controller;
 
+import com.brewingmachine.annotation.RequiresRole;
 import com.brewingmachine.dto.Result;
 import com.brewingmachine.dto.request.WeChatLoginRequest;
 import com.brewingmachine.dto.request.BasicLoginRequest;
@@ -9,16 +10,32 @@ import com.brewingmachine.dto.request.BindPhoneRequest;
 import com.brewingmachine.dto.request.ChangePasswordRequest;
 import com.brewingmachine.dto.request.BindReferrerRequest;
 import com.brewingmachine.dto.response.UserInfoResponse;
+import com.brewingmachine.entity.UserAccountRecord;
+import com.brewingmachine.ledger.AccountType;
+import com.brewingmachine.service.AccountLedgerService;
 import com.brewingmachine.service.AuthService;
+import com.brewingmachine.service.DownlineIndexRebuildJob;
+import com.brewingmachine.service.DownlineIndexService;
+import com.brewingmachine.service.HotAccountRegistry;
+import com.brewingmachine.service.SubAccountConsolidator;
 import lombok.RequiredArgsConstructor;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 @RestController
 @RequestMapping("/user")
 @RequiredArgsConstructor
 public class UserController {
 
     private final AuthService authService;
+    private final DownlineIndexService downlineIndexService;
+    private final DownlineIndexRebuildJob downlineIndexRebuildJob;
+    private final AccountLedgerService accountLedgerService;
+    private final HotAccountRegistry hotAccountRegistry;
+    private final SubAccountConsolidator subAccountConsolidator;
 
     @GetMapping("/info")
     public Result<UserInfoResponse> getUserInfo(@RequestHeader("Authorization") String authHeader) {
@@ -92,4 +109,131 @@ public class UserController {
             return Result.error(e.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * 我的下级概况：层级深度、下级代理数量、各层下级人数
+     */
+    @GetMapping("/downline/summary")
+    public Result<Map<String, Object>> getDownlineSummary(@RequestHeader("Authorization") String authHeader) {
+        try {
+            String token = authHeader.substring(7).trim();
+            Long userId = authService.getUserIdByToken(token);
+            return Result.success(downlineIndexService.getSummary(userId));
+        } catch (Exception e) {
+            return Result.error(e.getMessage());
+        }
+    }
+
+    /**
+     * 我的下级列表，maxDepth为相隔层数上限（1为直接下级），按用户ID翻页（afterId传上一页返回的nextAfterId）
+     */
+    @GetMapping("/downline")
+    public Result<Map<String, Object>> getDownline(@RequestHeader("Authorization") String authHeader,
+                                                   @RequestParam(required = false) Integer maxDepth,
+                                                   @RequestParam(required = false) String role,
+                                                   @RequestParam(defaultValue = "0") long afterId,
+                                                   @RequestParam(defaultValue = "50") int limit) {
+        try {
+            String token = authHeader.substring(7).trim();
+            Long userId = authService.getUserIdByToken(token);
+            return Result.success(downlineIndexService.listDownline(userId, maxDepth, role, afterId, limit));
+        } catch (Exception e) {
+            return Result.error(e.getMessage());
+        }
+    }
+
+    /**
+     * 指定用户是否为我的下级（任意层级）
+     */
+    @GetMapping("/downline/contains")
+    public Result<Boolean> containsDownline(@RequestHeader("Authorization") String authHeader,
+                                            @RequestParam Long userId) {
+        try {
+            String token = authHeader.substring(7).trim();
+            Long currentUserId = authService.getUserIdByToken(token);
+            return Result.success(downlineIndexService.isAncestor(currentUserId, userId));
+        } catch (Exception e) {
+            return Result.error(e.getMessage());
+        }
+    }
+
+    /**
+     * 按推荐关系全量重建下级索引（首次上线回填或数据修复，仅管理员），在后台执行
+     */
+    @RequiresRole("admin")
+    @PostMapping("/downline/rebuild")
+    public Result<Map<String, Object>> rebuildDownlineIndex() {
+        Map<String, Object> metrics = downlineIndexRebuildJob.getMetrics();
+        metrics.put("started", downlineIndexRebuildJob.start());
+        return Result.success(metrics);
+    }
+
+    /**
+     * 下级索引重建进度（仅管理员）
+     */
+    @RequiresRole("admin")
+    @GetMapping("/downline/rebuild")
+    public Result<Map<String, Object>> getDownlineRebuildMetrics() {
+        return Result.success(downlineIndexRebuildJob.getMetrics());
+    }
+
+    /**
+     * 我的账户余额（金额单位为分，积分为个）
+     */
+    @GetMapping("/account")
+    public Result<Map<String, Long>> getAccount(@RequestHeader("Authorization") String authHeader) {
+        try {
+            String token = authHeader.substring(7).trim();
+            Long userId = authService.getUserIdByToken(token);
+            return Result.success(accountLedgerService.getBalances(userId));
+        } catch (Exception e) {
+            return Result.error(e.getMessage());
+        }
+    }
+
+    /**
+     * 我的账户流水，account取值balance/frozen/points/gift_money/wine_gold，不传为全部；
+     * 按时间倒序翻页（beforeId传上一页最后一条流水ID）
+     */
+    @GetMapping("/account/records")
+    public Result<List<UserAccountRecord>> getAccountRecords(@RequestHeader("Authorization") String authHeader,
+                                                             @RequestParam(required = false) String account,
+                                                             @RequestParam(required = false) Long beforeId,
+                                                             @RequestParam(defaultValue = "20") int limit) {
+        try {
+            String token = authHeader.substring(7).trim();
+            Long userId = authService.getUserIdByToken(token);
+            AccountType accountType = null;
+            if (account != null && !account.isEmpty()) {
+                accountType = AccountType.of(account);
+                if (accountType == null) {
+                    return Result.error("账户类型不正确");
+                }
+            }
+            return Result.success(accountLedgerService.getRecords(userId, accountType, beforeId, limit));
+        } catch (Exception e) {
+            return Result.error(e.getMessage());
+        }
+    }
+
+    /**
+     * 记账指标（仅管理员）
+     */
+    @RequiresRole("admin")
+    @GetMapping("/account/ledger/metrics")
+    public Result<Map<String, Object>> getLedgerMetrics() {
+        return Result.success(accountLedgerService.getMetrics());
+    }
+
+    /**
+     * 热点账户及子账户归集指标（仅管理员）
+     */
+    @RequiresRole("admin")
+    @GetMapping("/account/ledger/striping")
+    public Result<Map<String, Object>> getStripingMetrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("hotAccounts", hotAccountRegistry.getMetrics());
+        metrics.put("consolidation", subAccountConsolidator.getMetrics());
+        return Result.success(metrics);
+    }
+}
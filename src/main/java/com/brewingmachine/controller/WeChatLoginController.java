@@ -1,7 +1,14 @@
 package com.brewingmachine.controller;
 
+import com.brewingmachine.annotation.PublicRoute;
+import com.brewingmachine.annotation.RequiresRole;
+import com.brewingmachine.dto.Result;
 import com.brewingmachine.dto.WeChatLoginResultDTO;
+import com.brewingmachine.service.HttpClientService;
+import com.brewingmachine.service.IdentityCache;
+import com.brewingmachine.service.LastLoginTimeWriter;
 import com.brewingmachine.service.TokenService;
+import com.brewingmachine.service.WeChatProfileRefresher;
 import com.brewingmachine.service.WeChatLoginService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -12,6 +19,7 @@ import java.util.Map;
 
 @Slf4j
 @RestController
+@PublicRoute
 @RequestMapping("/wechat")
 @CrossOrigin(origins = "*")
 public class WeChatLoginController {
@@ -22,6 +30,18 @@ public class WeChatLoginController {
     @Autowired
     private TokenService tokenService;
 
+    @Autowired
+    private HttpClientService httpClientService;
+
+    @Autowired
+    private WeChatProfileRefresher weChatProfileRefresher;
+
+    @Autowired
+    private IdentityCache identityCache;
+
+    @Autowired
+    private LastLoginTimeWriter lastLoginTimeWriter;
+
     /**
      * 获取微信扫码登录授权URL
      */
@@ -117,4 +137,19 @@ public class WeChatLoginController {
         result.put("message", "退出成功");
         return result;
     }
+
+    /**
+     * 微信登录相关指标（仅管理员），按组件分组
+     */
+    @RequiresRole("admin")
+    @GetMapping("/metrics")
+    public Result<Map<String, Object>> getMetrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("http", httpClientService.getMetrics());
+        metrics.put("login", weChatLoginService.getLoginMetrics());
+        metrics.put("profileRefresh", weChatProfileRefresher.getMetrics());
+        metrics.put("identityCache", identityCache.getMetrics());
+        metrics.put("lastLoginWriter", lastLoginTimeWriter.getMetrics());
+        return Result.success(metrics);
+    }
 }
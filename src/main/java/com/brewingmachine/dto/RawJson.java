@@ -0,0 +1,35 @@
+package com.brewingmachine.dto;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+
+import java.io.IOException;
+
+/**
+ * 已编码的JSON片段，序列化时原样输出，不再解析
+ */
+public final class RawJson extends JsonSerializable.Base {
+
+    private final String json;
+
+    public RawJson(String json) {
+        this.json = json;
+    }
+
+    @Override
+    public void serialize(JsonGenerator gen, SerializerProvider serializers) throws IOException {
+        gen.writeRawValue(json);
+    }
+
+    @Override
+    public void serializeWithType(JsonGenerator gen, SerializerProvider serializers, TypeSerializer typeSer) throws IOException {
+        gen.writeRawValue(json);
+    }
+
+    @Override
+    public String toString() {
+        return json;
+    }
+}
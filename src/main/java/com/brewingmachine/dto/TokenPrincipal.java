@@ -0,0 +1,29 @@
+package com.brewingmachine.dto;
+
+import lombok.Value;
+
+/**
+ * JWT校验通过后的身份信息（不可变）
+ */
+@Value
+public class TokenPrincipal {
+
+    /**
+     * 用户ID
+     */
+    Long userId;
+
+    /**
+     * 过期时间（毫秒时间戳）
+     */
+    long expiresAt;
+
+    /**
+     * 签发者
+     */
+    String issuer;
+
+    public boolean isExpired(long nowMillis) {
+        return expiresAt <= nowMillis;
+    }
+}
@@ -2,6 +2,7 @@ package com.brewingmachine.dto;
 
 import lombok.Data;
 import java.time.LocalDateTime;
+import java.util.List;
 
 /**
  * 微信用户信息DTO
@@ -23,7 +24,8 @@ public class WeChatUserInfoDTO {
 
     private String headimgurl;
 
-    private String privilege;
+    // 微信返回JSON数组，如["PRIVILEGE1","PRIVILEGE2"]
+    private List<String> privilege;
 
     private String unionid;
 }
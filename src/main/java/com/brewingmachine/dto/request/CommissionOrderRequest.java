@@ -0,0 +1,11 @@
+package com.brewingmachine.dto.request;
+
+import lombok.Data;
+
+@Data
+public class CommissionOrderRequest {
+    private String orderId;
+    private String scopeType; // machine-设备，store-门店
+    private String scopeId;
+    private Long amount; // 折扣后实付金额（分）
+}
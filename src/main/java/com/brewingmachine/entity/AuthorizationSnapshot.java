@@ -0,0 +1,36 @@
+package com.brewingmachine.entity;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 用户授权快照：用户、已启用的角色及其权限编码并集（一次联表查询得到）
+ */
+@Data
+public class AuthorizationSnapshot {
+
+    private Long userId;
+
+    private Integer userStatus;
+
+    private List<Role> roles = new ArrayList<>();
+
+    private Set<String> permissionCodes = new HashSet<>();
+
+    public boolean hasRole(String roleCode) {
+        for (Role role : roles) {
+            if (role.getRoleCode() != null && role.getRoleCode().equals(roleCode)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean hasPermission(String permissionCode) {
+        return permissionCodes.contains(permissionCode);
+    }
+}
@@ -0,0 +1,50 @@
+package com.brewingmachine.entity;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * 分成链配置实体类（一台设备或一个门店的分成链按seq顺序排列的各级）
+ */
+@Data
+public class CommissionChainItem {
+
+    private Long id;
+
+    /**
+     * 适用范围：machine-设备，store-门店
+     */
+    private String scopeType;
+
+    /**
+     * 设备编号或门店ID
+     */
+    private String scopeId;
+
+    /**
+     * 分成顺序，小的先分
+     */
+    private Integer seq;
+
+    /**
+     * 分成方：owner-机主，supplier-供应商，promoter-推广员，salesperson-业务员，operator-运营方，
+     * agent-代理商，agent_chain-代理商及其全部上级代理商
+     */
+    private String party;
+
+    private Long userId;
+
+    /**
+     * 分成比例（百分比），为空时取user.commission_rate
+     */
+    private BigDecimal rate;
+
+    /**
+     * 计算基数：total-订单实付金额，remaining-上一级分完后的剩余金额
+     */
+    private String base;
+
+    private LocalDateTime updateTime;
+}
@@ -0,0 +1,46 @@
+package com.brewingmachine.entity;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 分成结算实体类（每个用户每日/月/年一行，金额以分为单位）
+ */
+@Data
+public class CommissionSettlement {
+
+    private Long userId;
+
+    /**
+     * 周期类型：day-日，month-月，year-年
+     */
+    private String periodType;
+
+    /**
+     * 周期：日为yyyy-MM-dd，月为yyyy-MM，年为yyyy
+     */
+    private String period;
+
+    /**
+     * 分成订单数
+     */
+    private long orderCount;
+
+    /**
+     * 分成订单的实付金额合计
+     */
+    private long turnover;
+
+    /**
+     * 本人分成金额
+     */
+    private long commission;
+
+    /**
+     * 团队分成金额（本人及全部下级的分成金额之和）
+     */
+    private long teamCommission;
+
+    private LocalDateTime updateTime;
+}
@@ -0,0 +1,34 @@
+package com.brewingmachine.entity;
+
+import lombok.Data;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * 分成日结进度实体类（断点续跑用）
+ */
+@Data
+public class CommissionSettlementRun {
+
+    private LocalDate settleDate;
+
+    /**
+     * 状态：running-结算中，done-已完成
+     */
+    private String status;
+
+    /**
+     * 已结算到的流水ID（该ID及之前的分成流水已计入结算表）
+     */
+    private Long lastRecordId;
+
+    /**
+     * 本日流水扫描上限ID
+     */
+    private Long maxRecordId;
+
+    private Long orderCount;
+
+    private LocalDateTime updateTime;
+}
@@ -59,6 +59,11 @@ public class QrCodeLogin {
      */
     private String street;
 
+    /**
+     * 地区12位编码（生成时按地区字典校验）
+     */
+    private String regionCode;
+
     /**
      * 创建时间
      */
@@ -78,4 +83,14 @@ public class QrCodeLogin {
      * 确认时间
      */
     private LocalDateTime confirmTime;
+
+    /**
+     * 是否以数据库为准（批量打印的长效二维码：同步落库，会话丢失时从数据库恢复）
+     */
+    private Boolean persistent;
+
+    /**
+     * 二维码内容（仅保存在会话中，用于按需输出图片，不落库）
+     */
+    private String qrContent;
 }
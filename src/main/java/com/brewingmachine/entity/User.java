@@ -54,11 +54,19 @@ public class User {
 
     // 层级信息字段（存储省市区街道等层级信息）
     private String hierarchy;
+
+    // 所属地区12位编码及其编码路径（省级到所属地区，以/分隔并结尾，按前缀查询整棵下级地区）
+    private String regionCode;
+    private String regionPath;
     
     // 财务相关字段
     private BigDecimal giftMoney;
     private BigDecimal wineGold;
     private BigDecimal totalConsumption;
 
+    // 代理相关字段
+    private String agentLevel; // PROVINCE-省代，CITY-市代，DISTRICT-区代，COMMUNITY-社区代
+    private BigDecimal commissionRate; // 分成比例（百分比）
+
 
 }
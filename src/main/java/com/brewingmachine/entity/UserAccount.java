@@ -0,0 +1,24 @@
+package com.brewingmachine.entity;
+
+import lombok.Data;
+
+/**
+ * 用户账户余额（记账用，金额以分为单位，积分以个为单位）
+ */
+@Data
+public class UserAccount {
+
+    private Long userId;
+
+    private long balance;
+
+    private long frozen;
+
+    private long points;
+
+    private long giftMoney;
+
+    private long wineGold;
+
+    private long totalCommission;
+}
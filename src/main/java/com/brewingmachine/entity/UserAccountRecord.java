@@ -0,0 +1,56 @@
+package com.brewingmachine.entity;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * 用户账户流水实体类（只追加，不修改）
+ */
+@Data
+public class UserAccountRecord {
+
+    private Long id;
+
+    private Long userId;
+
+    /**
+     * 账户：balance-余额，frozen-冻结金额，points-积分，gift_money-礼金，wine_gold-酒金，total_commission-累计分成
+     */
+    private String account;
+
+    /**
+     * 子账户序号：热点账户的入账记入子账户时不为空，此时变动后余额为该子账户的余额
+     */
+    private Integer slot;
+
+    /**
+     * 记录类型：recharge-充值，withdraw-提现，consume-消费，refund-退款等
+     */
+    private String type;
+
+    /**
+     * 变动金额（入账为正，出账为负）
+     */
+    private BigDecimal amount;
+
+    /**
+     * 变动后余额
+     */
+    private BigDecimal balance;
+
+    private String remark;
+
+    private String orderId;
+    /**
+     * 记账请求ID，与legNo一起唯一
+     */
+    private String postingId;
+    /**
+     * 分录在记账请求中的序号，从0开始
+     */
+    private Integer legNo;
+
+    private LocalDateTime createTime;
+}
@@ -0,0 +1,25 @@
+package com.brewingmachine.entity;
+
+import lombok.Data;
+
+/**
+ * 推荐关系闭包实体类（上级与其每一个下级一行，不含自身）
+ */
+@Data
+public class UserClosure {
+
+    /**
+     * 上级用户ID
+     */
+    private Long ancestorId;
+
+    /**
+     * 下级用户ID
+     */
+    private Long descendantId;
+
+    /**
+     * 相隔层数：1为直接下级
+     */
+    private Integer depth;
+}
@@ -0,0 +1,25 @@
+package com.brewingmachine.entity;
+
+import lombok.Data;
+
+/**
+ * 热点账户的子账户（金额以分为单位，积分以个为单位）
+ * 账户余额 = user表上的主账户 + 该账户全部子账户之和
+ */
+@Data
+public class UserSubAccount {
+
+    private Long userId;
+
+    /**
+     * 账户标识，同user_account_record.account
+     */
+    private String account;
+
+    /**
+     * 子账户序号，从0开始
+     */
+    private Integer slot;
+
+    private long amount;
+}
@@ -35,6 +35,8 @@ public class WeChatUser {
 
     private LocalDateTime bindTime;
 
+    private LocalDateTime profileRefreshedAt;
+
     private LocalDateTime createTime;
 
     private LocalDateTime updateTime;
@@ -1,15 +1,10 @@
 package com.brewingmachine.interceptor;
 
-import com.brewingmachine.annotation.RequiresPermission;
-import com.brewingmachine.annotation.RequiresRole;
-import com.brewingmachine.entity.User;
-import com.brewingmachine.entity.UserRole;
-import com.brewingmachine.entity.Role;
-import com.brewingmachine.entity.Permission;
-import com.brewingmachine.mapper.UserMapper;
-import com.brewingmachine.mapper.UserRoleMapper;
-import com.brewingmachine.mapper.RoleMapper;
-import com.brewingmachine.mapper.PermissionMapper;
+import com.brewingmachine.config.JsonCodec;
+import com.brewingmachine.dto.TokenPrincipal;
+import com.brewingmachine.service.AuthorizationService;
+import com.brewingmachine.service.AuthorizationService.HandlerRequirement;
+import com.brewingmachine.service.AuthorizationService.UserGrant;
 import com.brewingmachine.service.TokenService;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
@@ -19,24 +14,19 @@ import org.springframework.web.servlet.HandlerInterceptor;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.lang.reflect.Method;
-import java.util.List;
 
 @Component
 public class PermissionInterceptor implements HandlerInterceptor {
 
     private final TokenService tokenService;
-    private final UserMapper userMapper;
-    private final UserRoleMapper userRoleMapper;
-    private final RoleMapper roleMapper;
-    private final PermissionMapper permissionMapper;
+    private final AuthorizationService authorizationService;
+    private final JsonCodec jsonCodec;
 
-    public PermissionInterceptor(TokenService tokenService, UserMapper userMapper, UserRoleMapper userRoleMapper, RoleMapper roleMapper, PermissionMapper permissionMapper) {
+    public PermissionInterceptor(TokenService tokenService, AuthorizationService authorizationService,
+                                 JsonCodec jsonCodec) {
         this.tokenService = tokenService;
-        this.userMapper = userMapper;
-        this.userRoleMapper = userRoleMapper;
-        this.roleMapper = roleMapper;
-        this.permissionMapper = permissionMapper;
+        this.authorizationService = authorizationService;
+        this.jsonCodec = jsonCodec;
     }
 
     @Override
@@ -46,133 +36,49 @@ public class PermissionInterceptor implements HandlerInterceptor {
             return true;
         }
 
-        HandlerMethod handlerMethod = (HandlerMethod) handler;
-        Method method = handlerMethod.getMethod();
-
-        // 检查是否有@RequiresRole注解
-        RequiresRole requiresRole = method.getAnnotation(RequiresRole.class);
-        if (requiresRole == null) {
-            requiresRole = method.getDeclaringClass().getAnnotation(RequiresRole.class);
-        }
-
-        // 检查是否有@RequiresPermission注解
-        RequiresPermission requiresPermission = method.getAnnotation(RequiresPermission.class);
-        if (requiresPermission == null) {
-            requiresPermission = method.getDeclaringClass().getAnnotation(RequiresPermission.class);
-        }
-
-        // 如果没有权限注解，直接通过
-        if (requiresRole == null && requiresPermission == null) {
+        // 以实际处理方法上的@RequiresRole/@RequiresPermission注解为准（按方法缓存），不按请求路径判定：
+        // 编码或非规范的路径同样会被分派到这里的处理方法。没有权限注解直接通过
+        HandlerRequirement requirement = authorizationService.resolveRequirement((HandlerMethod) handler);
+        if (requirement == null) {
             return true;
         }
 
         // 获取token
         String token = request.getHeader("Authorization");
         if (!StringUtils.hasText(token)) {
-            response.setStatus(HttpStatus.UNAUTHORIZED.value());
-            response.getWriter().write("{\"code\":401,\"msg\":\"缺少Authorization头\",\"data\":null}");
+            jsonCodec.writeError(response, HttpStatus.UNAUTHORIZED.value(), "缺少Authorization头");
             return false;
         }
 
-        // 验证token并获取用户ID
-        if (!tokenService.validateToken(token)) {
-            response.setStatus(HttpStatus.UNAUTHORIZED.value());
-            response.getWriter().write("{\"code\":401,\"msg\":\"token无效或已过期\",\"data\":null}");
-            return false;
+        if (token.startsWith("Bearer ")) {
+            token = token.substring(7).trim();
         }
 
-        Long userId = tokenService.getUserIdFromToken(token);
-        User user = userMapper.findById(userId);
-        if (user == null) {
-            response.setStatus(HttpStatus.UNAUTHORIZED.value());
-            response.getWriter().write("{\"code\":401,\"msg\":\"用户不存在\",\"data\":null}");
+        // 验证token并获取用户ID
+        TokenPrincipal principal = tokenService.verifyToken(token);
+        if (principal == null) {
+            jsonCodec.writeError(response, HttpStatus.UNAUTHORIZED.value(), "token无效或已过期");
             return false;
         }
 
-        // 检查角色权限
-        if (requiresRole != null) {
-            if (!checkRolePermission(userId, requiresRole)) {
-                response.setStatus(HttpStatus.FORBIDDEN.value());
-                response.getWriter().write("{\"code\":403,\"msg\":\"无角色权限\",\"data\":null}");
-                return false;
-            }
-        }
-
-        // 检查功能权限
-        if (requiresPermission != null) {
-            if (!checkFunctionPermission(userId, requiresPermission)) {
-                response.setStatus(HttpStatus.FORBIDDEN.value());
-                response.getWriter().write("{\"code\":403,\"msg\":\"无功能权限\",\"data\":null}");
-                return false;
-            }
-        }
-
-        return true;
-    }
-
-    private boolean checkRolePermission(Long userId, RequiresRole requiresRole) {
-        List<UserRole> userRoles = userRoleMapper.selectByUserId(userId);
-        String[] requiredRoles = requiresRole.value();
-        String logical = requiresRole.logical();
-
-        if (userRoles == null || userRoles.isEmpty()) {
+        UserGrant grant = authorizationService.getUserGrant(principal.getUserId());
+        if (grant == null) {
+            jsonCodec.writeError(response, HttpStatus.UNAUTHORIZED.value(), "用户不存在");
             return false;
         }
 
-        if ("or".equalsIgnoreCase(logical)) {
-            // 只要有一个角色匹配就通过
-            for (UserRole userRole : userRoles) {
-                // 获取角色信息
-                Role role = roleMapper.selectById(userRole.getRoleId());
-                if (role != null) {
-                    for (String requiredRole : requiredRoles) {
-                        if (requiredRole.equals(role.getRoleCode())) {
-                            return true;
-                        }
-                    }
-                }
-            }
+        // 检查角色权限
+        if (!authorizationService.checkRole(grant, requirement)) {
+            jsonCodec.writeError(response, HttpStatus.FORBIDDEN.value(), "无角色权限");
             return false;
-        } else {
-            // 所有角色都必须匹配
-            for (String requiredRole : requiredRoles) {
-                boolean hasRole = false;
-                for (UserRole userRole : userRoles) {
-                    // 获取角色信息
-                    Role role = roleMapper.selectById(userRole.getRoleId());
-                    if (role != null && requiredRole.equals(role.getRoleCode())) {
-                        hasRole = true;
-                        break;
-                    }
-                }
-                if (!hasRole) {
-                    return false;
-                }
-            }
-            return true;
         }
-    }
-
-    private boolean checkFunctionPermission(Long userId, RequiresPermission requiresPermission) {
-        List<UserRole> userRoles = userRoleMapper.selectByUserId(userId);
-        String requiredPermission = requiresPermission.value();
 
-        if (userRoles == null || userRoles.isEmpty()) {
+        // 检查功能权限
+        if (!authorizationService.checkPermission(grant, requirement)) {
+            jsonCodec.writeError(response, HttpStatus.FORBIDDEN.value(), "无功能权限");
             return false;
         }
 
-        // 检查用户的所有角色是否有该权限
-        for (UserRole userRole : userRoles) {
-            List<Permission> permissions = permissionMapper.selectByRoleId(userRole.getRoleId());
-            if (permissions != null) {
-                for (Permission permission : permissions) {
-                    if (requiredPermission.equals(permission.getPermissionCode())) {
-                        return true;
-                    }
-                }
-            }
-        }
-
-        return false;
+        return true;
     }
-}
\ No newline at end of file
+}
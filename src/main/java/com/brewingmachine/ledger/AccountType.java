@@ -0,0 +1,68 @@
+package com.brewingmachine.ledger;
+
+/**
+ * <h2>账户类型</h2>
+ *
+ * <p>
+ *     用户行上的各个账户. 记账金额统一为long: 金额类账户以分为单位, 积分以个为单位;
+ *     只在写入数据库时按{@link #getScale()}换算为DECIMAL.
+ * </p>
+ *
+ * @since 1.0
+ */
+public enum AccountType {
+    BALANCE("balance", 2, "余额"),
+    FROZEN("frozen", 2, "冻结金额"),
+    POINTS("points", 0, "积分"),
+    GIFT_MONEY("gift_money", 2, "礼金"),
+    WINE_GOLD("wine_gold", 2, "酒金"),
+    TOTAL_COMMISSION("total_commission", 2, "累计分成");
+
+    /**
+     * <p>
+     *     记账流水中的账户标识, 与user表列名相同.
+     * </p>
+     */
+    private final String code;
+
+    /**
+     * <p>
+     *     金额小数位数.
+     * </p>
+     */
+    private final int scale;
+
+    private final String description;
+
+    AccountType(String code, int scale, String description) {
+        this.code = code;
+        this.scale = scale;
+        this.description = description;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public int getScale() {
+        return scale;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * <p>
+     *     按账户标识查找, 不存在返回null.
+     * </p>
+     */
+    public static AccountType of(String code) {
+        for (AccountType type : values()) {
+            if (type.code.equals(code)) {
+                return type;
+            }
+        }
+        return null;
+    }
+}
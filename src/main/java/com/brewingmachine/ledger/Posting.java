@@ -0,0 +1,127 @@
+package com.brewingmachine.ledger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <h2>记账请求</h2>
+ *
+ * <p>
+ *     一次业务变动, 由一条或多条分录组成(如冻结: 余额-x, 冻结金额+x). 分录全部成功或全部不生效,
+ *     每条分录写一条账户流水. 金额为带符号的long(分/个), 入账为正, 出账为负.
+ * </p>
+ * <p>
+ *     记账请求ID由调用方生成并在重试时沿用, 流水表按(记账请求ID, 分录序号)唯一, 同一ID只入账一次;
+ *     超时后以相同ID重新提交时返回首次入账后的余额.
+ * </p>
+ *
+ * @since 1.0
+ */
+public final class Posting {
+
+    public static final int MAX_POSTING_ID_LENGTH = 64;
+
+    private final String postingId;
+    private final String type;
+    private final String orderId;
+    private final String remark;
+    private final List<Leg> legs = new ArrayList<>(2);
+
+    /**
+     * @param postingId 记账请求ID, 业务上唯一(如"commission:订单号"), 不超过64个字符
+     * @param type      流水类型, 如recharge/withdraw/consume/refund
+     * @param orderId   关联订单ID, 可为null
+     * @param remark    备注, 可为null
+     */
+    public Posting(String postingId, String type, String orderId, String remark) {
+        if (postingId == null || postingId.isEmpty() || postingId.length() > MAX_POSTING_ID_LENGTH) {
+            throw new IllegalArgumentException("记账请求ID不能为空且不超过" + MAX_POSTING_ID_LENGTH + "个字符");
+        }
+        if (type == null || type.isEmpty()) {
+            throw new IllegalArgumentException("流水类型不能为空");
+        }
+        this.postingId = postingId;
+        this.type = type;
+        this.orderId = orderId;
+        this.remark = remark;
+    }
+
+    /**
+     * <p>
+     *     追加一条分录, 金额为0的分录忽略.
+     * </p>
+     */
+    public Posting add(long userId, AccountType account, long amount) {
+        if (amount != 0) {
+            legs.add(new Leg(userId, account, amount, false));
+        }
+        return this;
+    }
+
+    /**
+     * <p>
+     *     追加一条允许透支的分录, 记账后余额可以为负, 用于只出不进的清算账户(如分账出款账户).
+     *     金额为0的分录忽略.
+     * </p>
+     */
+    public Posting addOverdraft(long userId, AccountType account, long amount) {
+        if (amount != 0) {
+            legs.add(new Leg(userId, account, amount, true));
+        }
+        return this;
+    }
+
+    public String getPostingId() {
+        return postingId;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public String getOrderId() {
+        return orderId;
+    }
+
+    public String getRemark() {
+        return remark;
+    }
+
+    public List<Leg> getLegs() {
+        return Collections.unmodifiableList(legs);
+    }
+
+    /**
+     * <h2>分录</h2>
+     */
+    public static final class Leg {
+        private final long userId;
+        private final AccountType account;
+        private final long amount;
+        private final boolean overdraft;
+
+        private Leg(long userId, AccountType account, long amount, boolean overdraft) {
+            this.userId = userId;
+            this.account = account;
+            this.amount = amount;
+            this.overdraft = overdraft;
+        }
+
+        public long getUserId() {
+            return userId;
+        }
+
+        public AccountType getAccount() {
+            return account;
+        }
+
+        public long getAmount() {
+            return amount;
+        }
+
+        public boolean isOverdraft() {
+            return overdraft;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.brewingmachine.mapper;
+
+import com.brewingmachine.entity.CommissionChainItem;
+import com.brewingmachine.entity.User;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 分成链配置Mapper接口
+ */
+@Mapper
+public interface CommissionChainMapper {
+
+    /**
+     * 一台设备或一个门店的分成链，按seq排序
+     */
+    List<CommissionChainItem> selectChain(@Param("scopeType") String scopeType, @Param("scopeId") String scopeId);
+
+    int deleteChain(@Param("scopeType") String scopeType, @Param("scopeId") String scopeId);
+
+    int insertChain(@Param("items") List<CommissionChainItem> items);
+
+    /**
+     * 分成用的用户信息（id、role、status、agent_level、commission_rate）
+     */
+    List<User> selectUsers(@Param("userIds") Collection<Long> userIds);
+
+    /**
+     * 代理商自身及其全部上级代理商（按推荐关系闭包表），从最上级开始排列
+     */
+    List<User> selectAgentChain(@Param("userId") Long userId);
+}
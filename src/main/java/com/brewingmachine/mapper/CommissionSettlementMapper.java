@@ -0,0 +1,83 @@
+package com.brewingmachine.mapper;
+
+import com.brewingmachine.entity.CommissionSettlement;
+import com.brewingmachine.entity.CommissionSettlementRun;
+import com.brewingmachine.entity.User;
+import com.brewingmachine.entity.UserAccountRecord;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.cursor.Cursor;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * 分成结算Mapper接口（读取分成流水，写入commission_settlement及日结进度）
+ */
+@Mapper
+public interface CommissionSettlementMapper {
+
+    /**
+     * 创建时间不早于time的第一条流水ID
+     */
+    Long selectFirstRecordIdSince(@Param("time") LocalDateTime time);
+
+    Long selectMaxRecordId();
+
+    /**
+     * 按流水ID顺序流式读取一段分成流水（累计分成账户每个收款用户每笔订单一条，另加每笔订单的出款分录）
+     */
+    Cursor<UserAccountRecord> streamCommissionRecords(@Param("type") String type,
+                                                      @Param("afterId") long afterId,
+                                                      @Param("maxId") long maxId,
+                                                      @Param("from") LocalDateTime from,
+                                                      @Param("to") LocalDateTime to,
+                                                      @Param("limit") int limit);
+
+    /**
+     * 流式读取全部有上级的用户（id、parent_user_id）
+     */
+    Cursor<User> streamParents();
+
+    /**
+     * 日结果累加（INSERT ... ON DUPLICATE KEY UPDATE各列加上本段增量）
+     */
+    int addDaySettlements(@Param("settlements") List<CommissionSettlement> settlements);
+
+    int deleteDaySettlements(@Param("period") String period);
+
+    /**
+     * 按日结果重新汇总一个月
+     */
+    int aggregateMonth(@Param("month") String month, @Param("fromDay") String fromDay, @Param("toDay") String toDay);
+
+    /**
+     * 按月结果重新汇总一年
+     */
+    int aggregateYear(@Param("year") String year);
+
+    /**
+     * 把当年有结算的用户的user.total_turnover更新为历年营业额之和
+     */
+    int updateTotalTurnover(@Param("year") String year);
+
+    List<CommissionSettlement> selectSettlements(@Param("userId") Long userId,
+                                                 @Param("periodType") String periodType,
+                                                 @Param("fromPeriod") String fromPeriod,
+                                                 @Param("toPeriod") String toPeriod);
+
+    CommissionSettlementRun selectRun(@Param("settleDate") LocalDate settleDate);
+
+    int insertRun(CommissionSettlementRun run);
+
+    /**
+     * 断点从afterId推进到lastRecordId，断点已不是afterId（被其他节点推进）时不更新，返回0
+     */
+    int updateRunProgress(@Param("settleDate") LocalDate settleDate, @Param("afterId") long afterId,
+                          @Param("lastRecordId") long lastRecordId, @Param("orderCount") long orderCount);
+
+    int markRunDone(@Param("settleDate") LocalDate settleDate);
+
+    int deleteRun(@Param("settleDate") LocalDate settleDate);
+}
@@ -0,0 +1,38 @@
+package com.brewingmachine.mapper;
+
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.time.LocalDateTime;
+
+/**
+ * 定时任务租约Mapper接口
+ */
+@Mapper
+public interface JobLeaseMapper {
+
+    /**
+     * 抢占或续期租约：租约不存在、已过期或本节点持有时写入owner和到期时间
+     */
+    int upsertLease(@Param("leaseName") String leaseName,
+                    @Param("owner") String owner,
+                    @Param("now") LocalDateTime now,
+                    @Param("expireTime") LocalDateTime expireTime);
+
+    /**
+     * 查询租约持有者
+     */
+    String selectOwner(@Param("leaseName") String leaseName);
+
+    /**
+     * 租约是否未过期（被某个节点持有），加共享锁：抢占租约要等持锁的事务提交
+     */
+    boolean isActiveForShare(@Param("leaseName") String leaseName, @Param("now") LocalDateTime now);
+
+    /**
+     * 释放本节点持有的租约
+     */
+    int releaseLease(@Param("leaseName") String leaseName,
+                     @Param("owner") String owner,
+                     @Param("now") LocalDateTime now);
+}
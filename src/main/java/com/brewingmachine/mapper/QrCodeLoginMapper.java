@@ -5,6 +5,7 @@ import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 
 import java.time.LocalDateTime;
+import java.util.List;
 
 /**
  * 二维码登录Mapper接口
@@ -17,12 +18,21 @@ public interface QrCodeLoginMapper {
      */
     int insert(QrCodeLogin qrCodeLogin);
 
+    /**
+     * 批量插入二维码登录记录（单条多行INSERT）
+     */
+    int insertBatch(@Param("list") List<QrCodeLogin> list);
 
     /**
      * 根据token查询
      */
     QrCodeLogin findByQrToken(@Param("qrToken") String qrToken);
 
+    /**
+     * 查询未过期、未使用的长效二维码（批量打印），不存在返回null
+     */
+    QrCodeLogin findPersistentByToken(@Param("qrToken") String qrToken, @Param("now") LocalDateTime now);
+
     /**
      * 更新二维码状态
      */
@@ -36,6 +46,14 @@ public interface QrCodeLoginMapper {
                      @Param("userInfo") String userInfo, 
                      @Param("confirmTime") LocalDateTime confirmTime);
 
+    /**
+     * 确认长效二维码，已确认过的返回0
+     */
+    int confirmPersistent(@Param("qrToken") String qrToken,
+                          @Param("userId") Long userId,
+                          @Param("userInfo") String userInfo,
+                          @Param("confirmTime") LocalDateTime confirmTime);
+
     /**
      * 扫描二维码
      */
@@ -46,5 +64,25 @@ public interface QrCodeLoginMapper {
      */
     int deleteExpiredQrCodes(@Param("now") LocalDateTime now);
 
+    /**
+     * 查询一批过期记录ID（按过期时间走索引，最多limit条）
+     */
+    List<Long> selectExpiredIds(@Param("cutoff") LocalDateTime cutoff, @Param("limit") int limit);
+
+    /**
+     * 查询最早的过期时间，没有过期记录返回null
+     */
+    LocalDateTime selectOldestExpireTime(@Param("cutoff") LocalDateTime cutoff);
+
+    /**
+     * 将指定ID中已确认的记录归档到历史表（已归档的忽略）
+     */
+    int archiveConfirmedByIds(@Param("ids") List<Long> ids);
+
+    /**
+     * 按ID批量删除
+     */
+    int deleteByIds(@Param("ids") List<Long> ids);
+
 }
 
@@ -0,0 +1,75 @@
+package com.brewingmachine.mapper;
+
+import com.brewingmachine.entity.UserAccount;
+import com.brewingmachine.entity.UserAccountRecord;
+import com.brewingmachine.entity.UserSubAccount;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * 用户账户记账Mapper接口（金额以分为单位读写user表的账户列和user_sub_account子账户，流水写入user_account_record）
+ */
+@Mapper
+public interface UserAccountMapper {
+
+    UserAccount selectAccount(@Param("userId") Long userId);
+
+    /**
+     * 按用户ID顺序锁定一批账户并读取当前余额
+     */
+    List<UserAccount> lockAccounts(@Param("userIds") Collection<Long> userIds);
+
+    /**
+     * 批量写回余额（一条UPDATE ... CASE）
+     */
+    int updateAccounts(@Param("accounts") List<UserAccount> accounts);
+
+    /**
+     * 批量追加流水（多行INSERT）
+     */
+    int insertRecords(@Param("records") List<UserAccountRecord> records);
+
+    /**
+     * 记账请求已写入的流水，用于识别重复提交
+     */
+    List<UserAccountRecord> selectByPostingIds(@Param("postingIds") Collection<String> postingIds);
+
+    /**
+     * 用户某个账户的流水，按ID倒序翻页，beforeId为上一页最后一条流水ID
+     */
+    List<UserAccountRecord> selectRecords(@Param("userId") Long userId, @Param("account") String account,
+                                          @Param("beforeId") Long beforeId, @Param("limit") int limit);
+
+    /**
+     * 子账户增量入账（INSERT ... ON DUPLICATE KEY UPDATE累加），amount为本批增量
+     */
+    int addSubAccounts(@Param("subAccounts") List<UserSubAccount> subAccounts);
+
+    /**
+     * 读取一批子账户入账后的余额
+     */
+    List<UserSubAccount> selectSubAccounts(@Param("subAccounts") List<UserSubAccount> subAccounts);
+
+    /**
+     * 锁定用户的全部子账户并读取余额
+     */
+    List<UserSubAccount> lockSubAccounts(@Param("userId") Long userId);
+
+    /**
+     * 子账户余额清零（已归集到主账户）
+     */
+    int clearSubAccounts(@Param("userId") Long userId);
+
+    /**
+     * 用户各账户的子账户余额合计（slot为0）
+     */
+    List<UserSubAccount> sumSubAccounts(@Param("userId") Long userId);
+
+    /**
+     * 子账户有余额的用户，按用户ID翻页
+     */
+    List<Long> selectUsersWithSubBalance(@Param("afterId") long afterId, @Param("limit") int limit);
+}
@@ -0,0 +1,121 @@
+package com.brewingmachine.mapper;
+
+import com.brewingmachine.entity.User;
+import com.brewingmachine.entity.UserClosure;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.cursor.Cursor;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 推荐关系闭包表Mapper接口
+ */
+@Mapper
+public interface UserClosureMapper {
+
+    /**
+     * 锁定被绑定用户、推荐人及推荐人的全部上级（当前读），只返回id和parentUserId
+     */
+    List<User> lockBindChain(@Param("userId") Long userId, @Param("referrerId") Long referrerId);
+
+    /**
+     * ancestorId是否为descendantId的上级（任意层级）
+     */
+    boolean exists(@Param("ancestorId") Long ancestorId, @Param("descendantId") Long descendantId);
+
+    /**
+     * 同exists，加共享锁读取最新提交的数据，绑定时判断是否成环
+     */
+    boolean existsForShare(@Param("ancestorId") Long ancestorId, @Param("descendantId") Long descendantId);
+
+    /**
+     * 把userId及其全部下级挂到parentId及其全部上级之下
+     */
+    int insertLink(@Param("userId") Long userId, @Param("parentId") Long parentId);
+
+    /**
+     * userId自身及其全部下级中的代理商数量
+     */
+    int countAgentsInSubtree(@Param("userId") Long userId);
+
+    /**
+     * userId及其全部上级的下级代理数量增加delta
+     */
+    int addSubAgentCount(@Param("userId") Long userId, @Param("delta") int delta);
+
+    /**
+     * userId的全部上级（不含自身）的下级代理数量增加delta
+     */
+    int addAncestorsSubAgentCount(@Param("userId") Long userId, @Param("delta") int delta);
+
+    /**
+     * 层级深度（上级数量，无上级为0）
+     */
+    int selectDepth(@Param("userId") Long userId);
+
+    /**
+     * 下级代理数量
+     */
+    Integer selectSubAgentCount(@Param("userId") Long userId);
+
+    /**
+     * 各层下级人数（depth、count）
+     */
+    List<Map<String, Object>> countByDepth(@Param("ancestorId") Long ancestorId);
+
+    /**
+     * 流式读取全部下级（按下级ID排序），maxDepth为null时不限层数，需在事务内遍历
+     */
+    Cursor<UserClosure> streamDescendants(@Param("ancestorId") Long ancestorId, @Param("maxDepth") Integer maxDepth);
+
+    /**
+     * 按下级ID翻页的下级用户，只返回id、nickname、phone、role、parentUserId
+     */
+    List<Map<String, Object>> selectDescendantPage(@Param("ancestorId") Long ancestorId,
+                                                   @Param("maxDepth") Integer maxDepth,
+                                                   @Param("role") String role,
+                                                   @Param("afterId") long afterId,
+                                                   @Param("limit") int limit);
+
+    /**
+     * 删除重建用的影子表user_closure_rebuild（上次重建失败时残留）
+     */
+    int dropRebuildTable();
+
+    /**
+     * 按user_closure的结构创建空的影子表
+     */
+    int createRebuildTable();
+
+    /**
+     * 影子表第一层：每个用户与其直接上级
+     */
+    int insertDirectLinks();
+
+    /**
+     * 影子表第depth + 1层：由第depth层的关系向下扩展一层
+     */
+    int insertNextLevel(@Param("depth") int depth);
+
+    /**
+     * 影子表中存在循环推荐关系的用户数
+     */
+    int countCycles();
+
+    /**
+     * 原子地用影子表替换user_closure，原表改名为user_closure_old
+     */
+    int swapRebuildTable();
+
+    /**
+     * 删除替换下来的旧表
+     */
+    int dropOldTable();
+
+    /**
+     * 按闭包表重新统计全部用户的下级代理数量
+     */
+    int recountSubAgentCount();
+}
@@ -1,10 +1,12 @@
 package com.brewingmachine.mapper;
 
+import com.brewingmachine.entity.AuthorizationSnapshot;
 import com.brewingmachine.entity.User;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
 
 import java.time.LocalDateTime;
+import java.util.List;
 
 @Mapper
 public interface UserMapper {
@@ -23,9 +25,33 @@ public interface UserMapper {
 
     int updateLastLoginTime(@Param("id") Long id, @Param("lastLoginTime") LocalDateTime lastLoginTime);
 
+    /**
+     * 批量更新最后登录时间（users中只使用id和lastLoginTime）
+     */
+    int batchUpdateLastLoginTime(@Param("users") List<User> users);
+
     int updateToken(@Param("id") Long id, @Param("token") String token, @Param("expireTime") LocalDateTime expireTime);
 
     int updateTokenExpireTime(@Param("id") Long id, @Param("expireTime") LocalDateTime expireTime);
 
     int clearToken(@Param("id") Long id);
+
+    AuthorizationSnapshot selectAuthorizationSnapshot(@Param("userId") Long userId);
+
+    /**
+     * 地区编码路径以pathPrefix开头的用户（即该地区及其全部下级地区），role为null时不限角色；
+     * 按(region_path, id)翻页，afterPath/afterId为上一页最后一个用户，首页afterPath传null
+     */
+    List<User> selectByRegionPathPrefix(@Param("pathPrefix") String pathPrefix, @Param("role") String role,
+                                        @Param("afterPath") String afterPath, @Param("afterId") long afterId,
+                                        @Param("limit") int limit);
+
+    long countByRegionPathPrefix(@Param("pathPrefix") String pathPrefix, @Param("role") String role);
+
+    /**
+     * 待迁移的层级名称（只返回id和hierarchy）
+     */
+    List<User> selectHierarchyWithoutRegionPath(@Param("afterId") long afterId, @Param("limit") int limit);
+
+    int batchUpdateRegionPath(@Param("users") List<User> users);
 }
@@ -17,5 +17,15 @@ public interface WeChatUserMapper {
 
     int updateByUserId(@Param("userId") Long userId, @Param("weChatUser") WeChatUser weChatUser);
 
+    /**
+     * 按openid和用户ID更新session_key，绑定关系不匹配时返回0
+     */
+    int updateSessionKey(@Param("openid") String openid, @Param("userId") Long userId, @Param("sessionKey") String sessionKey);
+
+    /**
+     * 按openid和用户ID刷新update_time，用于确认绑定关系仍然有效，不匹配时返回0
+     */
+    int touchBinding(@Param("openid") String openid, @Param("userId") Long userId);
+
     int deleteByUserId(@Param("userId") Long userId);
 }
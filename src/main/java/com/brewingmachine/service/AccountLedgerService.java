@@ -0,0 +1,652 @@
+package com.brewingmachine.service;
+
+import com.brewingmachine.entity.UserAccount;
+import com.brewingmachine.entity.UserAccountRecord;
+import com.brewingmachine.entity.UserSubAccount;
+import com.brewingmachine.ledger.AccountType;
+import com.brewingmachine.ledger.Posting;
+import com.brewingmachine.mapper.UserAccountMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 账户记账服务
+ * 余额、冻结金额、积分、礼金、酒金的唯一写入入口。记账请求进入队列，由单个记账线程按批组提交：
+ * 一个事务内按用户ID顺序锁定本批涉及的用户行，在内存中以long（分）逐条记账，余额不足的请求单独拒绝，
+ * 然后一条UPDATE写回全部余额、一条多行INSERT追加流水。同一账户的大量小额扣款合并在一次加锁和提交中完成，
+ * 不再每笔单独持有行锁；多节点部署时由行锁保证各节点的批次串行。
+ * 热点账户（商户、平台账户等，见{@link HotAccountRegistry}）的入账不锁user行，而是累加到随机选择的子账户上，
+ * 各节点的批次落在不同子账户行上并行提交；账户余额为主账户与全部子账户之和，子账户由定时任务归集到主账户，
+ * 热点账户扣款时主账户余额不足才当场锁定其子账户归集后重试。
+ * 每个记账请求带调用方生成的ID，流水表对(记账请求ID, 分录序号)唯一：已入账的ID再次提交时不再记账，直接返回首次入账后的余额，
+ * 调用方超时后可以用同一ID放心重试
+ */
+@Slf4j
+@Service
+public class AccountLedgerService {
+
+    private final UserAccountMapper userAccountMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final UserInfoCache userInfoCache;
+    private final HotAccountRegistry hotAccountRegistry;
+
+    @Value("${ledger.batch-size:500}")
+    private int batchSize;
+
+    @Value("${ledger.queue-capacity:20000}")
+    private int queueCapacity;
+
+    @Value("${ledger.timeout-ms:5000}")
+    private long timeoutMillis;
+
+    @Value("${ledger.striping.slots:8}")
+    private int stripeSlots;
+
+    private BlockingQueue<Request> queue;
+
+    private Thread writer;
+
+    private volatile boolean stopped;
+
+    private final AtomicLong submittedCount = new AtomicLong();
+    private final AtomicLong committedCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicLong replayedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong consolidatedCount = new AtomicLong();
+    private volatile int lastBatchSize;
+    private volatile long lastCommitMillis;
+    private volatile long lastLockMillis;
+
+    public AccountLedgerService(UserAccountMapper userAccountMapper, TransactionTemplate transactionTemplate,
+                                UserInfoCache userInfoCache, HotAccountRegistry hotAccountRegistry) {
+        this.userAccountMapper = userAccountMapper;
+        this.transactionTemplate = transactionTemplate;
+        this.userInfoCache = userInfoCache;
+        this.hotAccountRegistry = hotAccountRegistry;
+    }
+
+    @PostConstruct
+    public void init() {
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        writer = new Thread(this::runWriter, "account-ledger");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        // 记账线程最多等待100ms就会检查停止标志，不中断正在提交的批次
+        stopped = true;
+        writer.join(timeoutMillis);
+        // 记账线程退出后提交剩余请求
+        List<Request> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        for (int from = 0; from < remaining.size(); from += batchSize) {
+            commit(remaining.subList(from, Math.min(from + batchSize, remaining.size())));
+        }
+    }
+
+    /**
+     * 提交记账请求，返回各分录记账后的余额（分/个，与分录顺序一致；热点账户的入账为所记子账户的余额）；
+     * 余额不足时以异常完成。记账请求ID已入账时不重复记账，返回首次入账后的余额
+     */
+    public CompletableFuture<long[]> submit(Posting posting) {
+        if (posting.getLegs().isEmpty()) {
+            throw new RuntimeException("记账请求没有分录");
+        }
+        if (stopped) {
+            throw new RuntimeException("记账服务已停止");
+        }
+        Request request = new Request(posting);
+        if (!queue.offer(request)) {
+            throw new RuntimeException("记账繁忙，请稍后重试");
+        }
+        // 入队时服务恰好停止，记账线程和shutdown都可能已取完队列；能取回说明没人会处理，由调用方重试
+        if (stopped && queue.remove(request)) {
+            throw new RuntimeException("记账服务已停止");
+        }
+        submittedCount.incrementAndGet();
+        return request.future;
+    }
+
+    /**
+     * 提交记账请求并等待入账，返回各分录记账后的余额
+     */
+    public long[] post(Posting posting) {
+        try {
+            return submit(posting).get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException("记账失败", cause);
+        } catch (TimeoutException e) {
+            throw new RuntimeException("记账超时，请稍后查询结果");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("记账被中断");
+        }
+    }
+
+    /**
+     * 当前余额（分/个），含未归集的子账户余额
+     */
+    public Map<String, Long> getBalances(Long userId) {
+        UserAccount account = userAccountMapper.selectAccount(userId);
+        if (account == null) {
+            throw new RuntimeException("用户不存在");
+        }
+        fold(account, userAccountMapper.sumSubAccounts(userId));
+        Map<String, Long> balances = new LinkedHashMap<>();
+        for (AccountType type : AccountType.values()) {
+            balances.put(type.getCode(), get(account, type));
+        }
+        return balances;
+    }
+
+    /**
+     * 把用户子账户的余额归集到主账户，先锁user行再锁子账户行，与记账批次的加锁顺序一致；返回是否有余额被归集
+     */
+    public boolean consolidate(Long userId) {
+        Boolean moved = transactionTemplate.execute(status -> {
+            List<UserAccount> locked = userAccountMapper.lockAccounts(Collections.singletonList(userId));
+            if (locked.isEmpty()) {
+                return false;
+            }
+            UserAccount account = locked.get(0);
+            if (!fold(account, userAccountMapper.lockSubAccounts(userId))) {
+                return false;
+            }
+            userAccountMapper.updateAccounts(locked);
+            userAccountMapper.clearSubAccounts(userId);
+            return true;
+        });
+        if (Boolean.TRUE.equals(moved)) {
+            consolidatedCount.incrementAndGet();
+            userInfoCache.evict(userId);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 账户流水，按时间倒序翻页
+     */
+    public List<UserAccountRecord> getRecords(Long userId, AccountType account, Long beforeId, int limit) {
+        return userAccountMapper.selectRecords(userId, account != null ? account.getCode() : null, beforeId,
+                Math.max(1, Math.min(limit, batchSize)));
+    }
+
+    /**
+     * 记账指标：累计提交/入账/拒绝/失败数、按记账请求ID去重的重复提交数、批次数、最近一批条数、提交耗时和锁等待耗时、子账户归集次数、队列积压
+     */
+    public Map<String, Object> getMetrics() {
+        long batches = batchCount.get();
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("pending", queue.size());
+        metrics.put("submitted", submittedCount.get());
+        metrics.put("committed", committedCount.get());
+        metrics.put("rejected", rejectedCount.get());
+        metrics.put("failed", failedCount.get());
+        metrics.put("replayed", replayedCount.get());
+        metrics.put("batches", batches);
+        metrics.put("avgBatchSize", batches > 0
+                ? (double) (committedCount.get() + rejectedCount.get() + replayedCount.get()) / batches : 0);
+        metrics.put("lastBatchSize", lastBatchSize);
+        metrics.put("lastCommitMs", lastCommitMillis);
+        metrics.put("lastLockMs", lastLockMillis);
+        metrics.put("consolidated", consolidatedCount.get());
+        return metrics;
+    }
+
+    private void runWriter() {
+        List<Request> batch = new ArrayList<>(batchSize);
+        while (!stopped) {
+            try {
+                Request first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                // 等待期间到达的请求一起提交
+                queue.drainTo(batch, batchSize - 1);
+                commit(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                log.error("记账线程异常", e);
+                for (Request request : batch) {
+                    request.future.completeExceptionally(new RuntimeException("记账失败", e));
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void commit(List<Request> batch) {
+        long start = System.currentTimeMillis();
+        // 同一批内重复的记账请求ID只记第一条，其余沿用它的结果
+        Map<String, Request> unique = new LinkedHashMap<>();
+        for (Request request : batch) {
+            Request first = unique.putIfAbsent(request.posting.getPostingId(), request);
+            if (first != null) {
+                request.original = first;
+            }
+        }
+        List<Request> requests = new ArrayList<>(unique.values());
+
+        // 热点账户的入账记入子账户，不锁user行；同一请求在重试时沿用本次判断
+        TreeSet<Long> userIds = new TreeSet<>();
+        Set<Long> touched = new HashSet<>();
+        List<Long> legUserIds = new ArrayList<>();
+        for (Request request : requests) {
+            List<Posting.Leg> legs = request.posting.getLegs();
+            request.striped = new boolean[legs.size()];
+            for (int i = 0; i < legs.size(); i++) {
+                Posting.Leg leg = legs.get(i);
+                request.striped[i] = leg.getAmount() > 0 && hotAccountRegistry.isHot(leg.getUserId());
+                if (!request.striped[i]) {
+                    userIds.add(leg.getUserId());
+                }
+                touched.add(leg.getUserId());
+                legUserIds.add(leg.getUserId());
+            }
+        }
+
+        List<Request> accepted = new ArrayList<>(requests.size());
+        long[] lockMillis = new long[1];
+        Set<Long> waited = new HashSet<>();
+        Set<Long> suspects = new HashSet<>();
+        try {
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    transactionTemplate.executeWithoutResult(status -> {
+                        accepted.clear();
+                        waited.clear();
+                        suspects.clear();
+                        long lockStart = System.currentTimeMillis();
+                        Map<Long, UserAccount> accounts = lockAccounts(userIds, waited, suspects);
+                        lockMillis[0] = System.currentTimeMillis() - lockStart;
+                        // 在user行锁之后读取，其他节点已提交的同ID请求在这里可见
+                        Map<String, long[]> posted = selectPosted(unique.keySet());
+
+                        Map<String, UserSubAccount> stripes = new HashMap<>();
+                        Set<Long> consolidated = new HashSet<>();
+                        for (Request request : requests) {
+                            request.replayed = posted.get(request.posting.getPostingId());
+                            if (request.replayed != null) {
+                                request.balances = request.replayed;
+                                continue;
+                            }
+                            if (apply(request, accounts, stripes)
+                                    || (consolidate(request, accounts, consolidated) && apply(request, accounts, stripes))) {
+                                accepted.add(request);
+                            }
+                        }
+                        // 归集过的子账户已清零，即使本批全部被拒绝也要写回主账户
+                        if (!accounts.isEmpty() && (!accepted.isEmpty() || !consolidated.isEmpty())) {
+                            userAccountMapper.updateAccounts(new ArrayList<>(accounts.values()));
+                        }
+                        if (accepted.isEmpty()) {
+                            return;
+                        }
+                        Map<String, Long> stripeBalances = addSubAccounts(stripes);
+
+                        LocalDateTime now = LocalDateTime.now();
+                        List<UserAccountRecord> records = new ArrayList<>(accepted.size() * 2);
+                        for (Request request : accepted) {
+                            List<Posting.Leg> legs = request.posting.getLegs();
+                            for (int i = 0; i < legs.size(); i++) {
+                                UserSubAccount stripe = request.stripes[i];
+                                if (stripe != null) {
+                                    // 子账户入账后余额 - 本批总增量 + 截至本条的累计增量
+                                    String key = stripeKey(stripe.getUserId(), stripe.getAccount());
+                                    request.balances[i] += stripeBalances.get(key) - stripe.getAmount();
+                                }
+                                records.add(toRecord(request.posting, i, stripe, request.balances[i], now));
+                            }
+                        }
+                        userAccountMapper.insertRecords(records);
+                    });
+                    break;
+                } catch (PessimisticLockingFailureException | DuplicateKeyException e) {
+                    // 子账户与主账户在多节点间加锁顺序交错时可能死锁；只记热点账户入账的同ID请求不锁user行，
+                    // 被其他节点抢先入账时违反唯一键。整批重试一次，重试时能读到已入账的记账请求
+                    if (attempt >= 2) {
+                        throw e;
+                    }
+                    log.warn("记账批次冲突，重试，条数: {}", batch.size(), e);
+                }
+            }
+        } catch (Exception e) {
+            log.error("记账批次提交失败，条数: {}", batch.size(), e);
+            failedCount.addAndGet(batch.size());
+            for (Request request : batch) {
+                request.future.completeExceptionally(new RuntimeException("记账失败", e));
+            }
+            return;
+        }
+
+        // 事务已提交，后续步骤出错也要让全部请求拿到结果
+        try {
+            hotAccountRegistry.record(legUserIds, waited, suspects);
+            for (Long userId : touched) {
+                userInfoCache.evict(userId);
+            }
+            committedCount.addAndGet(accepted.size());
+            batchCount.incrementAndGet();
+            lastBatchSize = batch.size();
+            lastCommitMillis = System.currentTimeMillis() - start;
+            lastLockMillis = lockMillis[0];
+        } finally {
+            long replayed = 0;
+            long rejected = 0;
+            for (Request request : batch) {
+                Request source = request.original != null ? request.original : request;
+                if (source.balances == null) {
+                    rejected++;
+                } else if (request.original != null || source.replayed != null) {
+                    replayed++;
+                }
+            }
+            replayedCount.addAndGet(replayed);
+            rejectedCount.addAndGet(rejected);
+            for (Request request : batch) {
+                Request source = request.original != null ? request.original : request;
+                if (source.balances != null) {
+                    request.future.complete(source.balances.clone());
+                } else {
+                    request.future.completeExceptionally(new RuntimeException(source.rejection));
+                }
+            }
+        }
+    }
+
+    /**
+     * 按用户ID顺序锁定账户：锁等待嫌疑用户的行单独锁定并计时，等待超时的记入waited；
+     * 其余相邻用户一条语句锁定，整条语句等待超时的用户记入suspects，之后再单独计时
+     */
+    private Map<Long, UserAccount> lockAccounts(TreeSet<Long> userIds, Set<Long> waited, Set<Long> suspects) {
+        Map<Long, UserAccount> accounts = new HashMap<>();
+        List<Long> run = new ArrayList<>();
+        for (Long userId : userIds) {
+            if (hotAccountRegistry.isSuspect(userId)) {
+                lockRun(run, accounts, waited, suspects);
+                run.add(userId);
+                lockRun(run, accounts, waited, suspects);
+            } else {
+                run.add(userId);
+            }
+        }
+        lockRun(run, accounts, waited, suspects);
+        return accounts;
+    }
+
+    private void lockRun(List<Long> run, Map<Long, UserAccount> accounts, Set<Long> waited, Set<Long> suspects) {
+        if (run.isEmpty()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        for (UserAccount account : userAccountMapper.lockAccounts(run)) {
+            accounts.put(account.getUserId(), account);
+        }
+        if (hotAccountRegistry.isLockWait(System.currentTimeMillis() - start)) {
+            // 只锁一行时等待的就是这一行
+            (run.size() == 1 ? waited : suspects).addAll(run);
+        }
+        run.clear();
+    }
+
+    /**
+     * 已入账的记账请求ID及各分录入账后的余额（分/个，按分录序号）
+     */
+    private Map<String, long[]> selectPosted(Set<String> postingIds) {
+        Map<String, long[]> posted = new HashMap<>();
+        List<UserAccountRecord> records = userAccountMapper.selectByPostingIds(postingIds);
+        Map<String, Integer> legCounts = new HashMap<>();
+        for (UserAccountRecord record : records) {
+            legCounts.merge(record.getPostingId(), record.getLegNo() + 1, Math::max);
+        }
+        for (UserAccountRecord record : records) {
+            long[] balances = posted.computeIfAbsent(record.getPostingId(), id -> new long[legCounts.get(id)]);
+            AccountType type = AccountType.of(record.getAccount());
+            int scale = type != null ? type.getScale() : record.getBalance().scale();
+            balances[record.getLegNo()] = record.getBalance().movePointRight(scale).longValue();
+        }
+        return posted;
+    }
+
+    /**
+     * 在内存账户上记一笔，任一账户不存在或余额不足（允许透支的分录除外）时整笔不生效，记下拒绝原因并返回false。
+     * 热点账户的入账累加到该账户本批的子账户增量上，balances中先记截至本条的累计增量
+     */
+    private boolean apply(Request request, Map<Long, UserAccount> accounts, Map<String, UserSubAccount> stripes) {
+        request.balances = null;
+        List<Posting.Leg> legs = request.posting.getLegs();
+        long[] balances = new long[legs.size()];
+        request.stripes = new UserSubAccount[legs.size()];
+        for (int i = 0; i < legs.size(); i++) {
+            Posting.Leg leg = legs.get(i);
+            if (request.striped[i]) {
+                UserSubAccount stripe = stripes.computeIfAbsent(stripeKey(leg.getUserId(), leg.getAccount().getCode()),
+                        key -> newStripe(leg.getUserId(), leg.getAccount()));
+                stripe.setAmount(stripe.getAmount() + leg.getAmount());
+                request.stripes[i] = stripe;
+                balances[i] = stripe.getAmount();
+                continue;
+            }
+            UserAccount account = accounts.get(leg.getUserId());
+            if (account == null) {
+                rollback(request, accounts, i);
+                request.rejection = "用户不存在: " + leg.getUserId();
+                request.shortUserId = null;
+                return false;
+            }
+            long balance = get(account, leg.getAccount()) + leg.getAmount();
+            if (balance < 0 && !leg.isOverdraft()) {
+                rollback(request, accounts, i);
+                request.rejection = leg.getAccount().getDescription() + "不足";
+                request.shortUserId = leg.getUserId();
+                return false;
+            }
+            set(account, leg.getAccount(), balance);
+            balances[i] = balance;
+        }
+        request.balances = balances;
+        return true;
+    }
+
+    private static void rollback(Request request, Map<Long, UserAccount> accounts, int applied) {
+        List<Posting.Leg> legs = request.posting.getLegs();
+        for (int i = applied - 1; i >= 0; i--) {
+            Posting.Leg leg = legs.get(i);
+            UserSubAccount stripe = request.stripes[i];
+            if (stripe != null) {
+                stripe.setAmount(stripe.getAmount() - leg.getAmount());
+                continue;
+            }
+            UserAccount account = accounts.get(leg.getUserId());
+            set(account, leg.getAccount(), get(account, leg.getAccount()) - leg.getAmount());
+        }
+    }
+
+    /**
+     * 余额不足的账户是热点账户时，锁定其子账户并把余额归集到主账户，返回true表示可以重新记这一笔。
+     * 每个用户每批只归集一次
+     */
+    private boolean consolidate(Request request, Map<Long, UserAccount> accounts, Set<Long> consolidated) {
+        Long userId = request.shortUserId;
+        if (userId == null || !hotAccountRegistry.isHot(userId) || !consolidated.add(userId)) {
+            return false;
+        }
+        boolean moved = fold(accounts.get(userId), userAccountMapper.lockSubAccounts(userId));
+        if (moved) {
+            userAccountMapper.clearSubAccounts(userId);
+            consolidatedCount.incrementAndGet();
+        }
+        return moved;
+    }
+
+    /**
+     * 子账户余额加到主账户上，返回是否有非零余额
+     */
+    private static boolean fold(UserAccount account, List<UserSubAccount> subAccounts) {
+        boolean moved = false;
+        for (UserSubAccount subAccount : subAccounts) {
+            AccountType type = AccountType.of(subAccount.getAccount());
+            if (subAccount.getAmount() != 0 && type != null) {
+                set(account, type, get(account, type) + subAccount.getAmount());
+                moved = true;
+            }
+        }
+        return moved;
+    }
+
+    /**
+     * 本批子账户增量入账（按主键顺序），返回各子账户入账后的余额
+     */
+    private Map<String, Long> addSubAccounts(Map<String, UserSubAccount> stripes) {
+        List<UserSubAccount> deltas = new ArrayList<>(stripes.size());
+        for (UserSubAccount stripe : stripes.values()) {
+            if (stripe.getAmount() != 0) {
+                deltas.add(stripe);
+            }
+        }
+        Map<String, Long> balances = new HashMap<>();
+        if (deltas.isEmpty()) {
+            return balances;
+        }
+        deltas.sort(Comparator.comparing(UserSubAccount::getUserId).thenComparing(UserSubAccount::getAccount)
+                .thenComparing(UserSubAccount::getSlot));
+        userAccountMapper.addSubAccounts(deltas);
+        for (UserSubAccount subAccount : userAccountMapper.selectSubAccounts(deltas)) {
+            balances.put(stripeKey(subAccount.getUserId(), subAccount.getAccount()), subAccount.getAmount());
+        }
+        return balances;
+    }
+
+    /**
+     * 本批该账户的入账随机记入一个子账户，各节点的批次分散到不同子账户行上
+     */
+    private UserSubAccount newStripe(Long userId, AccountType type) {
+        UserSubAccount stripe = new UserSubAccount();
+        stripe.setUserId(userId);
+        stripe.setAccount(type.getCode());
+        stripe.setSlot(ThreadLocalRandom.current().nextInt(Math.max(1, stripeSlots)));
+        return stripe;
+    }
+
+    private static String stripeKey(Long userId, String account) {
+        return userId + ":" + account;
+    }
+
+    private static long get(UserAccount account, AccountType type) {
+        switch (type) {
+            case BALANCE:
+                return account.getBalance();
+            case FROZEN:
+                return account.getFrozen();
+            case POINTS:
+                return account.getPoints();
+            case GIFT_MONEY:
+                return account.getGiftMoney();
+            case WINE_GOLD:
+                return account.getWineGold();
+            case TOTAL_COMMISSION:
+                return account.getTotalCommission();
+            default:
+                throw new IllegalArgumentException("未知账户类型: " + type);
+        }
+    }
+
+    private static void set(UserAccount account, AccountType type, long value) {
+        switch (type) {
+            case BALANCE:
+                account.setBalance(value);
+                break;
+            case FROZEN:
+                account.setFrozen(value);
+                break;
+            case POINTS:
+                account.setPoints(value);
+                break;
+            case GIFT_MONEY:
+                account.setGiftMoney(value);
+                break;
+            case WINE_GOLD:
+                account.setWineGold(value);
+                break;
+            case TOTAL_COMMISSION:
+                account.setTotalCommission(value);
+                break;
+            default:
+                throw new IllegalArgumentException("未知账户类型: " + type);
+        }
+    }
+
+    private static UserAccountRecord toRecord(Posting posting, int legNo, UserSubAccount stripe, long balance,
+                                              LocalDateTime now) {
+        Posting.Leg leg = posting.getLegs().get(legNo);
+        int scale = leg.getAccount().getScale();
+        UserAccountRecord record = new UserAccountRecord();
+        record.setUserId(leg.getUserId());
+        record.setAccount(leg.getAccount().getCode());
+        record.setSlot(stripe != null ? stripe.getSlot() : null);
+        record.setType(posting.getType());
+        record.setAmount(BigDecimal.valueOf(leg.getAmount(), scale));
+        record.setBalance(BigDecimal.valueOf(balance, scale));
+        record.setRemark(posting.getRemark());
+        record.setOrderId(posting.getOrderId());
+        record.setPostingId(posting.getPostingId());
+        record.setLegNo(legNo);
+        record.setCreateTime(now);
+        return record;
+    }
+
+    private static final class Request {
+        private final Posting posting;
+        private final CompletableFuture<long[]> future = new CompletableFuture<>();
+        private long[] balances;
+        private String rejection;
+        private boolean[] striped;
+        private UserSubAccount[] stripes;
+        private Long shortUserId;
+        /** 已入账时首次入账后的余额 */
+        private long[] replayed;
+        /** 同一批内ID相同的第一条请求 */
+        private Request original;
+
+        private Request(Posting posting) {
+            this.posting = posting;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.brewingmachine.service;
+
+import com.brewingmachine.area.AreaDictionary;
+import com.brewingmachine.area.AreaDictionaryWriter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * 地区字典服务
+ * 启动时打开地区字典二进制文件；配置了源CSV且二进制文件不存在或比CSV旧时，先重新生成。
+ * 重新加载时生成并打开新字典后整体替换，读取方不会看到半加载状态
+ */
+@Slf4j
+@Service
+public class AreaDictionaryService {
+
+    @Value("${area.dictionary.path:}")
+    private String dictionaryPath;
+
+    @Value("${area.dictionary.source-csv:}")
+    private String sourceCsv;
+
+    private volatile AreaDictionary dictionary;
+
+    private volatile long loadMillis;
+
+    private final List<Consumer<AreaDictionary>> reloadListeners = new CopyOnWriteArrayList<>();
+
+    @PostConstruct
+    public void init() {
+        if (dictionaryPath.isEmpty()) {
+            log.info("未配置地区字典文件，地区字典不可用");
+            return;
+        }
+        reload();
+    }
+
+    /**
+     * 重新加载地区字典（数据更新后调用）
+     */
+    public synchronized AreaDictionary reload() {
+        if (dictionaryPath.isEmpty()) {
+            throw new RuntimeException("未配置地区字典文件");
+        }
+        long start = System.currentTimeMillis();
+        Path target = Path.of(dictionaryPath);
+        try {
+            if (!sourceCsv.isEmpty()) {
+                Path csv = Path.of(sourceCsv);
+                if (!Files.exists(target) || Files.getLastModifiedTime(csv).compareTo(Files.getLastModifiedTime(target)) > 0) {
+                    int count = AreaDictionaryWriter.write(csv, target);
+                    log.info("地区字典已从CSV重新生成，地区数: {}", count);
+                }
+            }
+            AreaDictionary loaded = AreaDictionary.open(target);
+            dictionary = loaded;
+            loadMillis = System.currentTimeMillis() - start;
+            log.info("地区字典加载完成，地区数: {}，耗时: {}ms", loaded.size(), loadMillis);
+            for (Consumer<AreaDictionary> listener : reloadListeners) {
+                try {
+                    listener.accept(loaded);
+                } catch (Exception e) {
+                    log.error("地区字典重新加载通知失败", e);
+                }
+            }
+            return loaded;
+        } catch (IOException e) {
+            throw new RuntimeException("加载地区字典失败: " + dictionaryPath, e);
+        }
+    }
+
+    /**
+     * 登记字典加载后的回调（如重建搜索索引），已加载时立即回调一次
+     */
+    public void addReloadListener(Consumer<AreaDictionary> listener) {
+        reloadListeners.add(listener);
+        AreaDictionary current = dictionary;
+        if (current != null) {
+            listener.accept(current);
+        }
+    }
+
+    /**
+     * 当前地区字典
+     */
+    public AreaDictionary getDictionary() {
+        AreaDictionary current = dictionary;
+        if (current == null) {
+            throw new RuntimeException("地区字典未加载");
+        }
+        return current;
+    }
+
+    public boolean isLoaded() {
+        return dictionary != null;
+    }
+
+    /**
+     * 字典规模和加载耗时
+     */
+    public Map<String, Object> getMetrics() {
+        AreaDictionary current = dictionary;
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("loaded", current != null);
+        metrics.put("size", current != null ? current.size() : 0);
+        metrics.put("loadMs", loadMillis);
+        return metrics;
+    }
+}
@@ -1,12 +1,14 @@
 package com.brewingmachine.service;
 
-import com.brewingmachine.dto.WeChatLoginResultDTO;
+import com.brewingmachine.dto.TokenPrincipal;
 import com.brewingmachine.dto.WeChatUserInfoDTO;
 import com.brewingmachine.dto.response.UserInfoResponse;
+import com.brewingmachine.entity.AuthorizationSnapshot;
 import com.brewingmachine.entity.User;
 import com.brewingmachine.entity.UserAuth;
 import com.brewingmachine.entity.UserRole;
 import com.brewingmachine.entity.Role;
+import com.brewingmachine.ledger.AccountType;
 import com.brewingmachine.mapper.UserMapper;
 import com.brewingmachine.mapper.UserAuthMapper;
 import com.brewingmachine.mapper.UserRoleMapper;
@@ -15,8 +17,9 @@ import com.brewingmachine.service.TokenService;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
-import java.time.LocalDateTime;
+import java.math.BigDecimal;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 @Service
@@ -28,31 +31,42 @@ public class AuthService {
     private final RoleMapper roleMapper;
     private final WeChatLoginService weChatLoginService;
     private final TokenService tokenService;
+    private final AuthorizationService authorizationService;
+    private final LastLoginTimeWriter lastLoginTimeWriter;
+    private final UserInfoCache userInfoCache;
+    private final DownlineIndexService downlineIndexService;
+    private final AccountLedgerService accountLedgerService;
 
-    public AuthService(UserMapper userMapper, UserAuthMapper userAuthMapper, UserRoleMapper userRoleMapper, RoleMapper roleMapper, WeChatLoginService weChatLoginService, TokenService tokenService) {
+    public AuthService(UserMapper userMapper, UserAuthMapper userAuthMapper, UserRoleMapper userRoleMapper, RoleMapper roleMapper, WeChatLoginService weChatLoginService, TokenService tokenService, AuthorizationService authorizationService, LastLoginTimeWriter lastLoginTimeWriter, UserInfoCache userInfoCache, DownlineIndexService downlineIndexService, AccountLedgerService accountLedgerService) {
         this.userMapper = userMapper;
         this.userAuthMapper = userAuthMapper;
         this.userRoleMapper = userRoleMapper;
         this.roleMapper = roleMapper;
         this.weChatLoginService = weChatLoginService;
         this.tokenService = tokenService;
+        this.authorizationService = authorizationService;
+        this.lastLoginTimeWriter = lastLoginTimeWriter;
+        this.userInfoCache = userInfoCache;
+        this.downlineIndexService = downlineIndexService;
+        this.accountLedgerService = accountLedgerService;
     }
 
-    @Transactional
+    /**
+     * 微信登录：远程交互和落库由WeChatLoginService完成（落库为独立短事务），这里只签发一次token
+     */
     public UserInfoResponse loginByWeChat(String code) {
-        WeChatLoginResultDTO loginResult = weChatLoginService.handleCallback(code);
-        if (!loginResult.isSuccess()) {
-            throw new RuntimeException("微信登录失败：" + loginResult.getMessage());
+        if (code == null || code.isEmpty()) {
+            throw new RuntimeException("微信登录失败：授权失败：未获取到授权码");
         }
 
-        User user = userMapper.findById(loginResult.getUserId());
+        WeChatAccountService.WeChatAccount account = weChatLoginService.authenticate(code);
+        User user = account.getUser();
         if (user == null) {
             throw new RuntimeException("用户不存在");
         }
 
         String token = tokenService.generateToken(user.getId());
-        updateUserToken(user.getId(), token);
-        
+
         UserInfoResponse response = convertToUserInfoResponse(user);
         response.setToken(token);
         return response;
@@ -77,14 +91,8 @@ public class AuthService {
         return response;
     }
 
-    @Transactional
     public UserInfoResponse getUserInfo(Long userId) {
-        User user = userMapper.findById(userId);
-        if (user == null) {
-            throw new RuntimeException("用户不存在");
-        }
-
-        return convertToUserInfoResponse(user);
+        return userInfoCache.get(userId, this::loadUserInfo);
     }
 
     @Transactional
@@ -102,29 +110,23 @@ public class AuthService {
         }
 
         userMapper.update(user);
+        userInfoCache.evict(userId);
 
         return convertToUserInfoResponse(user);
     }
 
     public UserInfoResponse getUserInfoByToken(String token) {
-        // 使用TokenService验证JWT
-        if (!tokenService.validateToken(token)) {
-            throw new RuntimeException("token无效或已过期");
-        }
-        Long userId = tokenService.getUserIdFromToken(token);
-        User user = userMapper.findById(userId);
-        if (user == null) {
-            throw new RuntimeException("用户不存在");
-        }
-        return convertToUserInfoResponse(user);
+        Long userId = getUserIdByToken(token);
+        return userInfoCache.get(userId, this::loadUserInfo);
     }
 
     public Long getUserIdByToken(String token) {
-        // 使用TokenService验证JWT
-        if (!tokenService.validateToken(token)) {
+        // 使用TokenService验证JWT（单次解析，结果缓存）
+        TokenPrincipal principal = tokenService.verifyToken(token);
+        if (principal == null) {
             throw new RuntimeException("token无效或已过期");
         }
-        return tokenService.getUserIdFromToken(token);
+        return principal.getUserId();
     }
 
     @Transactional
@@ -147,6 +149,7 @@ public class AuthService {
 
         user.setPhone(phone);
         userMapper.update(user);
+        userInfoCache.evict(userId);
 
         return convertToUserInfoResponse(user);
     }
@@ -164,6 +167,7 @@ public class AuthService {
 
         user.setPassword(newPassword);
         userMapper.update(user);
+        userInfoCache.evict(userId);
     }
 
     @Transactional
@@ -182,69 +186,49 @@ public class AuthService {
             throw new RuntimeException("推荐人不存在");
         }
 
-        user.setParentUserId(referrerId);
-        userMapper.update(user);
+        // 加锁检查并维护推荐关系索引（推荐人不能是自己的下级）
+        downlineIndexService.attach(userId, referrerId);
+
+        User update = new User();
+        update.setId(userId);
+        update.setParentUserId(referrerId);
+        userMapper.update(update);
+        userInfoCache.evict(userId);
     }
 
     @Transactional
     public void updateUserRole(Long userId, String role) {
-        User user = userMapper.findById(userId);
-        if (user == null) {
-            throw new RuntimeException("用户不存在");
-        }
-
-        // 检查是否是代理商角色
-        if ("agent".equals(role)) {
-            // 检查用户是否已经有代理商角色
-            List<UserRole> userRoles = userRoleMapper.selectByUserId(userId);
-            for (UserRole userRole : userRoles) {
-                Role roleInfo = roleMapper.selectById(userRole.getRoleId());
-                if (roleInfo != null && "agent".equals(roleInfo.getRoleCode())) {
-                    throw new RuntimeException("用户已经是代理商角色，不能重复绑定");
-                }
-            }
-        }
-
-        // 保留原角色字段以兼容现有代码
-        user.setRole(role);
-        userMapper.update(user);
-        
-        // 如果是新角色，添加到用户角色关系表
-        Role roleInfo = roleMapper.selectByRoleCode(role);
-        if (roleInfo != null) {
-            UserRole existingUserRole = userRoleMapper.selectByUserIdAndRoleId(userId, roleInfo.getId());
-            if (existingUserRole == null) {
-                UserRole userRole = new UserRole();
-                userRole.setUserId(userId);
-                userRole.setRoleId(roleInfo.getId());
-                userRole.setStatus(1);
-                userRoleMapper.insert(userRole);
-            }
-        }
+        updateUserRoleAndHierarchy(userId, role, null);
     }
 
     @Transactional
     public void updateUserRoleAndHierarchy(Long userId, String role, String hierarchy) {
-        User user = userMapper.findById(userId);
-        if (user == null) {
+        updateUserRoleAndHierarchy(userId, role, hierarchy, null, null);
+    }
+
+    /**
+     * 更新用户角色和层级信息，regionCode/regionPath为所属地区编码及其编码路径（为null时不更新）
+     */
+    @Transactional
+    public void updateUserRoleAndHierarchy(Long userId, String role, String hierarchy, String regionCode, String regionPath) {
+        // 一次联表查询得到用户及其已启用的角色
+        AuthorizationSnapshot snapshot = userMapper.selectAuthorizationSnapshot(userId);
+        if (snapshot == null) {
             throw new RuntimeException("用户不存在");
         }
 
         // 检查是否是代理商角色
-        if ("agent".equals(role)) {
-            // 检查用户是否已经有代理商角色
-            List<UserRole> userRoles = userRoleMapper.selectByUserId(userId);
-            for (UserRole userRole : userRoles) {
-                Role roleInfo = roleMapper.selectById(userRole.getRoleId());
-                if (roleInfo != null && "agent".equals(roleInfo.getRoleCode())) {
-                    throw new RuntimeException("用户已经是代理商角色，不能重复绑定");
-                }
-            }
+        if ("agent".equals(role) && snapshot.hasRole("agent")) {
+            throw new RuntimeException("用户已经是代理商角色，不能重复绑定");
         }
 
-        // 保留原角色字段以兼容现有代码
+        // 保留原角色字段以兼容现有代码（hierarchy为null时不更新）
+        User user = new User();
+        user.setId(userId);
         user.setRole(role);
         user.setHierarchy(hierarchy);
+        user.setRegionCode(regionCode);
+        user.setRegionPath(regionPath);
         userMapper.update(user);
         
         // 如果是新角色，添加到用户角色关系表
@@ -257,8 +241,13 @@ public class AuthService {
                 userRole.setRoleId(roleInfo.getId());
                 userRole.setStatus(1);
                 userRoleMapper.insert(userRole);
+                if ("agent".equals(role)) {
+                    downlineIndexService.onAgentBound(userId);
+                }
             }
         }
+        authorizationService.invalidateUser(userId);
+        userInfoCache.evict(userId);
     }
 
 
@@ -273,8 +262,16 @@ public class AuthService {
 
     private void updateUserToken(Long userId, String token) {
         // JWT是无状态的，不需要在数据库中存储token
-        // 只需更新最后登录时间
-        userMapper.updateLastLoginTime(userId, LocalDateTime.now());
+        // 只需更新最后登录时间（延迟批量写入）
+        lastLoginTimeWriter.record(userId);
+    }
+
+    private UserInfoResponse loadUserInfo(Long userId) {
+        User user = userMapper.findById(userId);
+        if (user == null) {
+            throw new RuntimeException("用户不存在");
+        }
+        return convertToUserInfoResponse(user);
     }
 
     private UserInfoResponse convertToUserInfoResponse(User user) {
@@ -283,8 +280,11 @@ public class AuthService {
         response.setNickName(user.getNickname());
         response.setAvatar(user.getAvatar());
         response.setPhone(user.getPhone());
-        response.setBalance(user.getBalance() != null ? user.getBalance().doubleValue() : 0.0);
-        response.setIntegral(user.getPoints() != null ? user.getPoints() : 0L);
+        // 与余额接口相同，含热点账户未归集的子账户余额
+        Map<String, Long> balances = accountLedgerService.getBalances(user.getId());
+        response.setBalance(BigDecimal.valueOf(balances.get(AccountType.BALANCE.getCode()),
+                AccountType.BALANCE.getScale()).doubleValue());
+        response.setIntegral(balances.get(AccountType.POINTS.getCode()));
         response.setRole(user.getRole());
         return response;
     }
@@ -0,0 +1,330 @@
+package com.brewingmachine.service;
+
+import com.brewingmachine.annotation.RequiresPermission;
+import com.brewingmachine.annotation.RequiresRole;
+import com.brewingmachine.entity.AuthorizationSnapshot;
+import com.brewingmachine.entity.Permission;
+import com.brewingmachine.entity.Role;
+import com.brewingmachine.mapper.PermissionMapper;
+import com.brewingmachine.mapper.RoleMapper;
+import com.brewingmachine.mapper.UserMapper;
+import com.brewingmachine.util.TransactionUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.method.HandlerMethod;
+
+import java.lang.reflect.Method;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 权限判定服务
+ * 角色/权限编码编入位图索引，用户的有效角色和权限缓存为位图，判定时只做位运算，不访问数据库
+ * 用户授权信息通过一次联表查询（授权快照）加载
+ */
+@Slf4j
+@Service
+public class AuthorizationService {
+
+    private final UserMapper userMapper;
+    private final RoleMapper roleMapper;
+    private final PermissionMapper permissionMapper;
+
+    @Value("${auth.cache.max-users:10000}")
+    private int maxCachedUsers;
+
+    // 处理方法上的权限注解，每个方法只反射解析一次
+    private final Map<Method, HandlerRequirement> requirementCache = new ConcurrentHashMap<>();
+
+    // 用户有效角色/权限位图缓存，按最近访问顺序淘汰
+    private final Map<Long, UserGrant> grantCache = Collections.synchronizedMap(
+            new LinkedHashMap<Long, UserGrant>(256, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, UserGrant> eldest) {
+                    return size() > maxCachedUsers;
+                }
+            });
+
+    // 失效代数，每次失效递增；加载期间发生过失效的结果不写入缓存，避免旧授权被回填
+    private final AtomicLong generation = new AtomicLong();
+
+    private volatile AuthorizationIndex index;
+
+    public AuthorizationService(UserMapper userMapper, RoleMapper roleMapper, PermissionMapper permissionMapper) {
+        this.userMapper = userMapper;
+        this.roleMapper = roleMapper;
+        this.permissionMapper = permissionMapper;
+    }
+
+    /**
+     * 解析处理方法的权限要求，没有权限注解时返回null
+     */
+    public HandlerRequirement resolveRequirement(HandlerMethod handlerMethod) {
+        HandlerRequirement requirement = requirementCache.computeIfAbsent(handlerMethod.getMethod(), this::readRequirement);
+        return requirement.isEmpty() ? null : requirement;
+    }
+
+    /**
+     * 加载用户授权信息，用户不存在时返回null
+     */
+    public UserGrant getUserGrant(Long userId) {
+        long loadGeneration = generation.get();
+        AuthorizationIndex currentIndex = currentIndex();
+        UserGrant grant = grantCache.get(userId);
+        if (grant != null && grant.index == currentIndex) {
+            return grant;
+        }
+
+        AuthorizationSnapshot snapshot = userMapper.selectAuthorizationSnapshot(userId);
+        if (snapshot == null) {
+            return null;
+        }
+
+        BitSet roles = new BitSet();
+        for (Role role : snapshot.getRoles()) {
+            Integer roleBit = currentIndex.roleBitsById.get(role.getId());
+            if (roleBit != null) {
+                roles.set(roleBit);
+            }
+        }
+
+        BitSet permissions = new BitSet();
+        for (String permissionCode : snapshot.getPermissionCodes()) {
+            Integer permissionBit = currentIndex.permissionBits.get(permissionCode);
+            if (permissionBit != null) {
+                permissions.set(permissionBit);
+            }
+        }
+
+        UserGrant loaded = new UserGrant(currentIndex, roles, permissions);
+        // 失效先递增代数再删除缓存，这里在锁内比较代数，加载期间有失效时保留原值（已被或即将被删除）
+        grantCache.compute(userId, (key, existing) -> generation.get() == loadGeneration ? loaded : existing);
+        return loaded;
+    }
+
+    /**
+     * 判断用户是否拥有指定角色，用户不存在时返回false
+     */
+    public boolean hasRole(Long userId, String roleCode) {
+        UserGrant grant = userId != null ? getUserGrant(userId) : null;
+        if (grant == null) {
+            return false;
+        }
+        Integer bit = grant.index.roleBits.get(roleCode);
+        return bit != null && grant.roles.get(bit);
+    }
+
+    /**
+     * 判断用户是否满足角色要求
+     */
+    public boolean checkRole(UserGrant grant, HandlerRequirement requirement) {
+        if (requirement.requiredRoles == null) {
+            return true;
+        }
+        CompiledRequirement compiled = compile(requirement, grant.index);
+        if (compiled.matchAnyRole) {
+            return grant.roles.intersects(compiled.roleBits);
+        }
+        if (compiled.unknownRole) {
+            return false;
+        }
+        BitSet missing = (BitSet) compiled.roleBits.clone();
+        missing.andNot(grant.roles);
+        return missing.isEmpty();
+    }
+
+    /**
+     * 判断用户是否拥有功能权限
+     */
+    public boolean checkPermission(UserGrant grant, HandlerRequirement requirement) {
+        if (requirement.requiredPermission == null) {
+            return true;
+        }
+        CompiledRequirement compiled = compile(requirement, grant.index);
+        return compiled.permissionBit >= 0 && grant.permissions.get(compiled.permissionBit);
+    }
+
+    /**
+     * 角色或权限定义变更后调用，重建索引并清空所有用户缓存
+     */
+    public void invalidateAll() {
+        TransactionUtil.runAfterCommit(() -> {
+            generation.incrementAndGet();
+            // 与加载索引使用同一把锁：正在进行的加载发布后再清空，不会留下旧索引
+            synchronized (this) {
+                index = null;
+            }
+            grantCache.clear();
+            log.info("权限索引已失效，将在下次判定时重新加载");
+        });
+    }
+
+    /**
+     * 用户角色变更后调用，清除该用户的缓存
+     */
+    public void invalidateUser(Long userId) {
+        TransactionUtil.runAfterCommit(() -> {
+            generation.incrementAndGet();
+            grantCache.remove(userId);
+        });
+    }
+
+    private AuthorizationIndex currentIndex() {
+        AuthorizationIndex currentIndex = index;
+        if (currentIndex == null) {
+            synchronized (this) {
+                currentIndex = index;
+                if (currentIndex == null) {
+                    long loadGeneration = generation.get();
+                    currentIndex = loadIndex();
+                    // 加载期间发生过失效时读到的可能是变更前的数据，只用于本次判定，不发布
+                    if (generation.get() == loadGeneration) {
+                        index = currentIndex;
+                    }
+                }
+            }
+        }
+        return currentIndex;
+    }
+
+    private AuthorizationIndex loadIndex() {
+        List<Role> roles = roleMapper.selectAll();
+        Map<String, Integer> roleBits = new HashMap<>();
+        Map<Long, Integer> roleBitsById = new HashMap<>();
+        Map<String, Integer> permissionBits = new HashMap<>();
+
+        for (int i = 0; i < roles.size(); i++) {
+            Role role = roles.get(i);
+            roleBits.put(role.getRoleCode(), i);
+            roleBitsById.put(role.getId(), i);
+
+            List<Permission> permissions = permissionMapper.selectByRoleId(role.getId());
+            if (permissions != null) {
+                for (Permission permission : permissions) {
+                    permissionBits.computeIfAbsent(permission.getPermissionCode(), code -> permissionBits.size());
+                }
+            }
+        }
+
+        log.info("加载权限索引完成，角色数: {}, 权限数: {}", roleBits.size(), permissionBits.size());
+        return new AuthorizationIndex(roleBits, roleBitsById, permissionBits);
+    }
+
+    private HandlerRequirement readRequirement(Method method) {
+        RequiresRole requiresRole = method.getAnnotation(RequiresRole.class);
+        if (requiresRole == null) {
+            requiresRole = method.getDeclaringClass().getAnnotation(RequiresRole.class);
+        }
+
+        RequiresPermission requiresPermission = method.getAnnotation(RequiresPermission.class);
+        if (requiresPermission == null) {
+            requiresPermission = method.getDeclaringClass().getAnnotation(RequiresPermission.class);
+        }
+
+        return new HandlerRequirement(
+                requiresRole != null ? requiresRole.value() : null,
+                requiresRole == null || "or".equalsIgnoreCase(requiresRole.logical()),
+                requiresPermission != null ? requiresPermission.value() : null);
+    }
+
+    private CompiledRequirement compile(HandlerRequirement requirement, AuthorizationIndex currentIndex) {
+        CompiledRequirement compiled = requirement.compiled;
+        if (compiled != null && compiled.index == currentIndex) {
+            return compiled;
+        }
+
+        BitSet roleBits = new BitSet();
+        boolean unknownRole = false;
+        if (requirement.requiredRoles != null) {
+            for (String roleCode : requirement.requiredRoles) {
+                Integer bit = currentIndex.roleBits.get(roleCode);
+                if (bit != null) {
+                    roleBits.set(bit);
+                } else {
+                    unknownRole = true;
+                }
+            }
+        }
+
+        int permissionBit = -1;
+        if (requirement.requiredPermission != null) {
+            Integer bit = currentIndex.permissionBits.get(requirement.requiredPermission);
+            permissionBit = bit != null ? bit : -1;
+        }
+
+        compiled = new CompiledRequirement(currentIndex, roleBits, requirement.matchAnyRole, unknownRole, permissionBit);
+        requirement.compiled = compiled;
+        return compiled;
+    }
+
+    /**
+     * 处理方法的权限要求（注解元数据）
+     */
+    public static final class HandlerRequirement {
+        private final String[] requiredRoles;
+        private final boolean matchAnyRole;
+        private final String requiredPermission;
+        private volatile CompiledRequirement compiled;
+
+        private HandlerRequirement(String[] requiredRoles, boolean matchAnyRole, String requiredPermission) {
+            this.requiredRoles = requiredRoles;
+            this.matchAnyRole = matchAnyRole;
+            this.requiredPermission = requiredPermission;
+        }
+
+        private boolean isEmpty() {
+            return requiredRoles == null && requiredPermission == null;
+        }
+    }
+
+    /**
+     * 用户的有效角色和权限位图
+     */
+    public static final class UserGrant {
+        private final AuthorizationIndex index;
+        private final BitSet roles;
+        private final BitSet permissions;
+
+        private UserGrant(AuthorizationIndex index, BitSet roles, BitSet permissions) {
+            this.index = index;
+            this.roles = roles;
+            this.permissions = permissions;
+        }
+    }
+
+    private static final class CompiledRequirement {
+        private final AuthorizationIndex index;
+        private final BitSet roleBits;
+        private final boolean matchAnyRole;
+        private final boolean unknownRole;
+        private final int permissionBit;
+
+        private CompiledRequirement(AuthorizationIndex index, BitSet roleBits, boolean matchAnyRole, boolean unknownRole, int permissionBit) {
+            this.index = index;
+            this.roleBits = roleBits;
+            this.matchAnyRole = matchAnyRole;
+            this.unknownRole = unknownRole;
+            this.permissionBit = permissionBit;
+        }
+    }
+
+    private static final class AuthorizationIndex {
+        private final Map<String, Integer> roleBits;
+        private final Map<Long, Integer> roleBitsById;
+        private final Map<String, Integer> permissionBits;
+
+        private AuthorizationIndex(Map<String, Integer> roleBits, Map<Long, Integer> roleBitsById,
+                                   Map<String, Integer> permissionBits) {
+            this.roleBits = roleBits;
+            this.roleBitsById = roleBitsById;
+            this.permissionBits = permissionBits;
+        }
+    }
+}
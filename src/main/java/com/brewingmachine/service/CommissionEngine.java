@@ -0,0 +1,498 @@
+package com.brewingmachine.service;
+
+import com.brewingmachine.commission.CommissionOrder;
+import com.brewingmachine.commission.CommissionParty;
+import com.brewingmachine.commission.CommissionSplit;
+import com.brewingmachine.commission.SplitPlan;
+import com.brewingmachine.entity.CommissionChainItem;
+import com.brewingmachine.entity.User;
+import com.brewingmachine.ledger.AccountType;
+import com.brewingmachine.ledger.Posting;
+import com.brewingmachine.mapper.CommissionChainMapper;
+import com.brewingmachine.util.TransactionUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 分成引擎
+ * 把设备或门店的分成链配置（机主、供应商、推广员、业务员、运营方、省市区社区代理等）编译为扁平的分成计划并缓存，
+ * 订单按计划以整数（分）逐级分账：每级按实付金额或剩余金额的比例向下取整，最后一级取剩余金额。
+ * 代理链按推荐关系闭包表从最上级代理商展开，每级取自己的分成比例。批量分账时先按范围取好计划，
+ * 再把订单分段交给分账线程并行计算，分账结果按订单提交记账：从分账出款账户扣除订单实付金额，
+ * 各收款用户的余额与累计分成同时入账。分账出款账户是清算账户，订单实付款不经记账服务进入该账户，
+ * 其扣款分录允许透支，余额为负数表示累计分出的金额；记账请求分块提交，每块入账后再提交下一块，不超出记账队列容量。
+ * 计划缓存按最近访问顺序淘汰并按有效期过期，未配置分成链的范围也缓存一段较短的时间；
+ * 条目写入时校验失效代数，编译期间分成链被修改时不回填旧计划
+ */
+@Slf4j
+@Service
+public class CommissionEngine {
+
+    public static final String SCOPE_MACHINE = "machine";
+    public static final String SCOPE_STORE = "store";
+
+    private static final String BASE_TOTAL = "total";
+    private static final String BASE_REMAINING = "remaining";
+
+    public static final String POSTING_TYPE = "commission";
+
+    private static final int MAX_ERROR_SAMPLES = 20;
+
+    private final CommissionChainMapper commissionChainMapper;
+    private final AccountLedgerService accountLedgerService;
+
+    @Value("${commission.plan-cache-size:10000}")
+    private int planCacheSize;
+
+    @Value("${commission.plan-ttl-ms:300000}")
+    private long planTtlMillis;
+
+    @Value("${commission.plan-negative-ttl-ms:30000}")
+    private long planNegativeTtlMillis;
+
+    @Value("${commission.clearing-user-id:0}")
+    private long clearingUserId;
+
+    @Value("${commission.parallelism:4}")
+    private int parallelism;
+
+    @Value("${commission.parallel-threshold:2000}")
+    private int parallelThreshold;
+
+    @Value("${commission.max-batch:50000}")
+    private int maxBatch;
+
+    @Value("${commission.max-chain-length:32}")
+    private int maxChainLength;
+
+    @Value("${commission.post-chunk-size:2000}")
+    private int postChunkSize;
+
+    /**
+     * 范围（scopeType:scopeId） -> 分成计划，访问顺序，在plans锁内读写
+     */
+    private final LinkedHashMap<String, PlanEntry> plans = new LinkedHashMap<String, PlanEntry>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, PlanEntry> eldest) {
+            return size() > planCacheSize;
+        }
+    };
+
+    // 失效代数，每次失效递增；编译期间发生过失效的计划不写入缓存
+    private final AtomicLong generation = new AtomicLong();
+
+    private ExecutorService executor;
+
+    private final AtomicLong compiledCount = new AtomicLong();
+    private final AtomicLong planHitCount = new AtomicLong();
+    private final AtomicLong planMissCount = new AtomicLong();
+    private final AtomicLong splitCount = new AtomicLong();
+    private final AtomicLong distributedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong duplicatedCount = new AtomicLong();
+    private volatile long lastBatchSize;
+    private volatile long lastBatchNanos;
+
+    public CommissionEngine(CommissionChainMapper commissionChainMapper, AccountLedgerService accountLedgerService) {
+        this.commissionChainMapper = commissionChainMapper;
+        this.accountLedgerService = accountLedgerService;
+    }
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        executor = new ThreadPoolExecutor(parallelism, parallelism, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "commission-split-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 设备或门店的分成计划，缓存超过有效期（分成比例、代理关系变化后最迟在有效期后生效）时重新编译；
+     * 未配置分成链时抛出异常，该结果在较短的有效期内同样缓存
+     */
+    public SplitPlan getPlan(String scopeType, String scopeId) {
+        String key = scopeKey(scopeType, scopeId);
+        long now = System.currentTimeMillis();
+        synchronized (plans) {
+            PlanEntry entry = plans.get(key);
+            if (entry != null && entry.expireAt > now) {
+                planHitCount.incrementAndGet();
+                return entry.get();
+            }
+        }
+        planMissCount.incrementAndGet();
+
+        long loadGeneration = generation.get();
+        checkScope(scopeType, scopeId);
+        List<CommissionChainItem> items = commissionChainMapper.selectChain(scopeType, scopeId);
+        PlanEntry entry = items.isEmpty()
+                ? new PlanEntry(key, null, now + planNegativeTtlMillis)
+                : new PlanEntry(key, compile(scopeType, scopeId, items), now + planTtlMillis);
+        synchronized (plans) {
+            // 失效在锁内递增代数，这里比较后写入，编译期间有失效时不回填
+            if (generation.get() == loadGeneration) {
+                plans.put(key, entry);
+            }
+        }
+        return entry.get();
+    }
+
+    /**
+     * 替换设备或门店的分成链，按列表顺序分成；提交后清除该范围缓存的计划
+     */
+    @Transactional
+    public SplitPlan saveChain(String scopeType, String scopeId, List<CommissionChainItem> items) {
+        checkScope(scopeType, scopeId);
+        if (items == null || items.isEmpty()) {
+            throw new RuntimeException("分成链不能为空");
+        }
+        for (int i = 0; i < items.size(); i++) {
+            CommissionChainItem item = items.get(i);
+            if (CommissionParty.of(item.getParty()) == null) {
+                throw new RuntimeException("分成方不正确: " + item.getParty());
+            }
+            if (item.getUserId() == null) {
+                throw new RuntimeException("分成用户不能为空");
+            }
+            if (item.getBase() == null || item.getBase().isEmpty()) {
+                item.setBase(BASE_REMAINING);
+            } else if (!BASE_TOTAL.equals(item.getBase()) && !BASE_REMAINING.equals(item.getBase())) {
+                throw new RuntimeException("计算基数不正确: " + item.getBase());
+            }
+            item.setScopeType(scopeType);
+            item.setScopeId(scopeId);
+            item.setSeq(i + 1);
+        }
+        commissionChainMapper.deleteChain(scopeType, scopeId);
+        commissionChainMapper.insertChain(items);
+        // 按新配置编译一次，配置不合法时整体回滚
+        SplitPlan plan = compile(scopeType, scopeId, commissionChainMapper.selectChain(scopeType, scopeId));
+        String key = scopeKey(scopeType, scopeId);
+        TransactionUtil.runAfterCommit(() -> {
+            synchronized (plans) {
+                generation.incrementAndGet();
+                plans.remove(key);
+            }
+        });
+        return plan;
+    }
+
+    /**
+     * 一笔订单的分账结果（只计算，不记账）
+     */
+    public CommissionSplit split(CommissionOrder order) {
+        checkOrder(order);
+        splitCount.incrementAndGet();
+        return CommissionSplit.of(order, getPlan(order.getScopeType(), order.getScopeId()));
+    }
+
+    /**
+     * 批量分账（只计算，不记账），结果与订单顺序一致；计划缺失或订单不合法的订单单独返回错误
+     */
+    public List<CommissionSplit> splitAll(List<CommissionOrder> orders) {
+        if (orders.size() > maxBatch) {
+            throw new RuntimeException("单批订单数不能超过" + maxBatch);
+        }
+        long start = System.nanoTime();
+
+        // 每个范围只取一次计划，分账线程只读计划
+        Map<String, SplitPlan> batchPlans = new HashMap<>();
+        Map<String, String> planErrors = new HashMap<>();
+        for (CommissionOrder order : orders) {
+            String key = scopeKey(order.getScopeType(), order.getScopeId());
+            if (batchPlans.containsKey(key) || planErrors.containsKey(key)) {
+                continue;
+            }
+            try {
+                batchPlans.put(key, getPlan(order.getScopeType(), order.getScopeId()));
+            } catch (Exception e) {
+                planErrors.put(key, e.getMessage());
+            }
+        }
+
+        CommissionSplit[] results = new CommissionSplit[orders.size()];
+        if (orders.size() < parallelThreshold) {
+            splitRange(orders, 0, orders.size(), batchPlans, planErrors, results);
+        } else {
+            int chunk = (orders.size() + parallelism - 1) / parallelism;
+            List<CompletableFuture<Void>> futures = new ArrayList<>(parallelism);
+            for (int from = 0; from < orders.size(); from += chunk) {
+                int begin = from;
+                int end = Math.min(from + chunk, orders.size());
+                futures.add(CompletableFuture.runAsync(
+                        () -> splitRange(orders, begin, end, batchPlans, planErrors, results), executor));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        }
+
+        splitCount.addAndGet(orders.size());
+        lastBatchSize = orders.size();
+        lastBatchNanos = System.nanoTime() - start;
+        List<CommissionSplit> splits = new ArrayList<>(results.length);
+        for (CommissionSplit result : results) {
+            splits.add(result);
+        }
+        return splits;
+    }
+
+    private static void splitRange(List<CommissionOrder> orders, int from, int to, Map<String, SplitPlan> batchPlans,
+                                   Map<String, String> planErrors, CommissionSplit[] results) {
+        for (int i = from; i < to; i++) {
+            CommissionOrder order = orders.get(i);
+            String key = scopeKey(order.getScopeType(), order.getScopeId());
+            SplitPlan plan = batchPlans.get(key);
+            if (plan == null) {
+                results[i] = CommissionSplit.failed(order, planErrors.get(key));
+            } else if (order.getAmount() < 0) {
+                results[i] = CommissionSplit.failed(order, "分账金额不能为负");
+            } else {
+                results[i] = CommissionSplit.of(order, plan);
+            }
+        }
+    }
+
+    /**
+     * 批量分账并记账：每笔订单一个记账请求，从分账出款账户扣除实付金额，各收款用户的余额和累计分成同时入账，
+     * 流水关联订单号；返回入账/重复/失败订单数及部分失败原因。
+     * 记账请求ID由订单号生成，同一订单重复提交（如超时后重试）只入账一次，同一批内重复的订单号只处理第一条
+     */
+    public Map<String, Object> distribute(List<CommissionOrder> orders) {
+        if (clearingUserId <= 0) {
+            throw new RuntimeException("未配置分账出款账户");
+        }
+        List<CommissionSplit> splits = splitAll(orders);
+        List<String> errors = new ArrayList<>();
+        int failed = 0;
+        int duplicated = 0;
+        Set<String> seen = new HashSet<>();
+        List<Posting> postings = new ArrayList<>(splits.size());
+        for (CommissionSplit split : splits) {
+            if (!seen.add(split.getOrder().getOrderId())) {
+                duplicated++;
+                continue;
+            }
+            if (!split.isSuccess()) {
+                failed++;
+                addError(errors, split.getOrder().getOrderId(), split.getError());
+                continue;
+            }
+            try {
+                Posting posting = toPosting(split);
+                if (posting.getLegs().isEmpty()) {
+                    continue;
+                }
+                postings.add(posting);
+            } catch (Exception e) {
+                failed++;
+                addError(errors, split.getOrder().getOrderId(), e.getMessage());
+            }
+        }
+
+        // 一次全部入队会超出记账队列容量，分块提交并等待每块入账
+        int distributed = 0;
+        for (int from = 0; from < postings.size(); from += postChunkSize) {
+            int to = Math.min(from + postChunkSize, postings.size());
+            List<CompletableFuture<long[]>> futures = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                try {
+                    futures.add(accountLedgerService.submit(postings.get(i)));
+                } catch (Exception e) {
+                    futures.add(CompletableFuture.failedFuture(e));
+                }
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    futures.get(i).join();
+                    distributed++;
+                } catch (Exception e) {
+                    failed++;
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    addError(errors, postings.get(from + i).getOrderId(), cause.getMessage());
+                }
+            }
+        }
+        distributedCount.addAndGet(distributed);
+        failedCount.addAndGet(failed);
+        duplicatedCount.addAndGet(duplicated);
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("total", orders.size());
+        result.put("distributed", distributed);
+        result.put("duplicated", duplicated);
+        result.put("failed", failed);
+        result.put("errors", errors);
+        return result;
+    }
+
+    /**
+     * 分成引擎指标：缓存的计划数、计划缓存命中/未命中数、累计编译/分账/入账/重复/失败数、最近一批订单数和耗时
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        synchronized (plans) {
+            metrics.put("cachedPlans", plans.size());
+        }
+        metrics.put("planHits", planHitCount.get());
+        metrics.put("planMisses", planMissCount.get());
+        metrics.put("compiled", compiledCount.get());
+        metrics.put("split", splitCount.get());
+        metrics.put("distributed", distributedCount.get());
+        metrics.put("failed", failedCount.get());
+        metrics.put("duplicated", duplicatedCount.get());
+        metrics.put("lastBatchSize", lastBatchSize);
+        metrics.put("lastBatchMicros", lastBatchNanos / 1000);
+        return metrics;
+    }
+
+    private SplitPlan compile(String scopeType, String scopeId, List<CommissionChainItem> items) {
+        if (items.isEmpty()) {
+            throw new RuntimeException("未配置分成链: " + scopeKey(scopeType, scopeId));
+        }
+        Set<Long> userIds = new HashSet<>();
+        for (CommissionChainItem item : items) {
+            userIds.add(item.getUserId());
+        }
+        Map<Long, User> users = new HashMap<>();
+        for (User user : commissionChainMapper.selectUsers(userIds)) {
+            users.put(user.getId(), user);
+        }
+
+        List<SplitPlan.Step> steps = new ArrayList<>();
+        int totalRate = 0;
+        for (CommissionChainItem item : items) {
+            CommissionParty party = CommissionParty.of(item.getParty());
+            User user = users.get(item.getUserId());
+            if (party == null) {
+                throw new RuntimeException("分成方不正确: " + item.getParty());
+            }
+            if (user == null) {
+                throw new RuntimeException("分成用户不存在: " + item.getUserId());
+            }
+            boolean ofTotal = BASE_TOTAL.equals(item.getBase());
+            if (party == CommissionParty.AGENT_CHAIN) {
+                for (User agent : commissionChainMapper.selectAgentChain(user.getId())) {
+                    steps.add(new SplitPlan.Step(agent.getId(), CommissionParty.ofAgentLevel(agent.getAgentLevel()),
+                            toRate(agent.getCommissionRate()), ofTotal));
+                    totalRate += ofTotal ? toRate(agent.getCommissionRate()) : 0;
+                }
+                continue;
+            }
+            if (party == CommissionParty.AGENT) {
+                party = CommissionParty.ofAgentLevel(user.getAgentLevel());
+            }
+            int rate = toRate(item.getRate() != null ? item.getRate() : user.getCommissionRate());
+            steps.add(new SplitPlan.Step(user.getId(), party, rate, ofTotal));
+            totalRate += ofTotal ? rate : 0;
+        }
+        if (steps.size() > maxChainLength) {
+            throw new RuntimeException("分成链超过" + maxChainLength + "级");
+        }
+        if (totalRate > SplitPlan.RATE_SCALE) {
+            throw new RuntimeException("按实付金额分成的比例之和超过100%");
+        }
+        compiledCount.incrementAndGet();
+        return new SplitPlan(scopeKey(scopeType, scopeId), steps);
+    }
+
+    private Posting toPosting(CommissionSplit split) {
+        SplitPlan plan = split.getPlan();
+        String orderId = split.getOrder().getOrderId();
+        Posting posting = new Posting(POSTING_TYPE + ":" + orderId, POSTING_TYPE, orderId, "订单分成");
+        // 出款账户为清算账户，允许透支，不必预先充值
+        posting.addOverdraft(clearingUserId, AccountType.BALANCE, -split.getOrder().getAmount());
+        for (int i = 0; i < plan.size(); i++) {
+            long share = split.getShare(i);
+            posting.add(plan.getUserId(i), AccountType.BALANCE, share)
+                    .add(plan.getUserId(i), AccountType.TOTAL_COMMISSION, share);
+        }
+        return posting;
+    }
+
+    /**
+     * 百分比换算为万分比，未设置按0
+     */
+    private static int toRate(BigDecimal percent) {
+        if (percent == null) {
+            return 0;
+        }
+        int rate = percent.movePointRight(2).setScale(0, RoundingMode.HALF_UP).intValue();
+        if (rate < 0 || rate > SplitPlan.RATE_SCALE) {
+            throw new RuntimeException("分成比例超出范围: " + percent);
+        }
+        return rate;
+    }
+
+    private static void checkScope(String scopeType, String scopeId) {
+        if (!SCOPE_MACHINE.equals(scopeType) && !SCOPE_STORE.equals(scopeType)) {
+            throw new RuntimeException("分成范围类型不正确: " + scopeType);
+        }
+        if (scopeId == null || scopeId.isEmpty()) {
+            throw new RuntimeException("设备编号或门店ID不能为空");
+        }
+    }
+
+    private static void checkOrder(CommissionOrder order) {
+        if (order.getAmount() < 0) {
+            throw new RuntimeException("分账金额不能为负");
+        }
+    }
+
+    private static void addError(List<String> errors, String orderId, String error) {
+        if (errors.size() < MAX_ERROR_SAMPLES) {
+            errors.add(orderId + ": " + error);
+        }
+    }
+
+    private static String scopeKey(String scopeType, String scopeId) {
+        return scopeType + ":" + scopeId;
+    }
+
+    private static final class PlanEntry {
+        private final String key;
+        // null表示该范围未配置分成链
+        private final SplitPlan plan;
+        private final long expireAt;
+
+        private PlanEntry(String key, SplitPlan plan, long expireAt) {
+            this.key = key;
+            this.plan = plan;
+            this.expireAt = expireAt;
+        }
+
+        private SplitPlan get() {
+            if (plan == null) {
+                throw new RuntimeException("未配置分成链: " + key);
+            }
+            return plan;
+        }
+    }
+}
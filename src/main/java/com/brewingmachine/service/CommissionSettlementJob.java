@@ -0,0 +1,601 @@
+package com.brewingmachine.service;
+
+import com.brewingmachine.commission.LongLongMap;
+import com.brewingmachine.entity.CommissionSettlement;
+import com.brewingmachine.entity.CommissionSettlementRun;
+import com.brewingmachine.entity.User;
+import com.brewingmachine.entity.UserAccountRecord;
+import com.brewingmachine.ledger.AccountType;
+import com.brewingmachine.mapper.CommissionSettlementMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cursor.Cursor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 分成日结任务
+ * 按流水ID顺序分段流式读取一天的分成流水（每段一次游标查询），段内按订单号归并，每笔订单只结算一次：
+ * 订单实付金额取出款分录的金额（早期没有出款分录的流水取各收款用户分得金额之和），按收款用户ID把分录分到若干分区，
+ * 由ForkJoinPool并行累加各分区的日结果（分成订单数、营业额、本人分成，以及沿上级链累加的团队分成），
+ * 各分区的团队分成在合并时相加，累加全部使用以用户ID为键的基本类型哈希表。
+ * 每段结果与断点（已结算到的流水ID）在同一事务中批量累加写入，中断后从断点继续，不会重复累加。
+ * 全天结算完成后按日结果重新汇总月、年结果并更新user.total_turnover。
+ * 通过数据库租约保证同一时刻只有一个节点执行
+ */
+@Slf4j
+@Component
+public class CommissionSettlementJob {
+
+    private static final String LEASE_NAME = "commission_settlement";
+
+    private static final String STATUS_RUNNING = "running";
+    private static final String STATUS_DONE = "done";
+
+    private static final String PERIOD_DAY = "day";
+    private static final String PERIOD_MONTH = "month";
+    private static final String PERIOD_YEAR = "year";
+
+    private final CommissionSettlementMapper commissionSettlementMapper;
+    private final JobLeaseService jobLeaseService;
+    private final AuthorizationService authorizationService;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate readOnlyTransactionTemplate;
+
+    @Value("${commission.settlement.segment-rows:200000}")
+    private int segmentRows;
+
+    @Value("${commission.settlement.upsert-batch-size:1000}")
+    private int upsertBatchSize;
+
+    @Value("${commission.settlement.parallelism:0}")
+    private int parallelism;
+
+    @Value("${commission.settlement.slack-minutes:10}")
+    private long slackMinutes;
+
+    @Value("${commission.settlement.max-depth:64}")
+    private int maxDepth;
+
+    @Value("${commission.settlement.lease-seconds:600}")
+    private long leaseSeconds;
+
+    private ForkJoinPool pool;
+
+    private int partitions;
+
+    private ExecutorService executor;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile LocalDate lastSettleDate;
+    private volatile long lastRecords;
+    private volatile long lastOrders;
+    private volatile long lastRows;
+    private volatile long lastSegments;
+    private volatile long lastRunMillis;
+    private volatile LocalDateTime lastRunTime;
+    private volatile String lastError;
+
+    public CommissionSettlementJob(CommissionSettlementMapper commissionSettlementMapper,
+                                   JobLeaseService jobLeaseService, AuthorizationService authorizationService,
+                                   PlatformTransactionManager transactionManager) {
+        this.commissionSettlementMapper = commissionSettlementMapper;
+        this.jobLeaseService = jobLeaseService;
+        this.authorizationService = authorizationService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.readOnlyTransactionTemplate.setReadOnly(true);
+    }
+
+    @PostConstruct
+    public void init() {
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        pool = new ForkJoinPool(threads);
+        // 每个线程分到多个分区，收款用户的流水数不均时仍能均衡；分区数取2的幂
+        partitions = Integer.highestOneBit(threads * 4 - 1) << 1;
+        // 同一时刻只运行一轮，运行中再次触发直接忽略
+        executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new SynchronousQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "commission-settlement");
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+        pool.shutdownNow();
+    }
+
+    /**
+     * 每天结算前一天
+     */
+    @Scheduled(cron = "${commission.settlement.cron:0 30 2 * * ?}")
+    public void settleYesterday() {
+        start(LocalDate.now().minusDays(1), false);
+    }
+
+    /**
+     * 在后台结算指定日期，已在运行时返回false。已完成的日期默认跳过，force为true时清除该日结果后重新结算
+     */
+    public boolean start(LocalDate date, boolean force) {
+        if (!LocalDateTime.now().isAfter(date.plusDays(1).atStartOfDay().plusMinutes(slackMinutes))) {
+            throw new RuntimeException("只能结算已结束" + slackMinutes + "分钟以上的日期");
+        }
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        executor.execute(() -> settle(date, force));
+        return true;
+    }
+
+    /**
+     * 用户的分成结算明细，periodType为day/month/year，from、to为对应格式的周期（含）。
+     * userId为空时查当前用户，只有管理员可以查看其他用户
+     */
+    public List<CommissionSettlement> getSettlements(Long currentUserId, Long userId, String periodType,
+                                                     String from, String to) {
+        Long targetUserId = userId != null ? userId : currentUserId;
+        if (targetUserId == null
+                || !targetUserId.equals(currentUserId) && !authorizationService.hasRole(currentUserId, "admin")) {
+            throw new RuntimeException("只能查看自己的分成结算");
+        }
+        if (!PERIOD_DAY.equals(periodType) && !PERIOD_MONTH.equals(periodType) && !PERIOD_YEAR.equals(periodType)) {
+            throw new RuntimeException("周期类型不正确: " + periodType);
+        }
+        return commissionSettlementMapper.selectSettlements(targetUserId, periodType, from, to);
+    }
+
+    /**
+     * 在当前线程结算，由start提交到后台执行
+     */
+    void settle(LocalDate date, boolean force) {
+        if (!jobLeaseService.tryAcquire(LEASE_NAME, leaseSeconds)) {
+            running.set(false);
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        long records = 0;
+        long orders = 0;
+        long rows = 0;
+        long segments = 0;
+        String error = null;
+        try {
+            CommissionSettlementRun run = prepare(date, force);
+            if (STATUS_DONE.equals(run.getStatus())) {
+                log.info("分成日结已完成，跳过: {}", date);
+                return;
+            }
+
+            LongLongMap parents = loadParents();
+            LocalDateTime from = date.atStartOfDay();
+            LocalDateTime to = from.plusDays(1);
+            long afterId = run.getLastRecordId();
+            while (!Thread.currentThread().isInterrupted()) {
+                Segment segment = readSegment(afterId, run.getMaxRecordId(), from, to);
+                if (segment.orders > 0) {
+                    Totals totals = pool.invoke(new PartitionTask(segment.partitions, 0, partitions, parents));
+                    List<CommissionSettlement> settlements = totals.toSettlements(date.toString());
+                    write(date, settlements, afterId, segment.lastRecordId, segment.orders);
+                    rows += settlements.size();
+                }
+                records += segment.records;
+                orders += segment.orders;
+                segments++;
+                afterId = segment.lastRecordId;
+
+                if (segment.done) {
+                    finish(date);
+                    break;
+                }
+                if (!jobLeaseService.tryAcquire(LEASE_NAME, leaseSeconds)) {
+                    log.warn("分成日结租约已被其他节点接管，停止本轮结算");
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            error = e.getMessage();
+            log.error("分成日结失败: {}", date, e);
+        } finally {
+            jobLeaseService.release(LEASE_NAME);
+            lastSettleDate = date;
+            lastRecords = records;
+            lastOrders = orders;
+            lastRows = rows;
+            lastSegments = segments;
+            lastRunMillis = System.currentTimeMillis() - start;
+            lastRunTime = LocalDateTime.now();
+            lastError = error;
+            running.set(false);
+        }
+        log.info("分成日结结束: {}, 流水: {}, 订单: {}, 写入: {}, 分段: {}, 耗时: {}ms",
+                date, records, orders, rows, segments, lastRunMillis);
+    }
+
+    /**
+     * 取日结进度，不存在时按创建时间确定本日流水的ID范围（前后各留出slack-minutes，按创建时间过滤）
+     */
+    private CommissionSettlementRun prepare(LocalDate date, boolean force) {
+        return transactionTemplate.execute(status -> {
+            if (force) {
+                commissionSettlementMapper.deleteDaySettlements(date.toString());
+                commissionSettlementMapper.deleteRun(date);
+            }
+            CommissionSettlementRun run = commissionSettlementMapper.selectRun(date);
+            if (run != null) {
+                return run;
+            }
+            LocalDateTime from = date.atStartOfDay();
+            Long firstId = commissionSettlementMapper.selectFirstRecordIdSince(from.minusMinutes(slackMinutes));
+            Long endId = commissionSettlementMapper.selectFirstRecordIdSince(from.plusDays(1).plusMinutes(slackMinutes));
+            Long maxId = endId != null ? Long.valueOf(endId - 1) : commissionSettlementMapper.selectMaxRecordId();
+
+            run = new CommissionSettlementRun();
+            run.setSettleDate(date);
+            run.setStatus(STATUS_RUNNING);
+            run.setLastRecordId(firstId != null ? firstId - 1 : 0L);
+            run.setMaxRecordId(maxId != null ? maxId : 0L);
+            run.setOrderCount(0L);
+            commissionSettlementMapper.insertRun(run);
+            return commissionSettlementMapper.selectRun(date);
+        });
+    }
+
+    /**
+     * 全部有上级的用户的上级关系，用于沿上级链累加团队分成
+     */
+    private LongLongMap loadParents() {
+        return readOnlyTransactionTemplate.execute(status -> {
+            LongLongMap parents = new LongLongMap();
+            try (Cursor<User> cursor = commissionSettlementMapper.streamParents()) {
+                for (User user : cursor) {
+                    parents.put(user.getId(), user.getParentUserId());
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("读取推荐关系失败", e);
+            }
+            return parents;
+        });
+    }
+
+    /**
+     * 读取一段流水，按订单号归并后分配到各分区（同一订单的流水ID不要求连续）。
+     * 段满时在不截断订单的位置断开，断点之后的流水留到下一段重新读取
+     */
+    private Segment readSegment(long afterId, long maxId, LocalDateTime from, LocalDateTime to) {
+        return readOnlyTransactionTemplate.execute(status -> {
+            Map<String, OrderBuffer> orders = new LinkedHashMap<>();
+            long records = 0;
+            long lastReadId = afterId;
+            try (Cursor<UserAccountRecord> cursor = commissionSettlementMapper.streamCommissionRecords(
+                    CommissionEngine.POSTING_TYPE, afterId, maxId, from, to, segmentRows)) {
+                for (UserAccountRecord record : cursor) {
+                    records++;
+                    lastReadId = record.getId();
+                    String orderId = record.getOrderId() != null ? record.getOrderId() : "#" + record.getId();
+                    orders.computeIfAbsent(orderId, key -> new OrderBuffer()).add(record);
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("读取分成流水失败", e);
+            }
+
+            Segment segment = new Segment(partitions);
+            segment.done = records < segmentRows;
+            long cut = segment.done ? lastReadId : cutOff(orders.values(), lastReadId);
+            if (cut <= afterId) {
+                // 整段都属于未读完的订单（单笔订单的流水超过一段），只能按已读到的结算
+                log.warn("分成流水一段内没有完整的订单，按已读到的流水结算: {} - {}", afterId, lastReadId);
+                cut = lastReadId;
+            }
+            for (OrderBuffer order : orders.values()) {
+                if (order.lastRecordId <= cut) {
+                    segment.add(order);
+                }
+            }
+            segment.lastRecordId = cut;
+            return segment;
+        });
+    }
+
+    /**
+     * 段满时的断点：不超过段内最后一条流水，早于所有未读完订单的第一条流水，且不落在任何订单的流水之间
+     */
+    private static long cutOff(Collection<OrderBuffer> orders, long lastReadId) {
+        long cut = lastReadId;
+        for (OrderBuffer order : orders) {
+            if (!order.isComplete(lastReadId)) {
+                cut = Math.min(cut, order.firstRecordId - 1);
+            }
+        }
+        // 断点前移后可能又落在其他订单的流水之间，继续前移直到不再跨越订单
+        boolean moved = true;
+        while (moved) {
+            moved = false;
+            for (OrderBuffer order : orders) {
+                if (order.firstRecordId <= cut && order.lastRecordId > cut) {
+                    cut = order.firstRecordId - 1;
+                    moved = true;
+                }
+            }
+        }
+        return cut;
+    }
+
+    /**
+     * 一段的日结果与断点在同一事务中写入。断点已不是本段的起点时说明租约过期期间其他节点结算过这一段，
+     * 整段回滚并停止，避免重复累加
+     */
+    private void write(LocalDate date, List<CommissionSettlement> settlements, long afterId, long lastRecordId,
+                       long orders) {
+        settlements.sort(Comparator.comparing(CommissionSettlement::getUserId));
+        transactionTemplate.executeWithoutResult(status -> {
+            for (int from = 0; from < settlements.size(); from += upsertBatchSize) {
+                commissionSettlementMapper.addDaySettlements(
+                        settlements.subList(from, Math.min(from + upsertBatchSize, settlements.size())));
+            }
+            if (commissionSettlementMapper.updateRunProgress(date, afterId, lastRecordId, orders) == 0) {
+                throw new RuntimeException("分成日结断点已被其他节点推进，放弃本段: " + afterId);
+            }
+        });
+    }
+
+    /**
+     * 全天完成：重新汇总当月、当年，更新累计营业额
+     */
+    private void finish(LocalDate date) {
+        String month = date.toString().substring(0, 7);
+        String year = date.toString().substring(0, 4);
+        transactionTemplate.executeWithoutResult(status -> {
+            commissionSettlementMapper.markRunDone(date);
+            commissionSettlementMapper.aggregateMonth(month, month + "-01", month + "-31");
+            commissionSettlementMapper.aggregateYear(year);
+            commissionSettlementMapper.updateTotalTurnover(year);
+        });
+    }
+
+    /**
+     * 日结指标：是否运行中、最近一轮结算日期、流水/订单/写入行数、分段数、耗时及错误
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("running", running.get());
+        metrics.put("parallelism", pool.getParallelism());
+        metrics.put("partitions", partitions);
+        metrics.put("lastSettleDate", lastSettleDate != null ? lastSettleDate.toString() : null);
+        metrics.put("records", lastRecords);
+        metrics.put("orders", lastOrders);
+        metrics.put("rows", lastRows);
+        metrics.put("segments", lastSegments);
+        metrics.put("lastRunMs", lastRunMillis);
+        metrics.put("lastRunTime", lastRunTime != null ? lastRunTime.toString() : null);
+        metrics.put("lastError", lastError);
+        return metrics;
+    }
+
+    /**
+     * 一笔订单的分成流水（同一用户多条时合并）及出款分录金额
+     */
+    private static final class OrderBuffer {
+        private long[] userIds = new long[4];
+        private long[] shares = new long[4];
+        private int size;
+        private long debit = -1;
+        private long firstRecordId;
+        private long lastRecordId;
+        private int records;
+
+        private void add(UserAccountRecord record) {
+            if (records++ == 0) {
+                firstRecordId = record.getId();
+            }
+            lastRecordId = record.getId();
+            long amount = record.getAmount().movePointRight(2).longValue();
+            if (!AccountType.TOTAL_COMMISSION.getCode().equals(record.getAccount())) {
+                debit = -amount;
+                return;
+            }
+            long userId = record.getUserId();
+            for (int i = 0; i < size; i++) {
+                if (userIds[i] == userId) {
+                    shares[i] += amount;
+                    return;
+                }
+            }
+            if (size == userIds.length) {
+                userIds = Arrays.copyOf(userIds, size * 2);
+                shares = Arrays.copyOf(shares, size * 2);
+            }
+            userIds[size] = userId;
+            shares[size] = amount;
+            size++;
+        }
+
+        private long sharesSum() {
+            long sum = 0;
+            for (int i = 0; i < size; i++) {
+                sum += shares[i];
+            }
+            return sum;
+        }
+
+        private long amount() {
+            return debit >= 0 ? debit : sharesSum();
+        }
+
+        /**
+         * 各收款用户分得金额之和等于出款分录金额时订单已读完；
+         * 早期流水没有出款分录，无法判断，段内最后一笔订单按未读完处理
+         */
+        private boolean isComplete(long lastReadId) {
+            return debit >= 0 ? sharesSum() == debit : lastRecordId < lastReadId;
+        }
+    }
+
+    /**
+     * 一段流水按收款用户ID分区后的分录：收款用户、分得金额、订单实付金额
+     */
+    private static final class Segment {
+        private final Partition[] partitions;
+        private long lastRecordId;
+        private long records;
+        private long orders;
+        private boolean done;
+
+        private Segment(int count) {
+            partitions = new Partition[count];
+            for (int i = 0; i < count; i++) {
+                partitions[i] = new Partition();
+            }
+        }
+
+        private void add(OrderBuffer order) {
+            long amount = order.amount();
+            for (int i = 0; i < order.size; i++) {
+                long hash = order.userIds[i] * 0x9E3779B97F4A7C15L;
+                partitions[(int) (hash >>> 40) & (partitions.length - 1)].add(order.userIds[i], order.shares[i], amount);
+            }
+            records += order.records;
+            orders++;
+        }
+    }
+
+    private static final class Partition {
+        private long[] userIds = new long[1024];
+        private long[] shares = new long[1024];
+        private long[] amounts = new long[1024];
+        private int size;
+
+        private void add(long userId, long share, long amount) {
+            if (size == userIds.length) {
+                userIds = Arrays.copyOf(userIds, size * 2);
+                shares = Arrays.copyOf(shares, size * 2);
+                amounts = Arrays.copyOf(amounts, size * 2);
+            }
+            userIds[size] = userId;
+            shares[size] = share;
+            amounts[size] = amount;
+            size++;
+        }
+    }
+
+    /**
+     * 一个或多个分区的累加结果。同一收款用户只在一个分区，本人的各项不会重叠；
+     * 同一上级的团队分成可能来自多个分区，合并时相加
+     */
+    private static final class Totals {
+        private final LongLongMap orderCounts;
+        private final LongLongMap turnovers;
+        private final LongLongMap commissions;
+        private final LongLongMap teamCommissions;
+
+        private Totals(int expectedSize) {
+            orderCounts = new LongLongMap(expectedSize);
+            turnovers = new LongLongMap(expectedSize);
+            commissions = new LongLongMap(expectedSize);
+            teamCommissions = new LongLongMap(expectedSize);
+        }
+
+        /**
+         * 把较小的结果加到较大的结果上，返回较大的结果
+         */
+        private Totals merge(Totals other) {
+            Totals into = teamCommissions.size() >= other.teamCommissions.size() ? this : other;
+            Totals from = into == this ? other : this;
+            from.orderCounts.forEach(into.orderCounts::addTo);
+            from.turnovers.forEach(into.turnovers::addTo);
+            from.commissions.forEach(into.commissions::addTo);
+            from.teamCommissions.forEach(into.teamCommissions::addTo);
+            return into;
+        }
+
+        /**
+         * 团队分成包含本人，覆盖全部有分成的用户及其上级
+         */
+        private List<CommissionSettlement> toSettlements(String period) {
+            List<CommissionSettlement> settlements = new ArrayList<>(teamCommissions.size());
+            teamCommissions.forEach((userId, teamCommission) -> {
+                CommissionSettlement settlement = new CommissionSettlement();
+                settlement.setUserId(userId);
+                settlement.setPeriodType(PERIOD_DAY);
+                settlement.setPeriod(period);
+                settlement.setOrderCount(orderCounts.get(userId, 0));
+                settlement.setTurnover(turnovers.get(userId, 0));
+                settlement.setCommission(commissions.get(userId, 0));
+                settlement.setTeamCommission(teamCommission);
+                settlements.add(settlement);
+            });
+            return settlements;
+        }
+    }
+
+    /**
+     * 分区范围二分，直到单个分区时累加，结果逐级合并
+     */
+    private final class PartitionTask extends RecursiveTask<Totals> {
+        private final Partition[] partitions;
+        private final int from;
+        private final int to;
+        private final LongLongMap parents;
+
+        private PartitionTask(Partition[] partitions, int from, int to, LongLongMap parents) {
+            this.partitions = partitions;
+            this.from = from;
+            this.to = to;
+            this.parents = parents;
+        }
+
+        @Override
+        protected Totals compute() {
+            if (to - from > 1) {
+                int mid = (from + to) >>> 1;
+                PartitionTask left = new PartitionTask(partitions, from, mid, parents);
+                left.fork();
+                Totals right = new PartitionTask(partitions, mid, to, parents).compute();
+                return right.merge(left.join());
+            }
+            return accumulate(partitions[from]);
+        }
+
+        private Totals accumulate(Partition partition) {
+            Totals totals = new Totals(partition.size);
+            for (int i = 0; i < partition.size; i++) {
+                long userId = partition.userIds[i];
+                long share = partition.shares[i];
+                totals.orderCounts.addTo(userId, 1);
+                totals.turnovers.addTo(userId, partition.amounts[i]);
+                totals.commissions.addTo(userId, share);
+                long ancestor = userId;
+                for (int depth = 0; depth <= maxDepth && ancestor != 0; depth++) {
+                    totals.teamCommissions.addTo(ancestor, share);
+                    ancestor = parents.get(ancestor, 0);
+                }
+            }
+            return totals;
+        }
+    }
+}
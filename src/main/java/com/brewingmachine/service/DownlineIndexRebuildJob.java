@@ -0,0 +1,158 @@
+package com.brewingmachine.service;
+
+import com.brewingmachine.mapper.UserClosureMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 推荐关系索引重建任务
+ * 按user.parent_user_id全量重建user_closure：在影子表user_closure_rebuild中先写入全部直接上下级，
+ * 再逐层向下扩展一层，直到某层没有新关系，然后RENAME TABLE原子替换user_closure，最后重新统计下级代理数量。
+ * 重建期间查询仍读完整的旧表；持有租约期间绑定推荐人被拒绝（见DownlineIndexService.attach），避免写入旧表的关系丢失。
+ * 历史数据中的循环推荐关系会在该层自然终止，重建后计数报告。通过数据库租约保证同一时刻只有一个节点执行，
+ * 每扩展一层和替换前续约，续约失败（租约已被其他节点接管）时放弃本次重建，不替换正式表
+ */
+@Slf4j
+@Component
+public class DownlineIndexRebuildJob {
+
+    static final String LEASE_NAME = "user_closure_rebuild";
+
+    private final UserClosureMapper userClosureMapper;
+    private final JobLeaseService jobLeaseService;
+
+    @Value("${user.downline.rebuild.max-depth:100}")
+    private int maxDepth;
+
+    @Value("${user.downline.rebuild.lease-seconds:600}")
+    private long leaseSeconds;
+
+    private ExecutorService executor;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile long relations;
+    private volatile int depth;
+    private volatile int cycles;
+    private volatile long lastRunMillis;
+    private volatile LocalDateTime lastRunTime;
+
+    public DownlineIndexRebuildJob(UserClosureMapper userClosureMapper, JobLeaseService jobLeaseService) {
+        this.userClosureMapper = userClosureMapper;
+        this.jobLeaseService = jobLeaseService;
+    }
+
+    @PostConstruct
+    public void init() {
+        executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new SynchronousQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "user-closure-rebuild");
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 在后台开始重建，已在运行时返回false
+     */
+    public boolean start() {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        executor.execute(this::rebuild);
+        return true;
+    }
+
+    private void rebuild() {
+        if (!jobLeaseService.tryAcquire(LEASE_NAME, leaseSeconds)) {
+            running.set(false);
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        long runRelations = 0;
+        int level = 0;
+        boolean swapped = false;
+        try {
+            userClosureMapper.dropRebuildTable();
+            userClosureMapper.createRebuildTable();
+            int inserted = userClosureMapper.insertDirectLinks();
+            while (inserted > 0) {
+                runRelations += inserted;
+                level++;
+                if (level >= maxDepth) {
+                    log.warn("推荐关系层数超过上限: {}，停止扩展", maxDepth);
+                    break;
+                }
+                if (!renewLease()) {
+                    return;
+                }
+                inserted = userClosureMapper.insertNextLevel(level);
+            }
+            cycles = userClosureMapper.countCycles();
+            if (cycles > 0) {
+                log.warn("存在循环推荐关系，涉及用户数: {}", cycles);
+            }
+            if (!renewLease()) {
+                return;
+            }
+            // 上次替换后未删掉的旧表会让RENAME失败，先删除
+            userClosureMapper.dropOldTable();
+            userClosureMapper.swapRebuildTable();
+            userClosureMapper.dropOldTable();
+            userClosureMapper.recountSubAgentCount();
+            swapped = true;
+        } catch (Exception e) {
+            log.error("推荐关系索引重建失败", e);
+        } finally {
+            jobLeaseService.release(LEASE_NAME);
+            relations = runRelations;
+            depth = level;
+            lastRunMillis = System.currentTimeMillis() - start;
+            lastRunTime = LocalDateTime.now();
+            running.set(false);
+        }
+        if (swapped) {
+            log.info("推荐关系索引重建完成，关系数: {}, 最大层数: {}, 耗时: {}ms", runRelations, level, lastRunMillis);
+        }
+    }
+
+    // 续约失败说明租约已过期并可能被其他节点接管，其重建会删除并重写影子表
+    private boolean renewLease() {
+        if (jobLeaseService.tryAcquire(LEASE_NAME, leaseSeconds)) {
+            return true;
+        }
+        log.warn("推荐关系索引重建租约已被其他节点接管，放弃本次重建");
+        return false;
+    }
+
+    /**
+     * 重建指标：是否运行中、最近一次重建的关系数、最大层数和循环推荐涉及的用户数
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("running", running.get());
+        metrics.put("relations", relations);
+        metrics.put("depth", depth);
+        metrics.put("cycles", cycles);
+        metrics.put("lastRunMs", lastRunMillis);
+        metrics.put("lastRunTime", lastRunTime != null ? lastRunTime.toString() : null);
+        return metrics;
+    }
+}
@@ -0,0 +1,143 @@
+package com.brewingmachine.service;
+
+import com.brewingmachine.entity.User;
+import com.brewingmachine.entity.UserClosure;
+import com.brewingmachine.mapper.UserClosureMapper;
+import org.apache.ibatis.cursor.Cursor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * 推荐关系索引服务
+ * 在user_closure闭包表中为每个上级与其每一个下级保存一行（含相隔层数），绑定推荐人时增量维护：
+ * 判断上下级关系、是否成环只需按主键查一行；整棵下级按上级ID范围扫描，可流式遍历；层级深度为上级行数。
+ * 同时维护user.sub_agent_count（全部下级中的代理商数量）
+ */
+@Service
+public class DownlineIndexService {
+
+    private final UserClosureMapper userClosureMapper;
+    private final JobLeaseService jobLeaseService;
+
+    @Value("${user.downline.max-limit:200}")
+    private int maxLimit;
+
+    public DownlineIndexService(UserClosureMapper userClosureMapper, JobLeaseService jobLeaseService) {
+        this.userClosureMapper = userClosureMapper;
+        this.jobLeaseService = jobLeaseService;
+    }
+
+    /**
+     * 把用户（及其已有的全部下级）挂到推荐人之下，需在绑定推荐人的事务中调用。
+     * 先按ID顺序锁定用户、推荐人及推荐人的上级链：只有无上级的用户能被绑定，
+     * 并发绑定若会连成环必然锁到同一行，加锁后再按最新数据判断是否成环。
+     * 全量重建期间拒绝绑定：重建写入影子表后整表替换，期间写入旧表的关系会丢失
+     */
+    @Transactional
+    public void attach(Long userId, Long referrerId) {
+        if (userId.equals(referrerId)) {
+            throw new RuntimeException("不能绑定自己为推荐人");
+        }
+        if (jobLeaseService.isHeld(DownlineIndexRebuildJob.LEASE_NAME)) {
+            throw new RuntimeException("推荐关系索引重建中，请稍后再绑定推荐人");
+        }
+        List<User> locked = userClosureMapper.lockBindChain(userId, referrerId);
+        for (User user : locked) {
+            if (user.getId().equals(userId) && user.getParentUserId() != null) {
+                throw new RuntimeException("用户已有上级推荐人");
+            }
+        }
+        if (userClosureMapper.existsForShare(userId, referrerId)) {
+            throw new RuntimeException("推荐人是该用户的下级，不能绑定");
+        }
+
+        userClosureMapper.insertLink(userId, referrerId);
+        int agents = userClosureMapper.countAgentsInSubtree(userId);
+        if (agents > 0) {
+            userClosureMapper.addSubAgentCount(referrerId, agents);
+        }
+    }
+
+    /**
+     * 用户成为代理商后，其全部上级的下级代理数量加1
+     */
+    @Transactional
+    public void onAgentBound(Long userId) {
+        userClosureMapper.addAncestorsSubAgentCount(userId, 1);
+    }
+
+    /**
+     * ancestorId是否为descendantId的上级（任意层级）
+     */
+    public boolean isAncestor(Long ancestorId, Long descendantId) {
+        return !ancestorId.equals(descendantId) && userClosureMapper.exists(ancestorId, descendantId);
+    }
+
+    /**
+     * userId是否在ancestorId的下级树中（含ancestorId自身）
+     */
+    public boolean isInSubtree(Long ancestorId, Long userId) {
+        return ancestorId.equals(userId) || userClosureMapper.exists(ancestorId, userId);
+    }
+
+    /**
+     * 层级深度，无上级为0
+     */
+    public int getDepth(Long userId) {
+        return userClosureMapper.selectDepth(userId);
+    }
+
+    /**
+     * 下级概况：层级深度、下级代理数量、各层下级人数及下级总数
+     */
+    public Map<String, Object> getSummary(Long userId) {
+        List<Map<String, Object>> levels = userClosureMapper.countByDepth(userId);
+        long total = 0;
+        for (Map<String, Object> level : levels) {
+            total += ((Number) level.get("count")).longValue();
+        }
+        Integer subAgentCount = userClosureMapper.selectSubAgentCount(userId);
+
+        Map<String, Object> summary = new HashMap<>();
+        summary.put("userId", userId);
+        summary.put("depth", getDepth(userId));
+        summary.put("subAgentCount", subAgentCount != null ? subAgentCount : 0);
+        summary.put("downlineCount", total);
+        summary.put("levels", levels);
+        return summary;
+    }
+
+    /**
+     * 流式遍历全部下级（按下级ID顺序），maxDepth为null时不限层数；遍历期间占用一个数据库连接
+     */
+    @Transactional(readOnly = true)
+    public void forEachDescendant(Long ancestorId, Integer maxDepth, Consumer<UserClosure> consumer) {
+        try (Cursor<UserClosure> cursor = userClosureMapper.streamDescendants(ancestorId, maxDepth)) {
+            for (UserClosure closure : cursor) {
+                consumer.accept(closure);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("遍历下级失败", e);
+        }
+    }
+
+    /**
+     * 按下级ID翻页的下级用户，afterId为上一页返回的nextAfterId
+     */
+    public Map<String, Object> listDownline(Long ancestorId, Integer maxDepth, String role, long afterId, int limit) {
+        List<Map<String, Object>> users = userClosureMapper.selectDescendantPage(ancestorId, maxDepth,
+                role != null && !role.isEmpty() ? role : null, afterId, Math.max(1, Math.min(limit, maxLimit)));
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("users", users);
+        result.put("nextAfterId", users.isEmpty() ? null : users.get(users.size() - 1).get("id"));
+        return result;
+    }
+}
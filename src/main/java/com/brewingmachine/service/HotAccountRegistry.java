@@ -0,0 +1,189 @@
+package com.brewingmachine.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 热点账户登记
+ * 热点账户的入账记入子账户，不再锁定user行。热点账户包括配置的用户（商户、平台账户等）和自动识别的用户：
+ * 记账线程上报每批涉及的用户及锁等待耗时，每个统计窗口内记账次数或锁等待超时的批次数达到阈值的用户
+ * 标记为热点并保持一段时间，期间不再达到阈值则自动取消。
+ * 锁等待只计到实际等待的用户上：一条语句锁定多行时无法区分等待的是哪一行，这些用户先记为嫌疑，
+ * 记账线程此后单独锁定嫌疑用户的行并计时，单行等待超时才计一次锁冲突
+ */
+@Slf4j
+@Component
+public class HotAccountRegistry {
+
+    @Value("${ledger.striping.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ledger.striping.hot-user-ids:}")
+    private String hotUserIds;
+
+    @Value("${ledger.striping.auto-detect:true}")
+    private boolean autoDetect;
+
+    @Value("${ledger.striping.posting-threshold:500}")
+    private int postingThreshold;
+
+    @Value("${ledger.striping.lock-wait-ms:50}")
+    private long lockWaitMillis;
+
+    @Value("${ledger.striping.contention-threshold:20}")
+    private int contentionThreshold;
+
+    @Value("${ledger.striping.hot-ttl-ms:600000}")
+    private long hotTtlMillis;
+
+    @Value("${ledger.striping.max-tracked:100000}")
+    private int maxTracked;
+
+    private Set<Long> configured = Collections.emptySet();
+
+    /**
+     * 自动识别的热点账户 -> 过期时间
+     */
+    private final Map<Long, Long> detected = new ConcurrentHashMap<>();
+
+    /**
+     * 当前窗口内的记账次数、锁等待超时批次数
+     */
+    private final Map<Long, Integer> postings = new ConcurrentHashMap<>();
+    private final Map<Long, Integer> contentions = new ConcurrentHashMap<>();
+
+    /**
+     * 多行加锁等待超时、尚未单独计时的用户，窗口结束时清空
+     */
+    private final Set<Long> suspects = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong promotedCount = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        Set<Long> ids = new HashSet<>();
+        for (String id : hotUserIds.split(",")) {
+            if (!id.trim().isEmpty()) {
+                ids.add(Long.valueOf(id.trim()));
+            }
+        }
+        configured = Collections.unmodifiableSet(ids);
+    }
+
+    /**
+     * 是否为热点账户
+     */
+    public boolean isHot(Long userId) {
+        if (!enabled) {
+            return false;
+        }
+        if (configured.contains(userId)) {
+            return true;
+        }
+        Long expireAt = detected.get(userId);
+        return expireAt != null && expireAt > System.currentTimeMillis();
+    }
+
+    /**
+     * 是否需要单独锁定该用户的行并计时
+     */
+    public boolean isSuspect(Long userId) {
+        return enabled && autoDetect && suspects.contains(userId);
+    }
+
+    /**
+     * 加锁耗时是否计为锁等待
+     */
+    public boolean isLockWait(long lockMillis) {
+        return lockMillis >= lockWaitMillis;
+    }
+
+    /**
+     * 上报一批记账涉及的用户（每个用户每条分录计一次）、单独加锁时等待超时的用户，
+     * 以及多行加锁等待超时、无法确定等待哪一行的用户
+     */
+    public void record(Collection<Long> legUserIds, Collection<Long> waitedUserIds, Collection<Long> suspectUserIds) {
+        if (!enabled || !autoDetect) {
+            return;
+        }
+        for (Long userId : legUserIds) {
+            count(postings, userId);
+        }
+        for (Long userId : waitedUserIds) {
+            count(contentions, userId);
+        }
+        for (Long userId : suspectUserIds) {
+            if (suspects.size() >= maxTracked) {
+                droppedCount.incrementAndGet();
+                break;
+            }
+            suspects.add(userId);
+        }
+    }
+
+    private void count(Map<Long, Integer> counters, Long userId) {
+        if (counters.size() >= maxTracked && !counters.containsKey(userId)) {
+            droppedCount.incrementAndGet();
+            return;
+        }
+        counters.merge(userId, 1, Integer::sum);
+    }
+
+    /**
+     * 统计窗口结束：达到阈值的用户标记为热点，清理过期的热点标记
+     */
+    @Scheduled(initialDelayString = "${ledger.striping.window-ms:10000}",
+            fixedDelayString = "${ledger.striping.window-ms:10000}")
+    public void rollWindow() {
+        long now = System.currentTimeMillis();
+        List<Long> promoted = new ArrayList<>();
+        promote(postings, postingThreshold, now, promoted);
+        promote(contentions, contentionThreshold, now, promoted);
+        detected.values().removeIf(expireAt -> expireAt <= now);
+        suspects.clear();
+        if (!promoted.isEmpty()) {
+            promotedCount.addAndGet(promoted.size());
+            log.info("识别到热点账户: {}", promoted);
+        }
+    }
+
+    private void promote(Map<Long, Integer> counters, int threshold, long now, List<Long> promoted) {
+        for (Map.Entry<Long, Integer> entry : counters.entrySet()) {
+            if (entry.getValue() >= threshold && !configured.contains(entry.getKey())
+                    && detected.put(entry.getKey(), now + hotTtlMillis) == null) {
+                promoted.add(entry.getKey());
+            }
+        }
+        counters.clear();
+    }
+
+    /**
+     * 热点账户指标：配置的和自动识别的热点账户、当前窗口跟踪的用户数和锁等待嫌疑用户数、累计识别次数
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("enabled", enabled);
+        metrics.put("configured", configured);
+        metrics.put("detected", new HashMap<>(detected));
+        metrics.put("tracked", postings.size());
+        metrics.put("suspects", suspects.size());
+        metrics.put("dropped", droppedCount.get());
+        metrics.put("promoted", promotedCount.get());
+        return metrics;
+    }
+}
@@ -0,0 +1,232 @@
+package com.brewingmachine.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.util.EntityUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.UnknownHostException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * HTTP客户端服务
+ * 全局共享一个连接池和HttpClient，连接保持长连接复用；幂等的GET请求在网络异常或5xx时按指数退避重试，
+ * 用一次性凭证换取结果的GET请求（如OAuth code换access_token）只在请求未发出（建立连接失败）时重试，POST不重试
+ */
+@Slf4j
+@Service
+public class HttpClientService {
+
+    private static final String USER_AGENT = "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36";
+
+    @Value("${http.client.max-total:200}")
+    private int maxTotal;
+
+    @Value("${http.client.max-per-route:50}")
+    private int maxPerRoute;
+
+    @Value("${http.client.connect-timeout-ms:3000}")
+    private int connectTimeoutMs;
+
+    @Value("${http.client.socket-timeout-ms:5000}")
+    private int socketTimeoutMs;
+
+    @Value("${http.client.connection-request-timeout-ms:1000}")
+    private int connectionRequestTimeoutMs;
+
+    @Value("${http.client.idle-timeout-seconds:30}")
+    private int idleTimeoutSeconds;
+
+    @Value("${http.client.get-max-retries:2}")
+    private int getMaxRetries;
+
+    @Value("${http.client.retry-backoff-ms:200}")
+    private long retryBackoffMs;
+
+    private PoolingHttpClientConnectionManager connectionManager;
+
+    private CloseableHttpClient httpClient;
+
+    private final AtomicLong requestCount = new AtomicLong();
+    private final AtomicLong failureCount = new AtomicLong();
+    private final AtomicLong retryCount = new AtomicLong();
+    private final AtomicLong connectRetryCount = new AtomicLong();
+    private final AtomicLong totalLatencyMs = new AtomicLong();
+    private final AtomicLong maxLatencyMs = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxTotal);
+        connectionManager.setDefaultMaxPerRoute(maxPerRoute);
+        connectionManager.setValidateAfterInactivity(2000);
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeoutMs)
+                .setSocketTimeout(socketTimeoutMs)
+                .setConnectionRequestTimeout(connectionRequestTimeoutMs)
+                .build();
+
+        httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setUserAgent(USER_AGENT)
+                .disableAutomaticRetries()
+                .evictExpiredConnections()
+                .evictIdleConnections(idleTimeoutSeconds, TimeUnit.SECONDS)
+                .build();
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException {
+        httpClient.close();
+    }
+
+    /**
+     * GET请求，返回响应体
+     */
+    public String get(String url) {
+        for (int attempt = 0; ; attempt++) {
+            long start = System.currentTimeMillis();
+            try (CloseableHttpResponse response = httpClient.execute(new HttpGet(url))) {
+                int statusCode = response.getStatusLine().getStatusCode();
+                String body = toString(response.getEntity());
+                recordLatency(start);
+                if (statusCode < 500) {
+                    return body;
+                }
+                if (attempt >= getMaxRetries) {
+                    failureCount.incrementAndGet();
+                    throw new RuntimeException("HTTP请求失败: " + stripQuery(url) + "，状态码: " + statusCode);
+                }
+                log.warn("HTTP请求返回{}，准备重试，url: {}, 第{}次", statusCode, stripQuery(url), attempt + 1);
+            } catch (IOException e) {
+                recordLatency(start);
+                if (attempt >= getMaxRetries) {
+                    failureCount.incrementAndGet();
+                    throw new RuntimeException("HTTP请求失败: " + stripQuery(url), e);
+                }
+                log.warn("HTTP请求异常，准备重试，url: {}, 第{}次: {}", stripQuery(url), attempt + 1, e.getMessage());
+            }
+            retryCount.incrementAndGet();
+            backoff(attempt);
+        }
+    }
+
+    /**
+     * 非幂等的GET请求（如用OAuth code换取access_token/session_key，code只能使用一次），返回响应体；
+     * 请求可能已到达对方时（读超时、5xx）重试会让code失效并掩盖真实错误，因此只在建立连接失败时重试
+     */
+    public String getOnce(String url) {
+        for (int attempt = 0; ; attempt++) {
+            long start = System.currentTimeMillis();
+            try (CloseableHttpResponse response = httpClient.execute(new HttpGet(url))) {
+                String body = toString(response.getEntity());
+                recordLatency(start);
+                return body;
+            } catch (IOException e) {
+                recordLatency(start);
+                if (!isConnectFailure(e) || attempt >= getMaxRetries) {
+                    failureCount.incrementAndGet();
+                    throw new RuntimeException("HTTP请求失败: " + stripQuery(url), e);
+                }
+                log.warn("HTTP建立连接失败，准备重试，url: {}, 第{}次: {}", stripQuery(url), attempt + 1, e.getMessage());
+            }
+            connectRetryCount.incrementAndGet();
+            backoff(attempt);
+        }
+    }
+
+    /**
+     * POST JSON请求，返回响应体（非幂等，不重试）
+     */
+    public String post(String url, String jsonBody) {
+        HttpPost httpPost = new HttpPost(url);
+        httpPost.setHeader("Content-Type", "application/json");
+        httpPost.setEntity(new StringEntity(jsonBody, "UTF-8"));
+
+        long start = System.currentTimeMillis();
+        try (CloseableHttpResponse response = httpClient.execute(httpPost)) {
+            return toString(response.getEntity());
+        } catch (IOException e) {
+            failureCount.incrementAndGet();
+            throw new RuntimeException("HTTP请求失败: " + stripQuery(url), e);
+        } finally {
+            recordLatency(start);
+        }
+    }
+
+    /**
+     * 连接池和请求耗时指标
+     */
+    public Map<String, Object> getMetrics() {
+        PoolStats poolStats = connectionManager.getTotalStats();
+        long requests = requestCount.get();
+
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("leasedConnections", poolStats.getLeased());
+        metrics.put("availableConnections", poolStats.getAvailable());
+        metrics.put("pendingConnections", poolStats.getPending());
+        metrics.put("maxConnections", poolStats.getMax());
+        metrics.put("requests", requests);
+        metrics.put("failures", failureCount.get());
+        metrics.put("retries", retryCount.get());
+        metrics.put("connectRetries", connectRetryCount.get());
+        metrics.put("avgLatencyMs", requests > 0 ? totalLatencyMs.get() / requests : 0);
+        metrics.put("maxLatencyMs", maxLatencyMs.get());
+        return metrics;
+    }
+
+    private static String toString(HttpEntity entity) throws IOException {
+        return entity != null ? EntityUtils.toString(entity, "UTF-8") : null;
+    }
+
+    // 请求尚未发出的异常：连接被拒绝/超时、域名解析失败、等待连接池超时
+    private static boolean isConnectFailure(IOException e) {
+        return e instanceof ConnectException
+                || e instanceof ConnectTimeoutException
+                || e instanceof UnknownHostException
+                || e instanceof ConnectionPoolTimeoutException;
+    }
+
+    private void recordLatency(long start) {
+        long latency = System.currentTimeMillis() - start;
+        requestCount.incrementAndGet();
+        totalLatencyMs.addAndGet(latency);
+        maxLatencyMs.accumulateAndGet(latency, Math::max);
+    }
+
+    private void backoff(int attempt) {
+        try {
+            Thread.sleep(retryBackoffMs << attempt);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("HTTP请求重试被中断", e);
+        }
+    }
+
+    // 日志和异常中不输出查询参数（微信接口的查询参数包含appsecret和access_token）
+    private static String stripQuery(String url) {
+        int index = url.indexOf('?');
+        return index >= 0 ? url.substring(0, index) : url;
+    }
+}
@@ -0,0 +1,196 @@
+package com.brewingmachine.service;
+
+import com.brewingmachine.entity.WeChatUser;
+import com.brewingmachine.mapper.WeChatUserMapper;
+import com.brewingmachine.util.TransactionUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 外部身份缓存
+ * 缓存微信openid到用户ID的映射，按TTL过期重新加载，超过上限按最近访问顺序淘汰；同一身份并发加载时只查询一次数据库。
+ * 只缓存已存在的映射，未绑定的身份每次都查库，新用户绑定后无需失效。
+ * 缓存只在本节点有效，其他节点或库外修改绑定关系时最多在TTL内读到旧映射：依赖映射写库的调用方应在写入条件中
+ * 校验映射（如按openid和用户ID更新），发现不一致时调用invalidateUser
+ */
+@Slf4j
+@Service
+public class IdentityCache {
+
+    private static final String OPENID = "openid:";
+
+    private final WeChatUserMapper weChatUserMapper;
+
+    @Value("${identity.cache.max-size:100000}")
+    private int maxSize;
+
+    @Value("${identity.cache.ttl-seconds:3600}")
+    private long ttlSeconds;
+
+    // 身份 -> 映射，访问顺序，cache和userKeys都在cache锁内读写
+    private final LinkedHashMap<String, Entry> cache = new LinkedHashMap<String, Entry>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            if (size() > maxSize) {
+                unindex(eldest.getKey(), eldest.getValue().userId);
+                return true;
+            }
+            return false;
+        }
+    };
+
+    // 用户ID -> 该用户的身份，失效用户时不扫描整个缓存
+    private final Map<Long, Set<String>> userKeys = new HashMap<>();
+
+    // 失效代数，每次失效递增；加载期间发生过失效的结果不写入缓存，避免旧映射被回填
+    private final AtomicLong generation = new AtomicLong();
+
+    // 加载中的身份，后到的请求等待同一次查询结果
+    private final Map<String, CompletableFuture<Long>> loading = new ConcurrentHashMap<>();
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong loadCount = new AtomicLong();
+    private final AtomicLong invalidationCount = new AtomicLong();
+    private final AtomicLong loadNanosTotal = new AtomicLong();
+    private final AtomicLong loadNanosMax = new AtomicLong();
+
+    public IdentityCache(WeChatUserMapper weChatUserMapper) {
+        this.weChatUserMapper = weChatUserMapper;
+    }
+
+    /**
+     * 根据微信openid查询用户ID，未绑定返回null
+     */
+    public Long resolveOpenid(String openid) {
+        return resolve(OPENID + openid, () -> {
+            WeChatUser weChatUser = weChatUserMapper.findByOpenid(openid);
+            return weChatUser != null ? weChatUser.getUserId() : null;
+        });
+    }
+
+    /**
+     * 用户绑定关系变更或调用方发现映射已过期时调用，清除该用户的所有映射
+     */
+    public void invalidateUser(Long userId) {
+        TransactionUtil.runAfterCommit(() -> {
+            synchronized (cache) {
+                generation.incrementAndGet();
+                Set<String> keys = userKeys.remove(userId);
+                if (keys != null) {
+                    for (String key : keys) {
+                        cache.remove(key);
+                    }
+                }
+            }
+            invalidationCount.incrementAndGet();
+        });
+    }
+
+    /**
+     * 缓存指标：命中率、加载次数和耗时
+     */
+    public Map<String, Object> getMetrics() {
+        long hits = hitCount.get();
+        long misses = missCount.get();
+        long loads = loadCount.get();
+
+        Map<String, Object> metrics = new HashMap<>();
+        synchronized (cache) {
+            metrics.put("size", cache.size());
+        }
+        metrics.put("hits", hits);
+        metrics.put("misses", misses);
+        metrics.put("hitRatio", hits + misses > 0 ? (double) hits / (hits + misses) : 0);
+        metrics.put("loads", loads);
+        metrics.put("invalidations", invalidationCount.get());
+        metrics.put("avgLoadMs", loads > 0 ? loadNanosTotal.get() / loads / 1_000_000.0 : 0);
+        metrics.put("maxLoadMs", loadNanosMax.get() / 1_000_000.0);
+        return metrics;
+    }
+
+    private Long resolve(String key, Supplier<Long> loader) {
+        long loadGeneration = generation.get();
+        long now = System.currentTimeMillis();
+        synchronized (cache) {
+            Entry entry = cache.get(key);
+            if (entry != null) {
+                if (entry.expireAt > now) {
+                    hitCount.incrementAndGet();
+                    return entry.userId;
+                }
+                cache.remove(key);
+                unindex(key, entry.userId);
+            }
+        }
+        missCount.incrementAndGet();
+
+        CompletableFuture<Long> future = new CompletableFuture<>();
+        CompletableFuture<Long> existing = loading.putIfAbsent(key, future);
+        if (existing != null) {
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+
+        long start = System.nanoTime();
+        try {
+            Long userId = loader.get();
+            if (userId != null) {
+                synchronized (cache) {
+                    // 失效在锁内递增代数，这里比较后写入，加载期间有失效时不回填
+                    if (generation.get() == loadGeneration) {
+                        Entry previous = cache.put(key, new Entry(userId, now + ttlSeconds * 1000));
+                        if (previous != null) {
+                            unindex(key, previous.userId);
+                        }
+                        userKeys.computeIfAbsent(userId, id -> new HashSet<>(2)).add(key);
+                    }
+                }
+            }
+            future.complete(userId);
+            return userId;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, future);
+            long elapsed = System.nanoTime() - start;
+            loadCount.incrementAndGet();
+            loadNanosTotal.addAndGet(elapsed);
+            loadNanosMax.accumulateAndGet(elapsed, Math::max);
+        }
+    }
+
+    // 调用方持有cache锁
+    private void unindex(String key, Long userId) {
+        Set<String> keys = userKeys.get(userId);
+        if (keys != null && keys.remove(key) && keys.isEmpty()) {
+            userKeys.remove(userId);
+        }
+    }
+
+    private static final class Entry {
+        private final Long userId;
+        private final long expireAt;
+
+        private Entry(Long userId, long expireAt) {
+            this.userId = userId;
+            this.expireAt = expireAt;
+        }
+    }
+}
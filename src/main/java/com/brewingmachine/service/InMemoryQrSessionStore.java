@@ -0,0 +1,88 @@
+package com.brewingmachine.service;
+
+import com.brewingmachine.entity.QrCodeLogin;
+import org.springframework.beans.BeanUtils;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * 基于本地内存的二维码会话存储（单节点部署或测试使用）
+ */
+@Component
+@ConditionalOnProperty(prefix = "qr.session", name = "store", havingValue = "memory", matchIfMissing = true)
+public class InMemoryQrSessionStore implements QrSessionStore {
+
+    // 每写入多少次清理一次过期会话
+    private static final int PURGE_INTERVAL = 1024;
+
+    private final Map<String, Entry> sessions = new ConcurrentHashMap<>();
+
+    private final AtomicInteger writeCount = new AtomicInteger();
+
+    @Override
+    public void create(QrCodeLogin session, long ttlSeconds) {
+        long expireAt = System.currentTimeMillis() + ttlSeconds * 1000;
+        sessions.put(session.getQrToken(), new Entry(copy(session), expireAt));
+
+        if (writeCount.incrementAndGet() % PURGE_INTERVAL == 0) {
+            long now = System.currentTimeMillis();
+            sessions.values().removeIf(entry -> entry.isExpired(now));
+        }
+    }
+
+    @Override
+    public QrCodeLogin find(String qrToken) {
+        Entry entry = sessions.get(qrToken);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.isExpired(System.currentTimeMillis())) {
+            sessions.remove(qrToken, entry);
+            return null;
+        }
+        return copy(entry.session);
+    }
+
+    @Override
+    public QrCodeLogin transition(String qrToken, int expectedStatus, Consumer<QrCodeLogin> mutator) {
+        QrCodeLogin[] updated = new QrCodeLogin[1];
+        sessions.computeIfPresent(qrToken, (key, entry) -> {
+            if (entry.isExpired(System.currentTimeMillis())) {
+                return null;
+            }
+            if (entry.session.getStatus() == null || entry.session.getStatus() != expectedStatus) {
+                return entry;
+            }
+            QrCodeLogin session = copy(entry.session);
+            mutator.accept(session);
+            updated[0] = session;
+            return new Entry(copy(session), entry.expireAt);
+        });
+        return updated[0];
+    }
+
+    private static QrCodeLogin copy(QrCodeLogin source) {
+        QrCodeLogin target = new QrCodeLogin();
+        BeanUtils.copyProperties(source, target);
+        return target;
+    }
+
+    private static final class Entry {
+        private final QrCodeLogin session;
+        private final long expireAt;
+
+        private Entry(QrCodeLogin session, long expireAt) {
+            this.session = session;
+            this.expireAt = expireAt;
+        }
+
+        private boolean isExpired(long now) {
+            return expireAt <= now;
+        }
+    }
+}
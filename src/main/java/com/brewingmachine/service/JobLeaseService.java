@@ -0,0 +1,73 @@
+package com.brewingmachine.service;
+
+import com.brewingmachine.mapper.JobLeaseMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.net.InetAddress;
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+/**
+ * 定时任务租约服务
+ * 基于job_lease表的租约，多节点部署时同一任务同一时刻只在持有租约的节点执行；节点宕机后租约到期即可被其他节点接管
+ */
+@Slf4j
+@Service
+public class JobLeaseService {
+
+    private final JobLeaseMapper jobLeaseMapper;
+
+    // 本节点标识：主机名 + 随机后缀，同一主机多实例也能区分
+    private final String owner;
+
+    public JobLeaseService(JobLeaseMapper jobLeaseMapper) {
+        this.jobLeaseMapper = jobLeaseMapper;
+        this.owner = resolveHostName() + ":" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    /**
+     * 抢占或续期租约，成功返回true
+     */
+    public boolean tryAcquire(String leaseName, long leaseSeconds) {
+        LocalDateTime now = LocalDateTime.now();
+        try {
+            jobLeaseMapper.upsertLease(leaseName, owner, now, now.plusSeconds(leaseSeconds));
+            return owner.equals(jobLeaseMapper.selectOwner(leaseName));
+        } catch (Exception e) {
+            log.error("获取任务租约失败，lease: {}", leaseName, e);
+            return false;
+        }
+    }
+
+    /**
+     * 租约是否被某个节点持有。在事务中调用时对租约行加共享锁，抢占租约会等到该事务结束，
+     * 因此事务内判断为未持有后，提交前任务不会开始
+     */
+    public boolean isHeld(String leaseName) {
+        return jobLeaseMapper.isActiveForShare(leaseName, LocalDateTime.now());
+    }
+
+    /**
+     * 释放租约，其他节点可立即接管
+     */
+    public void release(String leaseName) {
+        try {
+            jobLeaseMapper.releaseLease(leaseName, owner, LocalDateTime.now());
+        } catch (Exception e) {
+            log.warn("释放任务租约失败，lease: {}", leaseName, e);
+        }
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    private static String resolveHostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            return "unknown";
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.brewingmachine.service;
+
+import com.brewingmachine.entity.User;
+import com.brewingmachine.mapper.UserMapper;
+import com.brewingmachine.util.TransactionUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 最后登录时间延迟写入
+ * 登录只把事件记入内存，同一用户多次登录合并为最新一次；定时按批一条UPDATE ... CASE写入user表，
+ * 避免每次登录都对热点用户行加锁；应用关闭时写入剩余事件
+ */
+@Slf4j
+@Component
+public class LastLoginTimeWriter {
+
+    private final UserMapper userMapper;
+
+    @Value("${login.write-behind.batch-size:500}")
+    private int batchSize;
+
+    @Value("${login.write-behind.max-pending:100000}")
+    private int maxPending;
+
+    // 待写入：用户ID → 最后登录时间
+    private final Map<Long, LocalDateTime> pending = new ConcurrentHashMap<>();
+
+    private final AtomicLong recordedCount = new AtomicLong();
+    private final AtomicLong flushedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private volatile int lastFlushSize;
+    private volatile long lastFlushLagMs;
+
+    public LastLoginTimeWriter(UserMapper userMapper) {
+        this.userMapper = userMapper;
+    }
+
+    /**
+     * 记录一次登录
+     */
+    public void record(Long userId) {
+        LocalDateTime now = LocalDateTime.now();
+        // 在事务中登录（如新建用户）时等提交后再记录，避免写入时用户行尚不可见
+        TransactionUtil.runAfterCommit(() -> {
+            recordedCount.incrementAndGet();
+            if (pending.size() >= maxPending && !pending.containsKey(userId)) {
+                droppedCount.incrementAndGet();
+                return;
+            }
+            pending.merge(userId, now, (previous, latest) -> latest.isAfter(previous) ? latest : previous);
+        });
+    }
+
+    @Scheduled(initialDelayString = "${login.write-behind.flush-interval-ms:1000}",
+            fixedDelayString = "${login.write-behind.flush-interval-ms:1000}")
+    public void scheduledFlush() {
+        flush();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+        if (!pending.isEmpty()) {
+            log.warn("应用关闭时仍有{}条最后登录时间未写入", pending.size());
+        }
+    }
+
+    /**
+     * 写入所有待写事件
+     */
+    public synchronized void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        List<User> drained = new ArrayList<>(Math.min(pending.size(), maxPending));
+        LocalDateTime oldest = null;
+        for (Map.Entry<Long, LocalDateTime> entry : pending.entrySet()) {
+            // 只在值未变时移除；遍历期间同一用户又登录时保留更新的时间留待下次写入
+            if (!pending.remove(entry.getKey(), entry.getValue())) {
+                continue;
+            }
+            User user = new User();
+            user.setId(entry.getKey());
+            user.setLastLoginTime(entry.getValue());
+            drained.add(user);
+            if (oldest == null || entry.getValue().isBefore(oldest)) {
+                oldest = entry.getValue();
+            }
+        }
+
+        int flushed = 0;
+        for (int from = 0; from < drained.size(); from += batchSize) {
+            List<User> batch = drained.subList(from, Math.min(from + batchSize, drained.size()));
+            try {
+                userMapper.batchUpdateLastLoginTime(batch);
+                flushed += batch.size();
+            } catch (Exception e) {
+                log.error("批量写入最后登录时间失败，{}条将在下次重试", batch.size(), e);
+                for (User user : batch) {
+                    pending.merge(user.getId(), user.getLastLoginTime(),
+                            (latest, previous) -> latest.isAfter(previous) ? latest : previous);
+                }
+            }
+        }
+
+        flushedCount.addAndGet(flushed);
+        lastFlushSize = flushed;
+        lastFlushLagMs = oldest != null ? Duration.between(oldest, LocalDateTime.now()).toMillis() : 0;
+    }
+
+    /**
+     * 写入指标：累计记录/写入/丢弃数、最近一次写入条数和延迟（最早事件到写入的毫秒数）
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("pending", pending.size());
+        metrics.put("recorded", recordedCount.get());
+        metrics.put("flushed", flushedCount.get());
+        metrics.put("dropped", droppedCount.get());
+        metrics.put("lastFlushSize", lastFlushSize);
+        metrics.put("lastFlushLagMs", lastFlushLagMs);
+        return metrics;
+    }
+}
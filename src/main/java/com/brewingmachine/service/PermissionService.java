@@ -11,26 +11,31 @@ import java.util.List;
 public class PermissionService {
 
     private final PermissionMapper permissionMapper;
+    private final AuthorizationService authorizationService;
 
-    public PermissionService(PermissionMapper permissionMapper) {
+    public PermissionService(PermissionMapper permissionMapper, AuthorizationService authorizationService) {
         this.permissionMapper = permissionMapper;
+        this.authorizationService = authorizationService;
     }
 
     @Transactional
     public Permission createPermission(Permission permission) {
         permissionMapper.insert(permission);
+        authorizationService.invalidateAll();
         return permissionMapper.selectById(permission.getId());
     }
 
     @Transactional
     public Permission updatePermission(Permission permission) {
         permissionMapper.update(permission);
+        authorizationService.invalidateAll();
         return permissionMapper.selectById(permission.getId());
     }
 
     @Transactional
     public void deletePermission(Long id) {
         permissionMapper.deleteById(id);
+        authorizationService.invalidateAll();
     }
 
     public Permission getPermissionById(Long id) {
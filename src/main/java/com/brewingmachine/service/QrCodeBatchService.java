@@ -0,0 +1,212 @@
+package com.brewingmachine.service;
+
+import com.brewingmachine.entity.QrCodeLogin;
+import com.brewingmachine.mapper.QrCodeLoginMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * 批量二维码生成服务
+ * 一次创建整批角色绑定二维码：批量打印的二维码有效期长，先在一个事务内多行插入qr_code_login（persistent=1）
+ * 作为准，再写入QrSessionStore；会话丢失（如内存存储的节点重启）时从数据库恢复。
+ * 图片多核并行渲染，按顺序边渲染边写入ZIP输出流，同一时刻只保留窗口内的图片
+ */
+@Slf4j
+@Service
+public class QrCodeBatchService {
+
+    private final QrSessionStore qrSessionStore;
+    private final QrCodeLoginMapper qrCodeLoginMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final QrCodeService qrCodeService;
+    private final RegionPathService regionPathService;
+
+    @Value("${qr.batch.max-count:1000}")
+    private int maxCount;
+
+    @Value("${qr.batch.expire-seconds:86400}")
+    private int expireSeconds;
+
+    @Value("${qr.batch.insert-size:500}")
+    private int insertSize;
+
+    private int renderThreads;
+
+    private ExecutorService renderExecutor;
+
+    public QrCodeBatchService(QrSessionStore qrSessionStore, QrCodeLoginMapper qrCodeLoginMapper,
+                              TransactionTemplate transactionTemplate, QrCodeService qrCodeService,
+                              RegionPathService regionPathService) {
+        this.qrSessionStore = qrSessionStore;
+        this.qrCodeLoginMapper = qrCodeLoginMapper;
+        this.transactionTemplate = transactionTemplate;
+        this.qrCodeService = qrCodeService;
+        this.regionPathService = regionPathService;
+    }
+
+    @PostConstruct
+    public void init() {
+        renderThreads = Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadIndex = new AtomicInteger();
+        renderExecutor = Executors.newFixedThreadPool(renderThreads, runnable -> {
+            Thread thread = new Thread(runnable, "qr-batch-render-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        renderExecutor.shutdownNow();
+    }
+
+    public int getMaxCount() {
+        return maxCount;
+    }
+
+    /**
+     * 批量创建角色绑定二维码并落库，返回按顺序排列的会话；落库失败时抛出异常，不会返回未保存的二维码；regionCode为地区12位编码（可只传省市区街道名称）
+     */
+    public List<QrCodeLogin> createRoleBindBatch(int count, String role, String regionCode, String province, String city,
+                                                 String district, String street) {
+        if (count <= 0 || count > maxCount) {
+            throw new RuntimeException("批量生成数量必须在1到" + maxCount + "之间");
+        }
+
+        // 整批共用同一地区，只校验一次
+        QrCodeLogin region = new QrCodeLogin();
+        region.setProvince(province);
+        region.setCity(city);
+        region.setDistrict(district);
+        region.setStreet(street);
+        region.setRegionCode(regionCode);
+        regionPathService.resolve(region);
+
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime expireTime = now.plusSeconds(expireSeconds);
+        List<QrCodeLogin> qrCodeLogins = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String qrToken = UUID.randomUUID().toString().replace("-", "");
+
+            QrCodeLogin qrCodeLogin = new QrCodeLogin();
+            qrCodeLogin.setQrToken(qrToken);
+            qrCodeLogin.setStatus(0); // 未扫描
+            qrCodeLogin.setRole(role);
+            qrCodeLogin.setProvince(region.getProvince());
+            qrCodeLogin.setCity(region.getCity());
+            qrCodeLogin.setDistrict(region.getDistrict());
+            qrCodeLogin.setStreet(region.getStreet());
+            qrCodeLogin.setRegionCode(region.getRegionCode());
+            qrCodeLogin.setCreateTime(now);
+            qrCodeLogin.setExpireTime(expireTime);
+            qrCodeLogin.setPersistent(true);
+            qrCodeLogin.setQrContent(RoleBindQrCodePool.buildContent(qrToken, role));
+            qrCodeLogins.add(qrCodeLogin);
+        }
+
+        // 同步整批落库（全部成功或全部回滚），打印出去的二维码不依赖会话存储是否持久
+        transactionTemplate.executeWithoutResult(status -> {
+            for (int from = 0; from < count; from += insertSize) {
+                qrCodeLoginMapper.insertBatch(qrCodeLogins.subList(from, Math.min(from + insertSize, count)));
+            }
+        });
+        for (QrCodeLogin qrCodeLogin : qrCodeLogins) {
+            qrSessionStore.create(qrCodeLogin, expireSeconds);
+        }
+
+        log.info("批量生成角色绑定二维码，数量: {}, role: {}", count, role);
+        return qrCodeLogins;
+    }
+
+    /**
+     * 把二维码写成ZIP：先写清单manifest.csv，再按顺序写入每张PNG
+     */
+    public void writeZip(List<QrCodeLogin> qrCodeLogins, OutputStream out) throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(out);
+        // PNG本身已压缩，ZIP只做打包
+        zip.setLevel(Deflater.NO_COMPRESSION);
+
+        zip.putNextEntry(new ZipEntry("manifest.csv"));
+        StringBuilder manifest = new StringBuilder("index,qrToken,role,expireTime\n");
+        for (int i = 0; i < qrCodeLogins.size(); i++) {
+            QrCodeLogin qrCodeLogin = qrCodeLogins.get(i);
+            manifest.append(i + 1).append(',').append(qrCodeLogin.getQrToken()).append(',')
+                    .append(csvField(qrCodeLogin.getRole())).append(',').append(qrCodeLogin.getExpireTime()).append('\n');
+        }
+        zip.write(manifest.toString().getBytes(StandardCharsets.UTF_8));
+        zip.closeEntry();
+
+        // 并行渲染，最多提前渲染window张，按提交顺序写出
+        int window = renderThreads * 2;
+        Deque<CompletableFuture<byte[]>> pending = new ArrayDeque<>(window);
+        int next = 0;
+        int written = 0;
+        try {
+            while (written < qrCodeLogins.size()) {
+                while (next < qrCodeLogins.size() && pending.size() < window) {
+                    String qrContent = qrCodeLogins.get(next).getQrContent();
+                    pending.addLast(CompletableFuture.supplyAsync(() -> render(qrContent), renderExecutor));
+                    next++;
+                }
+
+                byte[] png = pending.removeFirst().join();
+                QrCodeLogin qrCodeLogin = qrCodeLogins.get(written);
+                zip.putNextEntry(new ZipEntry(String.format("%04d_%s.png", written + 1, qrCodeLogin.getQrToken())));
+                zip.write(png);
+                zip.closeEntry();
+                written++;
+            }
+        } catch (CompletionException e) {
+            throw new IOException("渲染二维码失败", e.getCause());
+        } finally {
+            for (CompletableFuture<byte[]> future : pending) {
+                future.cancel(false);
+            }
+        }
+        zip.finish();
+        zip.flush();
+    }
+
+    /**
+     * CSV字段转义：含逗号、引号或换行时加双引号，内部引号加倍
+     */
+    static String csvField(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private byte[] render(String qrContent) {
+        try {
+            return qrCodeService.generateQrCodePng(qrContent);
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.brewingmachine.service;
+
+import com.brewingmachine.entity.QrCodeLogin;
+import com.brewingmachine.mapper.QrCodeLoginMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 二维码登录审计写入
+ * 会话状态由QrSessionStore维护，qr_code_login表只做异步留档；单线程按提交顺序写入，保证同一二维码的插入先于更新
+ */
+@Slf4j
+@Component
+public class QrCodeLoginAuditWriter {
+
+    private final QrCodeLoginMapper qrCodeLoginMapper;
+
+    @Value("${qr.audit.queue-capacity:10000}")
+    private int queueCapacity;
+
+    private ThreadPoolExecutor executor;
+
+    public QrCodeLoginAuditWriter(QrCodeLoginMapper qrCodeLoginMapper) {
+        this.qrCodeLoginMapper = qrCodeLoginMapper;
+    }
+
+    @PostConstruct
+    public void init() {
+        executor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "qr-audit-writer");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+            log.warn("二维码审计写入未在超时前完成，剩余任务数: {}", executor.getQueue().size());
+        }
+    }
+
+    public void recordCreated(QrCodeLogin qrCodeLogin) {
+        submit("insert", qrCodeLogin.getQrToken(), () -> qrCodeLoginMapper.insert(qrCodeLogin));
+    }
+
+    public void recordScanned(String qrToken, LocalDateTime scanTime) {
+        submit("scan", qrToken, () -> qrCodeLoginMapper.scanQrCode(qrToken, scanTime));
+    }
+
+    public void recordConfirmed(String qrToken, Long userId, String userInfo, LocalDateTime confirmTime) {
+        submit("confirm", qrToken, () -> qrCodeLoginMapper.confirmLogin(qrToken, userId, userInfo, confirmTime));
+    }
+
+    private void submit(String action, String qrToken, Runnable task) {
+        try {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    log.error("二维码审计写入失败，action: {}, token: {}", action, qrToken, e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.warn("二维码审计队列已满，丢弃记录，action: {}, token: {}", action, qrToken);
+        }
+    }
+}
@@ -1,18 +1,27 @@
 package com.brewingmachine.service;
 
-import com.alibaba.fastjson.JSON;
+import com.brewingmachine.config.JsonCodec;
+import com.brewingmachine.dto.RawJson;
 import com.brewingmachine.entity.QrCodeLogin;
 import com.brewingmachine.mapper.QrCodeLoginMapper;
+import com.brewingmachine.util.TransactionUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 二维码登录服务
@@ -22,29 +31,65 @@ import java.util.UUID;
 public class QrCodeLoginService {
 
     @Autowired
-    private QrCodeLoginMapper qrCodeLoginMapper;
+    private QrSessionStore qrSessionStore;
+
+    @Autowired
+    private QrCodeLoginAuditWriter qrCodeLoginAuditWriter;
+
+    @Autowired
+    private QrStatusNotifier qrStatusNotifier;
 
     @Autowired
     private QrCodeService qrCodeService;
 
+    @Autowired
+    private RoleBindQrCodePool roleBindQrCodePool;
+
     @Autowired
     private AuthService authService;
 
+    @Autowired
+    private JsonCodec jsonCodec;
+
+    @Autowired
+    private RegionPathService regionPathService;
+
+    @Autowired
+    private QrCodeLoginMapper qrCodeLoginMapper;
+
     @Value("${qr.code.expire-seconds:300}")
     private int expireSeconds;
 
+    @Value("${qr.session.miss-ttl-ms:5000}")
+    private long missTtlMillis;
+
+    @Value("${qr.session.miss-cache-size:10000}")
+    private int missCacheSize;
+
+    // 有监听的二维码 -> 上次检查时会话存储中的状态，用于推送其他节点上发生的状态变化和到期
+    private final Map<String, Object> watchedStatuses = new ConcurrentHashMap<>();
+
+    // 会话和数据库中都不存在的token -> 缓存截止时间（毫秒），轮询不存在或已过期的二维码时不再每次查库；超限按写入顺序淘汰
+    private final Map<String, Long> missedTokens = Collections.synchronizedMap(
+            new LinkedHashMap<String, Long>(256, 0.75f, false) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                    return size() > missCacheSize;
+                }
+            });
+
     /**
      * 生成二维码
      */
     public Map<String, Object> generateQrCode() {
-        return generateQrCode(null, null, null, null, null);
+        return generateQrCode(null, null, null, null, null, null);
     }
 
     /**
-     * 生成带角色和层级信息的二维码
+     * 生成带角色和层级信息的二维码，regionCode为地区12位编码（可只传省市区街道名称）
      */
 //    @Transactional
-    public Map<String, Object> generateQrCode(String role, String province, String city, String district, String street) {
+    public Map<String, Object> generateQrCode(String role, String regionCode, String province, String city, String district, String street) {
         try {
             // 生成唯一token
             String qrToken = UUID.randomUUID().toString().replace("-", "");
@@ -58,10 +103,11 @@ public class QrCodeLoginService {
             qrCodeLogin.setCity(city);
             qrCodeLogin.setDistrict(district);
             qrCodeLogin.setStreet(street);
+            qrCodeLogin.setRegionCode(regionCode);
+            regionPathService.resolve(qrCodeLogin);
             qrCodeLogin.setCreateTime(LocalDateTime.now());
             qrCodeLogin.setExpireTime(LocalDateTime.now().plusSeconds(expireSeconds));
             
-            qrCodeLoginMapper.insert(qrCodeLogin);
 
             // 生成二维码内容（前端扫码后会跳转到这个地址）
             StringBuilder qrContentBuilder = new StringBuilder("brewingmachine://login?token=");
@@ -71,6 +117,10 @@ public class QrCodeLoginService {
             }
             
             String qrContent = qrContentBuilder.toString();
+            qrCodeLogin.setQrContent(qrContent);
+
+            qrSessionStore.create(qrCodeLogin, expireSeconds);
+            qrCodeLoginAuditWriter.recordCreated(qrCodeLogin);
             
             // 生成二维码图片（Base64）
             String qrCodeImage = qrCodeService.generateQrCodeBase64(qrContent);
@@ -90,48 +140,42 @@ public class QrCodeLoginService {
     }
     
     /**
-     * 生成角色绑定二维码（纯角色绑定，与登录无关）
+     * 生成角色绑定二维码（纯角色绑定，与登录无关），regionCode为地区12位编码（可只传省市区街道名称）
      */
-    public Map<String, Object> generateRoleBindQrCode(String role, String province, String city, String district, String street) {
+    public Map<String, Object> generateRoleBindQrCode(String role, String regionCode, String province, String city, String district, String street) {
         try {
-            // 生成唯一token
-            String qrToken = UUID.randomUUID().toString().replace("-", "");
-            
-            // 创建二维码登录记录
+            // 创建二维码登录记录（先校验地区，避免无效请求消耗预生成池）
             QrCodeLogin qrCodeLogin = new QrCodeLogin();
-            qrCodeLogin.setQrToken(qrToken);
             qrCodeLogin.setStatus(0); // 未扫描
             qrCodeLogin.setRole(role);
             qrCodeLogin.setProvince(province);
             qrCodeLogin.setCity(city);
             qrCodeLogin.setDistrict(district);
             qrCodeLogin.setStreet(street);
+            qrCodeLogin.setRegionCode(regionCode);
+            regionPathService.resolve(qrCodeLogin);
+
+            // 从预生成池取出token和二维码图片
+            RoleBindQrCodePool.PreparedQrCode prepared = roleBindQrCodePool.take(role);
+            String qrToken = prepared.getQrToken();
+            qrCodeLogin.setQrToken(qrToken);
             qrCodeLogin.setCreateTime(LocalDateTime.now());
             qrCodeLogin.setExpireTime(LocalDateTime.now().plusSeconds(expireSeconds));
-            
-            qrCodeLoginMapper.insert(qrCodeLogin);
+            qrCodeLogin.setQrContent(prepared.getQrContent());
 
-            // 生成二维码内容（纯角色绑定，与登录无关）
-            StringBuilder qrContentBuilder = new StringBuilder("brewingmachine://role-bind?token=");
-            qrContentBuilder.append(qrToken);
-            if (role != null) {
-                qrContentBuilder.append("&role=").append(role);
-            }
-            
-            String qrContent = qrContentBuilder.toString();
-            
-            // 生成二维码图片（Base64）
-            String qrCodeImage = qrCodeService.generateQrCodeBase64(qrContent);
+            qrSessionStore.create(qrCodeLogin, expireSeconds);
+            qrCodeLoginAuditWriter.recordCreated(qrCodeLogin);
 
             Map<String, Object> result = new HashMap<>();
             result.put("qrToken", qrToken);
-            result.put("qrCodeImage", qrCodeImage);
+            result.put("qrCodeImage", prepared.getQrCodeImage());
             result.put("expireTime", qrCodeLogin.getExpireTime().toString());
             result.put("role", role);
-            result.put("province", province);
-            result.put("city", city);
-            result.put("district", district);
-            result.put("street", street);
+            result.put("province", qrCodeLogin.getProvince());
+            result.put("city", qrCodeLogin.getCity());
+            result.put("district", qrCodeLogin.getDistrict());
+            result.put("street", qrCodeLogin.getStreet());
+            result.put("regionCode", qrCodeLogin.getRegionCode());
 
             log.info("生成角色绑定二维码成功，token: {}, role: {}", qrToken, role);
             return result;
@@ -142,17 +186,32 @@ public class QrCodeLoginService {
         }
     }
 
+    /**
+     * 预热角色绑定二维码池（推广活动开始前调用），二维码内容与地区无关，按角色预热
+     */
+    public void warmUpRoleBindQrCode(String role) {
+        roleBindQrCodePool.warmUp(role);
+    }
+
+    /**
+     * 查询二维码内容，二维码不存在或已过期返回null
+     */
+    public String getQrContent(String qrToken) {
+        QrCodeLogin qrCodeLogin = findSession(qrToken);
+        return qrCodeLogin != null ? qrCodeLogin.getQrContent() : null;
+    }
+
     /**
      * 查询二维码状态
      */
     public Map<String, Object> queryQrCodeStatus(String qrToken) {
-        QrCodeLogin qrCodeLogin = qrCodeLoginMapper.findByQrToken(qrToken);
+        QrCodeLogin qrCodeLogin = findSession(qrToken);
         
         Map<String, Object> result = new HashMap<>();
         
         if (qrCodeLogin == null) {
-            result.put("status", -1); // 不存在
-            result.put("message", "二维码不存在");
+            result.put("status", -1); // 不存在（会话超过有效期后自动清除）
+            result.put("message", "二维码不存在或已过期");
             return result;
         }
         
@@ -176,7 +235,8 @@ public class QrCodeLoginService {
             case 2:
                 result.put("message", "登录成功");
                 if (qrCodeLogin.getUserInfo() != null) {
-                    result.put("userInfo", JSON.parseObject(qrCodeLogin.getUserInfo()));
+                    // 确认时已编码为JSON，原样输出
+                    result.put("userInfo", new RawJson(qrCodeLogin.getUserInfo()));
                 }
                 result.put("userId", qrCodeLogin.getUserId());
                 break;
@@ -190,9 +250,8 @@ public class QrCodeLoginService {
     /**
      * 扫描二维码（移动端调用）
      */
-    @Transactional
     public Map<String, Object> scanQrCode(String qrToken) {
-        QrCodeLogin qrCodeLogin = qrCodeLoginMapper.findByQrToken(qrToken);
+        QrCodeLogin qrCodeLogin = findSession(qrToken);
         
         Map<String, Object> result = new HashMap<>();
         
@@ -216,10 +275,8 @@ public class QrCodeLoginService {
             return result;
         }
 
-        // 更新为已扫描状态
-        int updateCount = qrCodeLoginMapper.scanQrCode(qrToken, LocalDateTime.now());
-        
-        if (updateCount > 0) {
+        // 更新为已扫描状态（0 → 1，原子迁移）
+        if (markScanned(qrToken)) {
             result.put("success", true);
             result.put("message", "扫描成功");
             log.info("二维码被扫描，token: {}", qrToken);
@@ -236,7 +293,7 @@ public class QrCodeLoginService {
      */
     @Transactional
     public Map<String, Object> confirmLogin(String qrToken, Long userId, Map<String, Object> userInfo) {
-        QrCodeLogin qrCodeLogin = qrCodeLoginMapper.findByQrToken(qrToken);
+        QrCodeLogin qrCodeLogin = findSession(qrToken);
         
         Map<String, Object> result = new HashMap<>();
         
@@ -263,27 +320,10 @@ public class QrCodeLoginService {
         // 检查是否需要绑定角色
             if (qrCodeLogin.getRole() != null) {
                 try {
-                    // 构建层级信息字符串
-                    StringBuilder hierarchyBuilder = new StringBuilder();
-                    if (qrCodeLogin.getProvince() != null) {
-                        hierarchyBuilder.append(qrCodeLogin.getProvince());
-                    }
-                    if (qrCodeLogin.getCity() != null) {
-                        if (hierarchyBuilder.length() > 0) hierarchyBuilder.append("-");
-                        hierarchyBuilder.append(qrCodeLogin.getCity());
-                    }
-                    if (qrCodeLogin.getDistrict() != null) {
-                        if (hierarchyBuilder.length() > 0) hierarchyBuilder.append("-");
-                        hierarchyBuilder.append(qrCodeLogin.getDistrict());
-                    }
-                    if (qrCodeLogin.getStreet() != null) {
-                        if (hierarchyBuilder.length() > 0) hierarchyBuilder.append("-");
-                        hierarchyBuilder.append(qrCodeLogin.getStreet());
-                    }
-                    String hierarchy = hierarchyBuilder.toString();
-                    
-                    // 更新用户角色和层级信息
-                    authService.updateUserRoleAndHierarchy(userId, qrCodeLogin.getRole(), hierarchy);
+                    // 更新用户角色、层级信息和地区编码路径
+                    String hierarchy = buildHierarchy(qrCodeLogin);
+                    authService.updateUserRoleAndHierarchy(userId, qrCodeLogin.getRole(), hierarchy,
+                            qrCodeLogin.getRegionCode(), regionPathService.pathOf(qrCodeLogin.getRegionCode()));
                     log.info("用户绑定角色和层级信息成功，userId: {}, role: {}, hierarchy: {}", userId, qrCodeLogin.getRole(), hierarchy);
                     result.put("roleBound", true);
                     result.put("role", qrCodeLogin.getRole());
@@ -299,15 +339,15 @@ public class QrCodeLoginService {
                 result.put("roleBound", false);
             }
 
-        // 确认登录
-        String userInfoJson = JSON.toJSONString(userInfo);
-        int updateCount = qrCodeLoginMapper.confirmLogin(qrToken, userId, userInfoJson, LocalDateTime.now());
-        
-        if (updateCount > 0) {
+        // 确认登录（1 → 2，原子迁移，保证二维码只被使用一次）
+        String userInfoJson = jsonCodec.toJson(userInfo);
+        if (markConfirmed(qrToken, userId, userInfoJson)) {
             result.put("success", true);
             result.put("message", "登录成功");
             log.info("二维码登录确认成功，token: {}, userId: {}", qrToken, userId);
         } else {
+            // 并发确认中失败的一方回滚已绑定的角色
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
             result.put("success", false);
             result.put("message", "登录失败");
         }
@@ -320,7 +360,7 @@ public class QrCodeLoginService {
      */
     @Transactional
     public Map<String, Object> confirmRoleBind(String qrToken, Long userId) {
-        QrCodeLogin qrCodeLogin = qrCodeLoginMapper.findByQrToken(qrToken);
+        QrCodeLogin qrCodeLogin = findSession(qrToken);
         
         Map<String, Object> result = new HashMap<>();
         
@@ -346,8 +386,7 @@ public class QrCodeLoginService {
 
         // 更新为已扫描状态
         if (qrCodeLogin.getStatus() == 0) {
-            int updateCount = qrCodeLoginMapper.scanQrCode(qrToken, LocalDateTime.now());
-            if (updateCount <= 0) {
+            if (!markScanned(qrToken)) {
                 result.put("success", false);
                 result.put("message", "更新二维码状态失败");
                 return result;
@@ -357,27 +396,10 @@ public class QrCodeLoginService {
         // 绑定角色和层级信息
         if (qrCodeLogin.getRole() != null) {
             try {
-                // 构建层级信息字符串
-                StringBuilder hierarchyBuilder = new StringBuilder();
-                if (qrCodeLogin.getProvince() != null) {
-                    hierarchyBuilder.append(qrCodeLogin.getProvince());
-                }
-                if (qrCodeLogin.getCity() != null) {
-                    if (hierarchyBuilder.length() > 0) hierarchyBuilder.append("-");
-                    hierarchyBuilder.append(qrCodeLogin.getCity());
-                }
-                if (qrCodeLogin.getDistrict() != null) {
-                    if (hierarchyBuilder.length() > 0) hierarchyBuilder.append("-");
-                    hierarchyBuilder.append(qrCodeLogin.getDistrict());
-                }
-                if (qrCodeLogin.getStreet() != null) {
-                    if (hierarchyBuilder.length() > 0) hierarchyBuilder.append("-");
-                    hierarchyBuilder.append(qrCodeLogin.getStreet());
-                }
-                String hierarchy = hierarchyBuilder.toString();
-                
-                // 更新用户角色和层级信息
-                authService.updateUserRoleAndHierarchy(userId, qrCodeLogin.getRole(), hierarchy);
+                // 更新用户角色、层级信息和地区编码路径
+                String hierarchy = buildHierarchy(qrCodeLogin);
+                authService.updateUserRoleAndHierarchy(userId, qrCodeLogin.getRole(), hierarchy,
+                        qrCodeLogin.getRegionCode(), regionPathService.pathOf(qrCodeLogin.getRegionCode()));
                 log.info("用户绑定角色和层级信息成功，userId: {}, role: {}, hierarchy: {}", userId, qrCodeLogin.getRole(), hierarchy);
                 result.put("roleBound", true);
                 result.put("role", qrCodeLogin.getRole());
@@ -397,18 +419,155 @@ public class QrCodeLoginService {
         }
 
         // 更新二维码状态为已使用
-        int updateCount = qrCodeLoginMapper.confirmLogin(qrToken, userId, null, LocalDateTime.now());
-        
-        if (updateCount > 0) {
+        if (markConfirmed(qrToken, userId, null)) {
             result.put("success", true);
             result.put("message", "角色绑定成功");
             log.info("二维码角色绑定确认成功，token: {}, userId: {}", qrToken, userId);
         } else {
+            // 并发确认中失败的一方回滚已绑定的角色
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
             result.put("success", false);
             result.put("message", "角色绑定失败");
         }
 
         return result;
     }
+
+    /**
+     * 层级信息字符串（省市区街道名称以-连接），仅用于展示，按地区查询使用地区编码路径
+     */
+    private String buildHierarchy(QrCodeLogin qrCodeLogin) {
+        StringBuilder hierarchyBuilder = new StringBuilder();
+        for (String name : new String[]{qrCodeLogin.getProvince(), qrCodeLogin.getCity(),
+                qrCodeLogin.getDistrict(), qrCodeLogin.getStreet()}) {
+            if (name != null) {
+                if (hierarchyBuilder.length() > 0) hierarchyBuilder.append("-");
+                hierarchyBuilder.append(name);
+            }
+        }
+        return hierarchyBuilder.toString();
+    }
+
+    /**
+     * 查询会话；长效二维码（批量打印）的会话丢失时从数据库恢复，数据库中也没有的token短时间内不再查库
+     */
+    private QrCodeLogin findSession(String qrToken) {
+        QrCodeLogin qrCodeLogin = qrSessionStore.find(qrToken);
+        if (qrCodeLogin != null) {
+            return qrCodeLogin;
+        }
+
+        long nowMillis = System.currentTimeMillis();
+        Long missedUntil = missedTokens.get(qrToken);
+        if (missedUntil != null) {
+            if (missedUntil > nowMillis) {
+                return null;
+            }
+            missedTokens.remove(qrToken);
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        QrCodeLogin persisted = qrCodeLoginMapper.findPersistentByToken(qrToken, now);
+        long ttlSeconds = persisted != null ? Duration.between(now, persisted.getExpireTime()).getSeconds() : 0;
+        if (ttlSeconds <= 0) {
+            missedTokens.put(qrToken, nowMillis + missTtlMillis);
+            return null;
+        }
+        persisted.setQrContent(RoleBindQrCodePool.buildContent(qrToken, persisted.getRole()));
+        qrSessionStore.create(persisted, ttlSeconds);
+        log.info("从数据库恢复长效二维码会话，token: {}", qrToken);
+        return persisted;
+    }
+
+    /**
+     * 未扫描 → 已扫描
+     */
+    private boolean markScanned(String qrToken) {
+        LocalDateTime scanTime = LocalDateTime.now();
+        QrCodeLogin updated = qrSessionStore.transition(qrToken, 0, session -> {
+            session.setStatus(1);
+            session.setScanTime(scanTime);
+        });
+        if (updated == null) {
+            return false;
+        }
+        qrCodeLoginAuditWriter.recordScanned(qrToken, scanTime);
+        notifyStatusChanged(qrToken);
+        return true;
+    }
+
+    /**
+     * 已扫描 → 已确认
+     */
+    private boolean markConfirmed(String qrToken, Long userId, String userInfoJson) {
+        LocalDateTime confirmTime = LocalDateTime.now();
+        QrCodeLogin updated = qrSessionStore.transition(qrToken, 1, session -> {
+            session.setStatus(2);
+            session.setUserId(userId);
+            session.setUserInfo(userInfoJson);
+            session.setConfirmTime(confirmTime);
+        });
+        if (updated == null) {
+            return false;
+        }
+        // 会话存储不参与数据库事务：角色绑定回滚时把会话退回已扫描，二维码可以重新确认
+        TransactionUtil.runAfterRollback(() -> revertConfirmed(qrToken, userId));
+        if (Boolean.TRUE.equals(updated.getPersistent())) {
+            // 长效二维码以数据库为准，在当前事务内确认；会话曾丢失并恢复过的二维码也只能使用一次
+            if (qrCodeLoginMapper.confirmPersistent(qrToken, userId, userInfoJson, confirmTime) == 0) {
+                log.warn("长效二维码已被使用，token: {}", qrToken);
+                return false;
+            }
+        } else {
+            // 留档在提交后写入
+            TransactionUtil.runAfterCommit(() -> qrCodeLoginAuditWriter.recordConfirmed(qrToken, userId, userInfoJson, confirmTime));
+        }
+        notifyStatusChanged(qrToken);
+        return true;
+    }
+
+    /**
+     * 已确认 → 已扫描（确认所在事务回滚时的补偿）
+     */
+    private void revertConfirmed(String qrToken, Long userId) {
+        QrCodeLogin reverted = qrSessionStore.transition(qrToken, 2, session -> {
+            session.setStatus(1);
+            session.setUserId(null);
+            session.setUserInfo(null);
+            session.setConfirmTime(null);
+        });
+        log.warn("确认事务回滚，二维码会话{}退回已扫描状态，token: {}, userId: {}",
+                reverted != null ? "已" : "未能", qrToken, userId);
+    }
+
+    /**
+     * 通知等待该二维码状态的长轮询/SSE连接，事务提交后推送，回滚的状态不会被推送出去
+     */
+    private void notifyStatusChanged(String qrToken) {
+        TransactionUtil.runAfterCommit(() -> {
+            if (qrStatusNotifier.hasListeners(qrToken)) {
+                qrStatusNotifier.publish(qrToken, queryQrCodeStatus(qrToken));
+            }
+        });
+    }
+
+    /**
+     * 定期从会话存储重新读取有监听的二维码状态，状态与上次检查不同（含首次检查）时推送。
+     * 扫码/确认可能由其他节点处理，本节点的提交后推送收不到，由这里在一个检查间隔内补上；
+     * 过期也由这里推送。监听方按状态去重，重复推送同一状态无影响
+     */
+    @Scheduled(initialDelayString = "${qr.notify.expiry-check-ms:1000}",
+            fixedDelayString = "${qr.notify.expiry-check-ms:1000}")
+    public void publishWatchedStatus() {
+        Set<String> watched = qrStatusNotifier.getWatchedTokens();
+        watchedStatuses.keySet().retainAll(watched);
+        for (String qrToken : watched) {
+            Map<String, Object> status = queryQrCodeStatus(qrToken);
+            Object previous = watchedStatuses.put(qrToken, status.get("status"));
+            if (!status.get("status").equals(previous)) {
+                qrStatusNotifier.publish(qrToken, status);
+            }
+        }
+    }
 }
 
@@ -0,0 +1,124 @@
+package com.brewingmachine.service;
+
+import com.brewingmachine.mapper.QrCodeLoginMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 二维码登录过期记录清理
+ * 定时分批删除qr_code_login中的过期记录：每批按索引取最多batch-size条ID，（可选）先归档已确认记录再按ID删除，
+ * 每条语句单独提交，批次之间暂停，避免长时间持有行锁；通过数据库租约保证同一时刻只有一个节点执行
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "qr.sweeper", name = "enabled", havingValue = "true", matchIfMissing = true)
+public class QrCodeLoginSweeper {
+
+    private static final String LEASE_NAME = "qr_code_login_sweeper";
+
+    private final QrCodeLoginMapper qrCodeLoginMapper;
+    private final JobLeaseService jobLeaseService;
+
+    @Value("${qr.sweeper.batch-size:500}")
+    private int batchSize;
+
+    @Value("${qr.sweeper.pause-ms:200}")
+    private long pauseMillis;
+
+    @Value("${qr.sweeper.max-batches:200}")
+    private int maxBatches;
+
+    @Value("${qr.sweeper.grace-seconds:3600}")
+    private long graceSeconds;
+
+    @Value("${qr.sweeper.archive-confirmed:true}")
+    private boolean archiveConfirmed;
+
+    @Value("${qr.sweeper.lease-seconds:300}")
+    private long leaseSeconds;
+
+    private final AtomicLong totalSwept = new AtomicLong();
+    private final AtomicLong totalArchived = new AtomicLong();
+    private volatile long lastRunSwept;
+    private volatile long lagSeconds;
+    private volatile LocalDateTime lastRunTime;
+
+    public QrCodeLoginSweeper(QrCodeLoginMapper qrCodeLoginMapper, JobLeaseService jobLeaseService) {
+        this.qrCodeLoginMapper = qrCodeLoginMapper;
+        this.jobLeaseService = jobLeaseService;
+    }
+
+    @Scheduled(initialDelayString = "${qr.sweeper.initial-delay-ms:60000}",
+            fixedDelayString = "${qr.sweeper.interval-ms:600000}")
+    public void sweep() {
+        if (!jobLeaseService.tryAcquire(LEASE_NAME, leaseSeconds)) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        long swept = 0;
+        long archived = 0;
+        try {
+            // 过期后保留一段时间，给异步留档的扫码/确认更新留出余量
+            LocalDateTime cutoff = LocalDateTime.now().minusSeconds(graceSeconds);
+            for (int batch = 0; batch < maxBatches; batch++) {
+                List<Long> ids = qrCodeLoginMapper.selectExpiredIds(cutoff, batchSize);
+                if (ids.isEmpty()) {
+                    break;
+                }
+                if (archiveConfirmed) {
+                    archived += qrCodeLoginMapper.archiveConfirmedByIds(ids);
+                }
+                swept += qrCodeLoginMapper.deleteByIds(ids);
+
+                if (ids.size() < batchSize) {
+                    break;
+                }
+                Thread.sleep(pauseMillis);
+                if (!jobLeaseService.tryAcquire(LEASE_NAME, leaseSeconds)) {
+                    log.warn("二维码过期清理租约已被其他节点接管，停止本轮清理");
+                    break;
+                }
+            }
+
+            LocalDateTime oldest = qrCodeLoginMapper.selectOldestExpireTime(cutoff);
+            lagSeconds = oldest != null ? Duration.between(oldest, cutoff).getSeconds() : 0;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("二维码过期记录清理失败", e);
+        } finally {
+            jobLeaseService.release(LEASE_NAME);
+        }
+
+        totalSwept.addAndGet(swept);
+        totalArchived.addAndGet(archived);
+        lastRunSwept = swept;
+        lastRunTime = LocalDateTime.now();
+        log.info("二维码过期记录清理完成，删除: {}, 归档: {}, 积压: {}秒, 耗时: {}ms",
+                swept, archived, lagSeconds, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 清理指标：累计删除/归档行数、最近一轮删除行数、积压时长（最早未清理记录超出截止时间的秒数）
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("totalSwept", totalSwept.get());
+        metrics.put("totalArchived", totalArchived.get());
+        metrics.put("lastRunSwept", lastRunSwept);
+        metrics.put("lagSeconds", lagSeconds);
+        metrics.put("lastRunTime", lastRunTime != null ? lastRunTime.toString() : null);
+        return metrics;
+    }
+}
@@ -1,20 +1,20 @@
 package com.brewingmachine.service;
 
+import com.brewingmachine.util.QrImageEncoder;
 import com.google.zxing.BarcodeFormat;
 import com.google.zxing.EncodeHintType;
+import com.google.zxing.WriterException;
 import com.google.zxing.common.BitMatrix;
 import com.google.zxing.qrcode.QRCodeWriter;
 import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import javax.imageio.ImageIO;
-import java.awt.*;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
+import java.awt.image.DataBufferByte;
 import java.util.Base64;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.Map;
 
 /**
@@ -23,6 +23,18 @@ import java.util.Map;
 @Service
 public class QrCodeService {
 
+    private static final Map<EncodeHintType, Object> HINTS;
+
+    static {
+        Map<EncodeHintType, Object> hints = new EnumMap<>(EncodeHintType.class);
+        hints.put(EncodeHintType.CHARACTER_SET, "UTF-8");
+        hints.put(EncodeHintType.ERROR_CORRECTION, ErrorCorrectionLevel.H);
+        hints.put(EncodeHintType.MARGIN, 1);
+        HINTS = Collections.unmodifiableMap(hints);
+    }
+
+    private final QRCodeWriter qrCodeWriter = new QRCodeWriter();
+
     @Value("${qr.code.width:300}")
     private int width;
 
@@ -33,48 +45,48 @@ public class QrCodeService {
      * 生成二维码图片（Base64编码）
      */
     public String generateQrCodeBase64(String content) throws Exception {
-        BufferedImage image = generateQrCodeImage(content);
-        return imageToBase64(image);
+        return "data:image/png;base64," + Base64.getEncoder().encodeToString(generateQrCodePng(content));
     }
 
     /**
-     * 生成二维码图片
+     * 生成二维码PNG
+     * 二维码内容包含一次性token，每个内容只渲染一两次，不做缓存
      */
-    public BufferedImage generateQrCodeImage(String content) throws Exception {
-        Map<EncodeHintType, Object> hints = new HashMap<>();
-        hints.put(EncodeHintType.CHARACTER_SET, "UTF-8");
-        hints.put(EncodeHintType.ERROR_CORRECTION, ErrorCorrectionLevel.H);
-        hints.put(EncodeHintType.MARGIN, 1);
+    public byte[] generateQrCodePng(String content) throws WriterException {
+        return QrImageEncoder.encodePng(encode(content, width, height));
+    }
 
-        QRCodeWriter qrCodeWriter = new QRCodeWriter();
-        BitMatrix bitMatrix = qrCodeWriter.encode(content, BarcodeFormat.QR_CODE, width, height, hints);
+    /**
+     * 生成二维码SVG（按模块输出矢量路径，与尺寸无关）
+     */
+    public String generateQrCodeSvg(String content) throws WriterException {
+        return QrImageEncoder.encodeSvg(encode(content, 0, 0), width, height);
+    }
 
-        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-        Graphics2D graphics = image.createGraphics();
-        graphics.setColor(Color.WHITE);
-        graphics.fillRect(0, 0, width, height);
-        graphics.setColor(Color.BLACK);
+    /**
+     * 生成二维码图片（1位黑白图，直接写入像素数据）
+     */
+    public BufferedImage generateQrCodeImage(String content) throws Exception {
+        BitMatrix bitMatrix = encode(content, width, height);
+
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_BINARY);
+        byte[] pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        int stride = (width + 7) >> 3;
 
-        for (int x = 0; x < width; x++) {
-            for (int y = 0; y < height; y++) {
-                if (bitMatrix.get(x, y)) {
-                    graphics.fillRect(x, y, 1, 1);
+        // TYPE_BYTE_BINARY默认调色板：0-黑，1-白
+        for (int y = 0; y < height; y++) {
+            int rowOffset = y * stride;
+            for (int x = 0; x < width; x++) {
+                if (!bitMatrix.get(x, y)) {
+                    pixels[rowOffset + (x >> 3)] |= (byte) (0x80 >>> (x & 7));
                 }
             }
         }
-        graphics.dispose();
 
         return image;
     }
 
-    /**
-     * 图片转Base64
-     */
-    private String imageToBase64(BufferedImage image) throws IOException {
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        ImageIO.write(image, "PNG", outputStream);
-        byte[] imageBytes = outputStream.toByteArray();
-        return "data:image/png;base64," + Base64.getEncoder().encodeToString(imageBytes);
+    private BitMatrix encode(String content, int targetWidth, int targetHeight) throws WriterException {
+        return qrCodeWriter.encode(content, BarcodeFormat.QR_CODE, targetWidth, targetHeight, HINTS);
     }
 }
-
@@ -0,0 +1,29 @@
+package com.brewingmachine.service;
+
+import com.brewingmachine.entity.QrCodeLogin;
+
+import java.util.function.Consumer;
+
+/**
+ * 二维码会话存储
+ * 保存二维码在有效期内的状态机（0-未扫描 → 1-已扫描 → 2-已确认），状态迁移为原子的比较并设置
+ */
+public interface QrSessionStore {
+
+    /**
+     * 保存新会话，ttlSeconds后自动失效
+     */
+    void create(QrCodeLogin session, long ttlSeconds);
+
+    /**
+     * 查询会话，不存在或已失效返回null
+     */
+    QrCodeLogin find(String qrToken);
+
+    /**
+     * 状态迁移：仅当当前状态等于expectedStatus时，应用mutator并写回
+     *
+     * @return 迁移成功返回更新后的会话，会话不存在或状态不符返回null
+     */
+    QrCodeLogin transition(String qrToken, int expectedStatus, Consumer<QrCodeLogin> mutator);
+}
@@ -0,0 +1,73 @@
+package com.brewingmachine.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * 二维码状态变更通知（进程内）
+ * 长轮询和SSE连接在此登记监听，扫码/确认/过期时推送最新状态，等待期间不占用工作线程
+ */
+@Slf4j
+@Component
+public class QrStatusNotifier {
+
+    private final Map<String, Set<Consumer<Map<String, Object>>>> listeners = new ConcurrentHashMap<>();
+
+    /**
+     * 登记监听
+     */
+    public void subscribe(String qrToken, Consumer<Map<String, Object>> listener) {
+        listeners.computeIfAbsent(qrToken, key -> ConcurrentHashMap.newKeySet()).add(listener);
+    }
+
+    /**
+     * 取消监听
+     */
+    public void unsubscribe(String qrToken, Consumer<Map<String, Object>> listener) {
+        listeners.computeIfPresent(qrToken, (key, set) -> {
+            set.remove(listener);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    public boolean hasListeners(String qrToken) {
+        return listeners.containsKey(qrToken);
+    }
+
+    /**
+     * 推送状态给该二维码的所有监听者
+     */
+    public void publish(String qrToken, Map<String, Object> status) {
+        Set<Consumer<Map<String, Object>>> set = listeners.get(qrToken);
+        if (set == null) {
+            return;
+        }
+        for (Consumer<Map<String, Object>> listener : set) {
+            try {
+                listener.accept(status);
+            } catch (Exception e) {
+                log.warn("推送二维码状态失败，token: {}, error: {}", qrToken, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 当前有监听的二维码
+     */
+    public Set<String> getWatchedTokens() {
+        return Collections.unmodifiableSet(listeners.keySet());
+    }
+
+    /**
+     * 当前等待中的二维码数量
+     */
+    public int getWatchedTokenCount() {
+        return listeners.size();
+    }
+}
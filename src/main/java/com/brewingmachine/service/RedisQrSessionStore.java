@@ -0,0 +1,80 @@
+package com.brewingmachine.service;
+
+import com.brewingmachine.config.JsonCodec;
+import com.brewingmachine.entity.QrCodeLogin;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.function.Consumer;
+
+/**
+ * 基于Redis的二维码会话存储（多节点共享）
+ * 每个会话是一个hash：status字段用于比较并设置，data字段保存完整会话JSON
+ */
+@Component
+@ConditionalOnProperty(prefix = "qr.session", name = "store", havingValue = "redis")
+public class RedisQrSessionStore implements QrSessionStore {
+
+    private static final String KEY_PREFIX = "qr:session:";
+
+    private static final String FIELD_DATA = "data";
+
+    // 写入会话并设置TTL在同一脚本内完成，不会留下没有过期时间的会话
+    private static final RedisScript<Long> CREATE_SCRIPT = new DefaultRedisScript<>(
+            "redis.call('HSET', KEYS[1], 'status', ARGV[1], 'data', ARGV[2]) "
+                    + "redis.call('EXPIRE', KEYS[1], ARGV[3]) "
+                    + "return 1",
+            Long.class);
+
+    // 状态一致时同时写入新状态和会话数据，不改变剩余TTL
+    private static final RedisScript<Long> TRANSITION_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('HGET', KEYS[1], 'status') == ARGV[1] then "
+                    + "redis.call('HSET', KEYS[1], 'status', ARGV[2], 'data', ARGV[3]) "
+                    + "return 1 "
+                    + "end "
+                    + "return 0",
+            Long.class);
+
+    private final StringRedisTemplate redisTemplate;
+    private final JsonCodec jsonCodec;
+
+    public RedisQrSessionStore(StringRedisTemplate redisTemplate, JsonCodec jsonCodec) {
+        this.redisTemplate = redisTemplate;
+        this.jsonCodec = jsonCodec;
+    }
+
+    @Override
+    public void create(QrCodeLogin session, long ttlSeconds) {
+        redisTemplate.execute(CREATE_SCRIPT,
+                Collections.singletonList(KEY_PREFIX + session.getQrToken()),
+                String.valueOf(session.getStatus()),
+                jsonCodec.toJson(session),
+                String.valueOf(ttlSeconds));
+    }
+
+    @Override
+    public QrCodeLogin find(String qrToken) {
+        Object data = redisTemplate.opsForHash().get(KEY_PREFIX + qrToken, FIELD_DATA);
+        return data != null ? jsonCodec.parse(data.toString(), QrCodeLogin.class) : null;
+    }
+
+    @Override
+    public QrCodeLogin transition(String qrToken, int expectedStatus, Consumer<QrCodeLogin> mutator) {
+        QrCodeLogin session = find(qrToken);
+        if (session == null || session.getStatus() == null || session.getStatus() != expectedStatus) {
+            return null;
+        }
+
+        mutator.accept(session);
+        Long updated = redisTemplate.execute(TRANSITION_SCRIPT,
+                Collections.singletonList(KEY_PREFIX + qrToken),
+                String.valueOf(expectedStatus),
+                String.valueOf(session.getStatus()),
+                jsonCodec.toJson(session));
+        return updated != null && updated == 1L ? session : null;
+    }
+}
@@ -0,0 +1,197 @@
+package com.brewingmachine.service;
+
+import com.brewingmachine.area.AreaDictionary;
+import com.brewingmachine.entity.User;
+import com.brewingmachine.mapper.UserMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 用户层级信息迁移任务
+ * 把user.hierarchy中的省市区街道名称（如：北京-北京市-海淀区-中关村）按地区字典转换为地区编码和编码路径。
+ * 按ID分批流式读取尚无编码路径的用户，每批一条语句批量写回，批次之间暂停；同名层级只解析一次。
+ * 无法解析的记录计数并跳过，保留原名称；通过数据库租约保证同一时刻只有一个节点执行，可重复执行
+ */
+@Slf4j
+@Component
+public class RegionPathMigrationJob {
+
+    private static final String LEASE_NAME = "region_path_migration";
+
+    private static final int MAX_UNRESOLVED_SAMPLES = 20;
+
+    private static final int MAX_RESOLVED_CACHE = 10000;
+
+    private final UserMapper userMapper;
+    private final AreaDictionaryService areaDictionaryService;
+    private final JobLeaseService jobLeaseService;
+
+    @Value("${area.region-path-migration.batch-size:500}")
+    private int batchSize;
+
+    @Value("${area.region-path-migration.pause-ms:100}")
+    private long pauseMillis;
+
+    @Value("${area.region-path-migration.lease-seconds:300}")
+    private long leaseSeconds;
+
+    @Value("${area.region-path-migration.run-on-load:true}")
+    private boolean runOnLoad;
+
+    private ExecutorService executor;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final List<String> unresolvedSamples = new CopyOnWriteArrayList<>();
+    private volatile long scanned;
+    private volatile long migrated;
+    private volatile long unresolved;
+    private volatile long lastRunMillis;
+    private volatile LocalDateTime lastRunTime;
+
+    public RegionPathMigrationJob(UserMapper userMapper, AreaDictionaryService areaDictionaryService,
+                                  JobLeaseService jobLeaseService) {
+        this.userMapper = userMapper;
+        this.areaDictionaryService = areaDictionaryService;
+        this.jobLeaseService = jobLeaseService;
+    }
+
+    @PostConstruct
+    public void init() {
+        // 同一时刻只运行一轮，运行中再次触发直接忽略
+        executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new SynchronousQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "region-path-migration");
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.DiscardPolicy());
+        if (runOnLoad) {
+            // 字典未加载期间绑定的用户只有层级名称，字典加载后补齐
+            areaDictionaryService.addReloadListener(dictionary -> start());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 在后台开始一轮迁移，已在运行时返回false
+     */
+    public boolean start() {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        executor.execute(this::migrate);
+        return true;
+    }
+
+    private void migrate() {
+        if (!jobLeaseService.tryAcquire(LEASE_NAME, leaseSeconds)) {
+            running.set(false);
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        long runScanned = 0;
+        long runMigrated = 0;
+        long runUnresolved = 0;
+        unresolvedSamples.clear();
+        try {
+            AreaDictionary dictionary = areaDictionaryService.getDictionary();
+            // 同一地区的代理商层级名称相同，解析结果按名称复用
+            Map<String, Integer> resolved = new HashMap<>();
+            long afterId = 0;
+            while (!Thread.currentThread().isInterrupted()) {
+                List<User> users = userMapper.selectHierarchyWithoutRegionPath(afterId, batchSize);
+                if (users.isEmpty()) {
+                    break;
+                }
+
+                List<User> updates = new ArrayList<>(users.size());
+                for (User user : users) {
+                    String hierarchy = user.getHierarchy().trim();
+                    Integer index = resolved.get(hierarchy);
+                    if (index == null) {
+                        if (resolved.size() >= MAX_RESOLVED_CACHE) {
+                            resolved.clear();
+                        }
+                        index = dictionary.resolve(Arrays.asList(hierarchy.split("-")));
+                        resolved.put(hierarchy, index);
+                    }
+                    if (index < 0) {
+                        runUnresolved++;
+                        if (unresolvedSamples.size() < MAX_UNRESOLVED_SAMPLES) {
+                            unresolvedSamples.add(user.getId() + ":" + hierarchy);
+                        }
+                        continue;
+                    }
+                    User update = new User();
+                    update.setId(user.getId());
+                    update.setRegionCode(dictionary.get(index).getRegionCode12());
+                    update.setRegionPath(dictionary.path(index));
+                    updates.add(update);
+                }
+                if (!updates.isEmpty()) {
+                    runMigrated += userMapper.batchUpdateRegionPath(updates);
+                }
+                runScanned += users.size();
+                afterId = users.get(users.size() - 1).getId();
+
+                if (users.size() < batchSize) {
+                    break;
+                }
+                Thread.sleep(pauseMillis);
+                if (!jobLeaseService.tryAcquire(LEASE_NAME, leaseSeconds)) {
+                    log.warn("层级信息迁移租约已被其他节点接管，停止本轮迁移");
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("层级信息迁移失败", e);
+        } finally {
+            jobLeaseService.release(LEASE_NAME);
+            scanned = runScanned;
+            migrated = runMigrated;
+            unresolved = runUnresolved;
+            lastRunMillis = System.currentTimeMillis() - start;
+            lastRunTime = LocalDateTime.now();
+            running.set(false);
+        }
+        log.info("层级信息迁移完成，扫描: {}, 迁移: {}, 无法解析: {}, 耗时: {}ms",
+                runScanned, runMigrated, runUnresolved, lastRunMillis);
+    }
+
+    /**
+     * 迁移指标：是否运行中、最近一轮扫描/迁移/无法解析的行数及部分无法解析的记录（用户ID:层级信息）
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("running", running.get());
+        metrics.put("scanned", scanned);
+        metrics.put("migrated", migrated);
+        metrics.put("unresolved", unresolved);
+        metrics.put("unresolvedSamples", new ArrayList<>(unresolvedSamples));
+        metrics.put("lastRunMs", lastRunMillis);
+        metrics.put("lastRunTime", lastRunTime != null ? lastRunTime.toString() : null);
+        return metrics;
+    }
+}
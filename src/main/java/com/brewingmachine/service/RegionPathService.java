@@ -0,0 +1,151 @@
+package com.brewingmachine.service;
+
+import com.brewingmachine.area.AreaDictionary;
+import com.brewingmachine.area.AreaLevel;
+import com.brewingmachine.entity.QrCodeLogin;
+import com.brewingmachine.entity.User;
+import com.brewingmachine.mapper.UserMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 地区编码路径服务
+ * 生成二维码时按地区字典校验地区并确定12位编码，绑定角色时把编码转换为编码路径（省级到所属地区的编码以/分隔），
+ * 按路径前缀查询整棵下级地区的用户
+ */
+@Service
+public class RegionPathService {
+
+    private final AreaDictionaryService areaDictionaryService;
+    private final UserMapper userMapper;
+    private final AuthorizationService authorizationService;
+
+    @Value("${area.region-users.max-limit:200}")
+    private int maxLimit;
+
+    public RegionPathService(AreaDictionaryService areaDictionaryService, UserMapper userMapper,
+                             AuthorizationService authorizationService) {
+        this.areaDictionaryService = areaDictionaryService;
+        this.userMapper = userMapper;
+        this.authorizationService = authorizationService;
+    }
+
+    /**
+     * 校验二维码的地区信息并补全：传了地区编码时按字典补全省市区街道名称，只传名称时按名称逐级查找编码。
+     * 地区字典未加载时只保留名称（编码路径由迁移任务在字典加载后补齐）
+     */
+    public void resolve(QrCodeLogin qrCodeLogin) {
+        String regionCode = qrCodeLogin.getRegionCode();
+        boolean hasCode = regionCode != null && !regionCode.isEmpty();
+        if (!areaDictionaryService.isLoaded()) {
+            if (hasCode) {
+                throw new RuntimeException("地区字典未加载，无法校验地区编码");
+            }
+            return;
+        }
+
+        AreaDictionary dictionary = areaDictionaryService.getDictionary();
+        if (hasCode) {
+            int index = dictionary.indexOf(regionCode);
+            if (index < 0) {
+                throw new RuntimeException("地区编码不存在: " + regionCode);
+            }
+            String[] names = new String[AreaLevel.TOWN.getValue()];
+            for (int i = index, depth = 0; i >= 0 && depth < AreaLevel.values().length;
+                 i = dictionary.parentIndex(i), depth++) {
+                int level = dictionary.level(i);
+                if (level <= names.length) {
+                    names[level - 1] = dictionary.name(i);
+                }
+            }
+            qrCodeLogin.setProvince(names[0]);
+            qrCodeLogin.setCity(names[1]);
+            qrCodeLogin.setDistrict(names[2]);
+            qrCodeLogin.setStreet(names[3]);
+            return;
+        }
+
+        String[] names = {qrCodeLogin.getProvince(), qrCodeLogin.getCity(), qrCodeLogin.getDistrict(), qrCodeLogin.getStreet()};
+        if (Arrays.stream(names).allMatch(name -> name == null || name.trim().isEmpty())) {
+            return;
+        }
+        int index = dictionary.resolve(Arrays.asList(names));
+        if (index < 0) {
+            throw new RuntimeException("地区不存在: " + String.join("-", Arrays.stream(names)
+                    .filter(name -> name != null && !name.trim().isEmpty()).toArray(String[]::new)));
+        }
+        qrCodeLogin.setRegionCode(dictionary.get(index).getRegionCode12());
+    }
+
+    /**
+     * 地区编码对应的编码路径，编码为空、不存在或字典未加载时返回null
+     */
+    public String pathOf(String regionCode) {
+        if (regionCode == null || regionCode.isEmpty() || !areaDictionaryService.isLoaded()) {
+            return null;
+        }
+        AreaDictionary dictionary = areaDictionaryService.getDictionary();
+        int index = dictionary.indexOf(regionCode);
+        return index >= 0 ? dictionary.path(index) : null;
+    }
+
+    /**
+     * 地区子树查询用的路径前缀（即该地区自身的编码路径）
+     */
+    public String subtreePrefix(String regionCode) {
+        String path = pathOf(regionCode);
+        if (path == null) {
+            throw new RuntimeException(areaDictionaryService.isLoaded() ? "地区编码不存在: " + regionCode : "地区字典未加载");
+        }
+        return path;
+    }
+
+    /**
+     * 地区及其全部下级地区内的用户（按编码路径前缀范围查询），按(编码路径, 用户ID)翻页，
+     * afterPath/afterId为上一页返回的nextAfterPath/nextAfterId，首页（afterPath为空）同时返回总数。
+     * 管理员可查询任意地区，其他用户只能查询自己所属地区及其下级地区
+     */
+    public Map<String, Object> listUsers(Long currentUserId, String regionCode, String role,
+                                         String afterPath, long afterId, int limit) {
+        String prefix = subtreePrefix(regionCode);
+        if (!authorizationService.hasRole(currentUserId, "admin")) {
+            User currentUser = currentUserId != null ? userMapper.findById(currentUserId) : null;
+            String ownPath = currentUser != null ? currentUser.getRegionPath() : null;
+            if (ownPath == null || !prefix.startsWith(ownPath)) {
+                throw new RuntimeException("只能查看自己所属地区的用户");
+            }
+        }
+
+        String roleFilter = role != null && !role.isEmpty() ? role : null;
+        String after = afterPath != null && !afterPath.isEmpty() ? afterPath : null;
+        List<User> users = userMapper.selectByRegionPathPrefix(prefix, roleFilter, after, afterId,
+                Math.max(1, Math.min(limit, maxLimit)));
+
+        List<Map<String, Object>> items = new ArrayList<>(users.size());
+        for (User user : users) {
+            Map<String, Object> item = new HashMap<>();
+            item.put("id", user.getId());
+            item.put("nickname", user.getNickname());
+            item.put("role", user.getRole());
+            item.put("hierarchy", user.getHierarchy());
+            item.put("regionCode", user.getRegionCode());
+            items.add(item);
+        }
+
+        User last = users.isEmpty() ? null : users.get(users.size() - 1);
+        Map<String, Object> result = new HashMap<>();
+        result.put("users", items);
+        result.put("nextAfterPath", last != null ? last.getRegionPath() : null);
+        result.put("nextAfterId", last != null ? last.getId() : null);
+        if (after == null) {
+            result.put("total", userMapper.countByRegionPathPrefix(prefix, roleFilter));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,168 @@
+package com.brewingmachine.service;
+
+import com.brewingmachine.area.Area;
+import com.brewingmachine.area.AreaDictionary;
+import com.brewingmachine.area.AreaLevel;
+import com.brewingmachine.area.RegionSearchIndex;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 地区搜索服务
+ * 按名称前缀/包含或拼音首字母搜索省市区县乡镇村，可限定层级和上级地区。
+ * 地区字典每次加载后在后台线程重建索引，建好后与结果缓存一起整体替换，数据更新无需重启，重建期间继续使用旧索引
+ */
+@Slf4j
+@Service
+public class RegionSearchService {
+
+    private final AreaDictionaryService areaDictionaryService;
+
+    @Value("${area.search.max-limit:50}")
+    private int maxLimit;
+
+    @Value("${area.search.cache-size:10000}")
+    private int cacheSize;
+
+    private volatile Snapshot snapshot;
+
+    private volatile long buildMillis;
+
+    private ExecutorService buildExecutor;
+
+    private final AtomicLong queryCount = new AtomicLong();
+    private final AtomicLong cacheHitCount = new AtomicLong();
+    private final AtomicLong queryNanosTotal = new AtomicLong();
+    private final AtomicLong queryNanosMax = new AtomicLong();
+
+    public RegionSearchService(AreaDictionaryService areaDictionaryService) {
+        this.areaDictionaryService = areaDictionaryService;
+    }
+
+    @PostConstruct
+    public void init() {
+        // 只保留最新一次重建请求
+        buildExecutor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(1),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "region-index-build");
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.DiscardOldestPolicy());
+        areaDictionaryService.addReloadListener(dictionary -> buildExecutor.execute(() -> rebuild(dictionary)));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        buildExecutor.shutdownNow();
+    }
+
+    /**
+     * 搜索地区
+     *
+     * @param query      查询串，全部为字母时按拼音首字母匹配
+     * @param prefixOnly true为前缀匹配，false为包含匹配
+     * @param level      层级，null为不限
+     * @param withinCode 上级地区12位编码，null为全国
+     * @param limit      返回条数
+     */
+    public List<Area> search(String query, boolean prefixOnly, AreaLevel level, String withinCode, int limit) {
+        Snapshot current = snapshot;
+        if (current == null) {
+            throw new RuntimeException(areaDictionaryService.isLoaded() ? "地区搜索索引构建中" : "地区字典未加载");
+        }
+        if (query == null || query.trim().isEmpty()) {
+            throw new RuntimeException("搜索关键字不能为空");
+        }
+        String keyword = query.trim();
+        int size = Math.max(1, Math.min(limit, maxLimit));
+
+        AreaDictionary dictionary = current.index.getDictionary();
+        int withinRow = -1;
+        if (withinCode != null && !withinCode.isEmpty()) {
+            withinRow = dictionary.indexOf(withinCode);
+            if (withinRow < 0) {
+                throw new RuntimeException("上级地区不存在: " + withinCode);
+            }
+        }
+
+        long start = System.nanoTime();
+        String key = keyword + '|' + prefixOnly + '|' + (level != null ? level.getValue() : 0) + '|' + withinRow + '|' + size;
+        int[] rows = current.cache.get(key);
+        if (rows != null) {
+            cacheHitCount.incrementAndGet();
+        } else {
+            rows = current.index.search(keyword, prefixOnly, level, withinRow, size);
+            if (current.cache.size() >= cacheSize) {
+                current.cache.clear();
+            }
+            current.cache.put(key, rows);
+        }
+        recordQuery(System.nanoTime() - start);
+
+        List<Area> result = new ArrayList<>(rows.length);
+        for (int row : rows) {
+            result.add(dictionary.get(row));
+        }
+        return result;
+    }
+
+    /**
+     * 索引和查询耗时指标
+     */
+    public Map<String, Object> getMetrics() {
+        long queries = queryCount.get();
+        Snapshot current = snapshot;
+
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("ready", current != null);
+        metrics.put("buildMs", buildMillis);
+        metrics.put("cacheSize", current != null ? current.cache.size() : 0);
+        metrics.put("queries", queries);
+        metrics.put("cacheHits", cacheHitCount.get());
+        metrics.put("avgQueryMicros", queries > 0 ? queryNanosTotal.get() / queries / 1000.0 : 0);
+        metrics.put("maxQueryMicros", queryNanosMax.get() / 1000.0);
+        return metrics;
+    }
+
+    private void rebuild(AreaDictionary dictionary) {
+        long start = System.currentTimeMillis();
+        try {
+            RegionSearchIndex index = RegionSearchIndex.build(dictionary);
+            snapshot = new Snapshot(index);
+            buildMillis = System.currentTimeMillis() - start;
+            log.info("地区搜索索引构建完成，地区数: {}，耗时: {}ms", dictionary.size(), buildMillis);
+        } catch (Exception e) {
+            log.error("地区搜索索引构建失败", e);
+        }
+    }
+
+    private void recordQuery(long nanos) {
+        queryCount.incrementAndGet();
+        queryNanosTotal.addAndGet(nanos);
+        queryNanosMax.accumulateAndGet(nanos, Math::max);
+    }
+
+    // 索引与其结果缓存一起替换
+    private static final class Snapshot {
+        private final RegionSearchIndex index;
+        private final Map<String, int[]> cache = new ConcurrentHashMap<>();
+
+        private Snapshot(RegionSearchIndex index) {
+            this.index = index;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package com.brewingmachine.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.Base64;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 角色绑定二维码预生成池
+ * 二维码内容只由token和角色决定（地区只写入会话，不进入二维码），因此按角色预先生成token和二维码图片，
+ * 请求时直接取出；剩余数低于低水位时后台补充到高水位。池中只有token和图片，会话在取出时才写入QrSessionStore，
+ * 每个条目只会被取出一次，因此二维码仍然一码一用、不重复
+ */
+@Slf4j
+@Component
+public class RoleBindQrCodePool {
+
+    private final QrCodeService qrCodeService;
+
+    @Value("${qr.pool.enabled:true}")
+    private boolean enabled;
+
+    @Value("${qr.pool.high-watermark:50}")
+    private int highWatermark;
+
+    @Value("${qr.pool.low-watermark:10}")
+    private int lowWatermark;
+
+    @Value("${qr.pool.max-roles:64}")
+    private int maxRoles;
+
+    @Value("${qr.pool.refill-threads:1}")
+    private int refillThreads;
+
+    private final Map<String, RolePool> pools = new ConcurrentHashMap<>();
+
+    private ThreadPoolExecutor refillExecutor;
+
+    public RoleBindQrCodePool(QrCodeService qrCodeService) {
+        this.qrCodeService = qrCodeService;
+    }
+
+    @PostConstruct
+    public void init() {
+        refillExecutor = new ThreadPoolExecutor(refillThreads, refillThreads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "qr-pool-refill");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refillExecutor.shutdownNow();
+    }
+
+    /**
+     * 取出一个预生成的二维码；池为空时在当前线程同步生成
+     */
+    public PreparedQrCode take(String role) throws Exception {
+        if (!enabled || role == null) {
+            return prepare(role);
+        }
+
+        RolePool pool = pools.get(role);
+        if (pool == null) {
+            if (pools.size() >= maxRoles) {
+                return prepare(role);
+            }
+            pool = pools.computeIfAbsent(role, key -> new RolePool(key, highWatermark));
+        }
+
+        PreparedQrCode prepared = pool.queue.poll();
+        if (pool.queue.size() < lowWatermark) {
+            scheduleRefill(pool);
+        }
+        return prepared != null ? prepared : prepare(role);
+    }
+
+    /**
+     * 预热角色的池，活动开始前调用
+     */
+    public void warmUp(String role) {
+        if (!enabled || role == null) {
+            return;
+        }
+        if (!pools.containsKey(role) && pools.size() >= maxRoles) {
+            log.warn("二维码预生成池角色数已达上限: {}，忽略预热，role: {}", maxRoles, role);
+            return;
+        }
+        scheduleRefill(pools.computeIfAbsent(role, key -> new RolePool(key, highWatermark)));
+    }
+
+    private void scheduleRefill(RolePool pool) {
+        if (!pool.refilling.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            refillExecutor.execute(() -> refill(pool));
+        } catch (RejectedExecutionException e) {
+            pool.refilling.set(false);
+        }
+    }
+
+    private void refill(RolePool pool) {
+        int added = 0;
+        try {
+            while (pool.queue.remainingCapacity() > 0 && !Thread.currentThread().isInterrupted()) {
+                if (!pool.queue.offer(prepare(pool.role))) {
+                    break;
+                }
+                added++;
+            }
+        } catch (Exception e) {
+            log.error("补充预生成二维码失败，role: {}", pool.role, e);
+        } finally {
+            pool.refilling.set(false);
+        }
+        log.debug("补充预生成二维码完成，role: {}, 新增: {}, 剩余: {}", pool.role, added, pool.queue.size());
+    }
+
+    private PreparedQrCode prepare(String role) throws Exception {
+        String qrToken = UUID.randomUUID().toString().replace("-", "");
+        String qrContent = buildContent(qrToken, role);
+
+        String qrCodeImage = "data:image/png;base64,"
+                + Base64.getEncoder().encodeToString(qrCodeService.generateQrCodePng(qrContent));
+        return new PreparedQrCode(qrToken, qrContent, qrCodeImage);
+    }
+
+    /**
+     * 生成角色绑定二维码内容（纯角色绑定，与登录无关）
+     */
+    static String buildContent(String qrToken, String role) {
+        StringBuilder qrContentBuilder = new StringBuilder("brewingmachine://role-bind?token=");
+        qrContentBuilder.append(qrToken);
+        if (role != null) {
+            qrContentBuilder.append("&role=").append(role);
+        }
+        return qrContentBuilder.toString();
+    }
+
+    /**
+     * 预生成的二维码（token、内容和Base64图片）
+     */
+    public static final class PreparedQrCode {
+        private final String qrToken;
+        private final String qrContent;
+        private final String qrCodeImage;
+
+        private PreparedQrCode(String qrToken, String qrContent, String qrCodeImage) {
+            this.qrToken = qrToken;
+            this.qrContent = qrContent;
+            this.qrCodeImage = qrCodeImage;
+        }
+
+        public String getQrToken() {
+            return qrToken;
+        }
+
+        public String getQrContent() {
+            return qrContent;
+        }
+
+        public String getQrCodeImage() {
+            return qrCodeImage;
+        }
+    }
+
+    private static final class RolePool {
+        private final String role;
+        private final BlockingQueue<PreparedQrCode> queue;
+        private final AtomicBoolean refilling = new AtomicBoolean();
+
+        private RolePool(String role, int capacity) {
+            this.role = role;
+            this.queue = new ArrayBlockingQueue<>(Math.max(capacity, 1));
+        }
+    }
+}
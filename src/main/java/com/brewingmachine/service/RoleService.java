@@ -1,36 +1,46 @@
 package com.brewingmachine.service;
 
+import com.brewingmachine.entity.AuthorizationSnapshot;
 import com.brewingmachine.entity.Role;
 import com.brewingmachine.mapper.RoleMapper;
+import com.brewingmachine.mapper.UserMapper;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collections;
 import java.util.List;
 
 @Service
 public class RoleService {
 
     private final RoleMapper roleMapper;
+    private final UserMapper userMapper;
+    private final AuthorizationService authorizationService;
 
-    public RoleService(RoleMapper roleMapper) {
+    public RoleService(RoleMapper roleMapper, UserMapper userMapper, AuthorizationService authorizationService) {
         this.roleMapper = roleMapper;
+        this.userMapper = userMapper;
+        this.authorizationService = authorizationService;
     }
 
     @Transactional
     public Role createRole(Role role) {
         roleMapper.insert(role);
+        authorizationService.invalidateAll();
         return roleMapper.selectById(role.getId());
     }
 
     @Transactional
     public Role updateRole(Role role) {
         roleMapper.update(role);
+        authorizationService.invalidateAll();
         return roleMapper.selectById(role.getId());
     }
 
     @Transactional
     public void deleteRole(Long id) {
         roleMapper.deleteById(id);
+        authorizationService.invalidateAll();
     }
 
     public Role getRoleById(Long id) {
@@ -45,7 +55,18 @@ public class RoleService {
         return roleMapper.selectByRoleCode(roleCode);
     }
 
+    /**
+     * 用户分配的全部角色（含已禁用的角色）
+     */
     public List<Role> getRolesByUserId(Long userId) {
         return roleMapper.selectByUserId(userId);
     }
+
+    /**
+     * 用户当前生效的角色（只含启用的角色），与权限判定使用同一份授权快照
+     */
+    public List<Role> getEnabledRolesByUserId(Long userId) {
+        AuthorizationSnapshot snapshot = userMapper.selectAuthorizationSnapshot(userId);
+        return snapshot != null ? snapshot.getRoles() : Collections.emptyList();
+    }
 }
@@ -0,0 +1,109 @@
+package com.brewingmachine.service;
+
+import com.brewingmachine.mapper.UserAccountMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 子账户归集任务
+ * 定时按用户ID分批找出子账户有余额的用户，逐个用一个小事务把子账户余额归集到user表的主账户，
+ * 使主账户余额、流水中的余额尽量接近真实余额；通过数据库租约保证同一时刻只有一个节点执行
+ */
+@Slf4j
+@Component
+public class SubAccountConsolidator {
+
+    private static final String LEASE_NAME = "sub_account_consolidation";
+
+    private final UserAccountMapper userAccountMapper;
+    private final AccountLedgerService accountLedgerService;
+    private final JobLeaseService jobLeaseService;
+
+    @Value("${ledger.striping.consolidate-batch-size:200}")
+    private int batchSize;
+
+    @Value("${ledger.striping.consolidate-lease-seconds:300}")
+    private long leaseSeconds;
+
+    private final AtomicLong totalConsolidated = new AtomicLong();
+    private final AtomicLong totalFailed = new AtomicLong();
+    private volatile long lastRunConsolidated;
+    private volatile long lastRunMillis;
+    private volatile LocalDateTime lastRunTime;
+
+    public SubAccountConsolidator(UserAccountMapper userAccountMapper, AccountLedgerService accountLedgerService,
+                                  JobLeaseService jobLeaseService) {
+        this.userAccountMapper = userAccountMapper;
+        this.accountLedgerService = accountLedgerService;
+        this.jobLeaseService = jobLeaseService;
+    }
+
+    @Scheduled(initialDelayString = "${ledger.striping.consolidate-interval-ms:60000}",
+            fixedDelayString = "${ledger.striping.consolidate-interval-ms:60000}")
+    public void consolidate() {
+        if (!jobLeaseService.tryAcquire(LEASE_NAME, leaseSeconds)) {
+            return;
+        }
+
+        long start = System.currentTimeMillis();
+        long consolidated = 0;
+        try {
+            long afterId = 0;
+            while (!Thread.currentThread().isInterrupted()) {
+                List<Long> userIds = userAccountMapper.selectUsersWithSubBalance(afterId, batchSize);
+                for (Long userId : userIds) {
+                    try {
+                        if (accountLedgerService.consolidate(userId)) {
+                            consolidated++;
+                        }
+                    } catch (Exception e) {
+                        // 单个用户失败（如锁等待超时）不影响其余用户，下一轮再归集
+                        totalFailed.incrementAndGet();
+                        log.warn("子账户归集失败，userId: {}", userId, e);
+                    }
+                }
+                if (userIds.size() < batchSize) {
+                    break;
+                }
+                afterId = userIds.get(userIds.size() - 1);
+                if (!jobLeaseService.tryAcquire(LEASE_NAME, leaseSeconds)) {
+                    log.warn("子账户归集租约已被其他节点接管，停止本轮归集");
+                    break;
+                }
+            }
+        } catch (Exception e) {
+            log.error("子账户归集失败", e);
+        } finally {
+            jobLeaseService.release(LEASE_NAME);
+        }
+
+        totalConsolidated.addAndGet(consolidated);
+        lastRunConsolidated = consolidated;
+        lastRunMillis = System.currentTimeMillis() - start;
+        lastRunTime = LocalDateTime.now();
+        if (consolidated > 0) {
+            log.info("子账户归集完成，用户数: {}, 耗时: {}ms", consolidated, lastRunMillis);
+        }
+    }
+
+    /**
+     * 归集指标：累计归集/失败用户数、最近一轮归集用户数和耗时
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("totalConsolidated", totalConsolidated.get());
+        metrics.put("totalFailed", totalFailed.get());
+        metrics.put("lastRunConsolidated", lastRunConsolidated);
+        metrics.put("lastRunMs", lastRunMillis);
+        metrics.put("lastRunTime", lastRunTime != null ? lastRunTime.toString() : null);
+        return metrics;
+    }
+}
@@ -1,7 +1,9 @@
 package com.brewingmachine.service;
 
+import com.brewingmachine.dto.TokenPrincipal;
 import com.brewingmachine.mapper.UserMapper;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
@@ -10,12 +12,21 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
 import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.util.Base64;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Slf4j
 @Service
@@ -34,9 +45,32 @@ public class TokenService {
     @Value("${jwt.issuer}")
     private String issuer;
 
+    @Value("${jwt.cache.max-size:10000}")
+    private int cacheMaxSize;
+
+    // 签名密钥和解析器在启动时构建一次，线程安全可复用
+    private Key signingKey;
+
+    private JwtParser jwtParser;
+
+    // 已校验token缓存：key为token的SHA-256摘要，value为解析出的身份信息
+    private final Map<String, TokenPrincipal> verifiedTokenCache = new ConcurrentHashMap<>();
+
+    // 缓存键的写入顺序，超限时按先进先出淘汰；token有效期相同，先写入的也先过期
+    private final Queue<String> cacheOrder = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger cacheOrderSize = new AtomicInteger();
+
+    @PostConstruct
+    public void init() {
+        this.signingKey = Keys.hmacShaKeyFor(jwtSecret.getBytes());
+        this.jwtParser = Jwts.parserBuilder()
+                .setSigningKey(signingKey)
+                .build();
+    }
+
     private Key getSigningKey() {
-        byte[] keyBytes = jwtSecret.getBytes();
-        return Keys.hmacShaKeyFor(keyBytes);
+        return signingKey;
     }
 
     /**
@@ -65,41 +99,93 @@ public class TokenService {
     }
 
     /**
-     * 验证token
+     * 校验token并返回身份信息（只解析一次，结果按token摘要缓存至过期）
+     *
+     * @return 校验通过返回身份信息，token无效或已过期返回null
      */
-    public boolean validateToken(String token) {
+    public TokenPrincipal verifyToken(String token) {
+        if (token == null || token.isEmpty()) {
+            return null;
+        }
+
+        long now = System.currentTimeMillis();
+        String cacheKey = hashToken(token);
+        TokenPrincipal cached = verifiedTokenCache.get(cacheKey);
+        if (cached != null) {
+            if (!cached.isExpired(now)) {
+                return cached;
+            }
+            verifiedTokenCache.remove(cacheKey, cached);
+            return null;
+        }
+
+        TokenPrincipal principal;
         try {
             Claims claims = parseToken(token);
-            // 检查token是否过期
-            return claims.getExpiration().after(new Date());
+            Date expiration = claims.getExpiration();
+            Long userId = claims.get("userId", Long.class);
+            if (expiration == null || userId == null || !expiration.after(new Date(now))) {
+                return null;
+            }
+            principal = new TokenPrincipal(userId, expiration.getTime(), claims.getIssuer());
         } catch (Exception e) {
             log.warn("验证token失败: {}", e.getMessage());
-            return false;
+            return null;
         }
+
+        cachePrincipal(cacheKey, principal);
+        return principal;
+    }
+
+    /**
+     * 验证token
+     */
+    public boolean validateToken(String token) {
+        return verifyToken(token) != null;
     }
 
     /**
      * 解析token获取声明
      */
     private Claims parseToken(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(getSigningKey())
-                .build()
-                .parseClaimsJws(token)
-                .getBody();
+        return jwtParser.parseClaimsJws(token).getBody();
     }
 
     /**
      * 获取token对应的用户ID
      */
     public Long getUserIdFromToken(String token) {
-        try {
-            Claims claims = parseToken(token);
-            return claims.get("userId", Long.class);
-        } catch (Exception e) {
-            log.warn("获取用户ID失败: {}", e.getMessage());
+        TokenPrincipal principal = verifyToken(token);
+        if (principal == null) {
+            log.warn("获取用户ID失败: token无效或已过期");
             return null;
         }
+        return principal.getUserId();
+    }
+
+    private void cachePrincipal(String cacheKey, TokenPrincipal principal) {
+        if (verifiedTokenCache.put(cacheKey, principal) != null) {
+            return;
+        }
+        cacheOrder.offer(cacheKey);
+        // 写入一条淘汰一条最早写入的，不扫描整个缓存；过期条目在读取时删除
+        if (cacheOrderSize.incrementAndGet() > cacheMaxSize) {
+            String eldest = cacheOrder.poll();
+            if (eldest != null) {
+                cacheOrderSize.decrementAndGet();
+                verifiedTokenCache.remove(eldest);
+            }
+        }
+    }
+
+    private String hashToken(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(hash);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256算法不可用", e);
+        }
     }
 
     /**
@@ -108,19 +194,13 @@ public class TokenService {
     public Map<String, Object> validateTokenAndGetUser(String token) {
         Map<String, Object> result = new HashMap<>();
 
-        try {
-            Claims claims = parseToken(token);
-            // 检查token是否过期
-            if (claims.getExpiration().after(new Date())) {
-                result.put("valid", true);
-                result.put("userId", claims.get("userId", Long.class));
-            } else {
-                result.put("valid", false);
-                result.put("message", "token已过期");
-            }
-        } catch (Exception e) {
+        TokenPrincipal principal = verifyToken(token);
+        if (principal != null) {
+            result.put("valid", true);
+            result.put("userId", principal.getUserId());
+        } else {
             result.put("valid", false);
-            result.put("message", "token无效");
+            result.put("message", "token无效或已过期");
         }
 
         return result;
@@ -140,17 +220,12 @@ public class TokenService {
      * 刷新token过期时间
      */
     public String refreshToken(String token) {
-        try {
-            Claims claims = parseToken(token);
-            Long userId = claims.get("userId", Long.class);
-            if (userId != null) {
-                // 生成新的token
-                return generateToken(userId);
-            }
-            return null;
-        } catch (Exception e) {
-            log.warn("刷新token失败: {}", e.getMessage());
+        TokenPrincipal principal = verifyToken(token);
+        if (principal == null) {
+            log.warn("刷新token失败: token无效或已过期");
             return null;
         }
+        // 生成新的token
+        return generateToken(principal.getUserId());
     }
 }
@@ -0,0 +1,194 @@
+package com.brewingmachine.service;
+
+import com.brewingmachine.config.JsonCodec;
+import com.brewingmachine.dto.response.UserInfoResponse;
+import com.brewingmachine.util.TransactionUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * 用户信息缓存
+ * 按用户ID缓存UserInfoResponse（不含token），读时未命中再查库；本地缓存为第一级，可选Redis为第二级供多节点共享。
+ * 用户资料变更后在事务提交后失效，只能清除本节点的本地缓存：无论是否开启Redis，其他节点都要等本地缓存
+ * 过期（local-ttl-seconds）才能看到变更，对一致性要求高的部署应调小该值。
+ * 开启Redis时失效后延迟再删一次Redis，清除失效前已查库、失效后才回写的旧值（包括其他节点回写的）
+ */
+@Slf4j
+@Service
+public class UserInfoCache {
+
+    private static final String KEY_PREFIX = "user:info:";
+
+    private final ObjectProvider<StringRedisTemplate> redisTemplateProvider;
+    private final JsonCodec jsonCodec;
+
+    @Value("${user.info-cache.max-size:10000}")
+    private int maxSize;
+
+    @Value("${user.info-cache.local-ttl-seconds:60}")
+    private long localTtlSeconds;
+
+    @Value("${user.info-cache.redis-enabled:false}")
+    private boolean redisEnabled;
+
+    @Value("${user.info-cache.redis-ttl-seconds:600}")
+    private long redisTtlSeconds;
+
+    @Value("${user.info-cache.redis-delayed-delete-ms:1000}")
+    private long redisDelayedDeleteMs;
+
+    private StringRedisTemplate redisTemplate;
+
+    private final Map<Long, Entry> localCache = new ConcurrentHashMap<>();
+
+    // 每次失效递增，加载前后不一致说明加载期间发生了变更，结果不写入缓存
+    private final AtomicLong generation = new AtomicLong();
+
+    // 待二次删除的Redis缓存：用户ID -> 删除时间
+    private final Map<Long, Long> delayedDeletes = new ConcurrentHashMap<>();
+
+    public UserInfoCache(ObjectProvider<StringRedisTemplate> redisTemplateProvider, JsonCodec jsonCodec) {
+        this.redisTemplateProvider = redisTemplateProvider;
+        this.jsonCodec = jsonCodec;
+    }
+
+    @PostConstruct
+    public void init() {
+        if (redisEnabled) {
+            redisTemplate = redisTemplateProvider.getIfAvailable();
+            if (redisTemplate == null) {
+                log.warn("未配置Redis，用户信息缓存只使用本地缓存");
+            }
+        }
+    }
+
+    /**
+     * 读取用户信息，未命中时通过loader加载；返回副本，调用方可以修改
+     */
+    public UserInfoResponse get(Long userId, Function<Long, UserInfoResponse> loader) {
+        long now = System.currentTimeMillis();
+        Entry entry = localCache.get(userId);
+        if (entry != null && entry.expireAt > now) {
+            return copy(entry.value);
+        }
+
+        long loadGeneration = generation.get();
+        UserInfoResponse value = readRedis(userId);
+        if (value == null) {
+            value = loader.apply(userId);
+            if (value == null) {
+                return null;
+            }
+            value = copy(value);
+            value.setToken(null);
+            if (generation.get() == loadGeneration) {
+                writeRedis(userId, value);
+            }
+        }
+
+        if (localCache.size() >= maxSize) {
+            localCache.clear();
+        }
+        // 失效先递增代数再移除，与这里的compute对同一key串行，加载期间有失效时不回填旧值
+        Entry loaded = new Entry(value, now + localTtlSeconds * 1000);
+        localCache.compute(userId, (id, current) -> generation.get() == loadGeneration ? loaded : current);
+        return copy(value);
+    }
+
+    /**
+     * 用户资料变更后调用，事务提交后清除本地和Redis缓存
+     */
+    public void evict(Long userId) {
+        TransactionUtil.runAfterCommit(() -> {
+            generation.incrementAndGet();
+            localCache.remove(userId);
+            if (redisTemplate != null) {
+                deleteRedis(userId);
+                delayedDeletes.put(userId, System.currentTimeMillis() + redisDelayedDeleteMs);
+            }
+        });
+    }
+
+    /**
+     * 执行到期的Redis二次删除
+     */
+    @Scheduled(fixedDelayString = "${user.info-cache.delayed-delete-check-ms:200}")
+    public void runDelayedDeletes() {
+        if (delayedDeletes.isEmpty()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (Map.Entry<Long, Long> entry : delayedDeletes.entrySet()) {
+            // 期间再次失效会推迟删除时间，只移除本次读到的那一项
+            if (entry.getValue() <= now && delayedDeletes.remove(entry.getKey(), entry.getValue())) {
+                deleteRedis(entry.getKey());
+            }
+        }
+    }
+
+    private void deleteRedis(Long userId) {
+        try {
+            redisTemplate.delete(KEY_PREFIX + userId);
+        } catch (Exception e) {
+            log.warn("删除Redis用户信息缓存失败，userId: {}", userId, e);
+        }
+    }
+
+    private UserInfoResponse readRedis(Long userId) {
+        if (redisTemplate == null) {
+            return null;
+        }
+        try {
+            String json = redisTemplate.opsForValue().get(KEY_PREFIX + userId);
+            return jsonCodec.parse(json, UserInfoResponse.class);
+        } catch (Exception e) {
+            log.warn("读取Redis用户信息缓存失败，userId: {}", userId, e);
+            return null;
+        }
+    }
+
+    private void writeRedis(Long userId, UserInfoResponse value) {
+        if (redisTemplate == null) {
+            return;
+        }
+        try {
+            redisTemplate.opsForValue().set(KEY_PREFIX + userId, jsonCodec.toJson(value), redisTtlSeconds, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            log.warn("写入Redis用户信息缓存失败，userId: {}", userId, e);
+        }
+    }
+
+    private static UserInfoResponse copy(UserInfoResponse source) {
+        UserInfoResponse target = new UserInfoResponse();
+        target.setId(source.getId());
+        target.setNickName(source.getNickName());
+        target.setAvatar(source.getAvatar());
+        target.setPhone(source.getPhone());
+        target.setBalance(source.getBalance());
+        target.setIntegral(source.getIntegral());
+        target.setRole(source.getRole());
+        target.setToken(source.getToken());
+        return target;
+    }
+
+    private static final class Entry {
+        private final UserInfoResponse value;
+        private final long expireAt;
+
+        private Entry(UserInfoResponse value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package com.brewingmachine.service;
+
+import com.brewingmachine.dto.WeChatAccessTokenDTO;
+import com.brewingmachine.dto.WeChatUserInfoDTO;
+import com.brewingmachine.entity.User;
+import com.brewingmachine.entity.WeChatUser;
+import com.brewingmachine.mapper.UserMapper;
+import com.brewingmachine.mapper.WeChatUserMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * 微信账号落库服务
+ * 微信登录的数据库阶段：调用方先完成微信接口交互，这里只在一个短事务内写入user/wechat_user，不做任何远程调用；
+ * 微信资料只写入有变化的列
+ */
+@Slf4j
+@Service
+public class WeChatAccountService {
+
+    @Autowired
+    private WeChatUserMapper weChatUserMapper;
+
+    @Autowired
+    private UserMapper userMapper;
+
+    @Autowired
+    private IdentityCache identityCache;
+
+    @Autowired
+    private LastLoginTimeWriter lastLoginTimeWriter;
+
+    @Autowired
+    private UserInfoCache userInfoCache;
+
+    /**
+     * 按openid查询微信绑定记录
+     */
+    public WeChatUser findWeChatUser(String openid) {
+        return weChatUserMapper.findByOpenid(openid);
+    }
+
+    /**
+     * 微信扫码登录（已绑定用户）：只读取用户并更新最后登录时间，微信资料由WeChatProfileRefresher异步同步。
+     * userId为身份缓存解析出的用户ID，先按openid和用户ID确认绑定关系仍然有效；映射已变化时失效缓存并返回null，
+     * 调用方改走upsertWebUser按openid重新查找
+     */
+    public WeChatAccount loginWebUser(String openid, Long userId) {
+        if (weChatUserMapper.touchBinding(openid, userId) == 0) {
+            log.warn("身份缓存映射已过期，openid: {}, userId: {}", openid, userId);
+            identityCache.invalidateUser(userId);
+            return null;
+        }
+        User user = userMapper.findById(userId);
+        lastLoginTimeWriter.record(userId);
+        return new WeChatAccount(userId, user, false);
+    }
+
+    /**
+     * 微信扫码登录：按openid查找或创建用户，并同步微信资料
+     */
+    @Transactional
+    public WeChatAccount upsertWebUser(WeChatAccessTokenDTO accessToken, WeChatUserInfoDTO userInfo) {
+        WeChatUser weChatUser = weChatUserMapper.findByOpenid(accessToken.getOpenid());
+
+        if (weChatUser == null) {
+            // 新用户，创建用户账号
+            User newUser = createUserFromWeChat(userInfo);
+            userMapper.insert(newUser);
+
+            // 绑定微信账号
+            weChatUserMapper.insert(createWeChatUser(accessToken, userInfo, newUser.getId()));
+            lastLoginTimeWriter.record(newUser.getId());
+            return new WeChatAccount(newUser.getId(), newUser, true);
+        }
+
+        // 老用户，同步资料
+        User existingUser = applyProfile(weChatUser, accessToken.getUnionid(), userInfo);
+        lastLoginTimeWriter.record(weChatUser.getUserId());
+        return new WeChatAccount(weChatUser.getUserId(), existingUser, false);
+    }
+
+    /**
+     * 同步微信资料（后台刷新调用），只写入有变化的列
+     */
+    @Transactional
+    public void refreshProfile(WeChatUser weChatUser, String unionid, WeChatUserInfoDTO userInfo) {
+        applyProfile(weChatUser, unionid, userInfo);
+    }
+
+    /**
+     * 微信小程序登录：按openid查找或创建用户，并保存session_key；knownUserId为身份缓存解析出的用户ID，可为null
+     */
+    @Transactional
+    public WeChatAccount upsertMiniProgramUser(String openid, Long knownUserId, String sessionKey) {
+        if (knownUserId != null) {
+            // 身份缓存已解析出用户：按openid和用户ID一起更新session_key，同时校验缓存的映射仍然有效
+            if (weChatUserMapper.updateSessionKey(openid, knownUserId, sessionKey) > 0) {
+                lastLoginTimeWriter.record(knownUserId);
+                return new WeChatAccount(knownUserId, null, false);
+            }
+            // 映射已变化（其他节点或库外改绑），丢弃缓存，按openid重新查找
+            log.warn("身份缓存映射已过期，openid: {}, userId: {}", openid, knownUserId);
+            identityCache.invalidateUser(knownUserId);
+        }
+
+        WeChatUser weChatUser = weChatUserMapper.findByOpenid(openid);
+
+        if (weChatUser == null) {
+            // 新用户，创建用户账号
+            User newUser = new User();
+            newUser.setUsername("wxmp_" + UUID.randomUUID().toString().substring(0, 8));
+            newUser.setStatus(1);
+            newUser.setCreateTime(LocalDateTime.now());
+            newUser.setUpdateTime(LocalDateTime.now());
+            userMapper.insert(newUser);
+
+            // 绑定微信账号
+            WeChatUser newWeChatUser = new WeChatUser();
+            newWeChatUser.setOpenid(openid);
+            newWeChatUser.setSessionKey(sessionKey);
+            newWeChatUser.setUserId(newUser.getId());
+            newWeChatUser.setBindTime(LocalDateTime.now());
+            newWeChatUser.setCreateTime(LocalDateTime.now());
+            newWeChatUser.setUpdateTime(LocalDateTime.now());
+            weChatUserMapper.insert(newWeChatUser);
+            return new WeChatAccount(newUser.getId(), newUser, true);
+        }
+
+        // 老用户，更新session_key
+        weChatUser.setSessionKey(sessionKey);
+        weChatUser.setUpdateTime(LocalDateTime.now());
+        weChatUserMapper.updateByUserId(weChatUser.getUserId(), weChatUser);
+
+        // 更新最后登录时间
+        lastLoginTimeWriter.record(weChatUser.getUserId());
+        return new WeChatAccount(weChatUser.getUserId(), null, false);
+    }
+
+    /**
+     * 创建用户
+     */
+    private User createUserFromWeChat(WeChatUserInfoDTO userInfo) {
+        User user = new User();
+        user.setUsername("wechat_" + UUID.randomUUID().toString().substring(0, 8));
+        user.setNickname(userInfo.getNickname());
+        user.setAvatar(userInfo.getHeadimgurl());
+        user.setGender("1".equals(userInfo.getSex()) ? 1 : ("2".equals(userInfo.getSex()) ? 2 : 0));
+        user.setStatus(1);
+        user.setCreateTime(LocalDateTime.now());
+        user.setUpdateTime(LocalDateTime.now());
+        return user;
+    }
+
+    /**
+     * 比较微信资料与现有记录，把有变化的字段写入changes，返回是否有变化
+     */
+    private boolean updateUserFromWeChat(User user, User changes, WeChatUserInfoDTO userInfo) {
+        boolean changed = false;
+        if (isChanged(user.getNickname(), userInfo.getNickname())) {
+            changes.setNickname(userInfo.getNickname());
+            changed = true;
+        }
+        if (isChanged(user.getAvatar(), userInfo.getHeadimgurl())) {
+            changes.setAvatar(userInfo.getHeadimgurl());
+            changed = true;
+        }
+        Integer gender = "1".equals(userInfo.getSex()) ? 1 : ("2".equals(userInfo.getSex()) ? 2 : 0);
+        if (isChanged(user.getGender(), gender)) {
+            changes.setGender(gender);
+            changed = true;
+        }
+        return changed;
+    }
+
+    /**
+     * 创建微信用户绑定记录
+     */
+    private WeChatUser createWeChatUser(WeChatAccessTokenDTO accessToken, WeChatUserInfoDTO userInfo, Long userId) {
+        WeChatUser weChatUser = new WeChatUser();
+        weChatUser.setOpenid(accessToken.getOpenid());
+        weChatUser.setUnionid(accessToken.getUnionid());
+        weChatUser.setNickname(userInfo.getNickname());
+        weChatUser.setAvatar(userInfo.getHeadimgurl());
+        weChatUser.setGender("1".equals(userInfo.getSex()) ? 1 : ("2".equals(userInfo.getSex()) ? 2 : 0));
+        weChatUser.setCity(userInfo.getCity());
+        weChatUser.setProvince(userInfo.getProvince());
+        weChatUser.setCountry(userInfo.getCountry());
+        weChatUser.setLanguage("zh_CN");
+        weChatUser.setUserId(userId);
+        weChatUser.setBindTime(LocalDateTime.now());
+        weChatUser.setProfileRefreshedAt(LocalDateTime.now());
+        weChatUser.setCreateTime(LocalDateTime.now());
+        weChatUser.setUpdateTime(LocalDateTime.now());
+        return weChatUser;
+    }
+
+    /**
+     * 比较微信资料与现有绑定记录，把有变化的字段写入changes，返回是否有变化
+     */
+    private boolean updateWeChatUser(WeChatUser weChatUser, WeChatUser changes, String unionid, WeChatUserInfoDTO userInfo) {
+        boolean changed = false;
+        if (isChanged(weChatUser.getUnionid(), unionid)) {
+            changes.setUnionid(unionid);
+            changed = true;
+        }
+        if (isChanged(weChatUser.getNickname(), userInfo.getNickname())) {
+            changes.setNickname(userInfo.getNickname());
+            changed = true;
+        }
+        if (isChanged(weChatUser.getAvatar(), userInfo.getHeadimgurl())) {
+            changes.setAvatar(userInfo.getHeadimgurl());
+            changed = true;
+        }
+        Integer gender = "1".equals(userInfo.getSex()) ? 1 : ("2".equals(userInfo.getSex()) ? 2 : 0);
+        if (isChanged(weChatUser.getGender(), gender)) {
+            changes.setGender(gender);
+            changed = true;
+        }
+        if (isChanged(weChatUser.getCity(), userInfo.getCity())) {
+            changes.setCity(userInfo.getCity());
+            changed = true;
+        }
+        if (isChanged(weChatUser.getProvince(), userInfo.getProvince())) {
+            changes.setProvince(userInfo.getProvince());
+            changed = true;
+        }
+        if (isChanged(weChatUser.getCountry(), userInfo.getCountry())) {
+            changes.setCountry(userInfo.getCountry());
+            changed = true;
+        }
+        return changed;
+    }
+
+    /**
+     * 写入微信资料变化，返回最新的用户记录
+     * wechat_user即使没有变化也会写入profile_refreshed_at（资料最近同步时间）
+     */
+    private User applyProfile(WeChatUser weChatUser, String unionid, WeChatUserInfoDTO userInfo) {
+        WeChatUser weChatChanges = new WeChatUser();
+        updateWeChatUser(weChatUser, weChatChanges, unionid, userInfo);
+        weChatChanges.setProfileRefreshedAt(LocalDateTime.now());
+        weChatUserMapper.updateByUserId(weChatUser.getUserId(), weChatChanges);
+
+        if (weChatUser.getUserId() == null) {
+            return null;
+        }
+        User user = userMapper.findById(weChatUser.getUserId());
+        if (user == null) {
+            return null;
+        }
+        User userChanges = new User();
+        if (updateUserFromWeChat(user, userChanges, userInfo)) {
+            userChanges.setId(user.getId());
+            userChanges.setUpdateTime(LocalDateTime.now());
+            userMapper.update(userChanges);
+            userInfoCache.evict(user.getId());
+
+            if (userChanges.getNickname() != null) {
+                user.setNickname(userChanges.getNickname());
+            }
+            if (userChanges.getAvatar() != null) {
+                user.setAvatar(userChanges.getAvatar());
+            }
+            if (userChanges.getGender() != null) {
+                user.setGender(userChanges.getGender());
+            }
+        }
+        return user;
+    }
+
+    // 微信返回空值时不覆盖已有资料
+    private static boolean isChanged(Object current, Object latest) {
+        return latest != null && !Objects.equals(current, latest);
+    }
+
+    /**
+     * 落库结果
+     */
+    public static final class WeChatAccount {
+        private final Long userId;
+        private final User user;
+        private final boolean newUser;
+
+        private WeChatAccount(Long userId, User user, boolean newUser) {
+            this.userId = userId;
+            this.user = user;
+            this.newUser = newUser;
+        }
+
+        public Long getUserId() {
+            return userId;
+        }
+
+        /**
+         * 用户记录（小程序老用户登录不读取用户表，为null）
+         */
+        public User getUser() {
+            return user;
+        }
+
+        public boolean isNewUser() {
+            return newUser;
+        }
+    }
+}
@@ -1,26 +1,18 @@
 package com.brewingmachine.service;
 
-import com.alibaba.fastjson.JSON;
-import com.alibaba.fastjson.JSONObject;
+import com.brewingmachine.config.JsonCodec;
 import com.brewingmachine.config.WeChatConfig;
 import com.brewingmachine.constant.WeChatConstants;
 import com.brewingmachine.dto.WeChatAccessTokenDTO;
 import com.brewingmachine.dto.WeChatLoginResultDTO;
 import com.brewingmachine.dto.WeChatUserInfoDTO;
-import com.brewingmachine.entity.User;
-import com.brewingmachine.entity.WeChatUser;
-import com.brewingmachine.mapper.UserMapper;
-import com.brewingmachine.mapper.WeChatUserMapper;
-import com.brewingmachine.util.HttpClientUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
-import java.time.LocalDateTime;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Slf4j
 @Service
@@ -30,13 +22,27 @@ public class WeChatLoginService {
     private WeChatConfig weChatConfig;
 
     @Autowired
-    private WeChatUserMapper weChatUserMapper;
+    private WeChatAccountService weChatAccountService;
 
     @Autowired
-    private UserMapper userMapper;
+    private TokenService tokenService;
 
     @Autowired
-    private TokenService tokenService;
+    private HttpClientService httpClientService;
+
+    @Autowired
+    private WeChatProfileRefresher weChatProfileRefresher;
+
+    @Autowired
+    private IdentityCache identityCache;
+
+    @Autowired
+    private JsonCodec jsonCodec;
+
+    private final AtomicLong loginCount = new AtomicLong();
+    private final AtomicLong remoteNanosTotal = new AtomicLong();
+    private final AtomicLong connectionHoldNanosTotal = new AtomicLong();
+    private final AtomicLong connectionHoldNanosMax = new AtomicLong();
 
     /**
      * 获取微信授权URL
@@ -60,8 +66,8 @@ public class WeChatLoginService {
 
     /**
      * 微信扫码登录回调处理
+     * 远程交互 → 短事务落库 → 签发token，三步依次执行，数据库连接只在第二步持有
      */
-    @Transactional
     public WeChatLoginResultDTO handleCallback(String code) {
         WeChatLoginResultDTO result = new WeChatLoginResultDTO();
 
@@ -72,68 +78,22 @@ public class WeChatLoginService {
                 return result;
             }
 
-            // 1. 通过code获取access_token和openid
-            WeChatAccessTokenDTO accessToken = getAccessToken(code);
-            if (accessToken.getErrcode() != null && accessToken.getErrcode() != 0) {
-                result.setSuccess(false);
-                result.setMessage("获取授权信息失败：" + accessToken.getErrmsg());
-                return result;
-            }
-
-            // 2. 获取用户信息
-            WeChatUserInfoDTO userInfo = getUserInfo(accessToken.getAccess_token(), accessToken.getOpenid());
-            if (userInfo == null) {
-                result.setSuccess(false);
-                result.setMessage("获取用户信息失败");
-                return result;
-            }
+            // 1-2. 微信授权并落库
+            WeChatAccountService.WeChatAccount account = authenticate(code);
 
-            // 3. 查找或创建用户
-            WeChatUser weChatUser = weChatUserMapper.findByOpenid(accessToken.getOpenid());
-            boolean isNewUser = false;
-
-            if (weChatUser == null) {
-                // 新用户，创建用户账号
-                User newUser = createUserFromWeChat(userInfo);
-                userMapper.insert(newUser);
-
-                // 绑定微信账号
-                WeChatUser newWeChatUser = createWeChatUser(accessToken, userInfo, newUser.getId());
-                weChatUserMapper.insert(newWeChatUser);
-
-                weChatUser = newWeChatUser;
-                isNewUser = true;
-            } else {
-                // 老用户，更新用户信息
-                if (weChatUser.getUserId() != null) {
-                    User existingUser = userMapper.findById(weChatUser.getUserId());
-                    if (existingUser != null) {
-                        updateUserFromWeChat(existingUser, userInfo);
-                        userMapper.update(existingUser);
-                    }
-                }
-
-                // 更新微信用户信息
-                updateWeChatUser(weChatUser, accessToken, userInfo);
-                weChatUserMapper.updateByUserId(weChatUser.getUserId(), weChatUser);
-            }
-
-            // 4. 生成登录token
-            String token = tokenService.generateToken(weChatUser.getUserId());
-
-            // 5. 更新最后登录时间
-            userMapper.updateLastLoginTime(weChatUser.getUserId(), LocalDateTime.now());
+            // 3. 生成登录token
+            String token = tokenService.generateToken(account.getUserId());
 
-            // 6. 返回结果
+            // 4. 返回结果
             result.setSuccess(true);
             result.setMessage("登录成功");
             result.setToken(token);
-            result.setUserId(weChatUser.getUserId());
-            result.setNickname(userInfo.getNickname());
-            result.setAvatar(userInfo.getHeadimgurl());
-            result.setIsNewUser(isNewUser);
-
-            log.info("微信登录成功，openid: {}, userId: {}", accessToken.getOpenid(), weChatUser.getUserId());
+            result.setUserId(account.getUserId());
+            if (account.getUser() != null) {
+                result.setNickname(account.getUser().getNickname());
+                result.setAvatar(account.getUser().getAvatar());
+            }
+            result.setIsNewUser(account.isNewUser());
             return result;
 
         } catch (Exception e) {
@@ -144,18 +104,85 @@ public class WeChatLoginService {
         }
     }
 
+    /**
+     * 微信扫码登录：用code换取微信授权（不持有数据库连接），解析出openid对应的用户后立即返回；不签发token
+     * 已绑定用户的微信资料交给WeChatProfileRefresher后台刷新，新用户才同步拉取资料并在短事务内创建
+     */
+    public WeChatAccountService.WeChatAccount authenticate(String code) {
+        long remoteStart = System.nanoTime();
+
+        // 1. 通过code获取access_token和openid
+        WeChatAccessTokenDTO accessToken = getAccessToken(code);
+        if (accessToken.getErrcode() != null && accessToken.getErrcode() != 0) {
+            throw new RuntimeException("获取授权信息失败：" + accessToken.getErrmsg());
+        }
+        String openid = accessToken.getOpenid();
+        long remoteNanos = System.nanoTime() - remoteStart;
+
+        // 2. 已绑定用户：确认绑定关系后直接登录，资料后台刷新；绑定已变化时按新用户流程重新查找
+        long dbStart = System.nanoTime();
+        Long userId = identityCache.resolveOpenid(openid);
+        WeChatAccountService.WeChatAccount account = userId != null ? weChatAccountService.loginWebUser(openid, userId) : null;
+        long dbNanos = System.nanoTime() - dbStart;
+        if (account != null) {
+            recordLogin(remoteNanos, dbNanos);
+
+            weChatProfileRefresher.requestRefresh(openid, accessToken.getUnionid(),
+                    () -> getUserInfo(accessToken.getAccess_token(), openid));
+            log.info("微信登录成功，openid: {}, userId: {}", openid, account.getUserId());
+            return account;
+        }
+
+        // 3. 新用户：获取用户信息
+        remoteStart = System.nanoTime();
+        WeChatUserInfoDTO userInfo = getUserInfo(accessToken.getAccess_token(), openid);
+        if (userInfo == null) {
+            throw new RuntimeException("获取用户信息失败");
+        }
+        remoteNanos += System.nanoTime() - remoteStart;
+
+        // 4. 创建用户或按openid重新绑定（短事务）
+        dbStart = System.nanoTime();
+        account = weChatAccountService.upsertWebUser(accessToken, userInfo);
+        recordLogin(remoteNanos, dbNanos + System.nanoTime() - dbStart);
+
+        log.info("微信登录成功，openid: {}, userId: {}", openid, account.getUserId());
+        return account;
+    }
+
+    /**
+     * 登录耗时指标：远程交互耗时、数据库连接持有耗时（事务开始到提交）
+     */
+    public Map<String, Object> getLoginMetrics() {
+        long logins = loginCount.get();
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("logins", logins);
+        metrics.put("avgRemoteMs", logins > 0 ? remoteNanosTotal.get() / logins / 1_000_000.0 : 0);
+        metrics.put("avgConnectionHoldMs", logins > 0 ? connectionHoldNanosTotal.get() / logins / 1_000_000.0 : 0);
+        metrics.put("maxConnectionHoldMs", connectionHoldNanosMax.get() / 1_000_000.0);
+        return metrics;
+    }
+
+    private void recordLogin(long remoteNanos, long connectionHoldNanos) {
+        loginCount.incrementAndGet();
+        remoteNanosTotal.addAndGet(remoteNanos);
+        connectionHoldNanosTotal.addAndGet(connectionHoldNanos);
+        connectionHoldNanosMax.accumulateAndGet(connectionHoldNanos, Math::max);
+        log.debug("微信登录耗时，远程: {}ms, 连接持有: {}ms", remoteNanos / 1_000_000, connectionHoldNanos / 1_000_000);
+    }
+
     /**
      * 获取access_token
      */
     private WeChatAccessTokenDTO getAccessToken(String code) {
         String url = String.format("%s?appid=%s&secret=%s&code=%s&grant_type=authorization_code",
-                WeChatConstants.ACCESS_TOKEN_URL,
+                weChatConfig.getApiBaseUrl() + WeChatConstants.ACCESS_TOKEN_PATH,
                 weChatConfig.getAppId(),
                 weChatConfig.getAppSecret(),
                 code);
 
-        String response = HttpClientUtil.get(url);
-        return JSON.parseObject(response, WeChatAccessTokenDTO.class);
+        String response = httpClientService.getOnce(url);
+        return jsonCodec.parse(response, WeChatAccessTokenDTO.class);
     }
 
     /**
@@ -163,80 +190,19 @@ public class WeChatLoginService {
      */
     private WeChatUserInfoDTO getUserInfo(String accessToken, String openid) {
         String url = String.format("%s?access_token=%s&openid=%s&lang=zh_CN",
-                WeChatConstants.USER_INFO_URL,
+                weChatConfig.getApiBaseUrl() + WeChatConstants.USER_INFO_PATH,
                 accessToken,
                 openid);
 
-        String response = HttpClientUtil.get(url);
-        JSONObject jsonObject = JSON.parseObject(response);
+        String response = httpClientService.get(url);
+        Map<String, Object> jsonObject = jsonCodec.parseMap(response);
 
-        if (jsonObject.getInteger("errcode") != null && jsonObject.getInteger("errcode") != 0) {
-            log.error("获取用户信息失败：{}", jsonObject.getString("errmsg"));
+        if (!isSuccess(jsonObject)) {
+            log.error("获取用户信息失败：{}", jsonObject.get("errmsg"));
             return null;
         }
 
-        return JSON.parseObject(response, WeChatUserInfoDTO.class);
-    }
-
-    /**
-     * 创建用户
-     */
-    private User createUserFromWeChat(WeChatUserInfoDTO userInfo) {
-        User user = new User();
-        user.setUsername("wechat_" + UUID.randomUUID().toString().substring(0, 8));
-        user.setNickname(userInfo.getNickname());
-        user.setAvatar(userInfo.getHeadimgurl());
-        user.setGender("1".equals(userInfo.getSex()) ? 1 : ("2".equals(userInfo.getSex()) ? 2 : 0));
-        user.setStatus(1);
-        user.setCreateTime(LocalDateTime.now());
-        user.setUpdateTime(LocalDateTime.now());
-        return user;
-    }
-
-    /**
-     * 更新用户信息
-     */
-    private void updateUserFromWeChat(User user, WeChatUserInfoDTO userInfo) {
-        user.setNickname(userInfo.getNickname());
-        user.setAvatar(userInfo.getHeadimgurl());
-        user.setGender("1".equals(userInfo.getSex()) ? 1 : ("2".equals(userInfo.getSex()) ? 2 : 0));
-        user.setUpdateTime(LocalDateTime.now());
-    }
-
-    /**
-     * 创建微信用户绑定记录
-     */
-    private WeChatUser createWeChatUser(WeChatAccessTokenDTO accessToken, WeChatUserInfoDTO userInfo, Long userId) {
-        WeChatUser weChatUser = new WeChatUser();
-        weChatUser.setOpenid(accessToken.getOpenid());
-        weChatUser.setUnionid(accessToken.getUnionid());
-        weChatUser.setNickname(userInfo.getNickname());
-        weChatUser.setAvatar(userInfo.getHeadimgurl());
-        weChatUser.setGender("1".equals(userInfo.getSex()) ? 1 : ("2".equals(userInfo.getSex()) ? 2 : 0));
-        weChatUser.setCity(userInfo.getCity());
-        weChatUser.setProvince(userInfo.getProvince());
-        weChatUser.setCountry(userInfo.getCountry());
-        weChatUser.setLanguage("zh_CN");
-        weChatUser.setUserId(userId);
-        weChatUser.setBindTime(LocalDateTime.now());
-        weChatUser.setCreateTime(LocalDateTime.now());
-        weChatUser.setUpdateTime(LocalDateTime.now());
-        return weChatUser;
-    }
-
-    /**
-     * 更新微信用户信息
-     */
-    private void updateWeChatUser(WeChatUser weChatUser, WeChatAccessTokenDTO accessToken, WeChatUserInfoDTO userInfo) {
-        weChatUser.setOpenid(accessToken.getOpenid());
-        weChatUser.setUnionid(accessToken.getUnionid());
-        weChatUser.setNickname(userInfo.getNickname());
-        weChatUser.setAvatar(userInfo.getHeadimgurl());
-        weChatUser.setGender("1".equals(userInfo.getSex()) ? 1 : ("2".equals(userInfo.getSex()) ? 2 : 0));
-        weChatUser.setCity(userInfo.getCity());
-        weChatUser.setProvince(userInfo.getProvince());
-        weChatUser.setCountry(userInfo.getCountry());
-        weChatUser.setUpdateTime(LocalDateTime.now());
+        return jsonCodec.parse(response, WeChatUserInfoDTO.class);
     }
 
     /**
@@ -244,12 +210,12 @@ public class WeChatLoginService {
      */
     public WeChatAccessTokenDTO refreshToken(String refreshToken) {
         String url = String.format("%s?appid=%s&grant_type=refresh_token&refresh_token=%s",
-                WeChatConstants.REFRESH_TOKEN_URL,
+                weChatConfig.getApiBaseUrl() + WeChatConstants.REFRESH_TOKEN_PATH,
                 weChatConfig.getAppId(),
                 refreshToken);
 
-        String response = HttpClientUtil.get(url);
-        return JSON.parseObject(response, WeChatAccessTokenDTO.class);
+        String response = httpClientService.get(url);
+        return jsonCodec.parse(response, WeChatAccessTokenDTO.class);
     }
 
     /**
@@ -257,19 +223,18 @@ public class WeChatLoginService {
      */
     public boolean checkToken(String accessToken, String openid) {
         String url = String.format("%s?access_token=%s&openid=%s",
-                WeChatConstants.CHECK_TOKEN_URL,
+                weChatConfig.getApiBaseUrl() + WeChatConstants.CHECK_TOKEN_PATH,
                 accessToken,
                 openid);
 
-        String response = HttpClientUtil.get(url);
-        JSONObject jsonObject = JSON.parseObject(response);
-        return jsonObject.getInteger("errcode") == 0;
+        String response = httpClientService.get(url);
+        Map<String, Object> jsonObject = jsonCodec.parseMap(response);
+        return isSuccess(jsonObject);
     }
 
     /**
      * 微信小程序登录处理
      */
-    @Transactional
     public WeChatLoginResultDTO handleMiniProgramLogin(String code) {
         WeChatLoginResultDTO result = new WeChatLoginResultDTO();
 
@@ -280,63 +245,36 @@ public class WeChatLoginService {
                 return result;
             }
 
-            // 1. 通过code获取openid和session_key
+            // 1. 通过code获取openid和session_key（不持有数据库连接）
+            long remoteStart = System.nanoTime();
             Map<String, String> sessionInfo = getSessionInfo(code);
             if (sessionInfo == null || sessionInfo.get("errcode") != null) {
                 result.setSuccess(false);
-                result.setMessage("获取会话信息失败：" + sessionInfo.get("errmsg"));
+                result.setMessage("获取会话信息失败：" + (sessionInfo != null ? sessionInfo.get("errmsg") : null));
                 return result;
             }
+            long remoteNanos = System.nanoTime() - remoteStart;
 
             String openid = sessionInfo.get("openid");
             String sessionKey = sessionInfo.get("session_key");
 
-            // 2. 查找或创建用户
-            WeChatUser weChatUser = weChatUserMapper.findByOpenid(openid);
-            boolean isNewUser = false;
-
-            if (weChatUser == null) {
-                // 新用户，创建用户账号
-                User newUser = new User();
-                newUser.setUsername("wxmp_" + UUID.randomUUID().toString().substring(0, 8));
-                newUser.setStatus(1);
-                newUser.setCreateTime(LocalDateTime.now());
-                newUser.setUpdateTime(LocalDateTime.now());
-                userMapper.insert(newUser);
-
-                // 绑定微信账号
-                WeChatUser newWeChatUser = new WeChatUser();
-                newWeChatUser.setOpenid(openid);
-                newWeChatUser.setSessionKey(sessionKey);
-                newWeChatUser.setUserId(newUser.getId());
-                newWeChatUser.setBindTime(LocalDateTime.now());
-                newWeChatUser.setCreateTime(LocalDateTime.now());
-                newWeChatUser.setUpdateTime(LocalDateTime.now());
-                weChatUserMapper.insert(newWeChatUser);
-
-                weChatUser = newWeChatUser;
-                isNewUser = true;
-            } else {
-                // 老用户，更新session_key
-                weChatUser.setSessionKey(sessionKey);
-                weChatUser.setUpdateTime(LocalDateTime.now());
-                weChatUserMapper.updateByUserId(weChatUser.getUserId(), weChatUser);
-
-                // 更新最后登录时间
-                userMapper.updateLastLoginTime(weChatUser.getUserId(), LocalDateTime.now());
-            }
+            // 2. 查找或创建用户（短事务）
+            long dbStart = System.nanoTime();
+            Long knownUserId = identityCache.resolveOpenid(openid);
+            WeChatAccountService.WeChatAccount account = weChatAccountService.upsertMiniProgramUser(openid, knownUserId, sessionKey);
+            recordLogin(remoteNanos, System.nanoTime() - dbStart);
 
             // 3. 生成登录token
-            String token = tokenService.generateToken(weChatUser.getUserId());
+            String token = tokenService.generateToken(account.getUserId());
 
             // 4. 返回结果
             result.setSuccess(true);
             result.setMessage("登录成功");
             result.setToken(token);
-            result.setUserId(weChatUser.getUserId());
-            result.setIsNewUser(isNewUser);
+            result.setUserId(account.getUserId());
+            result.setIsNewUser(account.isNewUser());
 
-            log.info("微信小程序登录成功，openid: {}, userId: {}", openid, weChatUser.getUserId());
+            log.info("微信小程序登录成功，openid: {}, userId: {}", openid, account.getUserId());
             return result;
 
         } catch (Exception e) {
@@ -352,13 +290,25 @@ public class WeChatLoginService {
      */
     private Map<String, String> getSessionInfo(String code) {
         String url = String.format("%s?appid=%s&secret=%s&js_code=%s&grant_type=%s",
-                WeChatConstants.JSCODE2SESSION_URL,
+                weChatConfig.getApiBaseUrl() + WeChatConstants.JSCODE2SESSION_PATH,
                 weChatConfig.getAppId(),
                 weChatConfig.getAppSecret(),
                 code,
                 WeChatConstants.GRAND_TYPE);
 
-        String response = HttpClientUtil.get(url);
-        return JSON.parseObject(response, Map.class);
+        String response = httpClientService.getOnce(url);
+        Map<String, Object> jsonObject = jsonCodec.parseMap(response);
+        if (jsonObject == null) {
+            return null;
+        }
+        Map<String, String> sessionInfo = new HashMap<>();
+        jsonObject.forEach((key, value) -> sessionInfo.put(key, value != null ? value.toString() : null));
+        return sessionInfo;
+    }
+
+    // 微信接口返回errcode为0或不返回errcode表示成功
+    private static boolean isSuccess(Map<String, Object> jsonObject) {
+        Object errcode = jsonObject.get("errcode");
+        return errcode == null || (errcode instanceof Number && ((Number) errcode).intValue() == 0);
     }
 }
@@ -0,0 +1,133 @@
+package com.brewingmachine.service;
+
+import com.brewingmachine.dto.WeChatUserInfoDTO;
+import com.brewingmachine.entity.WeChatUser;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 微信资料后台刷新
+ * 老用户登录时不再同步拉取/sns/userinfo：资料在新鲜期内跳过，同一openid同时只有一个刷新任务，
+ * 刷新在后台线程执行，只写入有变化的列
+ */
+@Slf4j
+@Component
+public class WeChatProfileRefresher {
+
+    private final WeChatAccountService weChatAccountService;
+
+    @Value("${wechat.profile.fresh-seconds:86400}")
+    private long freshSeconds;
+
+    @Value("${wechat.profile.refresh-threads:2}")
+    private int refreshThreads;
+
+    @Value("${wechat.profile.queue-capacity:1000}")
+    private int queueCapacity;
+
+    // 正在刷新的openid
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+
+    private final AtomicLong refreshed = new AtomicLong();
+    private final AtomicLong skippedFresh = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    private ThreadPoolExecutor executor;
+
+    public WeChatProfileRefresher(WeChatAccountService weChatAccountService) {
+        this.weChatAccountService = weChatAccountService;
+    }
+
+    @PostConstruct
+    public void init() {
+        executor = new ThreadPoolExecutor(refreshThreads, refreshThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "wechat-profile-refresh");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 请求刷新微信资料，fetcher负责调用微信接口获取最新资料（返回null表示获取失败）
+     */
+    public void requestRefresh(String openid, String unionid, Supplier<WeChatUserInfoDTO> fetcher) {
+        if (!inFlight.add(openid)) {
+            coalesced.incrementAndGet();
+            return;
+        }
+
+        try {
+            executor.execute(() -> {
+                try {
+                    refresh(openid, unionid, fetcher);
+                } catch (Exception e) {
+                    failed.incrementAndGet();
+                    log.warn("刷新微信资料失败，openid: {}", openid, e);
+                } finally {
+                    inFlight.remove(openid);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inFlight.remove(openid);
+            log.warn("微信资料刷新队列已满，跳过本次刷新，openid: {}", openid);
+        }
+    }
+
+    private void refresh(String openid, String unionid, Supplier<WeChatUserInfoDTO> fetcher) {
+        WeChatUser weChatUser = weChatAccountService.findWeChatUser(openid);
+        if (weChatUser == null) {
+            return;
+        }
+
+        // 资料最近同步时间单独记录，update_time会被session_key等其他写入刷新，不能作为依据
+        LocalDateTime lastSynced = weChatUser.getProfileRefreshedAt();
+        if (lastSynced != null && lastSynced.isAfter(LocalDateTime.now().minusSeconds(freshSeconds))) {
+            skippedFresh.incrementAndGet();
+            return;
+        }
+
+        WeChatUserInfoDTO userInfo = fetcher.get();
+        if (userInfo == null) {
+            failed.incrementAndGet();
+            return;
+        }
+        weChatAccountService.refreshProfile(weChatUser, unionid, userInfo);
+        refreshed.incrementAndGet();
+    }
+
+    /**
+     * 刷新指标
+     */
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new HashMap<>();
+        metrics.put("refreshed", refreshed.get());
+        metrics.put("skippedFresh", skippedFresh.get());
+        metrics.put("coalesced", coalesced.get());
+        metrics.put("failed", failed.get());
+        metrics.put("queued", executor.getQueue().size());
+        return metrics;
+    }
+}
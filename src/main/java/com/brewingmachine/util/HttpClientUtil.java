@@ -1,37 +0,0 @@
-package com.brewingmachine.util;
-
-import org.apache.http.HttpEntity;
-import org.apache.http.client.methods.CloseableHttpResponse;
-import org.apache.http.client.methods.HttpPost;
-import org.apache.http.entity.StringEntity;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.util.EntityUtils;
-
-import java.io.IOException;
-
-public class HttpClientUtil {
-
-    public static String get(String url) {
-        try (CloseableHttpClient httpClient = HttpClients.createDefault()) {
-            org.apache.http.client.methods.HttpGet httpGet = new org.apache.http.client.methods.HttpGet(url);
-            httpGet.setHeader("User-Agent", "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36");
-            return EntityUtils.toString(httpClient.execute(httpGet).getEntity(), "UTF-8");
-        } catch (IOException e) {
-            throw new RuntimeException("HTTP请求失败: " + url, e);
-        }
-    }
-
-    public static String post(String url, String jsonBody) {
-        try (CloseableHttpClient httpClient = HttpClients.createDefault()) {
-            HttpPost httpPost = new HttpPost(url);
-            httpPost.setHeader("Content-Type", "application/json");
-            httpPost.setEntity(new StringEntity(jsonBody, "UTF-8"));
-            CloseableHttpResponse response = httpClient.execute(httpPost);
-            HttpEntity entity = response.getEntity();
-            return EntityUtils.toString(entity, "UTF-8");
-        } catch (IOException e) {
-            throw new RuntimeException("HTTP请求失败: " + url, e);
-        }
-    }
-}
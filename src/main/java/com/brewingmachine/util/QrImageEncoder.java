@@ -0,0 +1,210 @@
+package com.brewingmachine.util;
+
+import com.google.zxing.common.BitMatrix;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * 二维码图片编码
+ * 直接把BitMatrix写成1位灰度PNG或SVG，不经过Java2D和ImageIO；缓冲区按线程复用，压缩器每次创建并在用完后释放本地内存
+ */
+public class QrImageEncoder {
+
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    private static final byte[] IHDR = "IHDR".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] IDAT = "IDAT".getBytes(StandardCharsets.US_ASCII);
+
+    private static final byte[] IEND = "IEND".getBytes(StandardCharsets.US_ASCII);
+
+    private static final ThreadLocal<EncoderBuffers> BUFFERS = ThreadLocal.withInitial(EncoderBuffers::new);
+
+    private QrImageEncoder() {
+    }
+
+    /**
+     * 编码为1位灰度PNG（黑色模块为0，白色为1）
+     */
+    public static byte[] encodePng(BitMatrix matrix) {
+        int width = matrix.getWidth();
+        int height = matrix.getHeight();
+        int rowBytes = (width + 7) >> 3;
+
+        EncoderBuffers buffers = BUFFERS.get();
+        byte[] raw = buffers.raw(height * (rowBytes + 1));
+
+        // 每行：过滤类型字节 + 按位打包的像素；与上一行相同的行用Up过滤，全部为0，压缩率更高
+        int offset = 0;
+        byte[] previous = buffers.previousRow(rowBytes);
+        byte[] current = buffers.currentRow(rowBytes);
+        for (int y = 0; y < height; y++) {
+            packRow(matrix, y, width, current);
+            if (y > 0 && Arrays.equals(current, previous)) {
+                raw[offset++] = 2;
+                Arrays.fill(raw, offset, offset + rowBytes, (byte) 0);
+            } else {
+                raw[offset++] = 0;
+                System.arraycopy(current, 0, raw, offset, rowBytes);
+            }
+            offset += rowBytes;
+            byte[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+
+        ByteArrayOutputStream out = buffers.output();
+        out.write(PNG_SIGNATURE, 0, PNG_SIGNATURE.length);
+
+        byte[] header = new byte[13];
+        writeInt(header, 0, width);
+        writeInt(header, 4, height);
+        header[8] = 1;  // 位深度
+        header[9] = 0;  // 灰度
+        header[10] = 0; // deflate压缩
+        header[11] = 0; // 标准过滤
+        header[12] = 0; // 不隔行
+        writeChunk(out, IHDR, header, header.length, buffers.crc);
+
+        // Deflater持有本地内存，放在ThreadLocal里线程结束时无法end()，因此每次创建并释放
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        byte[] compressed = buffers.compressed(offset + 64);
+        int compressedLength = 0;
+        try {
+            deflater.setInput(raw, 0, offset);
+            deflater.finish();
+            while (!deflater.finished()) {
+                if (compressedLength == compressed.length) {
+                    compressed = buffers.growCompressed();
+                }
+                compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+            }
+        } finally {
+            deflater.end();
+        }
+        writeChunk(out, IDAT, compressed, compressedLength, buffers.crc);
+        writeChunk(out, IEND, new byte[0], 0, buffers.crc);
+
+        return out.toByteArray();
+    }
+
+    /**
+     * 编码为SVG，matrix为模块级矩阵（每个模块一个点），width/height为输出尺寸
+     */
+    public static String encodeSvg(BitMatrix matrix, int width, int height) {
+        int matrixWidth = matrix.getWidth();
+        int matrixHeight = matrix.getHeight();
+        StringBuilder svg = new StringBuilder(matrixWidth * matrixHeight);
+        svg.append("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"").append(width)
+                .append("\" height=\"").append(height)
+                .append("\" viewBox=\"0 0 ").append(matrixWidth).append(' ').append(matrixHeight)
+                .append("\" shape-rendering=\"crispEdges\">")
+                .append("<rect width=\"100%\" height=\"100%\" fill=\"#fff\"/>")
+                .append("<path fill=\"#000\" d=\"");
+
+        // 每行连续的黑色模块合并为一个矩形
+        for (int y = 0; y < matrixHeight; y++) {
+            int x = 0;
+            while (x < matrixWidth) {
+                if (!matrix.get(x, y)) {
+                    x++;
+                    continue;
+                }
+                int start = x;
+                while (x < matrixWidth && matrix.get(x, y)) {
+                    x++;
+                }
+                svg.append('M').append(start).append(' ').append(y)
+                        .append('h').append(x - start).append("v1h-").append(x - start).append('z');
+            }
+        }
+
+        svg.append("\"/></svg>");
+        return svg.toString();
+    }
+
+    private static void packRow(BitMatrix matrix, int y, int width, byte[] row) {
+        Arrays.fill(row, (byte) 0xFF);
+        for (int x = 0; x < width; x++) {
+            if (matrix.get(x, y)) {
+                row[x >> 3] &= (byte) ~(0x80 >>> (x & 7));
+            }
+        }
+    }
+
+    private static void writeChunk(ByteArrayOutputStream out, byte[] type, byte[] data, int length, CRC32 crc) {
+        byte[] lengthBytes = new byte[4];
+        writeInt(lengthBytes, 0, length);
+        out.write(lengthBytes, 0, 4);
+        out.write(type, 0, type.length);
+        out.write(data, 0, length);
+
+        crc.reset();
+        crc.update(type, 0, type.length);
+        crc.update(data, 0, length);
+        byte[] crcBytes = new byte[4];
+        writeInt(crcBytes, 0, (int) crc.getValue());
+        out.write(crcBytes, 0, 4);
+    }
+
+    private static void writeInt(byte[] target, int offset, int value) {
+        target[offset] = (byte) (value >>> 24);
+        target[offset + 1] = (byte) (value >>> 16);
+        target[offset + 2] = (byte) (value >>> 8);
+        target[offset + 3] = (byte) value;
+    }
+
+    /**
+     * 按线程复用的编码缓冲区
+     */
+    private static final class EncoderBuffers {
+        private final CRC32 crc = new CRC32();
+        private final ByteArrayOutputStream output = new ByteArrayOutputStream(4096);
+        private byte[] raw = new byte[0];
+        private byte[] compressed = new byte[0];
+        private byte[] previousRow = new byte[0];
+        private byte[] currentRow = new byte[0];
+
+        private byte[] raw(int size) {
+            if (raw.length < size) {
+                raw = new byte[size];
+            }
+            return raw;
+        }
+
+        private byte[] compressed(int size) {
+            if (compressed.length < size) {
+                compressed = new byte[size];
+            }
+            return compressed;
+        }
+
+        private byte[] growCompressed() {
+            compressed = Arrays.copyOf(compressed, compressed.length * 2);
+            return compressed;
+        }
+
+        private byte[] previousRow(int size) {
+            if (previousRow.length != size) {
+                previousRow = new byte[size];
+            }
+            return previousRow;
+        }
+
+        private byte[] currentRow(int size) {
+            if (currentRow.length != size) {
+                currentRow = new byte[size];
+            }
+            return currentRow;
+        }
+
+        private ByteArrayOutputStream output() {
+            output.reset();
+            return output;
+        }
+    }
+}
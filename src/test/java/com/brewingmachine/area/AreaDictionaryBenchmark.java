@@ -0,0 +1,159 @@
+package com.brewingmachine.area;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.BufferedWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 地区字典基准：约48万条五级地区，内存映射字典 与 堆上HashMap&lt;12位编码, Area&gt; 的查找、上级链和打开耗时对比
+ * 运行：mvn test-compile 后以测试classpath执行本类main方法
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class AreaDictionaryBenchmark {
+
+    private static final int PROVINCES = 31;
+    private static final int CITIES = 10;
+    private static final int COUNTIES = 10;
+    private static final int TOWNS = 15;
+    private static final int VILLAGES = 10;
+
+    private Path directory;
+    private Path file;
+    private AreaDictionary dictionary;
+    private Map<String, Area> heapIndex;
+    private String[] villageCodes;
+    private String[] countyCodes6;
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("area-benchmark");
+        Path csv = directory.resolve("area.csv");
+        List<String> villages = new ArrayList<>();
+        List<String> counties = new ArrayList<>();
+        try (BufferedWriter writer = Files.newBufferedWriter(csv, StandardCharsets.UTF_8)) {
+            writer.write("regionCode12,name,level,parentCode12,typeCode\n");
+            for (int p = 1; p <= PROVINCES; p++) {
+                String province = String.format("%02d0000000000", p + 10);
+                writer.write(province + ",省" + p + ",1,,\n");
+                for (int c = 1; c <= CITIES; c++) {
+                    String city = province.substring(0, 2) + String.format("%02d", c) + "00000000";
+                    writer.write(city + ",市" + c + ",2," + province + ",\n");
+                    for (int d = 1; d <= COUNTIES; d++) {
+                        String county = city.substring(0, 4) + String.format("%02d", d) + "000000";
+                        writer.write(county + ",县" + d + ",3," + city + ",\n");
+                        counties.add(county.substring(0, 6));
+                        for (int t = 1; t <= TOWNS; t++) {
+                            String town = county.substring(0, 6) + String.format("%03d", t) + "000";
+                            writer.write(town + ",镇" + t + ",4," + county + ",\n");
+                            for (int v = 1; v <= VILLAGES; v++) {
+                                String village = town.substring(0, 9) + String.format("%03d", v);
+                                writer.write(village + ",村" + v + ",5," + town + ",220\n");
+                                villages.add(village);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        file = directory.resolve("area.bin");
+        AreaDictionaryWriter.write(csv, file);
+        dictionary = AreaDictionary.open(file);
+
+        heapIndex = new HashMap<>(dictionary.size() * 2);
+        for (int i = 0; i < dictionary.size(); i++) {
+            Area area = dictionary.get(i);
+            heapIndex.put(area.getRegionCode12(), area);
+        }
+
+        Random random = new Random(42);
+        villageCodes = new String[4096];
+        for (int i = 0; i < villageCodes.length; i++) {
+            villageCodes[i] = villages.get(random.nextInt(villages.size()));
+        }
+        countyCodes6 = new String[4096];
+        for (int i = 0; i < countyCodes6.length; i++) {
+            countyCodes6[i] = counties.get(random.nextInt(counties.size()));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        dictionary = null;
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(directory.resolve("area.csv"));
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public int mappedIndexOf() {
+        return dictionary.indexOf(villageCodes[next++ & 4095]);
+    }
+
+    @Benchmark
+    public int mappedIndexOf6() {
+        return dictionary.indexOf6(countyCodes6[next++ & 4095]);
+    }
+
+    @Benchmark
+    public Area mappedFindByCode12() {
+        return dictionary.findByCode12(villageCodes[next++ & 4095]);
+    }
+
+    @Benchmark
+    public Area heapFindByCode12() {
+        return heapIndex.get(villageCodes[next++ & 4095]);
+    }
+
+    @Benchmark
+    public List<Area> mappedAncestors() {
+        return dictionary.getAncestors(villageCodes[next++ & 4095]);
+    }
+
+    @Benchmark
+    public List<Area> heapAncestors() {
+        List<Area> ancestors = new ArrayList<>(5);
+        Area area = heapIndex.get(villageCodes[next++ & 4095]);
+        while (area != null && area.getParentCode12() != null) {
+            area = heapIndex.get(area.getParentCode12());
+            ancestors.add(0, area);
+        }
+        return ancestors;
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public AreaDictionary open() throws Exception {
+        return AreaDictionary.open(file);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(AreaDictionaryBenchmark.class.getSimpleName()).build()).run();
+    }
+}
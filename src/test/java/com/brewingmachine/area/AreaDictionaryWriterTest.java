@@ -0,0 +1,133 @@
+package com.brewingmachine.area;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AreaDictionaryWriterTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void writesDictionaryReadableByCode12AndCode6() throws Exception {
+        Path csv = csv("regionCode12,name,level,parentCode12,typeCode",
+                "110000000000,北京市,1,,",
+                "110100000000,市辖区,2,110000000000,",
+                "110101000000,东城区,3,110100000000,",
+                "110101001000,东华门街道,4,110101000000,",
+                "110101001001,多福巷社区居委会,5,110101001000,111");
+        Path target = directory.resolve("area.bin");
+
+        assertThat(AreaDictionaryWriter.write(csv, target)).isEqualTo(5);
+
+        AreaDictionary dictionary = AreaDictionary.open(target);
+        assertThat(dictionary.findByCode6("110101").getName()).isEqualTo("东城区");
+        Area village = dictionary.findByCode12("110101001001");
+        assertThat(village.getParentCode12()).isEqualTo("110101001000");
+        assertThat(village.getTypeCode()).isEqualTo("111");
+        assertThat(dictionary.getAncestors("110101001001")).extracting(Area::getName)
+                .containsExactly("北京市", "市辖区", "东城区", "东华门街道");
+    }
+
+    @Test
+    void rejectsDuplicateCode12() throws Exception {
+        Path csv = csv("regionCode12,name,level,parentCode12,typeCode",
+                "110000000000,北京市,1,,",
+                "110000000000,北京,1,,");
+
+        assertThatThrownBy(() -> AreaDictionaryWriter.write(csv, directory.resolve("area.bin")))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("地区编码重复");
+    }
+
+    @Test
+    void rejectsDuplicateCode6() throws Exception {
+        // 两个县级地区前6位相同，按6位编码查找时无法区分
+        Path csv = csv("regionCode12,name,level,parentCode12,typeCode",
+                "110000000000,北京市,1,,",
+                "110101000000,东城区,3,110000000000,",
+                "110101000001,东城区(旧),3,110000000000,");
+        Path target = directory.resolve("area.bin");
+
+        assertThatThrownBy(() -> AreaDictionaryWriter.write(csv, target))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("6位地区编码重复: 110101");
+        assertThat(target).doesNotExist();
+    }
+
+    @Test
+    void parsesQuotedFieldsContainingCommasAndQuotes() throws Exception {
+        Path csv = csv("regionCode12,name,level,parentCode12,typeCode",
+                "110000000000,北京市,1,,",
+                "110100000000,\"市辖区,直辖\",2,110000000000,",
+                "110101000000, \"东城区\"\"旧\"\"\" ,3,110100000000,");
+        Path target = directory.resolve("area.bin");
+
+        assertThat(AreaDictionaryWriter.write(csv, target)).isEqualTo(3);
+
+        AreaDictionary dictionary = AreaDictionary.open(target);
+        assertThat(dictionary.findByCode6("110100").getName()).isEqualTo("市辖区,直辖");
+        assertThat(dictionary.findByCode6("110101").getName()).isEqualTo("东城区\"旧\"");
+        assertThat(AreaDictionaryWriter.parseLine("a,,\"\",b")).containsExactly("a", "", "", "b");
+    }
+
+    @Test
+    void rejectsUnterminatedQuote() throws Exception {
+        Path csv = csv("regionCode12,name,level,parentCode12,typeCode",
+                "110000000000,\"北京市,1,,");
+
+        assertThatThrownBy(() -> AreaDictionaryWriter.write(csv, directory.resolve("area.bin")))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("引号不匹配");
+    }
+
+    @Test
+    void rejectsUnknownParent() throws Exception {
+        // 上级编码写错的县不能当作省级写入
+        Path csv = csv("regionCode12,name,level,parentCode12,typeCode",
+                "110000000000,北京市,1,,",
+                "110101000000,东城区,3,119900000000,");
+        Path target = directory.resolve("area.bin");
+
+        assertThatThrownBy(() -> AreaDictionaryWriter.write(csv, target))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("上级地区不存在: 110101000000");
+        assertThat(target).doesNotExist();
+    }
+
+    @Test
+    void rejectsMissingParentBelowProvince() throws Exception {
+        Path csv = csv("regionCode12,name,level,parentCode12,typeCode",
+                "110101000000,东城区,3,,");
+
+        assertThatThrownBy(() -> AreaDictionaryWriter.write(csv, directory.resolve("area.bin")))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("非省级地区缺少上级编码");
+    }
+
+    @Test
+    void rejectsParentCycle() throws Exception {
+        // 两个地区互为上级时级别必然不满足上级更高
+        Path csv = csv("regionCode12,name,level,parentCode12,typeCode",
+                "110000000000,北京市,1,,",
+                "110100000000,市辖区,2,110101000000,",
+                "110101000000,东城区,3,110100000000,");
+
+        assertThatThrownBy(() -> AreaDictionaryWriter.write(csv, directory.resolve("area.bin")))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("上级地区级别不正确: 110100000000");
+    }
+
+    private Path csv(String... lines) throws Exception {
+        Path csv = directory.resolve("area.csv");
+        Files.write(csv, String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+        return csv;
+    }
+}
@@ -0,0 +1,49 @@
+package com.brewingmachine.area;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PinyinInitialsTest {
+
+    @Test
+    void level1Characters() {
+        assertThat(PinyinInitials.of("北京市")).isEqualTo("bjs");
+        assertThat(PinyinInitials.of("广州")).isEqualTo("gz");
+        assertThat(PinyinInitials.of("重要")).isEqualTo("zy");
+    }
+
+    @Test
+    void level2Characters() {
+        assertThat(PinyinInitials.of("亳州")).isEqualTo("bz");
+        assertThat(PinyinInitials.of("泸州")).isEqualTo("lz");
+        assertThat(PinyinInitials.of("衢州")).isEqualTo("qz");
+        assertThat(PinyinInitials.of("儋州")).isEqualTo("dz");
+        assertThat(PinyinInitials.of("鄞州区")).isEqualTo("yzq");
+    }
+
+    @Test
+    void placeNamePolyphones() {
+        assertThat(PinyinInitials.of("重庆市")).isEqualTo("cqs");
+        assertThat(PinyinInitials.of("厦门")).isEqualTo("xm");
+        assertThat(PinyinInitials.of("六安市")).isEqualTo("las");
+        assertThat(PinyinInitials.of("蚌埠")).isEqualTo("bb");
+        assertThat(PinyinInitials.of("番禺区")).isEqualTo("pyq");
+        // 整词出现多次时都替换
+        assertThat(PinyinInitials.of("重庆重庆")).isEqualTo("cqcq");
+    }
+
+    @Test
+    void asciiAndUnknownCharacters() {
+        assertThat(PinyinInitials.of("A1区")).isEqualTo("a1q");
+        assertThat(PinyinInitials.of("堃")).isEqualTo(String.valueOf(PinyinInitials.UNKNOWN));
+        assertThat(PinyinInitials.of("-")).isEqualTo(String.valueOf(PinyinInitials.UNKNOWN));
+    }
+
+    @Test
+    void initialsQuery() {
+        assertThat(PinyinInitials.isInitialsQuery("cqS")).isTrue();
+        assertThat(PinyinInitials.isInitialsQuery("c1")).isFalse();
+        assertThat(PinyinInitials.isInitialsQuery("")).isFalse();
+    }
+}
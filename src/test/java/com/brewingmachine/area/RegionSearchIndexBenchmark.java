@@ -0,0 +1,150 @@
+package com.brewingmachine.area;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.BufferedWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 地区搜索基准：约48万条五级地区（随机1~3字名称），取前20条。
+ * 名称前缀、拼音首字母前缀/包含、只查村级（排名最靠后的一层）和限定县级地区子树的单字查询
+ * 运行：mvn test-compile 后以测试classpath执行本类main方法
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class RegionSearchIndexBenchmark {
+
+    private static final String CHARS = "东南西北中大小新老金银山水河湖石桥李王张刘陈杨黄赵周吴林高马罗";
+
+    private static final int LIMIT = 20;
+
+    private Path directory;
+    private Path file;
+    private RegionSearchIndex index;
+    private String[] nameQueries;
+    private String[] initialsQueries;
+    private String[] singleQueries;
+    private int[] counties;
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception {
+        Random random = new Random(42);
+        directory = Files.createTempDirectory("region-search-benchmark");
+        Path csv = directory.resolve("area.csv");
+        try (BufferedWriter writer = Files.newBufferedWriter(csv, StandardCharsets.UTF_8)) {
+            writer.write("regionCode12,name,level,parentCode12,typeCode\n");
+            for (int p = 1; p <= 31; p++) {
+                String province = String.format("%02d0000000000", p + 10);
+                writer.write(province + "," + randomName(random) + "省,1,,\n");
+                for (int c = 1; c <= 10; c++) {
+                    String city = province.substring(0, 2) + String.format("%02d", c) + "00000000";
+                    writer.write(city + "," + randomName(random) + "市,2," + province + ",\n");
+                    for (int d = 1; d <= 10; d++) {
+                        String county = city.substring(0, 4) + String.format("%02d", d) + "000000";
+                        writer.write(county + "," + randomName(random) + "县,3," + city + ",\n");
+                        for (int t = 1; t <= 15; t++) {
+                            String town = county.substring(0, 6) + String.format("%03d", t) + "000";
+                            writer.write(town + "," + randomName(random) + "镇,4," + county + ",\n");
+                            for (int v = 1; v <= 10; v++) {
+                                String village = town.substring(0, 9) + String.format("%03d", v);
+                                writer.write(village + "," + randomName(random) + "村,5," + town + ",220\n");
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        file = directory.resolve("area.bin");
+        AreaDictionaryWriter.write(csv, file);
+        AreaDictionary dictionary = AreaDictionary.open(file);
+        index = RegionSearchIndex.build(dictionary);
+
+        List<Integer> countyRows = new ArrayList<>();
+        for (int row = 0; row < dictionary.size(); row++) {
+            if (dictionary.level(row) == AreaLevel.COUNTY.getValue()) {
+                countyRows.add(row);
+            }
+        }
+        nameQueries = new String[1024];
+        initialsQueries = new String[1024];
+        singleQueries = new String[1024];
+        counties = new int[1024];
+        for (int i = 0; i < 1024; i++) {
+            String name = dictionary.name(random.nextInt(dictionary.size()));
+            nameQueries[i] = name.substring(0, Math.min(2, name.length()));
+            initialsQueries[i] = PinyinInitials.of(name).substring(0, Math.min(2, name.length()));
+            singleQueries[i] = String.valueOf(CHARS.charAt(random.nextInt(CHARS.length())));
+            counties[i] = countyRows.get(random.nextInt(countyRows.size()));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        index = null;
+        Files.deleteIfExists(file);
+        Files.deleteIfExists(directory.resolve("area.csv"));
+        Files.deleteIfExists(directory);
+    }
+
+    @Benchmark
+    public int[] namePrefix() {
+        return index.search(nameQueries[next++ & 1023], true, null, -1, LIMIT);
+    }
+
+    @Benchmark
+    public int[] initialsPrefix() {
+        return index.search(initialsQueries[next++ & 1023], true, null, -1, LIMIT);
+    }
+
+    @Benchmark
+    public int[] initialsContains() {
+        return index.search(initialsQueries[next++ & 1023], false, null, -1, LIMIT);
+    }
+
+    @Benchmark
+    public int[] villageLevelContains() {
+        return index.search(singleQueries[next++ & 1023], false, AreaLevel.VILLAGE, -1, LIMIT);
+    }
+
+    @Benchmark
+    public int[] withinCountyContains() {
+        int i = next++ & 1023;
+        return index.search(singleQueries[i], false, null, counties[i], LIMIT);
+    }
+
+    private static String randomName(Random random) {
+        StringBuilder name = new StringBuilder();
+        int length = 1 + random.nextInt(3);
+        for (int i = 0; i < length; i++) {
+            name.append(CHARS.charAt(random.nextInt(CHARS.length())));
+        }
+        return name.toString();
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(RegionSearchIndexBenchmark.class.getSimpleName()).build()).run();
+    }
+}
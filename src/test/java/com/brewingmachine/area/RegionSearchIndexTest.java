@@ -0,0 +1,215 @@
+package com.brewingmachine.area;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * 约22万条地区上与逐行扫描的结果对照
+ */
+class RegionSearchIndexTest {
+
+    private static final String CHARS = "东南西北中大小新老金银山水河湖石桥李王张刘陈杨黄赵周吴林高马罗"
+            + "亳泸衢邗鄞婺濮漯儋崂郫邛黟歙溧鄱";
+
+    private static final String[] WORDS = {"重庆", "厦门", "六安", "蚌埠", "番禺"};
+
+    private static final int LIMIT = 20;
+
+    @TempDir
+    static Path directory;
+
+    private static AreaDictionary dictionary;
+    private static RegionSearchIndex index;
+    private static String[] names;
+    private static String[] initials;
+
+    @BeforeAll
+    static void setUp() throws Exception {
+        Random random = new Random(20240601);
+        Path csv = directory.resolve("area.csv");
+        try (BufferedWriter writer = Files.newBufferedWriter(csv, StandardCharsets.UTF_8)) {
+            writer.write("regionCode12,name,level,parentCode12,typeCode\n");
+            for (int p = 1; p <= 31; p++) {
+                String province = String.format("%02d0000000000", p + 10);
+                writer.write(province + "," + randomName(random) + "省,1,,\n");
+                for (int c = 1; c <= 8; c++) {
+                    String city = province.substring(0, 2) + String.format("%02d", c) + "00000000";
+                    writer.write(city + "," + randomName(random) + "市,2," + province + ",\n");
+                    for (int d = 1; d <= 8; d++) {
+                        String county = city.substring(0, 4) + String.format("%02d", d) + "000000";
+                        writer.write(county + "," + randomName(random) + "县,3," + city + ",\n");
+                        for (int t = 1; t <= 10; t++) {
+                            String town = county.substring(0, 6) + String.format("%03d", t) + "000";
+                            writer.write(town + "," + randomName(random) + "镇,4," + county + ",\n");
+                            for (int v = 1; v <= 10; v++) {
+                                String village = town.substring(0, 9) + String.format("%03d", v);
+                                writer.write(village + "," + randomName(random) + "村,5," + town + ",220\n");
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        Path file = directory.resolve("area.bin");
+        AreaDictionaryWriter.write(csv, file);
+        dictionary = AreaDictionary.open(file);
+        index = RegionSearchIndex.build(dictionary);
+
+        names = new String[dictionary.size()];
+        initials = new String[dictionary.size()];
+        for (int row = 0; row < names.length; row++) {
+            names[row] = dictionary.name(row);
+            initials[row] = PinyinInitials.of(names[row]);
+        }
+    }
+
+    @Test
+    void hasAbout200kRegions() {
+        assertThat(dictionary.size()).isGreaterThan(200_000);
+    }
+
+    @Test
+    void matchesBruteForce() {
+        Random random = new Random(7);
+        for (int i = 0; i < 400; i++) {
+            String name = names[random.nextInt(names.length)];
+            boolean byInitials = random.nextInt(3) == 0;
+            String source = byInitials ? PinyinInitials.of(name) : name;
+            int length = 1 + random.nextInt(Math.min(3, source.length()));
+            int start = random.nextInt(source.length() - length + 1);
+            String query = source.substring(start, start + length);
+            if (byInitials && !PinyinInitials.isInitialsQuery(query)) {
+                continue;
+            }
+            boolean prefixOnly = random.nextBoolean();
+            AreaLevel level = random.nextInt(3) == 0 ? AreaLevel.of(1 + random.nextInt(5)) : null;
+            int withinRow = random.nextInt(3) == 0 ? randomAncestor(random) : -1;
+
+            assertThat(rows(index.search(query, prefixOnly, level, withinRow, LIMIT)))
+                    .as("query=%s prefixOnly=%s level=%s within=%d", query, prefixOnly, level, withinRow)
+                    .containsExactlyElementsOf(bruteForce(query, prefixOnly, level, withinRow, LIMIT));
+        }
+    }
+
+    @Test
+    void singleLetterQueriesStopAtLimit() {
+        for (char c = 'a'; c <= 'z'; c++) {
+            String query = String.valueOf(c);
+            assertThat(rows(index.search(query, false, null, -1, LIMIT)))
+                    .as("query=%s", query)
+                    .containsExactlyElementsOf(bruteForce(query, false, null, -1, LIMIT));
+        }
+    }
+
+    @Test
+    void filteredShortQueriesMatchBruteForce() {
+        // 单字查询的匹配区间很大, 按层级过滤走分层下界, 限定县级地区走子树扫描
+        Random random = new Random(11);
+        for (int i = 0; i < 12; i++) {
+            String query = String.valueOf(CHARS.charAt(i));
+            for (AreaLevel level : AreaLevel.values()) {
+                assertThat(rows(index.search(query, false, level, -1, LIMIT)))
+                        .as("query=%s level=%s", query, level)
+                        .containsExactlyElementsOf(bruteForce(query, false, level, -1, LIMIT));
+            }
+            int withinRow = randomAncestor(random);
+            for (boolean prefixOnly : new boolean[]{true, false}) {
+                assertThat(rows(index.search(query, prefixOnly, null, withinRow, LIMIT)))
+                        .as("query=%s prefixOnly=%s within=%d", query, prefixOnly, withinRow)
+                        .containsExactlyElementsOf(bruteForce(query, prefixOnly, null, withinRow, LIMIT));
+                assertThat(rows(index.search(query, prefixOnly, AreaLevel.VILLAGE, withinRow, LIMIT)))
+                        .as("query=%s prefixOnly=%s within=%d", query, prefixOnly, withinRow)
+                        .containsExactlyElementsOf(bruteForce(query, prefixOnly, AreaLevel.VILLAGE, withinRow, LIMIT));
+            }
+        }
+    }
+
+    @Test
+    void polyphonePlaceNamesMatchByInitials() {
+        List<Integer> chongqing = new ArrayList<>();
+        for (int row = 0; row < names.length; row++) {
+            if (names[row].startsWith("重庆")) {
+                chongqing.add(row);
+            }
+        }
+        assertThat(chongqing).isNotEmpty();
+
+        List<Integer> rows = rows(index.search("cq", true, null, -1, names.length));
+        assertThat(rows).containsExactlyElementsOf(bruteForce("cq", true, null, -1, names.length));
+        assertThat(rows).containsAll(chongqing);
+    }
+
+    private static String randomName(Random random) {
+        StringBuilder name = new StringBuilder();
+        if (random.nextInt(50) == 0) {
+            name.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        int length = 1 + random.nextInt(3);
+        for (int i = 0; i < length; i++) {
+            name.append(CHARS.charAt(random.nextInt(CHARS.length())));
+        }
+        return name.toString();
+    }
+
+    private static int randomAncestor(Random random) {
+        int row = random.nextInt(dictionary.size());
+        while (dictionary.level(row) > 3 && dictionary.parentIndex(row) >= 0) {
+            row = dictionary.parentIndex(row);
+        }
+        return row;
+    }
+
+    private static List<Integer> rows(int[] rows) {
+        List<Integer> list = new ArrayList<>(rows.length);
+        for (int row : rows) {
+            list.add(row);
+        }
+        return list;
+    }
+
+    // 逐行扫描, 按层级再按编码(行号)取前limit个
+    private static List<Integer> bruteForce(String query, boolean prefixOnly, AreaLevel level, int withinRow, int limit) {
+        boolean byInitials = PinyinInitials.isInitialsQuery(query);
+        String pattern = byInitials ? query.toLowerCase() : query;
+        List<Integer> result = new ArrayList<>();
+        for (int levelValue = 1; levelValue <= 5 && result.size() < limit; levelValue++) {
+            if (level != null && level.getValue() != levelValue) {
+                continue;
+            }
+            for (int row = 0; row < names.length && result.size() < limit; row++) {
+                if (dictionary.level(row) != levelValue) {
+                    continue;
+                }
+                String text = byInitials ? initials[row] : names[row];
+                if (!(prefixOnly ? text.startsWith(pattern) : text.contains(pattern))) {
+                    continue;
+                }
+                if (withinRow >= 0 && !isDescendant(row, withinRow)) {
+                    continue;
+                }
+                result.add(row);
+            }
+        }
+        return result;
+    }
+
+    private static boolean isDescendant(int row, int ancestor) {
+        for (int parent = dictionary.parentIndex(row); parent >= 0; parent = dictionary.parentIndex(parent)) {
+            if (parent == ancestor) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,45 @@
+package com.brewingmachine.commission;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LongLongMapTest {
+
+    @Test
+    void keepsValuesWrittenWhileGrowing() {
+        LongLongMap map = new LongLongMap();
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(3);
+        for (int i = 0; i < 10_000; i++) {
+            long key = 1 + random.nextInt(5_000);
+            long delta = random.nextInt(100);
+            if (i % 2 == 0) {
+                map.addTo(key, delta);
+                expected.merge(key, delta, Long::sum);
+            } else {
+                map.put(key, delta);
+                expected.put(key, delta);
+            }
+        }
+
+        assertThat(map.size()).isEqualTo(expected.size());
+        expected.forEach((key, value) -> assertThat(map.get(key, -1)).as("键%d", key).isEqualTo(value));
+        Map<Long, Long> visited = new HashMap<>();
+        map.forEach(visited::put);
+        assertThat(visited).isEqualTo(expected);
+    }
+
+    @Test
+    void rejectsNonPositiveKeys() {
+        LongLongMap map = new LongLongMap();
+
+        assertThatThrownBy(() -> map.put(0, 1)).isInstanceOf(IllegalArgumentException.class);
+        assertThat(map.get(0, 7)).isEqualTo(7);
+    }
+}
@@ -0,0 +1,101 @@
+package com.brewingmachine.commission;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SplitPlanTest {
+
+    @Test
+    void splitsByRemainingAmountAndLastTakesTheRest() {
+        // 机主30%，运营方20%（均按剩余金额），供应商取剩余
+        SplitPlan plan = plan(
+                new SplitPlan.Step(1, CommissionParty.OWNER, 3000, false),
+                new SplitPlan.Step(2, CommissionParty.OPERATOR, 2000, false),
+                new SplitPlan.Step(3, CommissionParty.SUPPLIER, 0, false));
+
+        // 10000 -> 3000, 剩7000 -> 1400, 剩5600
+        assertThat(plan.split(10_000)).containsExactly(3_000, 1_400, 5_600);
+    }
+
+    @Test
+    void splitsByTotalAmount() {
+        SplitPlan plan = plan(
+                new SplitPlan.Step(1, CommissionParty.OWNER, 3000, true),
+                new SplitPlan.Step(2, CommissionParty.OPERATOR, 2000, true),
+                new SplitPlan.Step(3, CommissionParty.SUPPLIER, 0, false));
+
+        assertThat(plan.split(10_000)).containsExactly(3_000, 2_000, 5_000);
+    }
+
+    @Test
+    void roundsDownAndLeavesRemaindersToTheLastStep() {
+        SplitPlan plan = plan(
+                new SplitPlan.Step(1, CommissionParty.OWNER, 3333, false),
+                new SplitPlan.Step(2, CommissionParty.OPERATOR, 3333, false),
+                new SplitPlan.Step(3, CommissionParty.SUPPLIER, 0, false));
+
+        // 101 * 33.33% = 33.66 -> 33, 68 * 33.33% = 22.66 -> 22
+        assertThat(plan.split(101)).containsExactly(33, 22, 46);
+        assertThat(plan.split(1)).containsExactly(0, 0, 1);
+        assertThat(plan.split(0)).containsExactly(0, 0, 0);
+    }
+
+    @Test
+    void shareByTotalNeverExceedsRemaining() {
+        // 前一级按剩余金额分走80%后，按实付金额的50%只能取到剩余的20%
+        SplitPlan plan = plan(
+                new SplitPlan.Step(1, CommissionParty.OWNER, 8000, false),
+                new SplitPlan.Step(2, CommissionParty.OPERATOR, 5000, true),
+                new SplitPlan.Step(3, CommissionParty.SUPPLIER, 0, false));
+
+        assertThat(plan.split(1_000)).containsExactly(800, 200, 0);
+    }
+
+    @Test
+    void singleStepTakesEverything() {
+        SplitPlan plan = plan(new SplitPlan.Step(1, CommissionParty.OWNER, 1000, true));
+
+        assertThat(plan.split(12_345)).containsExactly(12_345);
+    }
+
+    @Test
+    void sharesAlwaysSumToAmount() {
+        Random random = new Random(11);
+        for (int i = 0; i < 1_000; i++) {
+            List<SplitPlan.Step> steps = new ArrayList<>();
+            int levels = 1 + random.nextInt(12);
+            for (int level = 0; level < levels; level++) {
+                steps.add(new SplitPlan.Step(level, CommissionParty.AGENT, random.nextInt(SplitPlan.RATE_SCALE + 1),
+                        random.nextBoolean()));
+            }
+            SplitPlan plan = new SplitPlan("machine:M" + i, steps);
+            long amount = random.nextInt(1_000_000);
+
+            long[] shares = plan.split(amount);
+            assertThat(Arrays.stream(shares).sum()).isEqualTo(amount);
+            assertThat(Arrays.stream(shares).min().getAsLong()).isNotNegative();
+        }
+    }
+
+    @Test
+    void rejectsNegativeAmountAndOutOfRangeRate() {
+        SplitPlan plan = plan(new SplitPlan.Step(1, CommissionParty.OWNER, 1000, true));
+
+        assertThatThrownBy(() -> plan.split(-1)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new SplitPlan.Step(1, CommissionParty.OWNER, SplitPlan.RATE_SCALE + 1, true))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new SplitPlan("machine:M1", List.of()))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private static SplitPlan plan(SplitPlan.Step... steps) {
+        return new SplitPlan("machine:M1", Arrays.asList(steps));
+    }
+}
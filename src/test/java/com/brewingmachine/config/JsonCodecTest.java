@@ -0,0 +1,58 @@
+package com.brewingmachine.config;
+
+import com.brewingmachine.dto.WeChatUserInfoDTO;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JsonCodecTest {
+
+    // 与Spring MVC相同的ObjectMapper配置（未知字段不报错）
+    private final JsonCodec jsonCodec = new JsonCodec(Jackson2ObjectMapperBuilder.json().build());
+
+    @Test
+    void parsesWeChatUserInfoPayload() {
+        // 微信 sns/userinfo 接口返回示例，sex为数字、privilege为数组
+        String json = "{\"openid\":\"o6_bmjrPTlm6_2sgVt7hMZOPfL2M\",\"nickname\":\"张三\",\"sex\":1,"
+                + "\"language\":\"zh_CN\",\"province\":\"广东\",\"city\":\"广州\",\"country\":\"中国\","
+                + "\"headimgurl\":\"https://thirdwx.qlogo.cn/mmopen/g3MonUZtNHkdmzicIlibx6iaFqAc56vxLSUfpb6n5WKSYVY0ChQKkiaJSgQ1dZuTOgvLLrhJbERQQ4eMsv84eavHiaiceqxibJxCfHe/46\","
+                + "\"privilege\":[\"PRIVILEGE1\",\"PRIVILEGE2\"],\"unionid\":\"o6_bmasdasdsad6_2sgVt7hMZOPfL\"}";
+
+        WeChatUserInfoDTO userInfo = jsonCodec.parse(json, WeChatUserInfoDTO.class);
+
+        assertThat(userInfo.getOpenid()).isEqualTo("o6_bmjrPTlm6_2sgVt7hMZOPfL2M");
+        assertThat(userInfo.getNickname()).isEqualTo("张三");
+        assertThat(userInfo.getSex()).isEqualTo("1");
+        assertThat(userInfo.getCity()).isEqualTo("广州");
+        assertThat(userInfo.getPrivilege()).containsExactly("PRIVILEGE1", "PRIVILEGE2");
+        assertThat(userInfo.getUnionid()).isEqualTo("o6_bmasdasdsad6_2sgVt7hMZOPfL");
+    }
+
+    @Test
+    void parsesUserInfoWithEmptyPrivilege() {
+        String json = "{\"openid\":\"oLVPpjqs9BhvzwPj5A-vTYAX3GLc\",\"nickname\":\"微信用户\",\"sex\":0,"
+                + "\"province\":\"\",\"city\":\"\",\"country\":\"\",\"headimgurl\":\"\",\"privilege\":[]}";
+
+        WeChatUserInfoDTO userInfo = jsonCodec.parse(json, WeChatUserInfoDTO.class);
+
+        assertThat(userInfo.getPrivilege()).isEmpty();
+        assertThat(userInfo.getUnionid()).isNull();
+    }
+
+    @Test
+    void parsesWeChatErrorPayloadAsMap() {
+        Map<String, Object> error = jsonCodec.parseMap("{\"errcode\":40029,\"errmsg\":\"invalid code, rid: 5f1e6c3b-2b4f7a6e\"}");
+
+        assertThat(error.get("errcode")).isEqualTo(40029);
+        assertThat(error.get("errmsg")).asString().startsWith("invalid code");
+    }
+
+    @Test
+    void parseReturnsNullForNullJson() {
+        assertThat(jsonCodec.parse(null, WeChatUserInfoDTO.class)).isNull();
+        assertThat(jsonCodec.parseMap(null)).isNull();
+    }
+}
@@ -0,0 +1,132 @@
+package com.brewingmachine.config;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.util.AntPathMatcher;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 路由判定基准：RoutePolicyRegistry前缀树 与 按模式逐个AntPathMatcher匹配（拦截器排除列表的做法）、
+ * 原过滤器的startsWith/endsWith链对比；每次调用判定一组混合请求URI
+ * 运行：mvn test-compile 后以测试classpath执行本类main方法
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoutePolicyRegistryBenchmark {
+
+    private static final String[] PUBLIC_ROUTES = {
+            "/login/basic", "/login/token", "/login/wx/app",
+            "/wechat/auth/url", "/wechat/callback", "/wechat/logout", "/wechat/mp/auth/url", "/wechat/mp/login",
+            "/wechat/token/refresh", "/wechat/token/validate",
+            "/qr/login/generate", "/qr/login/image/{qrToken}", "/qr/login/status/{qrToken}",
+            "/qr/login/status/{qrToken}/wait"
+    };
+
+    private static final String[] PERMISSION_ROUTES = {
+            "/area/metrics", "/area/region-path/migrate", "/area/reload", "/area/users",
+            "/commission/chain", "/commission/distribute", "/commission/metrics", "/commission/settlement/metrics",
+            "/commission/settlement/run", "/permission/role/{roleId}", "/permission/{id}", "/role/code/{roleCode}",
+            "/role/user/{userId}", "/role/{id}", "/user/account/ledger/metrics", "/user/account/ledger/striping",
+            "/user/downline/rebuild", "/wechat/metrics", "/qr/login/generate/role-bind/batch",
+            "/qr/login/generate/role-bind/warm-up"
+    };
+
+    private static final String[] STATIC_PATTERNS = {
+            "/test/**", "/css/**", "/js/**", "/images/**",
+            "/**/*.html", "/**/*.css", "/**/*.js", "/**/*.png", "/**/*.jpg", "/**/*.jpeg", "/**/*.gif", "/**/*.ico"
+    };
+
+    private static final String[] URIS = {
+            "/user/info", "/user/account/records", "/user/downline", "/commission/preview",
+            "/qr/login/status/0123456789abcdef0123456789abcdef", "/wechat/mp/login", "/login/token",
+            "/role/user/10086", "/permission/42", "/area/search", "/css/app.css", "/images/logo.png",
+            "/qr/login/image/0123456789abcdef0123456789abcdef", "/user/downline/rebuild", "/area/children",
+            "/index.html"
+    };
+
+    private RoutePolicyRegistry registry;
+    private AntPathMatcher pathMatcher;
+    private String[] antPatterns;
+    private RoutePolicy[] antPolicies;
+
+    @Setup
+    public void setUp() {
+        Map<String, RoutePolicy> routes = new LinkedHashMap<>();
+        for (String route : PUBLIC_ROUTES) {
+            routes.put(route, RoutePolicy.PUBLIC);
+        }
+        for (String route : PERMISSION_ROUTES) {
+            routes.put(route, RoutePolicy.PERMISSION_CHECKED);
+        }
+        registry = new RoutePolicyRegistry(null);
+        registry.register(routes);
+
+        pathMatcher = new AntPathMatcher();
+        antPatterns = new String[routes.size() + STATIC_PATTERNS.length];
+        antPolicies = new RoutePolicy[antPatterns.length];
+        int index = 0;
+        for (Map.Entry<String, RoutePolicy> route : routes.entrySet()) {
+            antPatterns[index] = route.getKey();
+            antPolicies[index++] = route.getValue();
+        }
+        for (String pattern : STATIC_PATTERNS) {
+            antPatterns[index] = pattern;
+            antPolicies[index++] = RoutePolicy.PUBLIC;
+        }
+    }
+
+    @Benchmark
+    public void registry(Blackhole blackhole) {
+        for (String uri : URIS) {
+            blackhole.consume(registry.classify(uri));
+        }
+    }
+
+    @Benchmark
+    public void antPathMatcher(Blackhole blackhole) {
+        for (String uri : URIS) {
+            RoutePolicy policy = RoutePolicy.AUTHENTICATED;
+            for (int i = 0; i < antPatterns.length; i++) {
+                if (pathMatcher.match(antPatterns[i], uri)) {
+                    policy = antPolicies[i];
+                    break;
+                }
+            }
+            blackhole.consume(policy);
+        }
+    }
+
+    @Benchmark
+    public void legacyPrefixChain(Blackhole blackhole) {
+        for (String uri : URIS) {
+            boolean skip = uri.startsWith("/login/") || uri.startsWith("/test/") || uri.startsWith("/wechat/")
+                    || uri.startsWith("/css/") || uri.startsWith("/js/") || uri.startsWith("/images/")
+                    || uri.endsWith(".html") || uri.endsWith(".css") || uri.endsWith(".js")
+                    || uri.endsWith(".png") || uri.endsWith(".jpg") || uri.endsWith(".jpeg")
+                    || uri.endsWith(".gif") || uri.endsWith(".ico");
+            blackhole.consume(skip);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(RoutePolicyRegistryBenchmark.class.getSimpleName()).build()).run();
+    }
+}
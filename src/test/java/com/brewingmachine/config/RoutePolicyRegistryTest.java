@@ -0,0 +1,43 @@
+package com.brewingmachine.config;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RoutePolicyRegistryTest {
+
+    private final RoutePolicyRegistry registry = new RoutePolicyRegistry(null);
+
+    @BeforeEach
+    void setUp() {
+        registry.register(Map.of(
+                "/commission/distribute", RoutePolicy.PERMISSION_CHECKED,
+                "/qr/login/generate", RoutePolicy.PUBLIC));
+    }
+
+    @Test
+    void classifiesPercentEncodedPathByDecodedLookupPath() {
+        assertThat(registry.classify(request("/c%6Fmmission/distribute", "/commission/distribute")))
+                .isEqualTo(RoutePolicy.PERMISSION_CHECKED);
+        assertThat(registry.classify(request("/w%65chat/metrics", "/wechat/metrics")))
+                .isEqualTo(RoutePolicy.AUTHENTICATED);
+    }
+
+    @Test
+    void encodedDotSegmentsDoNotReachPublicRules() {
+        // 容器把/css/%2e%2e/commission/distribute规范化为/commission/distribute
+        assertThat(registry.classify(request("/css/%2e%2e/commission/distribute", "/commission/distribute")))
+                .isEqualTo(RoutePolicy.PERMISSION_CHECKED);
+        assertThat(registry.classify(request("/css/app.css", "/css/app.css"))).isEqualTo(RoutePolicy.PUBLIC);
+    }
+
+    private static MockHttpServletRequest request(String requestUri, String servletPath) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", requestUri);
+        request.setServletPath(servletPath);
+        return request;
+    }
+}
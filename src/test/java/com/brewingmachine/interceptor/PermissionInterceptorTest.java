@@ -0,0 +1,57 @@
+package com.brewingmachine.interceptor;
+
+import com.brewingmachine.annotation.RequiresRole;
+import com.brewingmachine.config.JsonCodec;
+import com.brewingmachine.mapper.PermissionMapper;
+import com.brewingmachine.mapper.RoleMapper;
+import com.brewingmachine.mapper.UserMapper;
+import com.brewingmachine.service.AuthorizationService;
+import com.brewingmachine.service.TokenService;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.method.HandlerMethod;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class PermissionInterceptorTest {
+
+    private final PermissionInterceptor interceptor = new PermissionInterceptor(mock(TokenService.class),
+            new AuthorizationService(mock(UserMapper.class), mock(RoleMapper.class), mock(PermissionMapper.class)),
+            new JsonCodec(Jackson2ObjectMapperBuilder.json().build()));
+
+    @Test
+    void checksAdminHandlerReachedThroughPercentEncodedPath() throws Exception {
+        // 容器解码后分派到/commission/distribute的处理方法，原始URI与登记的路径不同
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/c%6Fmmission/distribute");
+        request.setServletPath("/commission/distribute");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        assertThat(interceptor.preHandle(request, response, handler("distribute"))).isFalse();
+        assertThat(response.getStatus()).isEqualTo(401);
+    }
+
+    @Test
+    void passesHandlerWithoutRequirement() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/commission/plan");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        assertThat(interceptor.preHandle(request, response, handler("open"))).isTrue();
+    }
+
+    private static HandlerMethod handler(String name) throws NoSuchMethodException {
+        return new HandlerMethod(new SampleController(), SampleController.class.getMethod(name));
+    }
+
+    static class SampleController {
+
+        @RequiresRole("admin")
+        public void distribute() {
+        }
+
+        public void open() {
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.brewingmachine.service;
+
+import com.brewingmachine.ledger.AccountType;
+import com.brewingmachine.ledger.Posting;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 记账吞吐基准：32个线程各自同步记账（付款方随机取自64个用户，收款方为同一个商户），
+ * 内存账户表每次提交模拟1ms数据库耗时；batchSize=1相当于每笔单独一个事务，
+ * retry为用已入账的ID重新提交（超时重试）的开销
+ * 运行：mvn test-compile 后以测试classpath执行本类main方法
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(32)
+@Fork(1)
+public class AccountLedgerBenchmark {
+
+    private static final int PAYERS = 64;
+    private static final long MERCHANT = 10_000L;
+    private static final int POSTED = 1_024;
+
+    @Param({"1", "500"})
+    private int batchSize;
+
+    private InMemoryUserAccountMapper mapper;
+    private AccountLedgerService ledger;
+    private final AtomicLong sequence = new AtomicLong();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        mapper = new InMemoryUserAccountMapper();
+        for (long userId = 1; userId <= PAYERS; userId++) {
+            mapper.addUser(userId, Long.MAX_VALUE / 4);
+        }
+        mapper.addUser(MERCHANT, 0);
+        HotAccountRegistry hotAccountRegistry = new HotAccountRegistry();
+        ledger = new AccountLedgerService(mapper, mapper.transactionTemplate(), new UserInfoCache(null, null),
+                hotAccountRegistry);
+        ReflectionTestUtils.setField(ledger, "batchSize", batchSize);
+        ReflectionTestUtils.setField(ledger, "queueCapacity", 100_000);
+        ReflectionTestUtils.setField(ledger, "timeoutMillis", 30_000L);
+        ReflectionTestUtils.setField(ledger, "stripeSlots", 8);
+        ledger.init();
+        for (int i = 0; i < POSTED; i++) {
+            ledger.post(payment("posted:" + i));
+        }
+        mapper.commitNanos = TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        ledger.shutdown();
+    }
+
+    @Benchmark
+    public long[] post() {
+        return ledger.post(payment("pay:" + sequence.incrementAndGet()));
+    }
+
+    @Benchmark
+    public long[] retry() {
+        return ledger.post(payment("posted:" + ThreadLocalRandom.current().nextInt(POSTED)));
+    }
+
+    private static Posting payment(String postingId) {
+        long payer = 1 + ThreadLocalRandom.current().nextInt(PAYERS);
+        return new Posting(postingId, "consume", null, null)
+                .add(payer, AccountType.BALANCE, -100)
+                .add(MERCHANT, AccountType.BALANCE, 100);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(AccountLedgerBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,234 @@
+package com.brewingmachine.service;
+
+import com.brewingmachine.dto.response.UserInfoResponse;
+import com.brewingmachine.entity.UserAccountRecord;
+import com.brewingmachine.ledger.AccountType;
+import com.brewingmachine.ledger.Posting;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AccountLedgerServiceTest {
+
+    private static final long PAYER = 1L;
+    private static final long PAYEE = 2L;
+
+    private final InMemoryUserAccountMapper mapper = new InMemoryUserAccountMapper();
+
+    private final UserInfoCache userInfoCache = new UserInfoCache(null, null);
+
+    private AccountLedgerService ledger;
+
+    @BeforeEach
+    void setUp() {
+        mapper.addUser(PAYER, 10_000);
+        mapper.addUser(PAYEE, 0);
+        ReflectionTestUtils.setField(userInfoCache, "maxSize", 100);
+        ReflectionTestUtils.setField(userInfoCache, "localTtlSeconds", 60L);
+        ledger = newLedger(new HotAccountRegistry());
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        mapper.beforeLock = null;
+        ledger.shutdown();
+    }
+
+    @Test
+    void samePostingIdIsPostedOnce() {
+        long[] first = ledger.post(transfer("order:1", 300));
+        long[] retried = ledger.post(transfer("order:1", 300));
+
+        assertThat(retried).containsExactly(first);
+        assertThat(first).containsExactly(9_700, 300);
+        assertThat(mapper.selectAccount(PAYER).getBalance()).isEqualTo(9_700);
+        assertThat(mapper.selectAccount(PAYEE).getBalance()).isEqualTo(300);
+        assertThat(mapper.records()).hasSize(2);
+        assertThat(ledger.getMetrics().get("replayed")).isEqualTo(1L);
+    }
+
+    @Test
+    void postingEvictsCachedUserInfoOfTouchedAccounts() {
+        assertThat(cachedBalance(PAYER)).isEqualTo(10_000);
+        assertThat(cachedBalance(PAYEE)).isEqualTo(0);
+
+        ledger.post(transfer("order:1", 300));
+
+        assertThat(cachedBalance(PAYER)).isEqualTo(9_700);
+        assertThat(cachedBalance(PAYEE)).isEqualTo(300);
+    }
+
+    @Test
+    void duplicatesInOneBatchArePostedOnce() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        mapper.beforeLock = userIds -> {
+            if (blocked.getCount() > 0) {
+                blocked.countDown();
+                await(release);
+            }
+        };
+        // 第一批停在加锁前，其后提交的三条进入同一批
+        CompletableFuture<long[]> first = ledger.submit(transfer("order:1", 100));
+        assertThat(blocked.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<long[]> second = ledger.submit(transfer("order:2", 200));
+        CompletableFuture<long[]> retried = ledger.submit(transfer("order:2", 200));
+        CompletableFuture<long[]> retriedAgain = ledger.submit(transfer("order:2", 200));
+        release.countDown();
+
+        assertThat(first.get(5, TimeUnit.SECONDS)).containsExactly(9_900, 100);
+        assertThat(second.get(5, TimeUnit.SECONDS)).containsExactly(9_700, 300);
+        assertThat(retried.get(5, TimeUnit.SECONDS)).containsExactly(9_700, 300);
+        assertThat(retriedAgain.get(5, TimeUnit.SECONDS)).containsExactly(9_700, 300);
+        assertThat(mapper.records()).extracting(UserAccountRecord::getPostingId)
+                .containsExactly("order:1", "order:1", "order:2", "order:2");
+    }
+
+    @Test
+    void postingCommittedByAnotherNodeReturnsStoredBalances() {
+        // 另一个节点用同一ID入账后，本节点的重试只返回已入账的余额
+        AccountLedgerService otherNode = newLedger(new HotAccountRegistry());
+        try {
+            long[] posted = otherNode.post(transfer("order:1", 500));
+            assertThat(ledger.post(transfer("order:1", 500))).containsExactly(posted);
+        } finally {
+            shutdown(otherNode);
+        }
+        assertThat(mapper.selectAccount(PAYER).getBalance()).isEqualTo(9_500);
+        assertThat(mapper.records()).hasSize(2);
+    }
+
+    @Test
+    void rejectsInsufficientBalanceWithoutWritingRecords() {
+        assertThatThrownBy(() -> ledger.post(transfer("order:1", 20_000)))
+                .hasMessage(AccountType.BALANCE.getDescription() + "不足");
+
+        assertThat(mapper.selectAccount(PAYER).getBalance()).isEqualTo(10_000);
+        assertThat(mapper.records()).isEmpty();
+        // 被拒绝的ID没有入账，余额充足后可以用同一ID重新提交
+        assertThat(ledger.post(transfer("order:1", 1_000))).containsExactly(9_000, 1_000);
+    }
+
+    @Test
+    void completesFuturesWhenStepsAfterCommitFail() {
+        shutdown(ledger);
+        ledger = newLedger(new HotAccountRegistry() {
+            @Override
+            public void record(Collection<Long> legUserIds, Collection<Long> waitedUserIds,
+                               Collection<Long> suspectUserIds) {
+                throw new IllegalStateException("统计失败");
+            }
+        });
+
+        assertThat(ledger.post(transfer("order:1", 100))).containsExactly(9_900, 100);
+        assertThat(ledger.post(transfer("order:1", 100))).containsExactly(9_900, 100);
+    }
+
+    @Test
+    void queuedRequestsAreCommittedOnShutdownAndLaterOnesRejected() throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        mapper.beforeLock = userIds -> {
+            if (blocked.getCount() > 0) {
+                blocked.countDown();
+                await(release);
+            }
+        };
+        CompletableFuture<long[]> inFlight = ledger.submit(transfer("order:1", 100));
+        assertThat(blocked.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<long[]> queued = ledger.submit(transfer("order:2", 100));
+
+        Thread stopping = new Thread(() -> shutdown(ledger));
+        stopping.start();
+        release.countDown();
+        stopping.join(10_000);
+
+        assertThat(inFlight.get(5, TimeUnit.SECONDS)).hasSize(2);
+        assertThat(queued.get(5, TimeUnit.SECONDS)).hasSize(2);
+        assertThatThrownBy(() -> ledger.submit(transfer("order:3", 100))).hasMessage("记账服务已停止");
+        assertThat(mapper.selectAccount(PAYEE).getBalance()).isEqualTo(200);
+    }
+
+    @Test
+    void lockWaitIsAttributedOnlyToTheRowWaitedOn() {
+        HotAccountRegistry registry = new HotAccountRegistry();
+        ReflectionTestUtils.setField(registry, "enabled", true);
+        ReflectionTestUtils.setField(registry, "autoDetect", true);
+        ReflectionTestUtils.setField(registry, "hotUserIds", "");
+        ReflectionTestUtils.setField(registry, "postingThreshold", 1_000);
+        ReflectionTestUtils.setField(registry, "lockWaitMillis", 20L);
+        ReflectionTestUtils.setField(registry, "contentionThreshold", 1);
+        ReflectionTestUtils.setField(registry, "hotTtlMillis", 60_000L);
+        ReflectionTestUtils.setField(registry, "maxTracked", 1_000);
+        registry.init();
+        shutdown(ledger);
+        ledger = newLedger(registry);
+        // 只有收款方的行被其他事务持有
+        mapper.beforeLock = userIds -> {
+            if (userIds.contains(PAYEE)) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(40));
+            }
+        };
+
+        // 第一笔两行一起锁定，只能记为嫌疑；第二笔逐行计时
+        ledger.post(transfer("order:1", 100));
+        assertThat(registry.isSuspect(PAYER)).isTrue();
+        assertThat(registry.isSuspect(PAYEE)).isTrue();
+        ledger.post(transfer("order:2", 100));
+        registry.rollWindow();
+
+        assertThat(registry.isHot(PAYEE)).isTrue();
+        assertThat(registry.isHot(PAYER)).isFalse();
+    }
+
+    private AccountLedgerService newLedger(HotAccountRegistry hotAccountRegistry) {
+        AccountLedgerService service = new AccountLedgerService(mapper, mapper.transactionTemplate(),
+                userInfoCache, hotAccountRegistry);
+        ReflectionTestUtils.setField(service, "batchSize", 500);
+        ReflectionTestUtils.setField(service, "queueCapacity", 1_000);
+        ReflectionTestUtils.setField(service, "timeoutMillis", 5_000L);
+        ReflectionTestUtils.setField(service, "stripeSlots", 8);
+        service.init();
+        return service;
+    }
+
+    private double cachedBalance(long userId) {
+        return userInfoCache.get(userId, id -> {
+            UserInfoResponse response = new UserInfoResponse();
+            response.setBalance((double) mapper.selectAccount(id).getBalance());
+            return response;
+        }).getBalance();
+    }
+
+    private static Posting transfer(String postingId, long amount) {
+        return new Posting(postingId, "transfer", null, null)
+                .add(PAYER, AccountType.BALANCE, -amount)
+                .add(PAYEE, AccountType.BALANCE, amount);
+    }
+
+    private static void shutdown(AccountLedgerService service) {
+        try {
+            service.shutdown();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
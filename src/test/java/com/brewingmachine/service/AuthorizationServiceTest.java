@@ -0,0 +1,115 @@
+package com.brewingmachine.service;
+
+import com.brewingmachine.entity.AuthorizationSnapshot;
+import com.brewingmachine.entity.Role;
+import com.brewingmachine.mapper.PermissionMapper;
+import com.brewingmachine.mapper.RoleMapper;
+import com.brewingmachine.mapper.UserMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AuthorizationServiceTest {
+
+    private static final long USER_ID = 5L;
+
+    private final UserMapper userMapper = mock(UserMapper.class);
+    private final RoleMapper roleMapper = mock(RoleMapper.class);
+    private final PermissionMapper permissionMapper = mock(PermissionMapper.class);
+
+    /** 当前的角色定义，测试中替换来模拟角色变更 */
+    private final AtomicReference<List<Role>> roles = new AtomicReference<>();
+
+    /** 用户当前的授权快照 */
+    private final AtomicReference<AuthorizationSnapshot> grant = new AtomicReference<>();
+
+    private AuthorizationService service;
+
+    @BeforeEach
+    void setUp() {
+        roles.set(List.of(role(1L, "admin")));
+        when(roleMapper.selectAll()).thenAnswer(invocation -> new ArrayList<>(roles.get()));
+        when(permissionMapper.selectByRoleId(anyLong())).thenReturn(List.of());
+        when(userMapper.selectAuthorizationSnapshot(USER_ID)).thenAnswer(invocation -> grant.get());
+        service = new AuthorizationService(userMapper, roleMapper, permissionMapper);
+        ReflectionTestUtils.setField(service, "maxCachedUsers", 100);
+    }
+
+    @Test
+    void cachesGrantUntilUserIsInvalidated() {
+        grantRoles(role(1L, "admin"));
+        assertThat(service.hasRole(USER_ID, "admin")).isTrue();
+        assertThat(service.hasRole(USER_ID, "admin")).isTrue();
+        verify(userMapper, times(1)).selectAuthorizationSnapshot(USER_ID);
+
+        grantRoles();
+        service.invalidateUser(USER_ID);
+
+        assertThat(service.hasRole(USER_ID, "admin")).isFalse();
+    }
+
+    @Test
+    void indexLoadedAcrossAnInvalidationIsNotPublished() {
+        Role staff = role(2L, "staff");
+        grantRoles(staff);
+        // 加载索引读到变更前的角色后，新增角色并失效
+        when(roleMapper.selectAll()).thenAnswer(invocation -> {
+            List<Role> before = new ArrayList<>(roles.get());
+            roles.set(List.of(role(1L, "admin"), staff));
+            service.invalidateAll();
+            return before;
+        }).thenAnswer(invocation -> new ArrayList<>(roles.get()));
+
+        assertThat(service.hasRole(USER_ID, "staff")).isFalse();
+        assertThat(ReflectionTestUtils.getField(service, "index")).isNull();
+
+        // 下次判定重新加载，看到新角色
+        assertThat(service.hasRole(USER_ID, "staff")).isTrue();
+        assertThat(ReflectionTestUtils.getField(service, "index")).isNotNull();
+    }
+
+    @Test
+    void grantLoadedAcrossAnInvalidationIsNotCached() {
+        grantRoles(role(1L, "admin"));
+        // 读到授权快照后、写入缓存前，该用户的角色被收回
+        when(userMapper.selectAuthorizationSnapshot(USER_ID)).thenAnswer(invocation -> {
+            AuthorizationSnapshot before = grant.get();
+            grantRoles();
+            service.invalidateUser(USER_ID);
+            return before;
+        }).thenAnswer(invocation -> grant.get());
+
+        assertThat(service.hasRole(USER_ID, "admin")).isTrue();
+        assertThat(service.hasRole(USER_ID, "admin")).isFalse();
+    }
+
+    private void grantRoles(Role... granted) {
+        grant.set(snapshot(granted));
+    }
+
+    private static AuthorizationSnapshot snapshot(Role... granted) {
+        AuthorizationSnapshot snapshot = new AuthorizationSnapshot();
+        snapshot.setUserId(USER_ID);
+        snapshot.setUserStatus(1);
+        snapshot.setRoles(new ArrayList<>(List.of(granted)));
+        return snapshot;
+    }
+
+    private static Role role(long id, String code) {
+        Role role = new Role();
+        role.setId(id);
+        role.setRoleCode(code);
+        return role;
+    }
+}
@@ -0,0 +1,143 @@
+package com.brewingmachine.service;
+
+import com.brewingmachine.commission.CommissionOrder;
+import com.brewingmachine.commission.CommissionSplit;
+import com.brewingmachine.commission.SplitPlan;
+import com.brewingmachine.entity.CommissionChainItem;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static com.brewingmachine.service.InMemoryCommissionChainMapper.item;
+
+/**
+ * 分成基准：10级分成链（机主、业务员、7级代理链、运营方）
+ * split为单笔订单按编译后的计划分账；splitAll为一批订单经计划缓存分账（1000个设备，orders条订单，达到阈值时并行）；
+ * compile为保存一个范围的分成链（校验时编译一次）后重新取计划（缓存已失效，再编译一次），内存分成链配置，不含数据库耗时
+ * 运行：mvn test-compile 后以测试classpath执行本类main方法
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CommissionEngineBenchmark {
+
+    private static final int MACHINES = 1_000;
+    private static final int AGENT_LEVELS = 7;
+    private static final long OPERATOR = 1L;
+
+    @Param({"1000", "50000"})
+    private int orders;
+
+    private CommissionEngine engine;
+    private SplitPlan plan;
+    private List<CommissionOrder> batch;
+    private long[] amounts;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        InMemoryCommissionChainMapper chains = new InMemoryCommissionChainMapper();
+        chains.addUser(OPERATOR, "operator", null, null);
+        engine = new CommissionEngine(chains, null);
+        ReflectionTestUtils.setField(engine, "planCacheSize", 10_000);
+        ReflectionTestUtils.setField(engine, "planTtlMillis", 3_600_000L);
+        ReflectionTestUtils.setField(engine, "planNegativeTtlMillis", 30_000L);
+        ReflectionTestUtils.setField(engine, "parallelism", 4);
+        ReflectionTestUtils.setField(engine, "parallelThreshold", 2_000);
+        ReflectionTestUtils.setField(engine, "maxBatch", 50_000);
+        ReflectionTestUtils.setField(engine, "maxChainLength", 32);
+        engine.init();
+
+        long userId = 100;
+        for (int m = 0; m < MACHINES; m++) {
+            long owner = userId++;
+            long salesperson = userId++;
+            chains.addUser(owner, "owner", null, null);
+            chains.addUser(salesperson, "salesperson", null, null);
+            long parent = -1;
+            for (int level = 0; level < AGENT_LEVELS; level++) {
+                long agent = userId++;
+                chains.addUser(agent, "agent", level == 0 ? "PROVINCE" : null, String.valueOf(1 + level));
+                if (parent > 0) {
+                    chains.setParent(agent, parent);
+                }
+                parent = agent;
+            }
+            List<CommissionChainItem> items = new ArrayList<>();
+            items.add(item("owner", owner, "30", "total"));
+            items.add(item("salesperson", salesperson, "5", "total"));
+            items.add(item("agent_chain", parent, null, "remaining"));
+            items.add(item("operator", OPERATOR, null, null));
+            engine.saveChain(CommissionEngine.SCOPE_MACHINE, "M" + m, items);
+        }
+        plan = engine.getPlan(CommissionEngine.SCOPE_MACHINE, "M0");
+        if (plan.size() != 10) {
+            throw new IllegalStateException("分成链级数: " + plan.size());
+        }
+
+        Random random = new Random(42);
+        batch = new ArrayList<>(orders);
+        for (int i = 0; i < orders; i++) {
+            batch.add(new CommissionOrder("O" + i, CommissionEngine.SCOPE_MACHINE, "M" + random.nextInt(MACHINES),
+                    100 + random.nextInt(100_000)));
+        }
+        amounts = new long[4096];
+        for (int i = 0; i < amounts.length; i++) {
+            amounts[i] = 100 + random.nextInt(100_000);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        engine.shutdown();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public long[] split() {
+        return plan.split(amounts[next++ & 4095]);
+    }
+
+    @Benchmark
+    public List<CommissionSplit> splitAll() {
+        return engine.splitAll(batch);
+    }
+
+    @Benchmark
+    public SplitPlan compile() {
+        // 重新保存同一分成链使缓存失效，再取计划时重新编译
+        int machine = next++ % MACHINES;
+        SplitPlan current = engine.getPlan(CommissionEngine.SCOPE_MACHINE, "M" + machine);
+        List<CommissionChainItem> items = new ArrayList<>(4);
+        items.add(item("owner", current.getUserId(0), "30", "total"));
+        items.add(item("salesperson", current.getUserId(1), "5", "total"));
+        items.add(item("agent_chain", current.getUserId(8), null, "remaining"));
+        items.add(item("operator", OPERATOR, null, null));
+        engine.saveChain(CommissionEngine.SCOPE_MACHINE, "M" + machine, items);
+        return engine.getPlan(CommissionEngine.SCOPE_MACHINE, "M" + machine);
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(CommissionEngineBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,172 @@
+package com.brewingmachine.service;
+
+import com.brewingmachine.commission.CommissionOrder;
+import com.brewingmachine.commission.SplitPlan;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static com.brewingmachine.service.InMemoryCommissionChainMapper.item;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CommissionEngineTest {
+
+    private static final long CLEARING = 100L;
+    private static final long OWNER = 1L;
+    private static final long OPERATOR = 2L;
+
+    private final InMemoryUserAccountMapper accounts = new InMemoryUserAccountMapper();
+    private final InMemoryCommissionChainMapper chains = new InMemoryCommissionChainMapper();
+
+    private AccountLedgerService ledger;
+    private CommissionEngine engine;
+
+    @BeforeEach
+    void setUp() {
+        accounts.addUser(CLEARING, 1_000_000);
+        accounts.addUser(OWNER, 0);
+        accounts.addUser(OPERATOR, 0);
+        chains.addUser(OWNER, "owner", null, null);
+        chains.addUser(OPERATOR, "operator", null, null);
+
+        ledger = new AccountLedgerService(accounts, accounts.transactionTemplate(), new UserInfoCache(null, null),
+                new HotAccountRegistry());
+        ReflectionTestUtils.setField(ledger, "batchSize", 500);
+        ReflectionTestUtils.setField(ledger, "queueCapacity", 1_000);
+        ReflectionTestUtils.setField(ledger, "timeoutMillis", 5_000L);
+        ReflectionTestUtils.setField(ledger, "stripeSlots", 8);
+        ledger.init();
+
+        engine = new CommissionEngine(chains, ledger);
+        ReflectionTestUtils.setField(engine, "planCacheSize", 2);
+        ReflectionTestUtils.setField(engine, "planTtlMillis", 60_000L);
+        ReflectionTestUtils.setField(engine, "planNegativeTtlMillis", 60_000L);
+        ReflectionTestUtils.setField(engine, "clearingUserId", CLEARING);
+        ReflectionTestUtils.setField(engine, "parallelism", 2);
+        ReflectionTestUtils.setField(engine, "parallelThreshold", 2_000);
+        ReflectionTestUtils.setField(engine, "maxBatch", 50_000);
+        ReflectionTestUtils.setField(engine, "maxChainLength", 32);
+        ReflectionTestUtils.setField(engine, "postChunkSize", 500);
+        engine.init();
+
+        // 机主按剩余金额30%，运营方取剩余
+        engine.saveChain(CommissionEngine.SCOPE_MACHINE, "M1", List.of(
+                item("owner", OWNER, "30", null),
+                item("operator", OPERATOR, null, null)));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        engine.shutdown();
+        ledger.shutdown();
+    }
+
+    @Test
+    void distributeDebitsClearingAccountAndCreditsPayees() {
+        Map<String, Object> result = engine.distribute(List.of(order("O1", 10_000), order("O2", 5_000)));
+
+        assertThat(result.get("distributed")).isEqualTo(2);
+        assertThat(result.get("failed")).isEqualTo(0);
+        assertThat(accounts.selectAccount(CLEARING).getBalance()).isEqualTo(1_000_000 - 15_000);
+        assertThat(accounts.selectAccount(OWNER).getBalance()).isEqualTo(3_000 + 1_500);
+        assertThat(accounts.selectAccount(OWNER).getTotalCommission()).isEqualTo(3_000 + 1_500);
+        assertThat(accounts.selectAccount(OPERATOR).getBalance()).isEqualTo(7_000 + 3_500);
+    }
+
+    @Test
+    void distributeIsIdempotentPerOrderId() {
+        Map<String, Object> first = engine.distribute(List.of(order("O1", 10_000), order("O1", 10_000)));
+        Map<String, Object> retried = engine.distribute(List.of(order("O1", 10_000)));
+
+        assertThat(first.get("distributed")).isEqualTo(1);
+        assertThat(first.get("duplicated")).isEqualTo(1);
+        assertThat(retried.get("distributed")).isEqualTo(1);
+        assertThat(accounts.selectAccount(CLEARING).getBalance()).isEqualTo(1_000_000 - 10_000);
+        assertThat(accounts.selectAccount(OWNER).getBalance()).isEqualTo(3_000);
+        assertThat(accounts.records()).hasSize(5);
+    }
+
+    @Test
+    void clearingAccountMayOverdraw() {
+        // 清算账户不必预先充值，余额为负表示累计分出的金额
+        Map<String, Object> result = engine.distribute(List.of(order("O1", 2_000_000)));
+
+        assertThat(result.get("distributed")).isEqualTo(1);
+        assertThat(result.get("failed")).isEqualTo(0);
+        assertThat(accounts.selectAccount(CLEARING).getBalance()).isEqualTo(1_000_000 - 2_000_000);
+        assertThat(accounts.selectAccount(OWNER).getBalance()).isEqualTo(600_000);
+    }
+
+    @Test
+    void distributesBatchLargerThanLedgerQueue() {
+        // 记账队列容量1000，分块提交时3000笔全部入账
+        List<CommissionOrder> orders = new ArrayList<>();
+        for (int i = 0; i < 3_000; i++) {
+            orders.add(order("B" + i, 100));
+        }
+
+        Map<String, Object> result = engine.distribute(orders);
+
+        assertThat(result.get("distributed")).isEqualTo(3_000);
+        assertThat(result.get("failed")).isEqualTo(0);
+        assertThat(accounts.selectAccount(OWNER).getBalance()).isEqualTo(3_000 * 30);
+    }
+
+    @Test
+    void cachesUnconfiguredScopes() {
+        int reads = chains.chainReads.get();
+        for (int i = 0; i < 3; i++) {
+            assertThatThrownBy(() -> engine.getPlan(CommissionEngine.SCOPE_MACHINE, "NONE"))
+                    .hasMessage("未配置分成链: machine:NONE");
+        }
+        assertThat(chains.chainReads.get()).isEqualTo(reads + 1);
+
+        // 配置后立即生效
+        engine.saveChain(CommissionEngine.SCOPE_MACHINE, "NONE", List.of(item("owner", OWNER, null, null)));
+        assertThat(engine.getPlan(CommissionEngine.SCOPE_MACHINE, "NONE").getUserIds()).containsExactly(OWNER);
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedPlan() {
+        engine.saveChain(CommissionEngine.SCOPE_MACHINE, "M2", List.of(item("owner", OWNER, null, null)));
+        engine.saveChain(CommissionEngine.SCOPE_MACHINE, "M3", List.of(item("operator", OPERATOR, null, null)));
+        SplitPlan m1 = engine.getPlan(CommissionEngine.SCOPE_MACHINE, "M1");
+        engine.getPlan(CommissionEngine.SCOPE_MACHINE, "M2");
+        engine.getPlan(CommissionEngine.SCOPE_MACHINE, "M1");
+        // 缓存上限2，M3进入时淘汰最久未用的M2，M1仍然命中
+        engine.getPlan(CommissionEngine.SCOPE_MACHINE, "M3");
+        int reads = chains.chainReads.get();
+
+        assertThat(engine.getPlan(CommissionEngine.SCOPE_MACHINE, "M1")).isSameAs(m1);
+        assertThat(chains.chainReads.get()).isEqualTo(reads);
+        engine.getPlan(CommissionEngine.SCOPE_MACHINE, "M2");
+        assertThat(chains.chainReads.get()).isEqualTo(reads + 1);
+    }
+
+    @Test
+    void expandsAgentChainFromTheTopAgent() {
+        chains.addUser(10, "agent", "PROVINCE", "5");
+        chains.addUser(11, "agent", "CITY", "4");
+        chains.addUser(12, "user", null, null);
+        chains.addUser(13, "agent", "DISTRICT", "3");
+        chains.setParent(13, 12);
+        chains.setParent(12, 11);
+        chains.setParent(11, 10);
+        engine.saveChain(CommissionEngine.SCOPE_STORE, "S1", List.of(
+                item("agent_chain", 13, null, "total"),
+                item("operator", OPERATOR, null, null)));
+
+        // 非代理商的上级12不参与分成
+        assertThat(engine.getPlan(CommissionEngine.SCOPE_STORE, "S1").getUserIds()).containsExactly(10, 11, 13, OPERATOR);
+    }
+
+    private static CommissionOrder order(String orderId, long amount) {
+        return new CommissionOrder(orderId, CommissionEngine.SCOPE_MACHINE, "M1", amount);
+    }
+}
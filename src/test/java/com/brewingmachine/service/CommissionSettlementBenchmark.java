@@ -0,0 +1,127 @@
+package com.brewingmachine.service;
+
+import com.brewingmachine.ledger.AccountType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分成日结基准：一天100万笔订单，每笔订单由出款账户付给机主、机主的两级上级和运营方（约400万条读取的流水），
+ * 10万用户的推荐树，相邻两笔订单的流水ID交错。settle为强制重新结算整天（清除日结果后分段读取、
+ * 按收款用户分区并行累加、写入并汇总月年），内存流水和结算表，不含数据库耗时
+ * 运行：mvn test-compile 后以测试classpath执行本类main方法
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = "-Xmx2g")
+public class CommissionSettlementBenchmark {
+
+    private static final LocalDate DATE = LocalDate.of(2026, 10, 1);
+    private static final int ORDERS = 1_000_000;
+    private static final int USERS = 100_000;
+    private static final long CLEARING = USERS + 1;
+    private static final long OPERATOR = 1L;
+
+    @Param({"200000"})
+    private int segmentRows;
+
+    private InMemoryCommissionSettlementMapper mapper;
+    private CommissionSettlementJob job;
+
+    @Setup
+    public void setUp() {
+        mapper = new InMemoryCommissionSettlementMapper();
+        Random random = new Random(42);
+        long[] parents = new long[USERS + 1];
+        for (int userId = 2; userId <= USERS; userId++) {
+            parents[userId] = 1 + random.nextInt(userId - 1);
+            mapper.setParent(userId, parents[userId]);
+        }
+
+        // 只生成日结读取的流水（出款分录和累计分成），两笔订单的分录交替写入
+        LocalDateTime createTime = DATE.atTime(12, 0);
+        long id = 0;
+        long[][] shares = new long[2][];
+        long[][] payees = new long[2][];
+        for (int i = 0; i < ORDERS; i += 2) {
+            for (int k = 0; k < 2; k++) {
+                long owner = 1 + random.nextInt(USERS);
+                payees[k] = new long[]{owner, parents[(int) owner], parents[(int) parents[(int) owner]], OPERATOR};
+                shares[k] = new long[]{1_000 + random.nextInt(5_000), 200, 100, 500};
+            }
+            for (int k = 0; k < 2; k++) {
+                long amount = 0;
+                for (int p = 0; p < payees[k].length; p++) {
+                    amount += payees[k][p] > 0 ? shares[k][p] : 0;
+                }
+                mapper.addRecord(++id, CLEARING, AccountType.BALANCE, "O" + (i + k), -amount, 0, createTime);
+            }
+            for (int p = 0; p < 4; p++) {
+                for (int k = 0; k < 2; k++) {
+                    if (payees[k][p] > 0) {
+                        mapper.addRecord(++id, payees[k][p], AccountType.TOTAL_COMMISSION, "O" + (i + k),
+                                shares[k][p], 2 + 2 * p, createTime);
+                    }
+                }
+            }
+        }
+
+        job = new CommissionSettlementJob(mapper, new JobLeaseService(null) {
+            @Override
+            public boolean tryAcquire(String leaseName, long leaseSeconds) {
+                return true;
+            }
+
+            @Override
+            public void release(String leaseName) {
+            }
+        }, null, mapper);
+        ReflectionTestUtils.setField(job, "segmentRows", segmentRows);
+        ReflectionTestUtils.setField(job, "upsertBatchSize", 1_000);
+        ReflectionTestUtils.setField(job, "parallelism", 0);
+        ReflectionTestUtils.setField(job, "slackMinutes", 10L);
+        ReflectionTestUtils.setField(job, "maxDepth", 64);
+        ReflectionTestUtils.setField(job, "leaseSeconds", 600L);
+        job.init();
+    }
+
+    @TearDown
+    public void tearDown() {
+        job.shutdown();
+    }
+
+    @Benchmark
+    public Map<String, Object> settle() {
+        job.settle(DATE, true);
+        Map<String, Object> metrics = job.getMetrics();
+        if (!Long.valueOf(ORDERS).equals(metrics.get("orders"))) {
+            throw new IllegalStateException("日结订单数: " + metrics.get("orders") + ", 错误: " + metrics.get("lastError"));
+        }
+        return metrics;
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(CommissionSettlementBenchmark.class.getSimpleName()).build()).run();
+    }
+}
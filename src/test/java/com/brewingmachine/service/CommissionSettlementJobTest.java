@@ -0,0 +1,259 @@
+package com.brewingmachine.service;
+
+import com.brewingmachine.entity.CommissionSettlement;
+import com.brewingmachine.entity.CommissionSettlementRun;
+import com.brewingmachine.ledger.AccountType;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CommissionSettlementJobTest {
+
+    private static final LocalDate DATE = LocalDate.of(2026, 10, 1);
+    private static final long CLEARING = 1_000L;
+    private static final int USERS = 120;
+
+    private final InMemoryCommissionSettlementMapper mapper = new InMemoryCommissionSettlementMapper();
+
+    /** 用户ID -> 分成订单数、营业额、本人分成、团队分成 */
+    private final Map<Long, long[]> expected = new HashMap<>();
+    private int expectedOrders;
+
+    private CommissionSettlementJob job;
+
+    @BeforeEach
+    void setUp() {
+        // 二叉推荐树：用户u的上级为u/2
+        for (long userId = 2; userId <= USERS; userId++) {
+            mapper.setParent(userId, userId / 2);
+        }
+        Random random = new Random(7);
+        List<List<Leg>> postings = new ArrayList<>();
+        // 前一天和后一天各有几笔订单落在流水ID范围内，按创建时间排除
+        for (int i = 0; i < 20; i++) {
+            postings.add(order(random, "P" + i, DATE.atStartOfDay().minusMinutes(2), false));
+        }
+        for (int i = 0; i < 400; i++) {
+            postings.add(order(random, "O" + i, DATE.atTime(12, 0), true));
+        }
+        for (int i = 0; i < 20; i++) {
+            postings.add(order(random, "N" + i, DATE.plusDays(1).atStartOfDay().plusMinutes(2), false));
+        }
+        insertInterleaved(random, postings);
+
+        job = newJob(() -> true);
+    }
+
+    @AfterEach
+    void tearDown() {
+        job.shutdown();
+    }
+
+    private CommissionSettlementJob newJob(BooleanSupplier lease) {
+        CommissionSettlementJob job = new CommissionSettlementJob(mapper, new JobLeaseService(null) {
+            @Override
+            public boolean tryAcquire(String leaseName, long leaseSeconds) {
+                return lease.getAsBoolean();
+            }
+
+            @Override
+            public void release(String leaseName) {
+            }
+        }, null, mapper);
+        // 每段37条流水，大部分段尾都会截断订单
+        ReflectionTestUtils.setField(job, "segmentRows", 37);
+        ReflectionTestUtils.setField(job, "upsertBatchSize", 7);
+        ReflectionTestUtils.setField(job, "parallelism", 2);
+        ReflectionTestUtils.setField(job, "slackMinutes", 10L);
+        ReflectionTestUtils.setField(job, "maxDepth", 64);
+        ReflectionTestUtils.setField(job, "leaseSeconds", 600L);
+        job.init();
+        return job;
+    }
+
+    @Test
+    void settlesEachOrderOnceWhenOrdersInterleave() {
+        job.settle(DATE, false);
+
+        assertThat(job.getMetrics().get("lastError")).isNull();
+        assertSettled();
+    }
+
+    @Test
+    void resumesFromCheckpointWithoutDoubleCounting() {
+        AtomicInteger writes = new AtomicInteger();
+        mapper.beforeWrite = () -> {
+            if (writes.incrementAndGet() == 20) {
+                throw new IllegalStateException("写入失败");
+            }
+        };
+        job.settle(DATE, false);
+
+        assertThat(job.getMetrics().get("lastError")).isEqualTo("写入失败");
+        CommissionSettlementRun interrupted = mapper.selectRun(DATE);
+        assertThat(interrupted.getStatus()).isEqualTo("running");
+        assertThat(interrupted.getOrderCount()).isBetween(1L, expectedOrders - 1L);
+
+        // 失败那一段的日结果随断点一起回滚，重新执行从断点继续
+        mapper.beforeWrite = null;
+        job.settle(DATE, false);
+
+        assertThat(job.getMetrics().get("lastError")).isNull();
+        assertSettled();
+    }
+
+    @Test
+    void stopsWithoutCountingSegmentWhenCheckpointMovedElsewhere() {
+        job.shutdown();
+        AtomicInteger renewals = new AtomicInteger();
+        long[] before = new long[2];
+        job = newJob(() -> {
+            // 第5次续约时（本节点仍认为持有租约）其他节点已把断点推进了一段
+            if (renewals.incrementAndGet() == 5) {
+                CommissionSettlementRun run = mapper.selectRun(DATE);
+                before[0] = run.getOrderCount() + 3;
+                before[1] = teamCommission();
+                mapper.updateRunProgress(DATE, run.getLastRecordId(), run.getLastRecordId() + 37, 3);
+            }
+            return true;
+        });
+
+        job.settle(DATE, false);
+
+        assertThat((String) job.getMetrics().get("lastError")).startsWith("分成日结断点已被其他节点推进");
+        // 本段的日结果随断点一起回滚，没有重复累加
+        assertThat(mapper.selectRun(DATE).getOrderCount()).isEqualTo(before[0]);
+        assertThat(teamCommission()).isEqualTo(before[1]);
+    }
+
+    @Test
+    void skipsDoneDateUnlessForced() {
+        job.settle(DATE, false);
+        job.settle(DATE, false);
+        assertThat(job.getMetrics().get("segments")).isEqualTo(0L);
+        assertSettled();
+
+        job.settle(DATE, true);
+        assertSettled();
+    }
+
+    private long teamCommission() {
+        long total = 0;
+        for (CommissionSettlement day : mapper.settlements("day")) {
+            total += day.getTeamCommission();
+        }
+        return total;
+    }
+
+    private void assertSettled() {
+        CommissionSettlementRun run = mapper.selectRun(DATE);
+        assertThat(run.getStatus()).isEqualTo("done");
+        assertThat(run.getOrderCount()).isEqualTo(expectedOrders);
+
+        List<CommissionSettlement> days = mapper.settlements("day");
+        assertThat(days).hasSize(expected.size());
+        for (CommissionSettlement day : days) {
+            long[] totals = expected.get(day.getUserId());
+            assertThat(totals).as("用户%d", day.getUserId()).isNotNull();
+            assertThat(new long[]{day.getOrderCount(), day.getTurnover(), day.getCommission(), day.getTeamCommission()})
+                    .as("用户%d", day.getUserId()).containsExactly(totals);
+
+            CommissionSettlement year = mapper.settlement(day.getUserId(), "year", "2026");
+            assertThat(year.getTeamCommission()).isEqualTo(day.getTeamCommission());
+            assertThat(mapper.totalTurnover(day.getUserId())).isEqualTo(day.getTurnover());
+        }
+    }
+
+    /**
+     * 一笔订单的分录：出款、机主及其两级上级、运营方（用户1）的余额和累计分成，分得0的不记账
+     */
+    private List<Leg> order(Random random, String orderId, LocalDateTime createTime, boolean settled) {
+        long owner = 1 + random.nextInt(USERS);
+        Map<Long, Long> shares = new LinkedHashMap<>();
+        for (long payee : new long[]{owner, owner / 2, owner / 4, 1}) {
+            if (payee > 0) {
+                // 同一用户在分成链中出现多次时合并计算
+                shares.merge(payee, (long) random.nextInt(1_000), Long::sum);
+            }
+        }
+        long amount = shares.values().stream().mapToLong(Long::longValue).sum();
+
+        List<Leg> legs = new ArrayList<>();
+        if (amount > 0) {
+            legs.add(new Leg(CLEARING, AccountType.BALANCE, orderId, -amount, createTime));
+        }
+        shares.forEach((payee, share) -> {
+            if (share > 0) {
+                legs.add(new Leg(payee, AccountType.BALANCE, orderId, share, createTime));
+                legs.add(new Leg(payee, AccountType.TOTAL_COMMISSION, orderId, share, createTime));
+            }
+        });
+        if (settled && amount > 0) {
+            expectedOrders++;
+            shares.forEach((payee, share) -> {
+                if (share > 0) {
+                    long[] totals = expected.computeIfAbsent(payee, userId -> new long[4]);
+                    totals[0]++;
+                    totals[1] += amount;
+                    totals[2] += share;
+                    for (long ancestor = payee; ancestor > 0; ancestor = ancestor >= 2 ? ancestor / 2 : 0) {
+                        expected.computeIfAbsent(ancestor, userId -> new long[4])[3] += share;
+                    }
+                }
+            });
+        }
+        return legs;
+    }
+
+    /**
+     * 相邻的三笔订单同时写入：各自的分录保持顺序，流水ID交错且有间隙
+     */
+    private void insertInterleaved(Random random, List<List<Leg>> postings) {
+        long id = 100;
+        for (int from = 0; from < postings.size(); from += 3) {
+            List<List<Leg>> concurrent = new ArrayList<>(postings.subList(from, Math.min(from + 3, postings.size())));
+            int[] next = new int[concurrent.size()];
+            int remaining = concurrent.stream().mapToInt(List::size).sum();
+            while (remaining > 0) {
+                int pick = random.nextInt(concurrent.size());
+                if (next[pick] == concurrent.get(pick).size()) {
+                    continue;
+                }
+                Leg leg = concurrent.get(pick).get(next[pick]);
+                id += 1 + random.nextInt(3);
+                mapper.addRecord(id, leg.userId, leg.account, leg.orderId, leg.amount, next[pick]++, leg.createTime);
+                remaining--;
+            }
+        }
+    }
+
+    private static final class Leg {
+        private final long userId;
+        private final AccountType account;
+        private final String orderId;
+        private final long amount;
+        private final LocalDateTime createTime;
+
+        private Leg(long userId, AccountType account, String orderId, long amount, LocalDateTime createTime) {
+            this.userId = userId;
+            this.account = account;
+            this.orderId = orderId;
+            this.amount = amount;
+            this.createTime = createTime;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.brewingmachine.service;
+
+import com.brewingmachine.mapper.UserClosureMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class DownlineIndexRebuildJobTest {
+
+    private final UserClosureMapper mapper = mock(UserClosureMapper.class);
+
+    @Test
+    void swapsRebuiltTableWhileLeaseIsHeld() {
+        when(mapper.insertDirectLinks()).thenReturn(10);
+        when(mapper.insertNextLevel(anyInt())).thenReturn(5, 0);
+
+        rebuild(Integer.MAX_VALUE);
+
+        verify(mapper, times(2)).insertNextLevel(anyInt());
+        verify(mapper).swapRebuildTable();
+        verify(mapper).recountSubAgentCount();
+    }
+
+    @Test
+    void abandonsRebuildWhenLeaseRenewalFails() {
+        when(mapper.insertDirectLinks()).thenReturn(10);
+        when(mapper.insertNextLevel(anyInt())).thenReturn(5);
+
+        // 首次获取和第一次续约成功，第二次续约时租约已被其他节点接管
+        rebuild(2);
+
+        verify(mapper, times(1)).insertNextLevel(anyInt());
+        verify(mapper, never()).swapRebuildTable();
+        verify(mapper, never()).recountSubAgentCount();
+    }
+
+    @Test
+    void doesNotSwapWhenLeaseIsLostBeforeSwap() {
+        when(mapper.insertDirectLinks()).thenReturn(10);
+        when(mapper.insertNextLevel(anyInt())).thenReturn(0);
+
+        // 获取、扩展一层前续约成功，替换前续约失败
+        rebuild(2);
+
+        verify(mapper).countCycles();
+        verify(mapper, never()).swapRebuildTable();
+    }
+
+    private void rebuild(int grantedAcquires) {
+        AtomicInteger acquires = new AtomicInteger();
+        JobLeaseService leases = new JobLeaseService(null) {
+            @Override
+            public boolean tryAcquire(String leaseName, long leaseSeconds) {
+                return acquires.incrementAndGet() <= grantedAcquires;
+            }
+
+            @Override
+            public void release(String leaseName) {
+            }
+        };
+        DownlineIndexRebuildJob job = new DownlineIndexRebuildJob(mapper, leases);
+        ReflectionTestUtils.setField(job, "maxDepth", 100);
+        ReflectionTestUtils.setField(job, "leaseSeconds", 600L);
+        ReflectionTestUtils.invokeMethod(job, "rebuild");
+        assertThat(job.getMetrics().get("running")).isEqualTo(false);
+    }
+}
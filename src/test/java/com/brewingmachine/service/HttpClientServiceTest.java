@@ -0,0 +1,150 @@
+package com.brewingmachine.service;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HttpClientServiceTest {
+
+    private final AtomicInteger hits = new AtomicInteger();
+
+    /** 服务端看到的客户端端口，同一端口即同一条连接 */
+    private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+
+    private HttpServer server;
+    private String baseUrl;
+    private HttpClientService service;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/ok", exchange -> respond(exchange, 200, "ok"));
+        // 前两次返回503，之后成功
+        server.createContext("/flaky", exchange -> respond(exchange, hits.get() < 2 ? 503 : 200, "flaky"));
+        server.createContext("/error", exchange -> respond(exchange, 500, "error"));
+        // 请求到达即计数，响应晚于客户端读超时
+        server.createContext("/slow", exchange -> {
+            hits.incrementAndGet();
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            send(exchange, 200, "slow");
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+
+        service = new HttpClientService();
+        ReflectionTestUtils.setField(service, "maxTotal", 10);
+        ReflectionTestUtils.setField(service, "maxPerRoute", 5);
+        ReflectionTestUtils.setField(service, "connectTimeoutMs", 1000);
+        ReflectionTestUtils.setField(service, "socketTimeoutMs", 200);
+        ReflectionTestUtils.setField(service, "connectionRequestTimeoutMs", 1000);
+        ReflectionTestUtils.setField(service, "idleTimeoutSeconds", 30);
+        ReflectionTestUtils.setField(service, "getMaxRetries", 2);
+        ReflectionTestUtils.setField(service, "retryBackoffMs", 1L);
+        service.init();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        service.shutdown();
+        server.stop(0);
+    }
+
+    @Test
+    void reusesPooledConnectionAcrossRequests() {
+        for (int i = 0; i < 5; i++) {
+            assertThat(service.get(baseUrl + "/ok?i=" + i)).isEqualTo("ok");
+        }
+
+        assertThat(hits.get()).isEqualTo(5);
+        assertThat(clientPorts).hasSize(1);
+        assertThat(service.getMetrics())
+                .containsEntry("leasedConnections", 0)
+                .containsEntry("availableConnections", 1)
+                .containsEntry("requests", 5L);
+    }
+
+    @Test
+    void retriesGetOnServerError() {
+        assertThat(service.get(baseUrl + "/flaky")).isEqualTo("flaky");
+
+        assertThat(hits.get()).isEqualTo(3);
+        assertThat(service.getMetrics()).containsEntry("retries", 2L).containsEntry("failures", 0L);
+    }
+
+    @Test
+    void failsGetAfterMaxRetriesWithoutLeakingQuery() {
+        assertThatThrownBy(() -> service.get(baseUrl + "/error?secret=s"))
+                .hasMessage("HTTP请求失败: " + baseUrl + "/error，状态码: 500");
+
+        assertThat(hits.get()).isEqualTo(3);
+        assertThat(service.getMetrics()).containsEntry("failures", 1L);
+    }
+
+    @Test
+    void neverRetriesPost() {
+        assertThat(service.post(baseUrl + "/error", "{}")).isEqualTo("error");
+        assertThatThrownBy(() -> service.post(baseUrl + "/slow", "{}")).isInstanceOf(RuntimeException.class);
+
+        assertThat(hits.get()).isEqualTo(2);
+        assertThat(service.getMetrics())
+                .containsEntry("retries", 0L)
+                .containsEntry("connectRetries", 0L)
+                .containsEntry("failures", 1L);
+    }
+
+    @Test
+    void getOnceDoesNotRetryOnceRequestWasSent() {
+        assertThatThrownBy(() -> service.getOnce(baseUrl + "/slow?code=c")).isInstanceOf(RuntimeException.class);
+        assertThat(service.getOnce(baseUrl + "/error")).isEqualTo("error");
+
+        assertThat(hits.get()).isEqualTo(2);
+        assertThat(service.getMetrics()).containsEntry("connectRetries", 0L);
+    }
+
+    @Test
+    void getOnceRetriesWhenConnectionIsRefused() throws IOException {
+        int closedPort;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            closedPort = socket.getLocalPort();
+        }
+
+        assertThatThrownBy(() -> service.getOnce("http://127.0.0.1:" + closedPort + "/token?code=c"))
+                .hasMessage("HTTP请求失败: http://127.0.0.1:" + closedPort + "/token");
+
+        assertThat(service.getMetrics()).containsEntry("connectRetries", 2L).containsEntry("failures", 1L);
+    }
+
+    private void respond(HttpExchange exchange, int status, String body) throws IOException {
+        hits.incrementAndGet();
+        clientPorts.add(exchange.getRemoteAddress().getPort());
+        send(exchange, status, body);
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getRequestBody().readAllBytes();
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+        exchange.close();
+    }
+}
@@ -0,0 +1,193 @@
+package com.brewingmachine.service;
+
+import com.brewingmachine.entity.WeChatUser;
+import com.brewingmachine.mapper.WeChatUserMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class IdentityCacheTest {
+
+    private final WeChatUserMapper weChatUserMapper = mock(WeChatUserMapper.class);
+
+    /** 数据库中的绑定关系 openid -> 用户ID */
+    private final Map<String, Long> bindings = new ConcurrentHashMap<>();
+
+    private IdentityCache cache;
+
+    @BeforeEach
+    void setUp() {
+        when(weChatUserMapper.findByOpenid(anyString())).thenAnswer(invocation -> binding(invocation.getArgument(0)));
+        cache = new IdentityCache(weChatUserMapper);
+        ReflectionTestUtils.setField(cache, "maxSize", 100);
+        ReflectionTestUtils.setField(cache, "ttlSeconds", 3600L);
+    }
+
+    @Test
+    void servesBoundOpenidFromCache() {
+        bindings.put("o1", 1L);
+
+        assertThat(cache.resolveOpenid("o1")).isEqualTo(1L);
+        assertThat(cache.resolveOpenid("o1")).isEqualTo(1L);
+        verify(weChatUserMapper, times(1)).findByOpenid("o1");
+    }
+
+    @Test
+    void reloadsExpiredMapping() {
+        ReflectionTestUtils.setField(cache, "ttlSeconds", 0L);
+        bindings.put("o1", 1L);
+
+        cache.resolveOpenid("o1");
+        assertThat(cache.resolveOpenid("o1")).isEqualTo(1L);
+        verify(weChatUserMapper, times(2)).findByOpenid("o1");
+    }
+
+    @Test
+    void unboundOpenidIsNotCached() {
+        assertThat(cache.resolveOpenid("o1")).isNull();
+
+        // 新用户绑定后无需失效即可解析
+        bindings.put("o1", 1L);
+        assertThat(cache.resolveOpenid("o1")).isEqualTo(1L);
+    }
+
+    @Test
+    void invalidatingUserDropsMappingAfterRebind() {
+        bindings.put("o1", 1L);
+        bindings.put("o2", 2L);
+        cache.resolveOpenid("o1");
+        cache.resolveOpenid("o2");
+
+        // o1改绑到用户3，绑定变更方失效原用户
+        bindings.put("o1", 3L);
+        cache.invalidateUser(1L);
+
+        assertThat(cache.resolveOpenid("o1")).isEqualTo(3L);
+        assertThat(cache.resolveOpenid("o2")).isEqualTo(2L);
+        verify(weChatUserMapper, times(1)).findByOpenid("o2");
+        assertThat(cache.getMetrics()).containsEntry("invalidations", 1L).containsEntry("size", 2);
+    }
+
+    @Test
+    void invalidatingUserDropsMappingAfterUnbind() {
+        bindings.put("o1", 1L);
+        cache.resolveOpenid("o1");
+
+        bindings.remove("o1");
+        cache.invalidateUser(1L);
+
+        assertThat(cache.resolveOpenid("o1")).isNull();
+        assertThat(cache.getMetrics()).containsEntry("size", 0);
+    }
+
+    @Test
+    void invalidationInsideTransactionAppliesAfterCommit() {
+        bindings.put("o1", 1L);
+        cache.resolveOpenid("o1");
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            bindings.remove("o1");
+            cache.invalidateUser(1L);
+            // 提交前其他请求仍读到缓存，不会把未提交的旧数据重新加载进缓存
+            assertThat(cache.resolveOpenid("o1")).isEqualTo(1L);
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertThat(cache.resolveOpenid("o1")).isNull();
+    }
+
+    @Test
+    void mappingLoadedAcrossAnInvalidationIsNotCached() {
+        bindings.put("o1", 1L);
+        // 读到旧绑定后、写入缓存前，绑定被解除
+        doAnswer(invocation -> {
+            WeChatUser before = binding("o1");
+            bindings.remove("o1");
+            cache.invalidateUser(1L);
+            return before;
+        }).doAnswer(invocation -> binding("o1")).when(weChatUserMapper).findByOpenid("o1");
+
+        assertThat(cache.resolveOpenid("o1")).isEqualTo(1L);
+        assertThat(cache.resolveOpenid("o1")).isNull();
+    }
+
+    @Test
+    void concurrentMissesShareOneLoad() throws Exception {
+        bindings.put("o1", 1L);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            loading.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return binding("o1");
+        }).when(weChatUserMapper).findByOpenid("o1");
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<Long> first = executor.submit(() -> cache.resolveOpenid("o1"));
+            assertThat(loading.await(5, TimeUnit.SECONDS)).isTrue();
+            Future<Long> second = executor.submit(() -> cache.resolveOpenid("o1"));
+            Thread.sleep(50);
+            release.countDown();
+
+            assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo(1L);
+            assertThat(second.get(5, TimeUnit.SECONDS)).isEqualTo(1L);
+        } finally {
+            executor.shutdownNow();
+        }
+        verify(weChatUserMapper, times(1)).findByOpenid("o1");
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedBeyondMaxSize() {
+        ReflectionTestUtils.setField(cache, "maxSize", 2);
+        bindings.put("o1", 1L);
+        bindings.put("o2", 2L);
+        bindings.put("o3", 3L);
+
+        cache.resolveOpenid("o1");
+        cache.resolveOpenid("o2");
+        cache.resolveOpenid("o1");
+        cache.resolveOpenid("o3");
+
+        // o2最久未访问被淘汰，o1仍在缓存中
+        cache.resolveOpenid("o1");
+        cache.resolveOpenid("o2");
+        verify(weChatUserMapper, times(1)).findByOpenid("o1");
+        verify(weChatUserMapper, times(2)).findByOpenid("o2");
+        assertThat(cache.getMetrics()).containsEntry("size", 2);
+    }
+
+    private WeChatUser binding(String openid) {
+        Long userId = bindings.get(openid);
+        if (userId == null) {
+            return null;
+        }
+        WeChatUser weChatUser = new WeChatUser();
+        weChatUser.setOpenid(openid);
+        weChatUser.setUserId(userId);
+        return weChatUser;
+    }
+}
@@ -0,0 +1,90 @@
+package com.brewingmachine.service;
+
+import com.brewingmachine.entity.CommissionChainItem;
+import com.brewingmachine.entity.User;
+import com.brewingmachine.mapper.CommissionChainMapper;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 分成测试用的内存分成链配置：代理链按上级关系从最上级代理商展开，记录读取分成链的次数
+ */
+class InMemoryCommissionChainMapper implements CommissionChainMapper {
+
+    private final Map<String, List<CommissionChainItem>> chains = new HashMap<>();
+    private final Map<Long, User> users = new HashMap<>();
+    private final Map<Long, Long> parents = new HashMap<>();
+
+    final AtomicInteger chainReads = new AtomicInteger();
+
+    synchronized void addUser(long userId, String role, String agentLevel, String commissionRate) {
+        User user = new User();
+        user.setId(userId);
+        user.setRole(role);
+        user.setAgentLevel(agentLevel);
+        user.setCommissionRate(commissionRate != null ? new BigDecimal(commissionRate) : null);
+        users.put(userId, user);
+    }
+
+    synchronized void setParent(long userId, long parentId) {
+        parents.put(userId, parentId);
+    }
+
+    static CommissionChainItem item(String party, long userId, String rate, String base) {
+        CommissionChainItem item = new CommissionChainItem();
+        item.setParty(party);
+        item.setUserId(userId);
+        item.setRate(rate != null ? new BigDecimal(rate) : null);
+        item.setBase(base);
+        return item;
+    }
+
+    @Override
+    public synchronized List<CommissionChainItem> selectChain(String scopeType, String scopeId) {
+        chainReads.incrementAndGet();
+        return new ArrayList<>(chains.getOrDefault(scopeType + ":" + scopeId, List.of()));
+    }
+
+    @Override
+    public synchronized int deleteChain(String scopeType, String scopeId) {
+        List<CommissionChainItem> removed = chains.remove(scopeType + ":" + scopeId);
+        return removed != null ? removed.size() : 0;
+    }
+
+    @Override
+    public synchronized int insertChain(List<CommissionChainItem> items) {
+        for (CommissionChainItem item : items) {
+            chains.computeIfAbsent(item.getScopeType() + ":" + item.getScopeId(), key -> new ArrayList<>()).add(item);
+        }
+        return items.size();
+    }
+
+    @Override
+    public synchronized List<User> selectUsers(Collection<Long> userIds) {
+        List<User> result = new ArrayList<>();
+        for (Long userId : userIds) {
+            if (users.containsKey(userId)) {
+                result.add(users.get(userId));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized List<User> selectAgentChain(Long userId) {
+        List<User> chain = new ArrayList<>();
+        chain.add(0, users.get(userId));
+        for (Long parent = parents.get(userId); parent != null; parent = parents.get(parent)) {
+            if ("agent".equals(users.get(parent).getRole())) {
+                chain.add(0, users.get(parent));
+            }
+        }
+        return chain;
+    }
+}
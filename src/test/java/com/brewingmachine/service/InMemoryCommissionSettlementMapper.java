@@ -0,0 +1,412 @@
+package com.brewingmachine.service;
+
+import com.brewingmachine.entity.CommissionSettlement;
+import com.brewingmachine.entity.CommissionSettlementRun;
+import com.brewingmachine.entity.User;
+import com.brewingmachine.entity.UserAccountRecord;
+import com.brewingmachine.ledger.AccountType;
+import com.brewingmachine.mapper.CommissionSettlementMapper;
+import org.apache.ibatis.cursor.Cursor;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * 日结测试用的内存分成流水和结算表：流水按列存放（只有分成流水），游标读取时才生成记录对象；
+ * 读写事务中记录结算表被修改行的原值和日结进度的快照，回滚时恢复，可以在写入日结果前插入失败
+ */
+class InMemoryCommissionSettlementMapper implements CommissionSettlementMapper, PlatformTransactionManager {
+
+    private static final int ACCOUNT_BALANCE = 0;
+    private static final int ACCOUNT_TOTAL_COMMISSION = 1;
+
+    private long[] ids = new long[1024];
+    private long[] userIds = new long[1024];
+    private long[] amounts = new long[1024];
+    private int[] legNos = new int[1024];
+    private byte[] accounts = new byte[1024];
+    private long[] createTimes = new long[1024];
+    private String[] orderIds = new String[1024];
+    private int size;
+
+    private final Map<Long, Long> parents = new HashMap<>();
+
+    private final Map<String, CommissionSettlement> settlements = new HashMap<>();
+    private Map<LocalDate, CommissionSettlementRun> runs = new HashMap<>();
+    private final Map<Long, Long> totalTurnovers = new HashMap<>();
+
+    /** 读写事务中被修改的结算行的原值，新增的行为null */
+    private Map<String, CommissionSettlement> undo;
+    private Map<LocalDate, CommissionSettlementRun> runSnapshot;
+
+    /** 每次写入日结果前执行，测试用来模拟写入失败 */
+    volatile Runnable beforeWrite;
+
+    /**
+     * 追加一条分成流水，ID须递增，金额为分
+     */
+    synchronized void addRecord(long id, long userId, AccountType account, String orderId, long amount, int legNo,
+                                LocalDateTime createTime) {
+        if (size == ids.length) {
+            int capacity = size * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            userIds = Arrays.copyOf(userIds, capacity);
+            amounts = Arrays.copyOf(amounts, capacity);
+            legNos = Arrays.copyOf(legNos, capacity);
+            accounts = Arrays.copyOf(accounts, capacity);
+            createTimes = Arrays.copyOf(createTimes, capacity);
+            orderIds = Arrays.copyOf(orderIds, capacity);
+        }
+        ids[size] = id;
+        userIds[size] = userId;
+        amounts[size] = amount;
+        legNos[size] = legNo;
+        accounts[size] = (byte) (account == AccountType.TOTAL_COMMISSION ? ACCOUNT_TOTAL_COMMISSION : ACCOUNT_BALANCE);
+        createTimes[size] = createTime.toEpochSecond(ZoneOffset.UTC);
+        orderIds[size] = orderId;
+        size++;
+    }
+
+    synchronized void setParent(long userId, long parentId) {
+        parents.put(userId, parentId);
+    }
+
+    synchronized CommissionSettlement settlement(long userId, String periodType, String period) {
+        return settlements.get(key(userId, periodType, period));
+    }
+
+    synchronized List<CommissionSettlement> settlements(String periodType) {
+        List<CommissionSettlement> result = new ArrayList<>();
+        for (CommissionSettlement settlement : settlements.values()) {
+            if (settlement.getPeriodType().equals(periodType)) {
+                result.add(settlement);
+            }
+        }
+        return result;
+    }
+
+    synchronized Long totalTurnover(long userId) {
+        return totalTurnovers.get(userId);
+    }
+
+    @Override
+    public synchronized TransactionStatus getTransaction(TransactionDefinition definition) {
+        if (definition.isReadOnly()) {
+            return new SimpleTransactionStatus();
+        }
+        undo = new HashMap<>();
+        runSnapshot = new HashMap<>();
+        runs.forEach((date, run) -> runSnapshot.put(date, copy(run)));
+        return new SimpleTransactionStatus();
+    }
+
+    @Override
+    public synchronized void commit(TransactionStatus status) {
+        undo = null;
+        runSnapshot = null;
+    }
+
+    @Override
+    public synchronized void rollback(TransactionStatus status) {
+        if (undo != null) {
+            undo.forEach((key, settlement) -> {
+                if (settlement != null) {
+                    settlements.put(key, settlement);
+                } else {
+                    settlements.remove(key);
+                }
+            });
+            runs = runSnapshot;
+        }
+        commit(status);
+    }
+
+    @Override
+    public synchronized Long selectFirstRecordIdSince(LocalDateTime time) {
+        long since = time.toEpochSecond(ZoneOffset.UTC);
+        Long first = null;
+        long firstTime = Long.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            if (createTimes[i] >= since && createTimes[i] < firstTime) {
+                first = ids[i];
+                firstTime = createTimes[i];
+            }
+        }
+        return first;
+    }
+
+    @Override
+    public synchronized Long selectMaxRecordId() {
+        return size > 0 ? ids[size - 1] : null;
+    }
+
+    @Override
+    public synchronized Cursor<UserAccountRecord> streamCommissionRecords(String type, long afterId, long maxId,
+                                                                          LocalDateTime from, LocalDateTime to,
+                                                                          int limit) {
+        long fromTime = from.toEpochSecond(ZoneOffset.UTC);
+        long toTime = to.toEpochSecond(ZoneOffset.UTC);
+        int start = Arrays.binarySearch(ids, 0, size, afterId + 1);
+        List<UserAccountRecord> result = new ArrayList<>();
+        for (int i = start >= 0 ? start : -start - 1; i < size && ids[i] <= maxId && result.size() < limit; i++) {
+            if ((accounts[i] == ACCOUNT_TOTAL_COMMISSION || legNos[i] == 0)
+                    && createTimes[i] >= fromTime && createTimes[i] < toTime) {
+                UserAccountRecord record = new UserAccountRecord();
+                record.setId(ids[i]);
+                record.setUserId(userIds[i]);
+                record.setAccount(accounts[i] == ACCOUNT_TOTAL_COMMISSION
+                        ? AccountType.TOTAL_COMMISSION.getCode() : AccountType.BALANCE.getCode());
+                record.setOrderId(orderIds[i]);
+                record.setAmount(BigDecimal.valueOf(amounts[i], 2));
+                result.add(record);
+            }
+        }
+        return new ListCursor<>(result);
+    }
+
+    @Override
+    public synchronized Cursor<User> streamParents() {
+        List<User> users = new ArrayList<>(parents.size());
+        parents.forEach((userId, parentId) -> {
+            User user = new User();
+            user.setId(userId);
+            user.setParentUserId(parentId);
+            users.add(user);
+        });
+        return new ListCursor<>(users);
+    }
+
+    @Override
+    public int addDaySettlements(List<CommissionSettlement> rows) {
+        Runnable hook = beforeWrite;
+        if (hook != null) {
+            hook.run();
+        }
+        synchronized (this) {
+            for (CommissionSettlement row : rows) {
+                String key = key(row.getUserId(), "day", row.getPeriod());
+                CommissionSettlement existing = settlements.get(key);
+                CommissionSettlement settlement = existing != null
+                        ? copy(existing) : empty(row.getUserId(), "day", row.getPeriod());
+                add(settlement, row);
+                put(key, settlement);
+            }
+            return rows.size();
+        }
+    }
+
+    @Override
+    public synchronized int deleteDaySettlements(String period) {
+        List<String> keys = new ArrayList<>();
+        settlements.forEach((key, settlement) -> {
+            if (settlement.getPeriodType().equals("day") && settlement.getPeriod().equals(period)) {
+                keys.add(key);
+            }
+        });
+        keys.forEach(key -> put(key, null));
+        return keys.size();
+    }
+
+    @Override
+    public synchronized int aggregateMonth(String month, String fromDay, String toDay) {
+        return aggregate("day", "month", month, fromDay, toDay);
+    }
+
+    @Override
+    public synchronized int aggregateYear(String year) {
+        return aggregate("month", "year", year, year + "-01", year + "-12");
+    }
+
+    private int aggregate(String fromType, String toType, String period, String from, String to) {
+        Map<Long, CommissionSettlement> sums = new HashMap<>();
+        for (CommissionSettlement settlement : settlements.values()) {
+            if (settlement.getPeriodType().equals(fromType)
+                    && settlement.getPeriod().compareTo(from) >= 0 && settlement.getPeriod().compareTo(to) <= 0) {
+                add(sums.computeIfAbsent(settlement.getUserId(), userId -> empty(userId, toType, period)), settlement);
+            }
+        }
+        sums.forEach((userId, sum) -> put(key(userId, toType, period), sum));
+        return sums.size();
+    }
+
+    @Override
+    public synchronized int updateTotalTurnover(String year) {
+        Map<Long, Long> sums = new HashMap<>();
+        for (CommissionSettlement settlement : settlements.values()) {
+            if (settlement.getPeriodType().equals("year")) {
+                sums.merge(settlement.getUserId(), settlement.getTurnover(), Long::sum);
+            }
+        }
+        int updated = 0;
+        for (CommissionSettlement settlement : settlements("year")) {
+            if (settlement.getPeriod().equals(year)) {
+                totalTurnovers.put(settlement.getUserId(), sums.get(settlement.getUserId()));
+                updated++;
+            }
+        }
+        return updated;
+    }
+
+    @Override
+    public synchronized List<CommissionSettlement> selectSettlements(Long userId, String periodType,
+                                                                     String fromPeriod, String toPeriod) {
+        List<CommissionSettlement> result = new ArrayList<>();
+        for (CommissionSettlement settlement : settlements(periodType)) {
+            if (settlement.getUserId().equals(userId)
+                    && settlement.getPeriod().compareTo(fromPeriod) >= 0 && settlement.getPeriod().compareTo(toPeriod) <= 0) {
+                result.add(copy(settlement));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized CommissionSettlementRun selectRun(LocalDate settleDate) {
+        CommissionSettlementRun run = runs.get(settleDate);
+        return run != null ? copy(run) : null;
+    }
+
+    @Override
+    public synchronized int insertRun(CommissionSettlementRun run) {
+        if (runs.containsKey(run.getSettleDate())) {
+            return 0;
+        }
+        runs.put(run.getSettleDate(), copy(run));
+        return 1;
+    }
+
+    @Override
+    public synchronized int updateRunProgress(LocalDate settleDate, long afterId, long lastRecordId, long orderCount) {
+        CommissionSettlementRun run = runs.get(settleDate);
+        if (run == null || run.getLastRecordId() != afterId) {
+            return 0;
+        }
+        run.setLastRecordId(lastRecordId);
+        run.setOrderCount(run.getOrderCount() + orderCount);
+        return 1;
+    }
+
+    @Override
+    public synchronized int markRunDone(LocalDate settleDate) {
+        runs.get(settleDate).setStatus("done");
+        return 1;
+    }
+
+    @Override
+    public synchronized int deleteRun(LocalDate settleDate) {
+        return runs.remove(settleDate) != null ? 1 : 0;
+    }
+
+    /**
+     * 写入或删除（settlement为null）一行，事务中记录原值
+     */
+    private void put(String key, CommissionSettlement settlement) {
+        CommissionSettlement previous = settlement != null ? settlements.put(key, settlement) : settlements.remove(key);
+        if (undo != null && !undo.containsKey(key)) {
+            undo.put(key, previous);
+        }
+    }
+
+    private static String key(long userId, String periodType, String period) {
+        return periodType + ":" + period + ":" + userId;
+    }
+
+    private static CommissionSettlement empty(long userId, String periodType, String period) {
+        CommissionSettlement settlement = new CommissionSettlement();
+        settlement.setUserId(userId);
+        settlement.setPeriodType(periodType);
+        settlement.setPeriod(period);
+        settlement.setOrderCount(0L);
+        settlement.setTurnover(0L);
+        settlement.setCommission(0L);
+        settlement.setTeamCommission(0L);
+        return settlement;
+    }
+
+    private static void add(CommissionSettlement into, CommissionSettlement row) {
+        into.setOrderCount(into.getOrderCount() + row.getOrderCount());
+        into.setTurnover(into.getTurnover() + row.getTurnover());
+        into.setCommission(into.getCommission() + row.getCommission());
+        into.setTeamCommission(into.getTeamCommission() + row.getTeamCommission());
+    }
+
+    private static CommissionSettlement copy(CommissionSettlement settlement) {
+        CommissionSettlement copy = empty(settlement.getUserId(), settlement.getPeriodType(), settlement.getPeriod());
+        add(copy, settlement);
+        return copy;
+    }
+
+    private static CommissionSettlementRun copy(CommissionSettlementRun run) {
+        CommissionSettlementRun copy = new CommissionSettlementRun();
+        copy.setSettleDate(run.getSettleDate());
+        copy.setStatus(run.getStatus());
+        copy.setLastRecordId(run.getLastRecordId());
+        copy.setMaxRecordId(run.getMaxRecordId());
+        copy.setOrderCount(run.getOrderCount());
+        return copy;
+    }
+
+    /**
+     * 已读入内存的结果作为游标
+     */
+    private static final class ListCursor<T> implements Cursor<T> {
+        private final List<T> items;
+        private int index = -1;
+        private boolean open = true;
+
+        private ListCursor(List<T> items) {
+            this.items = items;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public boolean isConsumed() {
+            return index == items.size() - 1;
+        }
+
+        @Override
+        public int getCurrentIndex() {
+            return index;
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return new Iterator<T>() {
+                @Override
+                public boolean hasNext() {
+                    return open && index + 1 < items.size();
+                }
+
+                @Override
+                public T next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    return items.get(++index);
+                }
+            };
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.brewingmachine.service;
+
+import com.brewingmachine.entity.QrCodeLogin;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InMemoryQrSessionStoreTest {
+
+    private final InMemoryQrSessionStore store = new InMemoryQrSessionStore();
+
+    @Test
+    void createThenFindReturnsCopy() {
+        store.create(session("t1"), 60);
+
+        QrCodeLogin found = store.find("t1");
+        assertThat(found).isNotNull();
+        assertThat(found.getStatus()).isEqualTo(0);
+
+        // 返回的是副本，修改不影响存储
+        found.setStatus(2);
+        assertThat(store.find("t1").getStatus()).isEqualTo(0);
+    }
+
+    @Test
+    void findReturnsNullForUnknownOrExpiredSession() {
+        store.create(session("expired"), 0);
+
+        assertThat(store.find("missing")).isNull();
+        assertThat(store.find("expired")).isNull();
+        assertThat(store.transition("expired", 0, s -> s.setStatus(1))).isNull();
+    }
+
+    @Test
+    void transitionAppliesOnlyWhenStatusMatches() {
+        store.create(session("t2"), 60);
+
+        QrCodeLogin scanned = store.transition("t2", 0, s -> s.setStatus(1));
+        assertThat(scanned).isNotNull();
+        assertThat(scanned.getStatus()).isEqualTo(1);
+
+        // 状态已不是0，重复扫描失败且不应用mutator
+        assertThat(store.transition("t2", 0, s -> s.setStatus(9))).isNull();
+        assertThat(store.find("t2").getStatus()).isEqualTo(1);
+
+        QrCodeLogin confirmed = store.transition("t2", 1, s -> {
+            s.setStatus(2);
+            s.setUserId(7L);
+        });
+        assertThat(confirmed.getUserId()).isEqualTo(7L);
+        assertThat(store.find("t2").getStatus()).isEqualTo(2);
+    }
+
+    @Test
+    void concurrentConfirmationsHaveSingleWinner() throws Exception {
+        store.create(session("t3"), 60);
+        store.transition("t3", 0, s -> s.setStatus(1));
+
+        int threads = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<QrCodeLogin>> results = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            long userId = i + 1;
+            results.add(executor.submit(() -> {
+                start.await();
+                return store.transition("t3", 1, s -> {
+                    s.setStatus(2);
+                    s.setUserId(userId);
+                });
+            }));
+        }
+        start.countDown();
+
+        int winners = 0;
+        for (Future<QrCodeLogin> result : results) {
+            if (result.get(10, TimeUnit.SECONDS) != null) {
+                winners++;
+            }
+        }
+        executor.shutdown();
+
+        assertThat(winners).isEqualTo(1);
+        assertThat(store.find("t3").getUserId()).isNotNull();
+    }
+
+    private static QrCodeLogin session(String qrToken) {
+        QrCodeLogin session = new QrCodeLogin();
+        session.setQrToken(qrToken);
+        session.setStatus(0);
+        return session;
+    }
+}
@@ -0,0 +1,269 @@
+package com.brewingmachine.service;
+
+import com.brewingmachine.entity.UserAccount;
+import com.brewingmachine.entity.UserAccountRecord;
+import com.brewingmachine.entity.UserSubAccount;
+import com.brewingmachine.mapper.UserAccountMapper;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * 记账测试用的内存账户表：事务开始时保存快照、回滚时恢复，流水按(记账请求ID, 分录序号)唯一，
+ * 可以在锁定账户前插入等待、在提交时模拟数据库耗时
+ */
+class InMemoryUserAccountMapper implements UserAccountMapper {
+
+    private Map<Long, UserAccount> accounts = new TreeMap<>();
+    private Map<String, UserSubAccount> subAccounts = new TreeMap<>();
+    private final List<UserAccountRecord> records = new ArrayList<>();
+    private final Map<String, List<UserAccountRecord>> byPostingId = new HashMap<>();
+
+    private Snapshot snapshot;
+
+    /** 锁定账户前以本次锁定的用户ID执行，测试用来让记账线程停在一个批次中或模拟锁等待 */
+    volatile Consumer<Collection<Long>> beforeLock;
+
+    /** 每次提交的模拟耗时 */
+    volatile long commitNanos;
+
+    synchronized void addUser(long userId, long balance) {
+        UserAccount account = new UserAccount();
+        account.setUserId(userId);
+        account.setBalance(balance);
+        accounts.put(userId, account);
+    }
+
+    synchronized List<UserAccountRecord> records() {
+        return new ArrayList<>(records);
+    }
+
+    TransactionTemplate transactionTemplate() {
+        return new TransactionTemplate(new PlatformTransactionManager() {
+            @Override
+            public TransactionStatus getTransaction(TransactionDefinition definition) {
+                begin();
+                return new SimpleTransactionStatus();
+            }
+
+            @Override
+            public void commit(TransactionStatus status) {
+                if (commitNanos > 0) {
+                    LockSupport.parkNanos(commitNanos);
+                }
+            }
+
+            @Override
+            public void rollback(TransactionStatus status) {
+                restore();
+            }
+        });
+    }
+
+    private synchronized void begin() {
+        snapshot = new Snapshot();
+    }
+
+    private synchronized void restore() {
+        accounts = snapshot.accounts;
+        subAccounts = snapshot.subAccounts;
+        // 流水只追加，回滚时截掉快照之后的部分
+        while (records.size() > snapshot.recordCount) {
+            UserAccountRecord record = records.remove(records.size() - 1);
+            List<UserAccountRecord> posted = byPostingId.get(record.getPostingId());
+            posted.remove(record);
+            if (posted.isEmpty()) {
+                byPostingId.remove(record.getPostingId());
+            }
+        }
+    }
+
+    @Override
+    public synchronized UserAccount selectAccount(Long userId) {
+        UserAccount account = accounts.get(userId);
+        return account != null ? copy(account) : null;
+    }
+
+    @Override
+    public List<UserAccount> lockAccounts(Collection<Long> userIds) {
+        Consumer<Collection<Long>> hook = beforeLock;
+        if (hook != null) {
+            hook.accept(userIds);
+        }
+        synchronized (this) {
+            List<UserAccount> locked = new ArrayList<>();
+            for (Long userId : userIds) {
+                UserAccount account = accounts.get(userId);
+                if (account != null) {
+                    locked.add(copy(account));
+                }
+            }
+            return locked;
+        }
+    }
+
+    @Override
+    public synchronized int updateAccounts(List<UserAccount> updated) {
+        for (UserAccount account : updated) {
+            accounts.put(account.getUserId(), copy(account));
+        }
+        return updated.size();
+    }
+
+    @Override
+    public synchronized int insertRecords(List<UserAccountRecord> inserted) {
+        for (UserAccountRecord record : inserted) {
+            for (UserAccountRecord posted : byPostingId.getOrDefault(record.getPostingId(), List.of())) {
+                if (posted.getLegNo().equals(record.getLegNo())) {
+                    throw new DuplicateKeyException("Duplicate entry for key 'uk_posting_leg'");
+                }
+            }
+        }
+        for (UserAccountRecord record : inserted) {
+            record.setId((long) records.size() + 1);
+            records.add(record);
+            byPostingId.computeIfAbsent(record.getPostingId(), id -> new ArrayList<>(2)).add(record);
+        }
+        return inserted.size();
+    }
+
+    @Override
+    public synchronized List<UserAccountRecord> selectByPostingIds(Collection<String> postingIds) {
+        List<UserAccountRecord> result = new ArrayList<>();
+        for (String postingId : new HashSet<>(postingIds)) {
+            result.addAll(byPostingId.getOrDefault(postingId, List.of()));
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized List<UserAccountRecord> selectRecords(Long userId, String account, Long beforeId, int limit) {
+        List<UserAccountRecord> page = new ArrayList<>();
+        for (int i = records.size() - 1; i >= 0 && page.size() < limit; i--) {
+            UserAccountRecord record = records.get(i);
+            if (record.getUserId().equals(userId) && (account == null || account.equals(record.getAccount()))
+                    && (beforeId == null || record.getId() < beforeId)) {
+                page.add(record);
+            }
+        }
+        return page;
+    }
+
+    @Override
+    public synchronized int addSubAccounts(List<UserSubAccount> deltas) {
+        for (UserSubAccount delta : deltas) {
+            UserSubAccount subAccount = subAccounts.computeIfAbsent(subKey(delta),
+                    key -> newSubAccount(delta.getUserId(), delta.getAccount(), delta.getSlot(), 0));
+            subAccount.setAmount(subAccount.getAmount() + delta.getAmount());
+        }
+        return deltas.size();
+    }
+
+    @Override
+    public synchronized List<UserSubAccount> selectSubAccounts(List<UserSubAccount> keys) {
+        List<UserSubAccount> result = new ArrayList<>();
+        for (UserSubAccount key : keys) {
+            UserSubAccount subAccount = subAccounts.get(subKey(key));
+            if (subAccount != null) {
+                result.add(newSubAccount(subAccount.getUserId(), subAccount.getAccount(), subAccount.getSlot(),
+                        subAccount.getAmount()));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized List<UserSubAccount> lockSubAccounts(Long userId) {
+        List<UserSubAccount> result = new ArrayList<>();
+        for (UserSubAccount subAccount : subAccounts.values()) {
+            if (subAccount.getUserId().equals(userId)) {
+                result.add(newSubAccount(userId, subAccount.getAccount(), subAccount.getSlot(), subAccount.getAmount()));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized int clearSubAccounts(Long userId) {
+        int cleared = 0;
+        for (UserSubAccount subAccount : subAccounts.values()) {
+            if (subAccount.getUserId().equals(userId)) {
+                subAccount.setAmount(0);
+                cleared++;
+            }
+        }
+        return cleared;
+    }
+
+    @Override
+    public synchronized List<UserSubAccount> sumSubAccounts(Long userId) {
+        Map<String, Long> sums = new TreeMap<>();
+        for (UserSubAccount subAccount : subAccounts.values()) {
+            if (subAccount.getUserId().equals(userId)) {
+                sums.merge(subAccount.getAccount(), subAccount.getAmount(), Long::sum);
+            }
+        }
+        List<UserSubAccount> result = new ArrayList<>();
+        sums.forEach((account, amount) -> result.add(newSubAccount(userId, account, 0, amount)));
+        return result;
+    }
+
+    @Override
+    public synchronized List<Long> selectUsersWithSubBalance(long afterId, int limit) {
+        return subAccounts.values().stream()
+                .filter(subAccount -> subAccount.getAmount() != 0 && subAccount.getUserId() > afterId)
+                .map(UserSubAccount::getUserId).distinct().sorted().limit(limit).collect(Collectors.toList());
+    }
+
+    private static String subKey(UserSubAccount subAccount) {
+        return subAccount.getUserId() + ":" + subAccount.getAccount() + ":" + subAccount.getSlot();
+    }
+
+    private static UserSubAccount newSubAccount(Long userId, String account, Integer slot, long amount) {
+        UserSubAccount subAccount = new UserSubAccount();
+        subAccount.setUserId(userId);
+        subAccount.setAccount(account);
+        subAccount.setSlot(slot);
+        subAccount.setAmount(amount);
+        return subAccount;
+    }
+
+    private static UserAccount copy(UserAccount account) {
+        UserAccount copy = new UserAccount();
+        copy.setUserId(account.getUserId());
+        copy.setBalance(account.getBalance());
+        copy.setFrozen(account.getFrozen());
+        copy.setPoints(account.getPoints());
+        copy.setGiftMoney(account.getGiftMoney());
+        copy.setWineGold(account.getWineGold());
+        copy.setTotalCommission(account.getTotalCommission());
+        return copy;
+    }
+
+    private final class Snapshot {
+        private final Map<Long, UserAccount> accounts = new TreeMap<>();
+        private final Map<String, UserSubAccount> subAccounts = new TreeMap<>();
+        private final int recordCount = records.size();
+
+        private Snapshot() {
+            InMemoryUserAccountMapper.this.accounts.forEach((userId, account) -> accounts.put(userId, copy(account)));
+            InMemoryUserAccountMapper.this.subAccounts.forEach((key, subAccount) -> subAccounts.put(key,
+                    newSubAccount(subAccount.getUserId(), subAccount.getAccount(), subAccount.getSlot(),
+                            subAccount.getAmount())));
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.brewingmachine.service;
+
+import com.brewingmachine.entity.User;
+import com.brewingmachine.mapper.UserMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+class LastLoginTimeWriterTest {
+
+    private final UserMapper userMapper = mock(UserMapper.class);
+
+    /** 每次批量写入的用户ID */
+    private final List<List<Long>> batches = new ArrayList<>();
+
+    /** 为true时批量写入失败 */
+    private boolean failing;
+
+    private LastLoginTimeWriter writer;
+
+    @BeforeEach
+    void setUp() {
+        doAnswer(invocation -> {
+            if (failing) {
+                throw new RuntimeException("数据库不可用");
+            }
+            List<Long> ids = new ArrayList<>();
+            for (User user : invocation.<List<User>>getArgument(0)) {
+                assertThat(user.getLastLoginTime()).isNotNull();
+                ids.add(user.getId());
+            }
+            batches.add(ids);
+            return ids.size();
+        }).when(userMapper).batchUpdateLastLoginTime(anyList());
+
+        writer = new LastLoginTimeWriter(userMapper);
+        ReflectionTestUtils.setField(writer, "batchSize", 2);
+        ReflectionTestUtils.setField(writer, "maxPending", 3);
+    }
+
+    @Test
+    void mergesRepeatedLoginsAndFlushesInBatches() {
+        writer.record(1L);
+        writer.record(2L);
+        writer.record(1L);
+        writer.record(3L);
+
+        assertThat(batches).isEmpty();
+        writer.flush();
+
+        assertThat(batches).hasSize(2);
+        assertThat(batches.get(0)).hasSize(2);
+        assertThat(batches.stream().flatMap(List::stream)).containsExactlyInAnyOrder(1L, 2L, 3L);
+        assertThat(writer.getMetrics())
+                .containsEntry("recorded", 4L)
+                .containsEntry("flushed", 3L)
+                .containsEntry("pending", 0)
+                .containsEntry("lastFlushSize", 3);
+
+        // 没有待写事件时不访问数据库
+        writer.flush();
+        assertThat(batches).hasSize(2);
+    }
+
+    @Test
+    void failedBatchIsKeptForNextFlush() {
+        writer.record(1L);
+        writer.record(2L);
+
+        failing = true;
+        writer.flush();
+        assertThat(writer.getMetrics()).containsEntry("pending", 2).containsEntry("flushed", 0L);
+
+        failing = false;
+        writer.flush();
+        assertThat(batches).hasSize(1);
+        assertThat(batches.get(0)).containsExactlyInAnyOrder(1L, 2L);
+        assertThat(writer.getMetrics()).containsEntry("pending", 0).containsEntry("flushed", 2L);
+    }
+
+    @Test
+    void dropsNewUsersOncePendingIsFull() {
+        writer.record(1L);
+        writer.record(2L);
+        writer.record(3L);
+        writer.record(4L);
+        // 已在待写中的用户仍可更新登录时间
+        writer.record(1L);
+
+        assertThat(writer.getMetrics())
+                .containsEntry("pending", 3)
+                .containsEntry("recorded", 5L)
+                .containsEntry("dropped", 1L);
+
+        writer.flush();
+        assertThat(batches.stream().flatMap(List::stream)).containsExactlyInAnyOrder(1L, 2L, 3L);
+
+        // 写入后腾出空间，之后的登录不再丢弃
+        writer.record(4L);
+        assertThat(writer.getMetrics()).containsEntry("pending", 1).containsEntry("dropped", 1L);
+    }
+
+    @Test
+    void loginInsideTransactionIsRecordedAfterCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            writer.record(1L);
+            assertThat(writer.getMetrics()).containsEntry("pending", 0);
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertThat(writer.getMetrics()).containsEntry("pending", 1);
+    }
+
+    @Test
+    void shutdownFlushesPendingLogins() {
+        writer.record(1L);
+
+        writer.shutdown();
+
+        assertThat(batches).containsExactly(List.of(1L));
+    }
+}
@@ -0,0 +1,109 @@
+package com.brewingmachine.service;
+
+import com.brewingmachine.entity.QrCodeLogin;
+import com.brewingmachine.mapper.QrCodeLoginMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class QrCodeLoginServiceTest {
+
+    private final InMemoryQrSessionStore store = new InMemoryQrSessionStore();
+    private final QrCodeLoginMapper mapper = mock(QrCodeLoginMapper.class);
+
+    private final QrStatusNotifier notifier = mock(QrStatusNotifier.class);
+
+    private QrCodeLoginService service;
+
+    @BeforeEach
+    void setUp() {
+        service = new QrCodeLoginService();
+        ReflectionTestUtils.setField(service, "qrSessionStore", store);
+        ReflectionTestUtils.setField(service, "qrCodeLoginMapper", mapper);
+        ReflectionTestUtils.setField(service, "qrCodeLoginAuditWriter", mock(QrCodeLoginAuditWriter.class));
+        ReflectionTestUtils.setField(service, "qrStatusNotifier", notifier);
+        ReflectionTestUtils.setField(service, "missTtlMillis", 60_000L);
+        ReflectionTestUtils.setField(service, "missCacheSize", 2);
+    }
+
+    @Test
+    void pollingAnUnknownTokenQueriesTheDatabaseOnce() {
+        for (int i = 0; i < 5; i++) {
+            assertThat(service.queryQrCodeStatus("missing").get("status")).isEqualTo(-1);
+        }
+
+        verify(mapper, times(1)).findPersistentByToken(eq("missing"), any());
+    }
+
+    @Test
+    void missedTokenIsLookedUpAgainAfterTtl() {
+        ReflectionTestUtils.setField(service, "missTtlMillis", 0L);
+
+        service.queryQrCodeStatus("missing");
+        service.queryQrCodeStatus("missing");
+
+        verify(mapper, times(2)).findPersistentByToken(eq("missing"), any());
+    }
+
+    @Test
+    void missCacheIsBounded() {
+        service.queryQrCodeStatus("a");
+        service.queryQrCodeStatus("b");
+        service.queryQrCodeStatus("c");
+        // 上限2，最早写入的a被淘汰，再次查询时查库
+        service.queryQrCodeStatus("a");
+        service.queryQrCodeStatus("c");
+
+        verify(mapper, times(2)).findPersistentByToken(eq("a"), any());
+        verify(mapper, times(1)).findPersistentByToken(eq("c"), any());
+    }
+
+    @Test
+    void restoresPersistentSessionFromDatabase() {
+        QrCodeLogin persisted = new QrCodeLogin();
+        persisted.setQrToken("printed");
+        persisted.setStatus(0);
+        persisted.setRole("agent");
+        persisted.setPersistent(true);
+        persisted.setExpireTime(LocalDateTime.now().plusHours(1));
+        when(mapper.findPersistentByToken(eq("printed"), any())).thenReturn(persisted);
+
+        assertThat(service.scanQrCode("printed").get("success")).isEqualTo(true);
+        assertThat(service.queryQrCodeStatus("printed").get("status")).isEqualTo(1);
+        // 恢复后从会话存储读取
+        verify(mapper, times(1)).findPersistentByToken(eq("printed"), any());
+    }
+
+    @Test
+    void publishesStatusChangedOnAnotherNode() {
+        QrCodeLogin session = new QrCodeLogin();
+        session.setQrToken("watched");
+        session.setStatus(0);
+        session.setExpireTime(LocalDateTime.now().plusMinutes(5));
+        store.create(session, 300);
+        when(notifier.getWatchedTokens()).thenReturn(Set.of("watched"));
+
+        service.publishWatchedStatus();
+        service.publishWatchedStatus();
+        verify(notifier, times(1)).publish(eq("watched"), argThat(status -> status.get("status").equals(0)));
+
+        // 其他节点处理扫码，直接修改共享的会话存储，本节点没有提交后推送
+        store.transition("watched", 0, qr -> qr.setStatus(1));
+        service.publishWatchedStatus();
+        service.publishWatchedStatus();
+
+        verify(notifier, times(1)).publish(eq("watched"), argThat(status -> status.get("status").equals(1)));
+    }
+}
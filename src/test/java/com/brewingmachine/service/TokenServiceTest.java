@@ -0,0 +1,91 @@
+package com.brewingmachine.service;
+
+import com.brewingmachine.dto.TokenPrincipal;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenServiceTest {
+
+    private TokenService tokenService;
+
+    @BeforeEach
+    void setUp() {
+        tokenService = newTokenService(24L, 3);
+    }
+
+    @Test
+    void verifiesOnceAndServesLaterChecksFromCache() {
+        String token = tokenService.generateToken(7L);
+
+        TokenPrincipal first = tokenService.verifyToken(token);
+        TokenPrincipal second = tokenService.verifyToken(token);
+
+        assertThat(first.getUserId()).isEqualTo(7L);
+        assertThat(second).isSameAs(first);
+        assertThat(cache()).hasSize(1);
+    }
+
+    @Test
+    void rejectsTamperedAndExpiredTokensWithoutCachingThem() {
+        String token = tokenService.generateToken(7L);
+        String tampered = token.substring(0, token.length() - 2) + (token.endsWith("A") ? "BB" : "AA");
+        String expired = newTokenService(-1L, 3).generateToken(7L);
+
+        assertThat(tokenService.verifyToken(tampered)).isNull();
+        assertThat(tokenService.verifyToken(expired)).isNull();
+        assertThat(tokenService.verifyToken("")).isNull();
+        assertThat(cache()).isEmpty();
+    }
+
+    @Test
+    void dropsCachedPrincipalOnceItExpires() throws Exception {
+        String token = tokenService.generateToken(7L);
+        String key = Base64.getEncoder().encodeToString(
+                MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8)));
+        // 缓存中的身份已过期时不再重新解析，直接判定失效并删除
+        cache().put(key, new TokenPrincipal(7L, System.currentTimeMillis() - 1, "brewing-machine"));
+
+        assertThat(tokenService.verifyToken(token)).isNull();
+        assertThat(cache()).doesNotContainKey(key);
+    }
+
+    @Test
+    void evictsEarliestCachedTokenBeyondMaxSize() {
+        List<String> tokens = new ArrayList<>();
+        for (long userId = 1; userId <= 5; userId++) {
+            tokens.add(tokenService.generateToken(userId));
+            tokenService.verifyToken(tokens.get(tokens.size() - 1));
+        }
+
+        assertThat(cache()).hasSize(3);
+        assertThat(cache().values()).extracting(TokenPrincipal::getUserId).containsExactlyInAnyOrder(3L, 4L, 5L);
+        // 被淘汰的token仍然有效，重新校验后再次进入缓存
+        assertThat(tokenService.verifyToken(tokens.get(0)).getUserId()).isEqualTo(1L);
+        assertThat(cache()).hasSize(3);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, TokenPrincipal> cache() {
+        return (Map<String, TokenPrincipal>) ReflectionTestUtils.getField(tokenService, "verifiedTokenCache");
+    }
+
+    private static TokenService newTokenService(long expireHours, int cacheMaxSize) {
+        TokenService service = new TokenService();
+        ReflectionTestUtils.setField(service, "jwtSecret", "brewing_machine_secret_key_for_unit_tests_hmac_sha256");
+        ReflectionTestUtils.setField(service, "expireHours", expireHours);
+        ReflectionTestUtils.setField(service, "issuer", "brewing-machine");
+        ReflectionTestUtils.setField(service, "cacheMaxSize", cacheMaxSize);
+        service.init();
+        return service;
+    }
+}
@@ -0,0 +1,184 @@
+package com.brewingmachine.service;
+
+import com.brewingmachine.config.JsonCodec;
+import com.brewingmachine.dto.response.UserInfoResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class UserInfoCacheTest {
+
+    private static final long USER_ID = 3L;
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    /** 库中的余额 */
+    private double balance = 100;
+
+    private UserInfoCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = newCache(null);
+    }
+
+    @Test
+    void servesCopiesFromLocalCacheWithoutToken() {
+        UserInfoResponse first = cache.get(USER_ID, this::load);
+        first.setNickName("被调用方修改");
+        UserInfoResponse second = cache.get(USER_ID, this::load);
+
+        assertThat(loads.get()).isEqualTo(1);
+        assertThat(second.getNickName()).isEqualTo("用户3");
+        assertThat(second.getToken()).isNull();
+    }
+
+    @Test
+    void balanceChangeIsVisibleAfterEvict() {
+        assertThat(cache.get(USER_ID, this::load).getBalance()).isEqualTo(100);
+
+        balance = 70;
+        assertThat(cache.get(USER_ID, this::load).getBalance()).isEqualTo(100);
+        cache.evict(USER_ID);
+
+        assertThat(cache.get(USER_ID, this::load).getBalance()).isEqualTo(70);
+        assertThat(loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    void evictInsideTransactionAppliesAfterCommit() {
+        cache.get(USER_ID, this::load);
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            balance = 70;
+            cache.evict(USER_ID);
+            // 提交前仍返回缓存，不会读到并回填未提交前的旧余额
+            assertThat(loads.get()).isEqualTo(1);
+            assertThat(cache.get(USER_ID, this::load).getBalance()).isEqualTo(100);
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertThat(cache.get(USER_ID, this::load).getBalance()).isEqualTo(70);
+    }
+
+    @Test
+    void valueLoadedAcrossAnEvictIsNotCached() {
+        // 读到旧余额后、写入缓存前，余额变更并失效
+        Function<Long, UserInfoResponse> racing = userId -> {
+            UserInfoResponse before = load(userId);
+            balance = 70;
+            cache.evict(userId);
+            return before;
+        };
+
+        assertThat(cache.get(USER_ID, racing).getBalance()).isEqualTo(100);
+        assertThat(cache.get(USER_ID, this::load).getBalance()).isEqualTo(70);
+    }
+
+    @Test
+    void expiredEntryIsReloaded() {
+        ReflectionTestUtils.setField(cache, "localTtlSeconds", 0L);
+
+        cache.get(USER_ID, this::load);
+        cache.get(USER_ID, this::load);
+
+        assertThat(loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    void missingUserIsNotCached() {
+        assertThat(cache.get(USER_ID, userId -> {
+            loads.incrementAndGet();
+            return null;
+        })).isNull();
+
+        assertThat(cache.get(USER_ID, this::load)).isNotNull();
+        assertThat(loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void evictDeletesRedisEntryAgainAfterDelay() {
+        StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+        ValueOperations<String, String> values = mock(ValueOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(values);
+        cache = newCache(redisTemplate);
+        ReflectionTestUtils.setField(cache, "redisDelayedDeleteMs", 0L);
+
+        cache.get(USER_ID, this::load);
+        verify(values).set(eq("user:info:3"), anyString(), eq(600L), eq(TimeUnit.SECONDS));
+
+        cache.evict(USER_ID);
+        verify(redisTemplate, times(1)).delete("user:info:3");
+
+        // 二次删除清除失效前查库、失效后才回写的旧值
+        cache.runDelayedDeletes();
+        verify(redisTemplate, times(2)).delete("user:info:3");
+        cache.runDelayedDeletes();
+        verify(redisTemplate, times(2)).delete("user:info:3");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void readsRedisBeforeLoader() throws Exception {
+        StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+        ValueOperations<String, String> values = mock(ValueOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(values);
+        when(values.get("user:info:3")).thenReturn(new ObjectMapper().writeValueAsString(load(USER_ID)));
+        cache = newCache(redisTemplate);
+        loads.set(0);
+
+        assertThat(cache.get(USER_ID, this::load).getBalance()).isEqualTo(100);
+
+        assertThat(loads.get()).isZero();
+        verify(values, never()).set(anyString(), anyString(), anyLong(), eq(TimeUnit.SECONDS));
+    }
+
+    private UserInfoResponse load(Long userId) {
+        loads.incrementAndGet();
+        UserInfoResponse response = new UserInfoResponse();
+        response.setId(String.valueOf(userId));
+        response.setNickName("用户" + userId);
+        response.setBalance(balance);
+        response.setToken("token");
+        return response;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static UserInfoCache newCache(StringRedisTemplate redisTemplate) {
+        ObjectProvider<StringRedisTemplate> provider = mock(ObjectProvider.class);
+        when(provider.getIfAvailable()).thenReturn(redisTemplate);
+        UserInfoCache cache = new UserInfoCache(provider, new JsonCodec(new ObjectMapper()));
+        ReflectionTestUtils.setField(cache, "maxSize", 100);
+        ReflectionTestUtils.setField(cache, "localTtlSeconds", 60L);
+        ReflectionTestUtils.setField(cache, "redisEnabled", redisTemplate != null);
+        ReflectionTestUtils.setField(cache, "redisTtlSeconds", 600L);
+        ReflectionTestUtils.setField(cache, "redisDelayedDeleteMs", 1000L);
+        cache.init();
+        return cache;
+    }
+}
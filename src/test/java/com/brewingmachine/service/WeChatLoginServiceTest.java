@@ -0,0 +1,204 @@
+package com.brewingmachine.service;
+
+import com.brewingmachine.config.JsonCodec;
+import com.brewingmachine.config.WeChatConfig;
+import com.brewingmachine.dto.WeChatAccessTokenDTO;
+import com.brewingmachine.dto.WeChatLoginResultDTO;
+import com.brewingmachine.dto.WeChatUserInfoDTO;
+import com.brewingmachine.entity.User;
+import com.brewingmachine.entity.WeChatUser;
+import com.brewingmachine.mapper.UserMapper;
+import com.brewingmachine.mapper.WeChatUserMapper;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.lang.reflect.Method;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class WeChatLoginServiceTest {
+
+    private static final long USER_ID = 9L;
+
+    private final HttpClientService httpClientService = mock(HttpClientService.class);
+    private final WeChatUserMapper weChatUserMapper = mock(WeChatUserMapper.class);
+    private final UserMapper userMapper = mock(UserMapper.class);
+    private final TokenService tokenService = mock(TokenService.class);
+    private final IdentityCache identityCache = mock(IdentityCache.class);
+    private final LastLoginTimeWriter lastLoginTimeWriter = mock(LastLoginTimeWriter.class);
+    private final WeChatProfileRefresher weChatProfileRefresher = mock(WeChatProfileRefresher.class);
+
+    private WeChatLoginService service;
+
+    @BeforeEach
+    void setUp() {
+        WeChatConfig weChatConfig = new WeChatConfig();
+        weChatConfig.setAppId("app");
+        weChatConfig.setAppSecret("secret");
+        weChatConfig.setApiBaseUrl("http://wechat.test");
+
+        WeChatAccountService weChatAccountService = new WeChatAccountService();
+        ReflectionTestUtils.setField(weChatAccountService, "weChatUserMapper", weChatUserMapper);
+        ReflectionTestUtils.setField(weChatAccountService, "userMapper", userMapper);
+        ReflectionTestUtils.setField(weChatAccountService, "identityCache", identityCache);
+        ReflectionTestUtils.setField(weChatAccountService, "lastLoginTimeWriter", lastLoginTimeWriter);
+        ReflectionTestUtils.setField(weChatAccountService, "userInfoCache", mock(UserInfoCache.class));
+
+        service = new WeChatLoginService();
+        ReflectionTestUtils.setField(service, "weChatConfig", weChatConfig);
+        ReflectionTestUtils.setField(service, "weChatAccountService", weChatAccountService);
+        ReflectionTestUtils.setField(service, "tokenService", tokenService);
+        ReflectionTestUtils.setField(service, "httpClientService", httpClientService);
+        ReflectionTestUtils.setField(service, "weChatProfileRefresher", weChatProfileRefresher);
+        ReflectionTestUtils.setField(service, "identityCache", identityCache);
+        ReflectionTestUtils.setField(service, "jsonCodec", new JsonCodec(new ObjectMapper()));
+
+        when(httpClientService.getOnce(contains("/sns/oauth2/access_token")))
+                .thenReturn("{\"access_token\":\"at\",\"openid\":\"o1\",\"unionid\":\"u1\"}");
+        when(httpClientService.get(contains("/sns/userinfo")))
+                .thenReturn("{\"openid\":\"o1\",\"nickname\":\"小明\",\"sex\":\"1\",\"headimgurl\":\"http://img\"}");
+        when(httpClientService.getOnce(contains("/sns/jscode2session")))
+                .thenReturn("{\"openid\":\"o1\",\"session_key\":\"sk\"}");
+        when(tokenService.generateToken(anyLong())).thenReturn("token");
+        // 默认未绑定（mock对Long默认返回0）
+        when(identityCache.resolveOpenid(anyString())).thenReturn(null);
+        doAnswer(invocation -> {
+            invocation.getArgument(0, User.class).setId(USER_ID);
+            return 1;
+        }).when(userMapper).insert(any());
+    }
+
+    @Test
+    void newWebUserIsWrittenAfterRemoteExchangeAndGetsOneToken() {
+        WeChatLoginResultDTO result = service.handleCallback("code");
+
+        assertThat(result.isSuccess()).isTrue();
+        assertThat(result.getUserId()).isEqualTo(USER_ID);
+        assertThat(result.getNickname()).isEqualTo("小明");
+        assertThat(result.getIsNewUser()).isTrue();
+
+        // 微信接口交互全部完成后才写库，token在落库后签发一次
+        InOrder order = inOrder(httpClientService, weChatUserMapper, userMapper, tokenService);
+        order.verify(httpClientService).getOnce(contains("/sns/oauth2/access_token"));
+        order.verify(httpClientService).get(contains("/sns/userinfo"));
+        order.verify(weChatUserMapper).findByOpenid("o1");
+        order.verify(userMapper).insert(any());
+        order.verify(weChatUserMapper).insert(any());
+        order.verify(tokenService).generateToken(USER_ID);
+        verify(tokenService, times(1)).generateToken(anyLong());
+        verify(lastLoginTimeWriter).record(USER_ID);
+        assertThat(service.getLoginMetrics()).containsEntry("logins", 1L);
+    }
+
+    @Test
+    void webLoginConfirmsCachedBindingAndRefreshesProfileInBackground() {
+        User user = new User();
+        user.setId(USER_ID);
+        user.setNickname("老用户");
+        when(identityCache.resolveOpenid("o1")).thenReturn(USER_ID);
+        when(weChatUserMapper.touchBinding("o1", USER_ID)).thenReturn(1);
+        when(userMapper.findById(USER_ID)).thenReturn(user);
+
+        WeChatLoginResultDTO result = service.handleCallback("code");
+
+        assertThat(result.isSuccess()).isTrue();
+        assertThat(result.getUserId()).isEqualTo(USER_ID);
+        assertThat(result.getNickname()).isEqualTo("老用户");
+        assertThat(result.getIsNewUser()).isFalse();
+        // 不同步拉取资料，也不走落库事务
+        verify(httpClientService, never()).get(anyString());
+        verify(weChatUserMapper, never()).findByOpenid(anyString());
+        verify(weChatProfileRefresher).requestRefresh(eq("o1"), eq("u1"), any());
+        verify(tokenService, times(1)).generateToken(USER_ID);
+    }
+
+    @Test
+    void webLoginFallsBackToOpenidLookupWhenCachedBindingChanged() {
+        long reboundUserId = 12L;
+        User rebound = new User();
+        rebound.setId(reboundUserId);
+        WeChatUser weChatUser = new WeChatUser();
+        weChatUser.setOpenid("o1");
+        weChatUser.setUserId(reboundUserId);
+        // 缓存仍是旧用户，库中openid已改绑到用户12
+        when(identityCache.resolveOpenid("o1")).thenReturn(USER_ID);
+        when(weChatUserMapper.touchBinding("o1", USER_ID)).thenReturn(0);
+        when(weChatUserMapper.findByOpenid("o1")).thenReturn(weChatUser);
+        when(userMapper.findById(reboundUserId)).thenReturn(rebound);
+
+        WeChatLoginResultDTO result = service.handleCallback("code");
+
+        assertThat(result.isSuccess()).isTrue();
+        assertThat(result.getUserId()).isEqualTo(reboundUserId);
+        verify(identityCache).invalidateUser(USER_ID);
+        verify(userMapper, never()).findById(USER_ID);
+        verify(lastLoginTimeWriter, never()).record(USER_ID);
+        verify(tokenService, times(1)).generateToken(reboundUserId);
+        verify(tokenService, never()).generateToken(USER_ID);
+    }
+
+    @Test
+    void miniProgramLoginUpdatesSessionKeyOfCachedBinding() {
+        when(identityCache.resolveOpenid("o1")).thenReturn(USER_ID);
+        when(weChatUserMapper.updateSessionKey("o1", USER_ID, "sk")).thenReturn(1);
+
+        WeChatLoginResultDTO result = service.handleMiniProgramLogin("code");
+
+        assertThat(result.isSuccess()).isTrue();
+        assertThat(result.getUserId()).isEqualTo(USER_ID);
+        assertThat(result.getIsNewUser()).isFalse();
+
+        InOrder order = inOrder(httpClientService, weChatUserMapper, tokenService);
+        order.verify(httpClientService).getOnce(contains("/sns/jscode2session"));
+        order.verify(weChatUserMapper).updateSessionKey("o1", USER_ID, "sk");
+        order.verify(tokenService).generateToken(USER_ID);
+        verify(weChatUserMapper, never()).findByOpenid(anyString());
+        verify(tokenService, times(1)).generateToken(anyLong());
+        assertThat(service.getLoginMetrics()).containsEntry("logins", 1L);
+    }
+
+    @Test
+    void failedRemoteExchangeNeverTouchesDatabase() {
+        when(httpClientService.getOnce(contains("/sns/jscode2session")))
+                .thenReturn("{\"errcode\":40029,\"errmsg\":\"invalid code\"}");
+
+        WeChatLoginResultDTO result = service.handleMiniProgramLogin("code");
+
+        assertThat(result.isSuccess()).isFalse();
+        verify(identityCache, never()).resolveOpenid(anyString());
+        verify(weChatUserMapper, never()).updateSessionKey(anyString(), anyLong(), anyString());
+        verify(tokenService, never()).generateToken(anyLong());
+        assertThat(service.getLoginMetrics()).containsEntry("logins", 0L);
+    }
+
+    @Test
+    void onlyTheDatabasePhaseIsTransactional() throws Exception {
+        // 登录流程本身不开事务，远程交互期间不持有数据库连接
+        assertThat(WeChatLoginService.class.getAnnotation(Transactional.class)).isNull();
+        for (Method method : WeChatLoginService.class.getDeclaredMethods()) {
+            assertThat(method.getAnnotation(Transactional.class)).as(method.getName()).isNull();
+        }
+        assertThat(AuthService.class.getMethod("loginByWeChat", String.class).getAnnotation(Transactional.class)).isNull();
+
+        assertThat(WeChatAccountService.class.getMethod("upsertWebUser", WeChatAccessTokenDTO.class, WeChatUserInfoDTO.class)
+                .getAnnotation(Transactional.class)).isNotNull();
+        assertThat(WeChatAccountService.class.getMethod("upsertMiniProgramUser", String.class, Long.class, String.class)
+                .getAnnotation(Transactional.class)).isNotNull();
+    }
+}
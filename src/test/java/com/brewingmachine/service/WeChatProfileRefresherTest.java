@@ -0,0 +1,170 @@
+package com.brewingmachine.service;
+
+import com.brewingmachine.dto.WeChatUserInfoDTO;
+import com.brewingmachine.entity.WeChatUser;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class WeChatProfileRefresherTest {
+
+    private final WeChatAccountService weChatAccountService = mock(WeChatAccountService.class);
+
+    private final AtomicInteger fetches = new AtomicInteger();
+
+    private WeChatProfileRefresher refresher;
+
+    @BeforeEach
+    void setUp() {
+        refresher = new WeChatProfileRefresher(weChatAccountService);
+        ReflectionTestUtils.setField(refresher, "freshSeconds", 86400L);
+        ReflectionTestUtils.setField(refresher, "refreshThreads", 1);
+        ReflectionTestUtils.setField(refresher, "queueCapacity", 1);
+        refresher.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        refresher.shutdown();
+    }
+
+    @Test
+    void refreshesStaleProfileInBackground() throws Exception {
+        WeChatUser weChatUser = bound("o1", LocalDateTime.now().minusDays(2));
+        WeChatUserInfoDTO userInfo = new WeChatUserInfoDTO();
+
+        refresher.requestRefresh("o1", "u1", fetcher(userInfo));
+
+        awaitMetric("refreshed", 1L);
+        assertThat(fetches.get()).isEqualTo(1);
+        verify(weChatAccountService).refreshProfile(weChatUser, "u1", userInfo);
+    }
+
+    @Test
+    void skipsProfileRefreshedWithinFreshPeriod() throws Exception {
+        bound("o1", LocalDateTime.now().minusHours(1));
+
+        refresher.requestRefresh("o1", "u1", fetcher(new WeChatUserInfoDTO()));
+
+        awaitMetric("skippedFresh", 1L);
+        // 新鲜期内不调用微信接口，也不写库
+        assertThat(fetches.get()).isZero();
+        verify(weChatAccountService, never()).refreshProfile(any(), any(), any());
+    }
+
+    @Test
+    void coalescesRequestsForOpenidAlreadyRefreshing() throws Exception {
+        bound("o1", null);
+        CountDownLatch release = new CountDownLatch(1);
+        Supplier<WeChatUserInfoDTO> blocking = () -> {
+            fetches.incrementAndGet();
+            await(release);
+            return new WeChatUserInfoDTO();
+        };
+
+        refresher.requestRefresh("o1", "u1", blocking);
+        refresher.requestRefresh("o1", "u1", blocking);
+        refresher.requestRefresh("o1", "u1", blocking);
+        assertThat(refresher.getMetrics()).containsEntry("coalesced", 2L);
+
+        release.countDown();
+        awaitMetric("refreshed", 1L);
+        assertThat(fetches.get()).isEqualTo(1);
+
+        // 刷新结束后同一openid可以再次刷新
+        refresher.requestRefresh("o1", "u1", blocking);
+        awaitMetric("refreshed", 2L);
+    }
+
+    @Test
+    void failedFetchIsCountedAndReleasesOpenid() throws Exception {
+        bound("o1", null);
+
+        refresher.requestRefresh("o1", "u1", fetcher(null));
+        awaitMetric("failed", 1L);
+        verify(weChatAccountService, never()).refreshProfile(any(), any(), any());
+
+        refresher.requestRefresh("o1", "u1", fetcher(new WeChatUserInfoDTO()));
+        awaitMetric("refreshed", 1L);
+    }
+
+    @Test
+    void dropsRefreshWhenQueueIsFull() throws Exception {
+        bound("o1", null);
+        bound("o2", null);
+        bound("o3", null);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+
+        // 1个线程执行o1，o2占满容量为1的队列，o3被拒绝
+        refresher.requestRefresh("o1", "u1", () -> {
+            started.countDown();
+            await(release);
+            return new WeChatUserInfoDTO();
+        });
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        refresher.requestRefresh("o2", "u2", fetcher(new WeChatUserInfoDTO()));
+        refresher.requestRefresh("o3", "u3", fetcher(new WeChatUserInfoDTO()));
+        assertThat(refresher.getMetrics()).containsEntry("queued", 1);
+
+        release.countDown();
+        awaitMetric("refreshed", 2L);
+        verify(weChatAccountService, never()).findWeChatUser("o3");
+
+        // 被拒绝的openid没有遗留在刷新中，下次登录仍会刷新
+        refresher.requestRefresh("o3", "u3", fetcher(new WeChatUserInfoDTO()));
+        awaitMetric("refreshed", 3L);
+        verify(weChatAccountService).refreshProfile(any(), eq("u3"), any());
+    }
+
+    private WeChatUser bound(String openid, LocalDateTime profileRefreshedAt) {
+        WeChatUser weChatUser = new WeChatUser();
+        weChatUser.setOpenid(openid);
+        weChatUser.setUserId(1L);
+        weChatUser.setProfileRefreshedAt(profileRefreshedAt);
+        when(weChatAccountService.findWeChatUser(openid)).thenReturn(weChatUser);
+        return weChatUser;
+    }
+
+    private Supplier<WeChatUserInfoDTO> fetcher(WeChatUserInfoDTO userInfo) {
+        return () -> {
+            fetches.incrementAndGet();
+            return userInfo;
+        };
+    }
+
+    // 等待指标达到期望值且没有刷新中的openid
+    private void awaitMetric(String name, long expected) throws InterruptedException {
+        Set<?> inFlight = (Set<?>) ReflectionTestUtils.getField(refresher, "inFlight");
+        long deadline = System.currentTimeMillis() + 5000;
+        while ((!Long.valueOf(expected).equals(refresher.getMetrics().get(name)) || !inFlight.isEmpty())
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(refresher.getMetrics()).containsEntry(name, expected);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.brewingmachine.util;
+
+import com.google.zxing.BarcodeFormat;
+import com.google.zxing.EncodeHintType;
+import com.google.zxing.client.j2se.MatrixToImageWriter;
+import com.google.zxing.common.BitMatrix;
+import com.google.zxing.qrcode.QRCodeWriter;
+import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 二维码PNG编码基准：QrImageEncoder直接写1位PNG 与 ZXing MatrixToImageWriter(Java2D + ImageIO) 对比
+ * 运行：mvn test-compile 后以测试classpath执行本类main方法
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QrImageEncoderBenchmark {
+
+    @Param({"300", "600"})
+    private int size;
+
+    private BitMatrix matrix;
+
+    @Setup
+    public void setUp() throws Exception {
+        Map<EncodeHintType, Object> hints = new EnumMap<>(EncodeHintType.class);
+        hints.put(EncodeHintType.CHARACTER_SET, "UTF-8");
+        hints.put(EncodeHintType.ERROR_CORRECTION, ErrorCorrectionLevel.H);
+        hints.put(EncodeHintType.MARGIN, 1);
+        matrix = new QRCodeWriter().encode("brewingmachine://login?token=0123456789abcdef0123456789abcdef&role=agent",
+                BarcodeFormat.QR_CODE, size, size, hints);
+    }
+
+    @Benchmark
+    public byte[] directPng() {
+        return QrImageEncoder.encodePng(matrix);
+    }
+
+    @Benchmark
+    public byte[] imageIoPng() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+        MatrixToImageWriter.writeToStream(matrix, "PNG", out);
+        return out.toByteArray();
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(QrImageEncoderBenchmark.class.getSimpleName()).build()).run();
+    }
+}